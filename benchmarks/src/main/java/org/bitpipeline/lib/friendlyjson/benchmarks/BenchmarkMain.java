@@ -0,0 +1,41 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/** Runs the benchmarks with the GC profiler, so the allocation rate is
+ * reported next to the throughput. Takes the same arguments as the JMH
+ * runner, like a regular expression to select the benchmarks or
+ * <tt>-p payload=SMALL</tt> to select the payloads.
+ * @author mtavares */
+public final class BenchmarkMain {
+	private BenchmarkMain () {
+	}
+
+	public static void main (String[] args) throws Exception {
+		Options options = new OptionsBuilder ()
+			.parent (new CommandLineOptions (args))
+			.addProfiler (GCProfiler.class)
+			.build ();
+		new Runner (options).run ();
+	}
+}
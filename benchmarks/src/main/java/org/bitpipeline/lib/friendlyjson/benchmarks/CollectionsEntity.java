@@ -0,0 +1,53 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bitpipeline.lib.friendlyjson.JSONEntity;
+import org.bitpipeline.lib.friendlyjson.JSONMappingException;
+import org.json.JSONObject;
+
+/** A entity with big lists and maps.
+ * @author mtavares */
+public class CollectionsEntity extends JSONEntity {
+	private List<FlatEntity> items;
+	private Map<String, FlatEntity> index;
+	private List<String> names;
+	private Map<String, Integer> counts;
+
+	public CollectionsEntity (int size) {
+		this.items = new ArrayList<FlatEntity> (size);
+		this.index = new HashMap<String, FlatEntity> (size);
+		this.names = new ArrayList<String> (size);
+		this.counts = new HashMap<String, Integer> (size);
+		for (int i=0; i<size; i++) {
+			FlatEntity item = new FlatEntity (i);
+			this.items.add (item);
+			this.index.put ("item" + i, item);
+			this.names.add ("name" + i);
+			this.counts.put ("count" + i, Integer.valueOf (i * 7));
+		}
+	}
+
+	public CollectionsEntity (JSONObject json) throws JSONMappingException {
+		super (json);
+	}
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bitpipeline.lib.friendlyjson.JSONEntity;
+import org.bitpipeline.lib.friendlyjson.JSONMappingException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Encoding entities into JSON objects, text and reused buffers.
+ * @author mtavares */
+@BenchmarkMode (Mode.Throughput)
+@OutputTimeUnit (TimeUnit.SECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+@State (Scope.Benchmark)
+public class EncodeBenchmark {
+	@Param ({ "SMALL", "EQUIPMENT", "COLLECTIONS", "ENUMS" })
+	public String payload;
+
+	private JSONEntity entity;
+
+	/** A builder reused by each thread, as a caller owning its buffers would. */
+	@State (Scope.Thread)
+	public static class Sink {
+		final StringBuilder builder = new StringBuilder (4096);
+	}
+
+	@Setup
+	public void setup () {
+		this.entity = Payload.valueOf (this.payload).create ();
+	}
+
+	@Benchmark
+	public JSONObject toJson () throws JSONMappingException {
+		return this.entity.toJson ();
+	}
+
+	@Benchmark
+	public String toStringCompact () {
+		return this.entity.toString ();
+	}
+
+	@Benchmark
+	public StringBuilder appendTo (Sink sink) throws JSONMappingException {
+		sink.builder.setLength (0);
+		return this.entity.appendTo (sink.builder);
+	}
+
+	@Benchmark
+	public String toStringIndented () {
+		return this.entity.toString (2);
+	}
+}
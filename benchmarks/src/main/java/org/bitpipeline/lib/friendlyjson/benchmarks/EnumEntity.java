@@ -0,0 +1,58 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bitpipeline.lib.friendlyjson.JSONEntity;
+import org.bitpipeline.lib.friendlyjson.JSONMappingException;
+import org.bitpipeline.lib.friendlyjson.complexdata.FinFittingType;
+import org.bitpipeline.lib.friendlyjson.complexdata.WindsurfClass;
+import org.json.JSONObject;
+
+/** A entity where most of the values are enums.
+ * @author mtavares */
+public class EnumEntity extends JSONEntity {
+	private WindsurfClass main;
+	private WindsurfClass[] disciplines;
+	private FinFittingType[] fittings;
+	private List<WindsurfClass> history;
+	private Map<String, FinFittingType> fittingsByBoard;
+
+	public EnumEntity (int size) {
+		WindsurfClass[] classes = WindsurfClass.values ();
+		FinFittingType[] types = FinFittingType.values ();
+		this.main = classes[size % classes.length];
+		this.disciplines = new WindsurfClass[size];
+		this.fittings = new FinFittingType[size];
+		this.history = new ArrayList<WindsurfClass> (size);
+		this.fittingsByBoard = new HashMap<String, FinFittingType> (size);
+		for (int i=0; i<size; i++) {
+			this.disciplines[i] = classes[i % classes.length];
+			this.fittings[i] = types[i % types.length];
+			this.history.add (classes[(i * 3) % classes.length]);
+			this.fittingsByBoard.put ("board" + i, types[(i * 5) % types.length]);
+		}
+	}
+
+	public EnumEntity (JSONObject json) throws JSONMappingException {
+		super (json);
+	}
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson.benchmarks;
+
+import org.bitpipeline.lib.friendlyjson.JSONEntity;
+import org.bitpipeline.lib.friendlyjson.JSONMappingException;
+import org.json.JSONObject;
+
+/** A small entity with only primitive and String fields.
+ * @author mtavares */
+public class FlatEntity extends JSONEntity {
+	private int id;
+	private long timestamp;
+	private double latitude;
+	private double longitude;
+	private float accuracy;
+	private boolean active;
+	private short priority;
+	private char grade;
+	private String name;
+	private String description;
+
+	public FlatEntity (int id) {
+		this.id = id;
+		this.timestamp = 1350000000000L + id;
+		this.latitude = 38.7 + id / 1000.0;
+		this.longitude = -9.1 - id / 1000.0;
+		this.accuracy = 0.5f * (id % 20);
+		this.active = id % 2 == 0;
+		this.priority = (short) (id % 5);
+		this.grade = (char) ('A' + id % 6);
+		this.name = "entity " + id;
+		this.description = "The entity number " + id + ", with a \"quoted\" word and a tab\t.";
+	}
+
+	public FlatEntity (JSONObject json) throws JSONMappingException {
+		super (json);
+	}
+
+	public int getId () {
+		return this.id;
+	}
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson.benchmarks;
+
+import org.bitpipeline.lib.friendlyjson.JSONEntity;
+import org.bitpipeline.lib.friendlyjson.JSONMappingException;
+import org.bitpipeline.lib.friendlyjson.complexdata.EquipmentBoard;
+import org.bitpipeline.lib.friendlyjson.complexdata.EquipmentBrand;
+import org.bitpipeline.lib.friendlyjson.complexdata.EquipmentCollection;
+import org.bitpipeline.lib.friendlyjson.complexdata.EquipmentPak;
+import org.bitpipeline.lib.friendlyjson.complexdata.FinFittingType;
+import org.bitpipeline.lib.friendlyjson.complexdata.WindsurfClass;
+import org.json.JSONObject;
+
+/** The entities the benchmarks decode and encode, selected by name with the <tt>payload</tt> parameter.
+ * @author mtavares */
+public enum Payload {
+	/** A small entity with only primitive and String fields. */
+	SMALL {
+		@Override
+		JSONEntity create () {
+			return new FlatEntity (42);
+		}
+
+		@Override
+		JSONEntity decode (JSONObject json) throws JSONMappingException {
+			return new FlatEntity (json);
+		}
+	},
+
+	/** The complexdata model of the tests: brands, collections and boards, nested a few levels. */
+	EQUIPMENT {
+		@Override
+		JSONEntity create () {
+			EquipmentPak pak = new EquipmentPak ();
+			for (int b=0; b<5; b++) {
+				EquipmentBrand brand = new EquipmentBrand ("Brand " + b, "http://example.com/" + b + ".png", "The brand number " + b);
+				brand.putInfo ("Founded", Integer.toString (1980 + b));
+				for (int c=0; c<4; c++) {
+					EquipmentCollection collection = new EquipmentCollection (Integer.toString (2009 + c), null, "The " + (2009 + c) + " collection", brand);
+					for (int i=0; i<5; i++)
+						pak.addBoard (Payload.createBoard (collection, b * 100 + c * 10 + i));
+				}
+			}
+			return pak;
+		}
+
+		@Override
+		JSONEntity decode (JSONObject json) throws JSONMappingException {
+			return new EquipmentPak (json);
+		}
+	},
+
+	/** Lists and maps with thousands of elements. */
+	COLLECTIONS {
+		@Override
+		JSONEntity create () {
+			return new CollectionsEntity (2000);
+		}
+
+		@Override
+		JSONEntity decode (JSONObject json) throws JSONMappingException {
+			return new CollectionsEntity (json);
+		}
+	},
+
+	/** Arrays, lists and maps of enums. */
+	ENUMS {
+		@Override
+		JSONEntity create () {
+			return new EnumEntity (500);
+		}
+
+		@Override
+		JSONEntity decode (JSONObject json) throws JSONMappingException {
+			return new EnumEntity (json);
+		}
+	};
+
+	/** @return a new entity of the payload. */
+	abstract JSONEntity create ();
+
+	/** Decode the entity with its <tt>JSONObject</tt> constructor. */
+	abstract JSONEntity decode (JSONObject json) throws JSONMappingException;
+
+	private static EquipmentBoard createBoard (EquipmentCollection collection, int number) {
+		return new EquipmentBoard (
+			"Board " + number, collection, null, "The board number " + number,
+			new WindsurfClass[] { WindsurfClass.values ()[number % 10], WindsurfClass.Freeride },
+			new EquipmentBoard.BoardSpecs (100f + number % 50, 2.50f, 0.60f, 4.0f, 7.5f, FinFittingType.PowerBox),
+			new EquipmentBoard.BoardSpecs (120f + number % 50, 2.55f, 0.65f, 4.5f, 8.5f, FinFittingType.PowerBox, FinFittingType.TuttleBox),
+			new EquipmentBoard.BoardSpecs (140f + number % 50, 2.60f, 0.70f, 5.0f, 9.5f, FinFittingType.DeepTuttle));
+	}
+}
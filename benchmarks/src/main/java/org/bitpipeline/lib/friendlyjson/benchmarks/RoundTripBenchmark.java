@@ -0,0 +1,69 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bitpipeline.lib.friendlyjson.JSONEntity;
+import org.bitpipeline.lib.friendlyjson.JSONMappingException;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Encoding entities and decoding them back.
+ * @author mtavares */
+@BenchmarkMode (Mode.Throughput)
+@OutputTimeUnit (TimeUnit.SECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+@State (Scope.Benchmark)
+public class RoundTripBenchmark {
+	@Param ({ "SMALL", "EQUIPMENT", "COLLECTIONS", "ENUMS" })
+	public String payload;
+
+	private Payload entities;
+	private JSONEntity entity;
+
+	@Setup
+	public void setup () {
+		this.entities = Payload.valueOf (this.payload);
+		this.entity = this.entities.create ();
+	}
+
+	/** Through a JSON object. */
+	@Benchmark
+	public JSONEntity json () throws JSONMappingException {
+		return this.entities.decode (this.entity.toJson ());
+	}
+
+	/** Through JSON text. */
+	@Benchmark
+	public JSONEntity text () throws JSONMappingException, JSONException {
+		return this.entities.decode (new JSONObject (this.entity.toString ()));
+	}
+}
@@ -0,0 +1,390 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/** Reads CBOR (RFC 7049), such as written by {@link CBORWriter}, as JSON values.
+ * The entities are created from the JSON objects read, the same way they
+ * are created from JSON text. Besides what {@link CBORWriter} writes, the
+ * reader understands items of indefinite length, half precision floats and
+ * all the typed arrays of RFC 8746 except the ones of 128 bit floats.
+ * Byte strings are read as arrays of their unsigned bytes, and other tags
+ * are ignored, leaving the items they tag.
+ * @author mtavares */
+public final class CBORReader {
+	private static final int BUFFER_SIZE = 8192;
+	/** What {@link #next()} returns at the end of the input. */
+	private static final int END = -1;
+	/** The longest string of bytes or text read, as arrays can't be much larger. */
+	private static final int MAX_STRING_LENGTH = Integer.MAX_VALUE - 8;
+
+	private final InputStream stream;
+	private final byte[] buffer;
+	private int position;
+	private int limit;
+	private final ByteBuffer source;
+
+	/** Read from a stream. The stream is read ahead, in blocks. */
+	public CBORReader (InputStream stream) {
+		this.stream = stream;
+		this.buffer = new byte[CBORReader.BUFFER_SIZE];
+		this.source = null;
+	}
+
+	/** Read from a buffer, from its position. The position is moved past the items read. */
+	public CBORReader (ByteBuffer source) {
+		this.stream = null;
+		this.buffer = null;
+		this.source = source;
+	}
+
+	/** Create a entity from CBOR.
+	 * @throws JSONException if the CBOR isn't valid or isn't a map. */
+	public static <T extends JSONEntity> T read (Class<T> clazz, byte[] cbor) throws JSONMappingException, JSONException {
+		T entity = new CBORReader (ByteBuffer.wrap (cbor)).read (clazz);
+		if (entity == null)
+			throw new JSONException ("No CBOR item.");
+		return entity;
+	}
+
+	/** Convert CBOR into the JSON value it holds, such as a JSON object.
+	 * @see CBORWriter#fromJson(Object) */
+	public static Object toJson (byte[] cbor) throws JSONException {
+		Object json = new CBORReader (ByteBuffer.wrap (cbor)).readJson ();
+		if (json == null)
+			throw new JSONException ("No CBOR item.");
+		return json;
+	}
+
+	/** Read the next entity.
+	 * @return <tt>null</tt> if there are no more items.
+	 * @throws JSONException if the CBOR isn't valid, can't be read, or isn't a map. */
+	public <T extends JSONEntity> T read (Class<T> clazz) throws JSONMappingException, JSONException {
+		Object json = readJson ();
+		if (json == null)
+			return null;
+		if (! (json instanceof JSONObject))
+			throw new JSONException ("Expecting a CBOR map, not " + json);
+		return clazz.cast (JSONEntity.fromJson (clazz, json));
+	}
+
+	/** Read the next item as a JSON value.
+	 * @return <tt>null</tt> if there are no more items, <tt>JSONObject.NULL</tt> for a CBOR null.
+	 * @throws JSONException if the CBOR isn't valid or can't be read. */
+	public Object readJson () throws JSONException {
+		if (peek () == CBORReader.END)
+			return null;
+		return readValue ();
+	}
+
+	private Object readValue () throws JSONException {
+		int initial = nextByte ();
+		int major = initial >>> 5;
+		int info = initial & 0x1f;
+		switch (major) {
+			case CBORWriter.MAJOR_UNSIGNED:
+				return CBORReader.integer (readArgument (info), false);
+			case CBORWriter.MAJOR_NEGATIVE:
+				return CBORReader.integer (readArgument (info), true);
+			case CBORWriter.MAJOR_BYTES: {
+				byte[] bytes = readBytes (major, info);
+				JSONArray array = new JSONArray ();
+				for (byte b : bytes)
+					array.put (b & 0xff);
+				return array;
+			}
+			case CBORWriter.MAJOR_TEXT:
+				return new String (readBytes (major, info), StandardCharsets.UTF_8);
+			case CBORWriter.MAJOR_ARRAY: {
+				JSONArray array = new JSONArray ();
+				if (info == 31) {
+					while (peek () != CBORWriter.BREAK)
+						array.put (readValue ());
+					nextByte ();
+				} else {
+					for (long i=readLength (info); i>0; i--)
+						array.put (readValue ());
+				}
+				return array;
+			}
+			case CBORWriter.MAJOR_MAP: {
+				JSONObject map = new JSONObject ();
+				if (info == 31) {
+					while (peek () != CBORWriter.BREAK)
+						map.put (readKey (), readValue ());
+					nextByte ();
+				} else {
+					for (long i=readLength (info); i>0; i--)
+						map.put (readKey (), readValue ());
+				}
+				return map;
+			}
+			case CBORWriter.MAJOR_TAG:
+				return readTagged (readArgument (info));
+			default:
+				return readSimple (initial, info);
+		}
+	}
+
+	private String readKey () throws JSONException {
+		Object key = readValue ();
+		if (key instanceof String || key instanceof Number)
+			return key.toString ();
+		throw new JSONException ("Invalid CBOR map key " + key);
+	}
+
+	private Object readSimple (int initial, int info) throws JSONException {
+		switch (initial) {
+			case CBORWriter.FALSE:
+				return Boolean.FALSE;
+			case CBORWriter.TRUE:
+				return Boolean.TRUE;
+			case CBORWriter.NULL:
+			case CBORWriter.UNDEFINED:
+				return JSONObject.NULL;
+			case CBORWriter.HALF:
+				return Float.valueOf (CBORReader.halfToFloat ((int) readUnsigned (2)));
+			case CBORWriter.FLOAT:
+				return Float.valueOf (Float.intBitsToFloat ((int) readUnsigned (4)));
+			case CBORWriter.DOUBLE:
+				return Double.valueOf (Double.longBitsToDouble (readUnsigned (8)));
+			default:
+				throw new JSONException ("Unexpected CBOR simple value " + info);
+		}
+	}
+
+	private Object readTagged (long tag) throws JSONException {
+		if (tag == CBORWriter.TAG_POSITIVE_BIGNUM || tag == CBORWriter.TAG_NEGATIVE_BIGNUM) {
+			int initial = nextByte ();
+			BigInteger value = new BigInteger (1, readBytes (initial >>> 5, initial & 0x1f));
+			return tag == CBORWriter.TAG_POSITIVE_BIGNUM ? value : value.add (BigInteger.ONE).negate ();
+		}
+		if (tag == CBORWriter.TAG_DECIMAL_FRACTION) {
+			Object fraction = readValue ();
+			if (! (fraction instanceof JSONArray) || ((JSONArray) fraction).length () != 2)
+				throw new JSONException ("Invalid CBOR decimal fraction " + fraction);
+			Object exponent = ((JSONArray) fraction).get (0);
+			Object mantissa = ((JSONArray) fraction).get (1);
+			if (! (exponent instanceof Integer) || ! (mantissa instanceof Number) || mantissa instanceof Double || mantissa instanceof Float)
+				throw new JSONException ("Invalid CBOR decimal fraction " + fraction);
+			BigInteger unscaled = mantissa instanceof BigInteger ? (BigInteger) mantissa : BigInteger.valueOf (((Number) mantissa).longValue ());
+			return new BigDecimal (unscaled, -((Integer) exponent).intValue ());
+		}
+		if (tag >= 64 && tag <= 87)
+			return readTypedArray ((int) tag);
+		return readValue ();
+	}
+
+	/** Read a typed array of RFC 8746 as a JSON array of numbers. */
+	private JSONArray readTypedArray (int tag) throws JSONException {
+		int initial = nextByte ();
+		byte[] bytes = readBytes (initial >>> 5, initial & 0x1f);
+		boolean floating = (tag & 0x10) != 0;
+		boolean signed = (tag & 0x08) != 0;
+		boolean little = (tag & 0x04) != 0;
+		int size = 1 << (tag & 0x03);
+		if (floating) {
+			size <<= 1;
+			if (size == 16)
+				throw new JSONException ("128 bit floats aren't supported.");
+		} else if (size == 1) {
+			if (tag == 76)
+				throw new JSONException ("Invalid CBOR typed array tag " + tag);
+			little = false; // tag 68 is clamped, not little endian.
+		}
+		if (bytes.length % size != 0)
+			throw new JSONException ("Invalid length for CBOR typed array tag " + tag);
+
+		JSONArray array = new JSONArray ();
+		for (int offset=0; offset<bytes.length; offset+=size) {
+			long bits = 0;
+			for (int i=0; i<size; i++) {
+				int b = bytes[little ? offset + size - 1 - i : offset + i] & 0xff;
+				bits = (bits << 8) | b;
+			}
+			if (floating) {
+				if (size == 2)
+					array.put (Float.valueOf (CBORReader.halfToFloat ((int) bits)));
+				else if (size == 4)
+					array.put (Float.valueOf (Float.intBitsToFloat ((int) bits)));
+				else
+					array.put (Double.valueOf (Double.longBitsToDouble (bits)));
+			} else if (size == 8) {
+				array.put (signed || bits >= 0 ? CBORReader.integer (bits) : CBORReader.unsigned (bits));
+			} else {
+				int shift = 64 - size * 8;
+				array.put (CBORReader.integer (signed ? (bits << shift) >> shift : bits));
+			}
+		}
+		return array;
+	}
+
+	static float halfToFloat (int half) {
+		int exponent = (half >> 10) & 0x1f;
+		int mantissa = half & 0x3ff;
+		float value;
+		if (exponent == 0)
+			value = Math.scalb ((float) mantissa, -24);
+		else if (exponent != 31)
+			value = Math.scalb ((float) (mantissa + 1024), exponent - 25);
+		else
+			value = mantissa == 0 ? Float.POSITIVE_INFINITY : Float.NaN;
+		return (half & 0x8000) != 0 ? -value : value;
+	}
+
+	/** @return the number as a Integer if it fits, as JSONTokener does, a Long or a BigInteger otherwise. */
+	private static Object integer (long argument, boolean negative) {
+		if (argument < 0) { // more than 63 bits.
+			BigInteger value = CBORReader.unsigned (argument);
+			return negative ? value.add (BigInteger.ONE).negate () : value;
+		}
+		return CBORReader.integer (negative ? -1 - argument : argument);
+	}
+
+	private static Object integer (long value) {
+		if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE)
+			return Integer.valueOf ((int) value);
+		return Long.valueOf (value);
+	}
+
+	private static BigInteger unsigned (long bits) {
+		BigInteger value = BigInteger.valueOf (bits & Long.MAX_VALUE);
+		return bits < 0 ? value.setBit (63) : value;
+	}
+
+	/** Read the bytes of a byte or text string, joining the chunks of the ones of indefinite length. */
+	private byte[] readBytes (int major, int info) throws JSONException {
+		if (major != CBORWriter.MAJOR_BYTES && major != CBORWriter.MAJOR_TEXT)
+			throw new JSONException ("Expecting a CBOR string, not major type " + major);
+		if (info != 31)
+			return readFully (readLength (info));
+
+		ByteArrayOutputStream chunks = new ByteArrayOutputStream ();
+		for (int initial = nextByte (); initial != CBORWriter.BREAK; initial = nextByte ()) {
+			if ((initial >>> 5) != major || (initial & 0x1f) == 31)
+				throw new JSONException ("Invalid chunk in a CBOR string of indefinite length.");
+			byte[] chunk = readFully (readLength (initial & 0x1f));
+			chunks.write (chunk, 0, chunk.length);
+		}
+		return chunks.toByteArray ();
+	}
+
+	private long readLength (int info) throws JSONException {
+		long length = readArgument (info);
+		if (length < 0 || length > Integer.MAX_VALUE)
+			throw new JSONException ("CBOR item too long: " + CBORReader.unsigned (length));
+		return length;
+	}
+
+	/** @return the argument of a item, as a unsigned 64 bit number. */
+	private long readArgument (int info) throws JSONException {
+		if (info < 24)
+			return info;
+		switch (info) {
+			case 24:
+				return readUnsigned (1);
+			case 25:
+				return readUnsigned (2);
+			case 26:
+				return readUnsigned (4);
+			case 27:
+				return readUnsigned (8);
+			default:
+				throw new JSONException ("Invalid CBOR additional information " + info);
+		}
+	}
+
+	private long readUnsigned (int size) throws JSONException {
+		long value = 0;
+		for (int i=0; i<size; i++)
+			value = (value << 8) | nextByte ();
+		return value;
+	}
+
+	/** Read a string of bytes, checking its declared length against the
+	 * input before trusting it with the memory for the bytes. */
+	private byte[] readFully (long length) throws JSONException {
+		if (length < 0 || length > CBORReader.MAX_STRING_LENGTH)
+			throw new JSONException ("CBOR string too long: " + Long.toString (length));
+		if (this.source != null) {
+			if (this.source.remaining () < length)
+				throw new JSONException ("Unexpected end of the CBOR input.");
+			byte[] bytes = new byte[(int) length];
+			this.source.get (bytes);
+			return bytes;
+		}
+		// read in blocks, so a input shorter than its declared length doesn't get all the memory first.
+		byte[] bytes = new byte[(int) Math.min (length, CBORReader.BUFFER_SIZE)];
+		int done = 0;
+		while (done < length) {
+			if (this.position == this.limit && !fill ())
+				throw new JSONException ("Unexpected end of the CBOR input.");
+			if (done == bytes.length)
+				bytes = Arrays.copyOf (bytes, (int) Math.min (length, 2L * bytes.length));
+			int n = Math.min (bytes.length - done, this.limit - this.position);
+			System.arraycopy (this.buffer, this.position, bytes, done, n);
+			this.position += n;
+			done += n;
+		}
+		return bytes;
+	}
+
+	private int nextByte () throws JSONException {
+		int b = peek ();
+		if (b == CBORReader.END)
+			throw new JSONException ("Unexpected end of the CBOR input.");
+		if (this.source != null)
+			this.source.get ();
+		else
+			this.position++;
+		return b;
+	}
+
+	/** @return the next byte, without reading it, or {@link #END} at the end of the input. */
+	private int peek () throws JSONException {
+		if (this.source != null)
+			return this.source.hasRemaining () ? this.source.get (this.source.position ()) & 0xff : CBORReader.END;
+		if (this.position == this.limit && !fill ())
+			return CBORReader.END;
+		return this.buffer[this.position] & 0xff;
+	}
+
+	private boolean fill () throws JSONException {
+		try {
+			int n = this.stream.read (this.buffer, 0, this.buffer.length);
+			if (n <= 0)
+				return false;
+			this.position = 0;
+			this.limit = n;
+			return true;
+		} catch (IOException e) {
+			throw new JSONException (e);
+		}
+	}
+}
@@ -0,0 +1,435 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONString;
+import org.json.JSONTokener;
+
+/** Writes JSON entities in CBOR (RFC 7049), a binary form of JSON.
+ * The entities are written with the same fields and values as
+ * <tt>toJson ()</tt>, so reading them with {@link CBORReader} gives the same
+ * JSON object, but the strings are prefixed by their length instead of
+ * escaped, the numbers are written in binary with their own width, and
+ * the arrays of primitives and the {@link IntList}, {@link LongList} and
+ * {@link DoubleList} are written packed, as the typed arrays of RFC 8746.
+ * @author mtavares */
+public final class CBORWriter implements Closeable, Flushable {
+	static final int MAJOR_UNSIGNED = 0;
+	static final int MAJOR_NEGATIVE = 1;
+	static final int MAJOR_BYTES = 2;
+	static final int MAJOR_TEXT = 3;
+	static final int MAJOR_ARRAY = 4;
+	static final int MAJOR_MAP = 5;
+	static final int MAJOR_TAG = 6;
+	static final int MAJOR_SIMPLE = 7;
+
+	static final int FALSE = 0xf4;
+	static final int TRUE = 0xf5;
+	static final int NULL = 0xf6;
+	static final int UNDEFINED = 0xf7;
+	static final int HALF = 0xf9;
+	static final int FLOAT = 0xfa;
+	static final int DOUBLE = 0xfb;
+	static final int BREAK = 0xff;
+
+	static final int TAG_POSITIVE_BIGNUM = 2;
+	static final int TAG_NEGATIVE_BIGNUM = 3;
+	static final int TAG_DECIMAL_FRACTION = 4;
+	/** The typed arrays, big endian, see RFC 8746. */
+	static final int TAG_SINT8 = 72;
+	static final int TAG_SINT16 = 73;
+	static final int TAG_SINT32 = 74;
+	static final int TAG_SINT64 = 75;
+	static final int TAG_FLOAT32 = 81;
+	static final int TAG_FLOAT64 = 82;
+
+	private static final int BUFFER_SIZE = 8192;
+	private static final BigInteger MIN_LONG = BigInteger.valueOf (Long.MIN_VALUE);
+	private static final BigInteger MAX_LONG = BigInteger.valueOf (Long.MAX_VALUE);
+
+	private final OutputStream stream;
+	private final byte[] buffer;
+	private int count;
+	private final ByteBuffer target;
+
+	/** Write to a stream. The bytes are buffered until {@link #flush()} or {@link #close()}. */
+	public CBORWriter (OutputStream stream) {
+		this.stream = stream;
+		this.buffer = new byte[CBORWriter.BUFFER_SIZE];
+		this.target = null;
+	}
+
+	/** Write into a buffer, from its position.
+	 * If the buffer gets full a <tt>BufferOverflowException</tt> is thrown,
+	 * with part of the item written. */
+	public CBORWriter (ByteBuffer target) {
+		this.stream = null;
+		this.buffer = null;
+		this.target = target;
+	}
+
+	/** Encode a entity into CBOR. */
+	public static byte[] toBytes (JSONEntity entity) throws JSONMappingException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream ();
+		CBORWriter writer = new CBORWriter (out);
+		try {
+			writer.write (entity);
+			writer.flush ();
+		} catch (IOException e) { // a ByteArrayOutputStream doesn't throw it.
+			throw new JSONMappingException (e);
+		}
+		return out.toByteArray ();
+	}
+
+	/** Encode a JSON value, such as a JSON object, into CBOR.
+	 * @see CBORReader#toJson(byte[]) */
+	public static byte[] fromJson (Object json) throws JSONMappingException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream ();
+		CBORWriter writer = new CBORWriter (out);
+		try {
+			writer.writeValue (json);
+			writer.flush ();
+		} catch (IOException e) { // a ByteArrayOutputStream doesn't throw it.
+			throw new JSONMappingException (e);
+		}
+		return out.toByteArray ();
+	}
+
+	/** Write a entity as a CBOR map. */
+	public void write (JSONEntity entity) throws JSONMappingException, IOException {
+		Class<? extends JSONEntity> clazz = entity.getClass ();
+		EntityDescriptor descriptor = EntityDescriptor.of (clazz);
+		if (descriptor.hasCustomToJson () || EntityCodecs.isRegistered (clazz)) {
+			writeValue (entity.toJson ());
+			return;
+		}
+
+		FieldDescriptor[] fields = descriptor.getFields ();
+		Object[] values = new Object[fields.length];
+		for (int i=0; i<fields.length; i++) {
+			try {
+				values[i] = fields[i].get (entity);
+			} catch (Exception e) {
+				throw new JSONMappingException (e);
+			}
+		}
+		// the same members toJson () would keep, when fields share a name.
+		int[] order = descriptor.getWriteOrder (values);
+		writeHead (CBORWriter.MAJOR_MAP, order.length);
+		for (int index : order) {
+			writeText (fields[index].getJsonName ());
+			writeValue (values[index]);
+		}
+	}
+
+	/** Write a value the way it would be converted by <tt>JSONEntity.toJson (Object)</tt>,
+	 * or a JSON value, such as a JSON object. */
+	public void writeValue (Object value) throws JSONMappingException, IOException {
+		TypeAdapter<Object> adapter;
+		if (value == null || value == JSONObject.NULL) {
+			put (CBORWriter.NULL);
+		} else if (value instanceof JSONEntity) {
+			write ((JSONEntity) value);
+		} else if (value instanceof String) {
+			writeText ((String) value);
+		} else if (value instanceof Number) {
+			writeNumber ((Number) value);
+		} else if (value instanceof Boolean) {
+			put (((Boolean) value).booleanValue () ? CBORWriter.TRUE : CBORWriter.FALSE);
+		} else if (value instanceof Enum) {
+			writeValue (EnumLookup.of ((Enum<?>) value).toJson ((Enum<?>) value));
+		} else if (value instanceof JSONObject) {
+			JSONObject json = (JSONObject) value;
+			writeHead (CBORWriter.MAJOR_MAP, json.length ());
+			Iterator<?> keys = json.keys ();
+			while (keys.hasNext ()) {
+				String key = keys.next ().toString ();
+				writeText (key);
+				writeValue (json.opt (key));
+			}
+		} else if (value instanceof JSONArray) {
+			JSONArray json = (JSONArray) value;
+			writeHead (CBORWriter.MAJOR_ARRAY, json.length ());
+			for (int i=0; i<json.length (); i++)
+				writeValue (json.opt (i));
+		} else if (value instanceof Map) {
+			writeMap ((Map<?, ?>) value);
+		} else if (value instanceof IntList) {
+			IntList list = (IntList) value;
+			writeTypedArray (CBORWriter.TAG_SINT32, list.size (), 4);
+			for (int i=0; i<list.size (); i++)
+				putInt (list.getInt (i));
+		} else if (value instanceof LongList) {
+			LongList list = (LongList) value;
+			writeTypedArray (CBORWriter.TAG_SINT64, list.size (), 8);
+			for (int i=0; i<list.size (); i++)
+				putLong (list.getLong (i));
+		} else if (value instanceof DoubleList) {
+			DoubleList list = (DoubleList) value;
+			writeTypedArray (CBORWriter.TAG_FLOAT64, list.size (), 8);
+			for (int i=0; i<list.size (); i++)
+				putLong (Double.doubleToRawLongBits (CBORWriter.checkFinite (list.getDouble (i))));
+		} else if ((adapter = TypeAdapters.forValue (value)) != null) {
+			writeValue (TypeAdapters.toJson (adapter, value));
+		} else if (value instanceof Collection) {
+			Collection<?> collection = (Collection<?>) value;
+			writeHead (CBORWriter.MAJOR_ARRAY, collection.size ());
+			for (Object item : collection)
+				writeValue (item);
+		} else if (value.getClass ().isArray ()) {
+			if (value.getClass ().getComponentType ().isPrimitive ()) {
+				writePrimitiveArray (value);
+				return;
+			}
+			Object[] array = (Object[]) value;
+			writeHead (CBORWriter.MAJOR_ARRAY, array.length);
+			for (Object item : array)
+				writeValue (item);
+		} else if (value instanceof JSONString) {
+			String json = ((JSONString) value).toJSONString ();
+			try {
+				writeValue (new JSONTokener (json).nextValue ());
+			} catch (JSONException e) {
+				throw new JSONMappingException (e);
+			}
+		} else {
+			writeText (value.toString ());
+		}
+	}
+
+	private void writeMap (Map<?, ?> map) throws JSONMappingException, IOException {
+		// the same members toJson (Object) keeps in the JSONObject.
+		HashMap<String, Object> members = new HashMap<String, Object> ();
+		for (Map.Entry<?, ?> entry : map.entrySet ()) {
+			if (entry.getValue () == null)
+				members.remove (EnumLookup.keyOf (entry.getKey ()));
+			else
+				members.put (EnumLookup.keyOf (entry.getKey ()), entry.getValue ());
+		}
+		writeHead (CBORWriter.MAJOR_MAP, members.size ());
+		for (Map.Entry<String, Object> member : members.entrySet ()) {
+			writeText (member.getKey ());
+			writeValue (member.getValue ());
+		}
+	}
+
+	private void writePrimitiveArray (Object array) throws JSONMappingException, IOException {
+		if (array instanceof int[]) {
+			int[] values = (int[]) array;
+			writeTypedArray (CBORWriter.TAG_SINT32, values.length, 4);
+			for (int value : values)
+				putInt (value);
+		} else if (array instanceof long[]) {
+			long[] values = (long[]) array;
+			writeTypedArray (CBORWriter.TAG_SINT64, values.length, 8);
+			for (long value : values)
+				putLong (value);
+		} else if (array instanceof double[]) {
+			double[] values = (double[]) array;
+			writeTypedArray (CBORWriter.TAG_FLOAT64, values.length, 8);
+			for (double value : values)
+				putLong (Double.doubleToRawLongBits (CBORWriter.checkFinite (value)));
+		} else if (array instanceof float[]) {
+			float[] values = (float[]) array;
+			writeTypedArray (CBORWriter.TAG_FLOAT32, values.length, 4);
+			for (float value : values)
+				putInt (Float.floatToRawIntBits ((float) CBORWriter.checkFinite (value)));
+		} else if (array instanceof short[]) {
+			short[] values = (short[]) array;
+			writeTypedArray (CBORWriter.TAG_SINT16, values.length, 2);
+			for (short value : values) {
+				put (value >> 8);
+				put (value);
+			}
+		} else if (array instanceof byte[]) {
+			byte[] values = (byte[]) array;
+			writeTypedArray (CBORWriter.TAG_SINT8, values.length, 1);
+			putBytes (values, 0, values.length);
+		} else if (array instanceof boolean[]) {
+			boolean[] values = (boolean[]) array;
+			writeHead (CBORWriter.MAJOR_ARRAY, values.length);
+			for (boolean value : values)
+				put (value ? CBORWriter.TRUE : CBORWriter.FALSE);
+		} else if (array instanceof char[]) {
+			char[] values = (char[]) array;
+			writeHead (CBORWriter.MAJOR_ARRAY, values.length);
+			for (char value : values)
+				writeText (String.valueOf (value));
+		} else {
+			throw new JSONMappingException ("Not a array of primitives: " + array.getClass ().getName ());
+		}
+	}
+
+	private void writeTypedArray (int tag, int length, int elementSize) throws IOException {
+		writeHead (CBORWriter.MAJOR_TAG, tag);
+		writeHead (CBORWriter.MAJOR_BYTES, (long) length * elementSize);
+	}
+
+	private void writeNumber (Number number) throws JSONMappingException, IOException {
+		if (number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte) {
+			writeInteger (number.longValue ());
+		} else if (number instanceof Double) {
+			put (CBORWriter.DOUBLE);
+			putLong (Double.doubleToRawLongBits (CBORWriter.checkFinite (number.doubleValue ())));
+		} else if (number instanceof Float) {
+			put (CBORWriter.FLOAT);
+			putInt (Float.floatToRawIntBits ((float) CBORWriter.checkFinite (number.floatValue ())));
+		} else if (number instanceof BigInteger) {
+			writeBigInteger ((BigInteger) number);
+		} else if (number instanceof BigDecimal) {
+			BigDecimal decimal = (BigDecimal) number;
+			writeHead (CBORWriter.MAJOR_TAG, CBORWriter.TAG_DECIMAL_FRACTION);
+			writeHead (CBORWriter.MAJOR_ARRAY, 2);
+			writeInteger (-decimal.scale ());
+			writeBigInteger (decimal.unscaledValue ());
+		} else {
+			put (CBORWriter.DOUBLE);
+			putLong (Double.doubleToRawLongBits (CBORWriter.checkFinite (number.doubleValue ())));
+		}
+	}
+
+	private void writeInteger (long value) throws IOException {
+		if (value >= 0)
+			writeHead (CBORWriter.MAJOR_UNSIGNED, value);
+		else
+			writeHead (CBORWriter.MAJOR_NEGATIVE, -1 - value);
+	}
+
+	private void writeBigInteger (BigInteger value) throws IOException {
+		if (value.compareTo (CBORWriter.MIN_LONG) >= 0 && value.compareTo (CBORWriter.MAX_LONG) <= 0) {
+			writeInteger (value.longValue ());
+			return;
+		}
+		boolean negative = value.signum () < 0;
+		byte[] magnitude = (negative ? value.negate ().subtract (BigInteger.ONE) : value).toByteArray ();
+		int start = magnitude[0] == 0 ? 1 : 0; // the sign byte.
+		writeHead (CBORWriter.MAJOR_TAG, negative ? CBORWriter.TAG_NEGATIVE_BIGNUM : CBORWriter.TAG_POSITIVE_BIGNUM);
+		writeHead (CBORWriter.MAJOR_BYTES, magnitude.length - start);
+		putBytes (magnitude, start, magnitude.length - start);
+	}
+
+	private static double checkFinite (double value) throws JSONMappingException {
+		if (Double.isNaN (value) || Double.isInfinite (value))
+			throw new JSONMappingException (EntityWriter.NON_FINITE);
+		return value;
+	}
+
+	private void writeText (String text) throws IOException {
+		byte[] utf8 = text.getBytes (StandardCharsets.UTF_8);
+		writeHead (CBORWriter.MAJOR_TEXT, utf8.length);
+		putBytes (utf8, 0, utf8.length);
+	}
+
+	/** Write the first byte of a item and its argument, in as few bytes as possible. */
+	private void writeHead (int major, long argument) throws IOException {
+		int type = major << 5;
+		if (argument < 24) {
+			put (type | (int) argument);
+		} else if (argument < 0x100) {
+			put (type | 24);
+			put ((int) argument);
+		} else if (argument < 0x10000) {
+			put (type | 25);
+			put ((int) (argument >> 8));
+			put ((int) argument);
+		} else if (argument < 0x100000000L) {
+			put (type | 26);
+			putInt ((int) argument);
+		} else {
+			put (type | 27);
+			putLong (argument);
+		}
+	}
+
+	private void putInt (int value) throws IOException {
+		put (value >> 24);
+		put (value >> 16);
+		put (value >> 8);
+		put (value);
+	}
+
+	private void putLong (long value) throws IOException {
+		putInt ((int) (value >> 32));
+		putInt ((int) value);
+	}
+
+	private void put (int b) throws IOException {
+		if (this.target != null) {
+			this.target.put ((byte) b);
+			return;
+		}
+		if (this.count == this.buffer.length)
+			flushBuffer ();
+		this.buffer[this.count++] = (byte) b;
+	}
+
+	private void putBytes (byte[] bytes, int offset, int length) throws IOException {
+		if (this.target != null) {
+			this.target.put (bytes, offset, length);
+			return;
+		}
+		if (length > this.buffer.length - this.count) {
+			flushBuffer ();
+			if (length > this.buffer.length) {
+				this.stream.write (bytes, offset, length);
+				return;
+			}
+		}
+		System.arraycopy (bytes, offset, this.buffer, this.count, length);
+		this.count += length;
+	}
+
+	private void flushBuffer () throws IOException {
+		if (this.count > 0) {
+			this.stream.write (this.buffer, 0, this.count);
+			this.count = 0;
+		}
+	}
+
+	/** Write the buffered bytes to the stream and flush it. */
+	public void flush () throws IOException {
+		if (this.stream == null)
+			return;
+		flushBuffer ();
+		this.stream.flush ();
+	}
+
+	/** Flush and close the stream. */
+	public void close () throws IOException {
+		if (this.stream == null)
+			return;
+		flush ();
+		this.stream.close ();
+	}
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+/** Gets told about the entities decoded and encoded, to measure where the
+ * time goes. A listener is installed with
+ * {@link Instrumentation#setListener(CodecListener)}; without one the
+ * decoding and encoding only pay for checking that there's none.
+ *
+ * The methods are called in the threads doing the work, while doing it,
+ * so they should be quick and safe to call from many threads at once.
+ * {@link CodecMetrics} is a listener that aggregates everything in memory.
+ * @author mtavares */
+public interface CodecListener {
+	/** The slower paths taken when the fast ones can't be. */
+	public static enum Fallback {
+		/** A field of a type without a reader nor a {@link TypeAdapter}, converted from the plain JSON value. */
+		UNTYPED_FIELD,
+		/** A entity with its own <tt>toJson ()</tt>, or a registered codec,
+		 * written as text through its JSON object. */
+		TREE_ENCODING,
+		/** A entity written while the space the thread reuses was in use, into a text of its own. */
+		ALLOCATING_ENCODE
+	}
+
+	/** A entity was decoded from a JSON object. The time of a entity includes
+	 * the time of the entities nested in it, that are reported too. */
+	void decoded (Class<?> entityClass, long nanos);
+
+	/** A entity was encoded, into a JSON object or as JSON text. The time of
+	 * a entity includes the time of the entities nested in it, that are reported too. */
+	void encoded (Class<?> entityClass, long nanos);
+
+	/** A entity was read from a document of this many bytes of UTF-8. */
+	void read (Class<?> entityClass, long bytes);
+
+	/** A entity was written into a document of this many bytes of UTF-8,
+	 * counted as such also when written as text. */
+	void written (Class<?> entityClass, long bytes);
+
+	/** A entity took one of the slower paths. */
+	void fallback (Class<?> entityClass, Fallback fallback);
+
+	/** A entity couldn't be decoded or encoded. The error is reported for
+	 * the entity where it happened and for each one it's nested in. */
+	void failed (Class<?> entityClass, JSONMappingException error);
+}
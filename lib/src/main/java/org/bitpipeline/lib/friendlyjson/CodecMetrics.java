@@ -0,0 +1,270 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** A listener that keeps, in memory, the metrics of each entity class:
+ * how many were decoded and encoded and how long it took, how many bytes
+ * were read and written and the largest documents, the slower paths taken
+ * and the errors. Safe to use from many threads at once.
+ * <pre>
+ * CodecMetrics metrics = new CodecMetrics ();
+ * Instrumentation.setListener (metrics);
+ * ...
+ * metrics.get (Order.class).getDecodeLatency ().getPercentile (0.99);
+ * </pre>
+ * @author mtavares */
+public final class CodecMetrics implements CodecListener {
+	private final ConcurrentHashMap<Class<?>, ClassMetrics> byClass = new ConcurrentHashMap<Class<?>, ClassMetrics> ();
+
+	/** The times of a operation, counted in buckets whose bounds are powers of two of nanoseconds. */
+	public static final class Histogram {
+		private static final int BUCKETS = 64;
+
+		private final AtomicLongArray buckets = new AtomicLongArray (Histogram.BUCKETS);
+		private final AtomicLong count = new AtomicLong ();
+		private final AtomicLong totalNanos = new AtomicLong ();
+		private final AtomicLong maxNanos = new AtomicLong ();
+
+		Histogram () {
+		}
+
+		void record (long nanos) {
+			if (nanos < 0)
+				nanos = 0;
+			this.buckets.incrementAndGet (Histogram.bucketOf (nanos));
+			this.count.incrementAndGet ();
+			this.totalNanos.addAndGet (nanos);
+			CodecMetrics.updateMax (this.maxNanos, nanos);
+		}
+
+		/** @return the bucket of the times up to <tt>2^bucket - 1</tt> nanoseconds. */
+		private static int bucketOf (long nanos) {
+			return Histogram.BUCKETS - Long.numberOfLeadingZeros (nanos);
+		}
+
+		public long getCount () {
+			return this.count.get ();
+		}
+
+		public long getTotalNanos () {
+			return this.totalNanos.get ();
+		}
+
+		public long getMaxNanos () {
+			return this.maxNanos.get ();
+		}
+
+		/** @return the average time, 0 if nothing was recorded. */
+		public long getMeanNanos () {
+			long count = this.count.get ();
+			return count == 0 ? 0 : this.totalNanos.get () / count;
+		}
+
+		/** Get a time at least as long as the given fraction of the times recorded.
+		 * It's the upper bound of the bucket of the percentile, so it's up to twice the actual time.
+		 * @param fraction is between 0 and 1, like 0.99 for the 99th percentile.
+		 * @return 0 if nothing was recorded. */
+		public long getPercentile (double fraction) {
+			if (fraction < 0 || fraction > 1)
+				throw new IllegalArgumentException ("The fraction must be between 0 and 1.");
+			long count = this.count.get ();
+			if (count == 0)
+				return 0;
+			long rank = Math.max ((long) Math.ceil (fraction * count), 1);
+			long seen = 0;
+			for (int i=0; i<Histogram.BUCKETS; i++) {
+				seen += this.buckets.get (i);
+				if (seen >= rank)
+					return Math.min ((1L << i) - 1, this.maxNanos.get ());
+			}
+			return this.maxNanos.get ();
+		}
+
+		/** @return how many times were recorded in each bucket. Bucket <tt>i</tt>
+		 *         has the times under <tt>2^i</tt> nanoseconds, and at least
+		 *         <tt>2^(i-1)</tt>. */
+		public long[] getBuckets () {
+			long[] buckets = new long[Histogram.BUCKETS];
+			for (int i=0; i<Histogram.BUCKETS; i++)
+				buckets[i] = this.buckets.get (i);
+			return buckets;
+		}
+
+		@Override
+		public String toString () {
+			return "count=" + getCount () + ", mean=" + getMeanNanos () + "ns, p99=" + getPercentile (0.99) + "ns, max=" + getMaxNanos () + "ns";
+		}
+	}
+
+	/** The metrics of a entity class. */
+	public static final class ClassMetrics {
+		private final Class<?> entityClass;
+		private final Histogram decodeLatency = new Histogram ();
+		private final Histogram encodeLatency = new Histogram ();
+		private final AtomicLong documentsRead = new AtomicLong ();
+		private final AtomicLong bytesRead = new AtomicLong ();
+		private final AtomicLong largestRead = new AtomicLong ();
+		private final AtomicLong documentsWritten = new AtomicLong ();
+		private final AtomicLong bytesWritten = new AtomicLong ();
+		private final AtomicLong largestWritten = new AtomicLong ();
+		private final AtomicLongArray fallbacks = new AtomicLongArray (Fallback.values ().length);
+		private final AtomicLong errors = new AtomicLong ();
+
+		ClassMetrics (Class<?> entityClass) {
+			this.entityClass = entityClass;
+		}
+
+		public Class<?> getEntityClass () {
+			return this.entityClass;
+		}
+
+		public Histogram getDecodeLatency () {
+			return this.decodeLatency;
+		}
+
+		public Histogram getEncodeLatency () {
+			return this.encodeLatency;
+		}
+
+		/** @return how many documents with these entities were read with a known size. */
+		public long getDocumentsRead () {
+			return this.documentsRead.get ();
+		}
+
+		public long getBytesRead () {
+			return this.bytesRead.get ();
+		}
+
+		/** @return the size, in bytes, of the largest document read. */
+		public long getLargestRead () {
+			return this.largestRead.get ();
+		}
+
+		/** @return how many documents with these entities were written with a known size. */
+		public long getDocumentsWritten () {
+			return this.documentsWritten.get ();
+		}
+
+		public long getBytesWritten () {
+			return this.bytesWritten.get ();
+		}
+
+		/** @return the size, in bytes, of the largest document written. */
+		public long getLargestWritten () {
+			return this.largestWritten.get ();
+		}
+
+		/** @return how many times the entities took the slower path. */
+		public long getFallbacks (Fallback fallback) {
+			return this.fallbacks.get (fallback.ordinal ());
+		}
+
+		/** @return how many times the entities couldn't be decoded or encoded. */
+		public long getErrors () {
+			return this.errors.get ();
+		}
+
+		@Override
+		public String toString () {
+			StringBuilder text = new StringBuilder (this.entityClass.getName ());
+			text.append (": decode [").append (this.decodeLatency).append ("], encode [").append (this.encodeLatency).append (']');
+			text.append (", read ").append (getBytesRead ()).append (" bytes (largest ").append (getLargestRead ()).append (')');
+			text.append (", written ").append (getBytesWritten ()).append (" bytes (largest ").append (getLargestWritten ()).append (')');
+			for (Fallback fallback : Fallback.values ()) {
+				if (getFallbacks (fallback) > 0)
+					text.append (", ").append (fallback).append ('=').append (getFallbacks (fallback));
+			}
+			return text.append (", errors=").append (getErrors ()).toString ();
+		}
+	}
+
+	/** @return the metrics of a entity class, <tt>null</tt> if nothing was recorded for it. */
+	public ClassMetrics get (Class<?> entityClass) {
+		return this.byClass.get (entityClass);
+	}
+
+	/** @return the metrics of each entity class something was recorded for. */
+	public Map<Class<?>, ClassMetrics> getAll () {
+		return Collections.unmodifiableMap (this.byClass);
+	}
+
+	/** Forget everything recorded. */
+	public void reset () {
+		this.byClass.clear ();
+	}
+
+	private ClassMetrics of (Class<?> entityClass) {
+		ClassMetrics metrics = this.byClass.get (entityClass);
+		if (metrics == null) {
+			ClassMetrics created = new ClassMetrics (entityClass);
+			metrics = this.byClass.putIfAbsent (entityClass, created);
+			if (metrics == null)
+				metrics = created;
+		}
+		return metrics;
+	}
+
+	public void decoded (Class<?> entityClass, long nanos) {
+		of (entityClass).decodeLatency.record (nanos);
+	}
+
+	public void encoded (Class<?> entityClass, long nanos) {
+		of (entityClass).encodeLatency.record (nanos);
+	}
+
+	public void read (Class<?> entityClass, long bytes) {
+		ClassMetrics metrics = of (entityClass);
+		metrics.documentsRead.incrementAndGet ();
+		metrics.bytesRead.addAndGet (bytes);
+		CodecMetrics.updateMax (metrics.largestRead, bytes);
+	}
+
+	public void written (Class<?> entityClass, long bytes) {
+		ClassMetrics metrics = of (entityClass);
+		metrics.documentsWritten.incrementAndGet ();
+		metrics.bytesWritten.addAndGet (bytes);
+		CodecMetrics.updateMax (metrics.largestWritten, bytes);
+	}
+
+	public void fallback (Class<?> entityClass, Fallback fallback) {
+		of (entityClass).fallbacks.incrementAndGet (fallback.ordinal ());
+	}
+
+	public void failed (Class<?> entityClass, JSONMappingException error) {
+		of (entityClass).errors.incrementAndGet ();
+	}
+
+	private static void updateMax (AtomicLong max, long value) {
+		long current = max.get ();
+		while (value > current && !max.compareAndSet (current, value))
+			current = max.get ();
+	}
+
+	@Override
+	public String toString () {
+		StringBuilder text = new StringBuilder ("CodecMetrics");
+		for (ClassMetrics metrics : this.byClass.values ())
+			text.append ("\n  ").append (metrics);
+		return text.toString ();
+	}
+}
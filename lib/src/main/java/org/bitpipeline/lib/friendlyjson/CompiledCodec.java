@@ -0,0 +1,156 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/** A codec specialized for one entity class.
+ * The decoding and the encoding of all the fields of the class are composed
+ * into a single method handle each, one field after the other. Fields of
+ * primitive and String types are read, converted and written by handles
+ * bound to that field; the other fields are delegated to the same code the
+ * reflective codec uses, so both always produce the same results.
+ *
+ * Since the composed handles are invoked many times the JVM compiles them
+ * into a straight sequence of field reads and writes for the class.
+ * @author mtavares */
+final class CompiledCodec implements EntityCodec<JSONEntity> {
+	private static final MethodType STEP_TYPE = MethodType.methodType (void.class, Object.class, JSONObject.class);
+
+	private static final MethodHandle NOTHING;
+	private static final MethodHandle IGNORE_JSON_EXCEPTION;
+	private static final MethodHandle DECODE_FIELD;
+	private static final MethodHandle TO_JSON;
+	private static final MethodHandle PUT;
+	/** Handles to read each simple type from a JSON object, of type (JSONObject,String)T. */
+	private static final Map<Class<?>, MethodHandle> JSON_GETTERS = new HashMap<Class<?>, MethodHandle> ();
+
+	static {
+		MethodHandles.Lookup lookup = MethodHandles.lookup ();
+		try {
+			NOTHING = lookup.findStatic (CompiledCodec.class, "nothing", CompiledCodec.STEP_TYPE);
+			IGNORE_JSON_EXCEPTION = lookup.findStatic (CompiledCodec.class, "ignore",
+					MethodType.methodType (void.class, JSONException.class, Object.class, JSONObject.class));
+			DECODE_FIELD = lookup.findVirtual (JSONEntity.class, "decodeField",
+					MethodType.methodType (void.class, FieldDescriptor.class, JSONObject.class));
+			TO_JSON = lookup.findStatic (JSONEntity.class, "toJson",
+					MethodType.methodType (Object.class, Object.class));
+			PUT = lookup.findVirtual (JSONObject.class, "put",
+					MethodType.methodType (JSONObject.class, String.class, Object.class));
+
+			MethodHandle getBoolean = lookup.findVirtual (JSONObject.class, "getBoolean", MethodType.methodType (boolean.class, String.class));
+			MethodHandle getInt = lookup.findVirtual (JSONObject.class, "getInt", MethodType.methodType (int.class, String.class));
+			MethodHandle getLong = lookup.findVirtual (JSONObject.class, "getLong", MethodType.methodType (long.class, String.class));
+			MethodHandle getDouble = lookup.findVirtual (JSONObject.class, "getDouble", MethodType.methodType (double.class, String.class));
+			MethodHandle getString = lookup.findVirtual (JSONObject.class, "getString", MethodType.methodType (String.class, String.class));
+
+			JSON_GETTERS.put (boolean.class, getBoolean);
+			JSON_GETTERS.put (byte.class, MethodHandles.explicitCastArguments (getInt, MethodType.methodType (byte.class, JSONObject.class, String.class)));
+			JSON_GETTERS.put (short.class, MethodHandles.explicitCastArguments (getInt, MethodType.methodType (short.class, JSONObject.class, String.class)));
+			JSON_GETTERS.put (int.class, getInt);
+			JSON_GETTERS.put (long.class, getLong);
+			JSON_GETTERS.put (float.class, MethodHandles.explicitCastArguments (getDouble, MethodType.methodType (float.class, JSONObject.class, String.class)));
+			JSON_GETTERS.put (double.class, getDouble);
+			JSON_GETTERS.put (String.class, getString.asType (MethodType.methodType (Object.class, JSONObject.class, String.class)));
+		} catch (Exception e) {
+			throw new ExceptionInInitializerError (e);
+		}
+	}
+
+	/** (Object,JSONObject)void */
+	private final MethodHandle decoder;
+	/** (Object,JSONObject)void */
+	private final MethodHandle encoder;
+
+	CompiledCodec (EntityDescriptor descriptor) {
+		FieldDescriptor[] fields = descriptor.getFields ();
+		MethodHandle decode = CompiledCodec.NOTHING;
+		MethodHandle encode = CompiledCodec.NOTHING;
+		for (int i=fields.length - 1; i>=0; i--) {
+			decode = MethodHandles.foldArguments (decode, CompiledCodec.decoderFor (fields[i]));
+			encode = MethodHandles.foldArguments (encode, CompiledCodec.encoderFor (fields[i]));
+		}
+		this.decoder = decode;
+		this.encoder = encode;
+	}
+
+	@SuppressWarnings ("unused")
+	private static void nothing (Object entity, JSONObject json) {
+	}
+
+	@SuppressWarnings ("unused")
+	private static void ignore (JSONException e, Object entity, JSONObject json) {
+		// no data for this field.
+	}
+
+	/** @return a handle of type (Object,JSONObject)void that sets the field of the entity. */
+	private static MethodHandle decoderFor (FieldDescriptor field) {
+		MethodHandle setter = field.getAccessor ().getSetterHandle ();
+		MethodHandle getter = CompiledCodec.JSON_GETTERS.get (field.getType ());
+		if (setter == null || getter == null || field.getReader () == null || field.isLowCardinality ()) {
+			return MethodHandles.insertArguments (CompiledCodec.DECODE_FIELD, 1, field)
+					.asType (CompiledCodec.STEP_TYPE);
+		}
+		MethodHandle read = MethodHandles.insertArguments (getter, 1, field.getJsonName ());
+		MethodHandle step = MethodHandles.filterArguments (setter, 1, read);
+		return MethodHandles.catchException (step, JSONException.class, CompiledCodec.IGNORE_JSON_EXCEPTION);
+	}
+
+	/** @return a handle of type (Object,JSONObject)void that puts the field of the entity into the JSON object. */
+	private static MethodHandle encoderFor (FieldDescriptor field) {
+		MethodHandle value = MethodHandles.filterReturnValue (field.getAccessor ().getBoxingGetterHandle (), CompiledCodec.TO_JSON);
+		MethodHandle put = MethodHandles.insertArguments (CompiledCodec.PUT, 1, field.getJsonName ())
+				.asType (MethodType.methodType (void.class, JSONObject.class, Object.class));
+		MethodHandle step = MethodHandles.filterArguments (put, 1, value);
+		return MethodHandles.permuteArguments (step, CompiledCodec.STEP_TYPE, 1, 0);
+	}
+
+	public void decode (JSONEntity entity, JSONObject json) throws JSONMappingException {
+		if (DecodeOptions.current ().isPresenceTracking ()) { // the handles read the members without looking them up first.
+			entity.decodeFields (json);
+			return;
+		}
+		try {
+			this.decoder.invokeExact ((Object) entity, json);
+		} catch (JSONMappingException e) {
+			throw e;
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new JSONMappingException (t);
+		}
+	}
+
+	public void encode (JSONEntity entity, JSONObject json) throws JSONMappingException {
+		try {
+			this.encoder.invokeExact ((Object) entity, json);
+		} catch (JSONMappingException e) {
+			throw e;
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new JSONMappingException (t);
+		}
+	}
+}
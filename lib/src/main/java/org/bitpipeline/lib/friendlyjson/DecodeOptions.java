@@ -0,0 +1,211 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.util.concurrent.ForkJoinPool;
+
+/** Options for decoding JSON entities.
+ * The options are immutable, each <tt>with</tt> method returns a copy with
+ * the option changed. They apply to everything decoded by
+ * {@link JSONEntity#decode(Class, org.json.JSONObject, DecodeOptions)},
+ * including the nested entities. Everything else is decoded with the
+ * default options, see {@link #setDefault(DecodeOptions)}.
+ * @author mtavares */
+public final class DecodeOptions {
+	private static final DecodeOptions DEFAULTS = new DecodeOptions (0, null, false, false, false, false, null);
+
+	private static volatile DecodeOptions global = DecodeOptions.DEFAULTS;
+	/** The options of the decoding going on in each thread. */
+	private static final ThreadLocal<DecodeOptions> CURRENT = new ThreadLocal<DecodeOptions> ();
+
+	/** Lists and arrays with at least this many elements are decoded in parallel, 0 to never decode them in parallel. */
+	private final int parallelThreshold;
+	/** The pool for the parallel decoding, <tt>null</tt> for a pool shared by the library. */
+	private final ForkJoinPool pool;
+	/** If the list and map fields are views of the JSON, converting the elements when they are used. */
+	private final boolean lazyCollections;
+	/** If the members are looked up before reading them, recording which ones are present. */
+	private final boolean presenceTracking;
+	/** If the entities are created with the no-arg constructor and have their fields set afterwards. */
+	private final boolean fieldInjection;
+	/** If the IntList, LongList and DoubleList fields keep their values off the heap. */
+	private final boolean offHeapNumberLists;
+	/** The cache for the map keys and the low cardinality String fields, <tt>null</tt> for none. */
+	private final StringCache stringCache;
+
+	private DecodeOptions (int parallelThreshold, ForkJoinPool pool, boolean lazyCollections, boolean presenceTracking, boolean fieldInjection, boolean offHeapNumberLists, StringCache stringCache) {
+		this.parallelThreshold = parallelThreshold;
+		this.pool = pool;
+		this.lazyCollections = lazyCollections;
+		this.presenceTracking = presenceTracking;
+		this.fieldInjection = fieldInjection;
+		this.offHeapNumberLists = offHeapNumberLists;
+		this.stringCache = stringCache;
+	}
+
+	/** @return the options with every option turned off. */
+	public static DecodeOptions defaults () {
+		return DecodeOptions.DEFAULTS;
+	}
+
+	/** @return the options used when no others are given. */
+	public static DecodeOptions getDefault () {
+		return DecodeOptions.global;
+	}
+
+	/** Set the options used when no others are given. */
+	public static void setDefault (DecodeOptions options) {
+		if (options == null)
+			throw new IllegalArgumentException ("The options are required.");
+		DecodeOptions.global = options;
+	}
+
+	/** Decode lists and arrays of entities in parallel, in a pool shared by the library.
+	 * @param threshold is the minimum number of elements for a list or array to be decoded in parallel. */
+	public DecodeOptions withParallelDecoding (int threshold) {
+		return withParallelDecoding (threshold, null);
+	}
+
+	/** Decode lists and arrays of entities in parallel.
+	 * The elements keep their order and the result is the same as decoding them one by one.
+	 * @param threshold is the minimum number of elements for a list or array to be decoded in parallel.
+	 * @param pool does the decoding, <tt>null</tt> for a pool shared by the library. */
+	public DecodeOptions withParallelDecoding (int threshold, ForkJoinPool pool) {
+		if (threshold < 1)
+			throw new IllegalArgumentException ("The threshold must be at least 1.");
+		return new DecodeOptions (threshold, pool, this.lazyCollections, this.presenceTracking, this.fieldInjection, this.offHeapNumberLists, this.stringCache);
+	}
+
+	/** Decode lists and arrays one element after the other. */
+	public DecodeOptions withoutParallelDecoding () {
+		return new DecodeOptions (0, null, this.lazyCollections, this.presenceTracking, this.fieldInjection, this.offHeapNumberLists, this.stringCache);
+	}
+
+	/** Decode the list and map fields as views of the JSON arrays and objects.
+	 * The elements are converted the first time they are used, with the
+	 * same rules as when decoding them right away, and the conversion
+	 * errors are thrown then as a {@link UncheckedMappingException}. The
+	 * views can be fully converted with {@link LazyCollection#materialize()}
+	 * or, for all the collections of a entity, with {@link JSONEntity#materialize()}.
+	 * This applies when decoding from JSON objects, not when reading JSON text. */
+	public DecodeOptions withLazyCollections (boolean lazy) {
+		return new DecodeOptions (this.parallelThreshold, this.pool, lazy, this.presenceTracking, this.fieldInjection, this.offHeapNumberLists, this.stringCache);
+	}
+
+	/** Look up each member before reading it, instead of reading it and
+	 * catching the exception thrown when it's missing. Members that are
+	 * missing or null leave the field untouched, without any exception being
+	 * created, and the entity records which members it had, see
+	 * {@link JSONEntity#isPresent(String)}. Note that without this option a
+	 * String field gets the text <tt>"null"</tt> from a null member.
+	 * This applies to the entities without a registered or generated codec. */
+	public DecodeOptions withPresenceTracking (boolean tracking) {
+		return new DecodeOptions (this.parallelThreshold, this.pool, this.lazyCollections, tracking, this.fieldInjection, this.offHeapNumberLists, this.stringCache);
+	}
+
+	/** Create the entities with their no-arg constructor, of any visibility,
+	 * and then set their fields the same way the <tt>JSONObject</tt>
+	 * constructor does, instead of calling that constructor. Only for entity
+	 * classes whose <tt>JSONObject</tt> constructor does nothing more than
+	 * calling <tt>super (json)</tt>. The classes without a no-arg
+	 * constructor, or with their own <tt>toJson ()</tt>, are still created
+	 * with the <tt>JSONObject</tt> constructor. */
+	public DecodeOptions withFieldInjection (boolean injection) {
+		return new DecodeOptions (this.parallelThreshold, this.pool, this.lazyCollections, this.presenceTracking, injection, this.offHeapNumberLists, this.stringCache);
+	}
+
+	/** Decode the {@link IntList}, {@link LongList} and {@link DoubleList}
+	 * fields into lists that keep their values off the heap, in direct buffers. */
+	public DecodeOptions withOffHeapNumberLists (boolean offHeap) {
+		return new DecodeOptions (this.parallelThreshold, this.pool, this.lazyCollections, this.presenceTracking, this.fieldInjection, offHeap, this.stringCache);
+	}
+
+	/** Canonicalize the keys of the maps, and the values of the String
+	 * fields marked with {@link LowCardinality}, with the given cache. The
+	 * cache can be shared by many decodings, in many threads.
+	 * This applies to the entities without a registered codec.
+	 * @param cache is the cache to use, <tt>null</tt> to stop using one. */
+	public DecodeOptions withStringCache (StringCache cache) {
+		return new DecodeOptions (this.parallelThreshold, this.pool, this.lazyCollections, this.presenceTracking, this.fieldInjection, this.offHeapNumberLists, cache);
+	}
+
+	/** @return the minimum number of elements of the lists and arrays decoded in parallel, 0 if parallel decoding is off. */
+	public int getParallelThreshold () {
+		return this.parallelThreshold;
+	}
+
+	/** @return the pool for the parallel decoding, <tt>null</tt> if it's the pool shared by the library. */
+	public ForkJoinPool getPool () {
+		return this.pool;
+	}
+
+	/** @return <tt>true</tt> if the list and map fields are decoded as views of the JSON. */
+	public boolean isLazyCollections () {
+		return this.lazyCollections;
+	}
+
+	/** @return <tt>true</tt> if the members are looked up before being read and their presence recorded. */
+	public boolean isPresenceTracking () {
+		return this.presenceTracking;
+	}
+
+	/** @return <tt>true</tt> if the entities are created with the no-arg constructor and then have their fields set. */
+	public boolean isFieldInjection () {
+		return this.fieldInjection;
+	}
+
+	/** @return <tt>true</tt> if the lists of numbers are decoded off the heap. */
+	public boolean isOffHeapNumberLists () {
+		return this.offHeapNumberLists;
+	}
+
+	/** @return the cache for the map keys and the low cardinality String fields, <tt>null</tt> if there's none. */
+	public StringCache getStringCache () {
+		return this.stringCache;
+	}
+
+	/** @return the String from the cache, if there's one, or the given String. */
+	String canonicalize (String string) {
+		return this.stringCache != null ? this.stringCache.canonicalize (string) : string;
+	}
+
+	/** @return <tt>true</tt> if a list or array with this many elements is to be decoded in parallel. */
+	boolean isParallel (int size) {
+		return this.parallelThreshold > 0 && size >= this.parallelThreshold;
+	}
+
+	/** @return the options of the decoding going on in this thread. */
+	static DecodeOptions current () {
+		DecodeOptions options = DecodeOptions.CURRENT.get ();
+		return options != null ? options : DecodeOptions.global;
+	}
+
+	/** Make these the options of the decoding in this thread.
+	 * @return the previous options of the thread, to give to {@link #restore(DecodeOptions)}. */
+	DecodeOptions enter () {
+		DecodeOptions previous = DecodeOptions.CURRENT.get ();
+		DecodeOptions.CURRENT.set (this);
+		return previous;
+	}
+
+	static void restore (DecodeOptions previous) {
+		if (previous == null)
+			DecodeOptions.CURRENT.remove ();
+		else
+			DecodeOptions.CURRENT.set (previous);
+	}
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+
+import org.json.JSONArray;
+
+/** A list of <tt>double</tt> values, stored without boxing them.
+ * @see NumberList
+ * @author mtavares */
+public final class DoubleList extends NumberList<Double> {
+	private DoubleBuffer values;
+
+	public DoubleList () {
+		this (NumberList.DEFAULT_CAPACITY, false);
+	}
+
+	public DoubleList (int capacity) {
+		this (capacity, false);
+	}
+
+	/**
+	 * @param offHeap if the values are to be kept in a direct buffer, off the heap. */
+	public DoubleList (int capacity, boolean offHeap) {
+		super (offHeap);
+		if (capacity < 0)
+			throw new IllegalArgumentException ("Illegal capacity: " + capacity);
+		this.values = DoubleList.allocate (capacity, offHeap);
+	}
+
+	/** Create a list, on the heap, with a copy of the values. */
+	public DoubleList (double[] values) {
+		this (values.length, false);
+		this.values.put (values);
+		this.size = values.length;
+	}
+
+	private static DoubleBuffer allocate (int capacity, boolean offHeap) {
+		if (offHeap)
+			return ByteBuffer.allocateDirect (capacity * 8).order (ByteOrder.nativeOrder ()).asDoubleBuffer ();
+		return DoubleBuffer.allocate (capacity);
+	}
+
+	private void ensureCapacity (int minimum) {
+		if (minimum <= this.values.capacity ())
+			return;
+		DoubleBuffer grown = DoubleList.allocate (NumberList.grow (this.values.capacity (), minimum), isOffHeap ());
+		this.values.clear ();
+		this.values.limit (this.size);
+		grown.put (this.values);
+		this.values = grown;
+	}
+
+	public double getDouble (int index) {
+		checkIndex (index);
+		return this.values.get (index);
+	}
+
+	/** @return the value that was at the position. */
+	public double setDouble (int index, double value) {
+		checkIndex (index);
+		double old = this.values.get (index);
+		this.values.put (index, value);
+		return old;
+	}
+
+	public void addDouble (double value) {
+		ensureCapacity (this.size + 1);
+		this.values.put (this.size++, value);
+		this.modCount++;
+	}
+
+	public void addDouble (int index, double value) {
+		checkPosition (index);
+		ensureCapacity (this.size + 1);
+		for (int i=this.size; i>index; i--)
+			this.values.put (i, this.values.get (i - 1));
+		this.values.put (index, value);
+		this.size++;
+		this.modCount++;
+	}
+
+	/** @return the value that was removed. */
+	public double removeDouble (int index) {
+		checkIndex (index);
+		double old = this.values.get (index);
+		for (int i=index + 1; i<this.size; i++)
+			this.values.put (i - 1, this.values.get (i));
+		this.size--;
+		this.modCount++;
+		return old;
+	}
+
+	/** @return a new array with the values. */
+	public double[] toDoubleArray () {
+		double[] array = new double[this.size];
+		for (int i=0; i<this.size; i++)
+			array[i] = this.values.get (i);
+		return array;
+	}
+
+	@Override
+	public Double get (int index) {
+		return Double.valueOf (getDouble (index));
+	}
+
+	@Override
+	public Double set (int index, Double value) {
+		return Double.valueOf (setDouble (index, value.doubleValue ()));
+	}
+
+	@Override
+	public void add (int index, Double value) {
+		addDouble (index, value.doubleValue ());
+	}
+
+	@Override
+	public Double remove (int index) {
+		return Double.valueOf (removeDouble (index));
+	}
+
+	@Override
+	boolean addJson (Object value) {
+		Number number = PrimitiveArrays.toNumber (value);
+		if (number == null)
+			return false;
+		addDouble (number.doubleValue ());
+		return true;
+	}
+
+	@Override
+	JSONArray toJSONArray () throws JSONMappingException {
+		JSONArray json = new JSONArray ();
+		for (int i=0; i<this.size; i++) {
+			double value = this.values.get (i);
+			if (Double.isNaN (value) || Double.isInfinite (value))
+				throw new JSONMappingException (EntityWriter.NON_FINITE);
+			json.put (Double.valueOf (value));
+		}
+		return json;
+	}
+
+	@Override
+	void write (Appendable out) throws JSONMappingException, IOException {
+		out.append ('[');
+		for (int i=0; i<this.size; i++) {
+			double value = this.values.get (i);
+			if (Double.isNaN (value) || Double.isInfinite (value))
+				throw new JSONMappingException (EntityWriter.NON_FINITE);
+			PrimitiveArrays.appendDecimal (out, i, Double.toString (value));
+		}
+		out.append (']');
+	}
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/** The space each thread reuses to encode entities: the text being written
+ * and the arrays holding the field values of the entities being written.
+ * Once it has grown to the size of the entities, encoding into it doesn't
+ * allocate anything.
+ * @author mtavares */
+final class EncodeScratch {
+	/** The text is dropped, after use, if it has grown past this many chars. */
+	private static final int MAX_RETAINED_TEXT = 1 << 20;
+
+	private static final ThreadLocal<EncodeScratch> SCRATCH = new ThreadLocal<EncodeScratch> () {
+		@Override
+		protected EncodeScratch initialValue () {
+			return new EncodeScratch ();
+		}
+	};
+
+	private StringBuilder text = new StringBuilder (256);
+	private EntityWriter writer = new EntityWriter (this.text);
+	/** If the text is being written, by a encoding further up the stack. */
+	private boolean busy;
+	/** The arrays for the field values, one for each entity being written. */
+	private Object[][] frames = new Object[8][];
+	private int depth;
+
+	private EncodeScratch () {
+	}
+
+	/** @return the scratch space of this thread. */
+	static EncodeScratch get () {
+		return EncodeScratch.SCRATCH.get ();
+	}
+
+	/** Take a array for the field values of a entity, to give back with {@link #releaseFrame(int)}. */
+	Object[] acquireFrame (int size) {
+		if (this.depth == this.frames.length)
+			this.frames = Arrays.copyOf (this.frames, this.depth * 2);
+		Object[] frame = this.frames[this.depth];
+		if (frame == null || frame.length < size) {
+			frame = new Object[Math.max (size, 8)];
+			this.frames[this.depth] = frame;
+		}
+		this.depth++;
+		return frame;
+	}
+
+	/** Give back the last array taken, clearing the values it held. */
+	void releaseFrame (int size) {
+		this.depth--;
+		Arrays.fill (this.frames[this.depth], 0, size, null);
+	}
+
+	/** Encode a entity into the text of this thread.
+	 * @return the text, valid until the next call to {@link #finish()}. */
+	StringBuilder encode (JSONEntity entity) throws JSONMappingException {
+		if (this.busy)
+			return EncodeScratch.encodeOnce (entity);
+		this.busy = true;
+		this.text.setLength (0);
+		boolean written = false;
+		try {
+			this.writer.writeEntity (entity);
+			written = true;
+		} catch (IOException e) { // a StringBuilder doesn't throw it.
+			throw new JSONMappingException (e);
+		} finally {
+			if (!written)
+				finish ();
+		}
+		return this.text;
+	}
+
+	/** Done with the text returned by {@link #encode(JSONEntity)}. */
+	void finish (StringBuilder text) {
+		if (text == this.text)
+			finish ();
+	}
+
+	private void finish () {
+		this.busy = false;
+		if (this.text.capacity () > EncodeScratch.MAX_RETAINED_TEXT) {
+			this.text = new StringBuilder (256);
+			this.writer = new EntityWriter (this.text);
+		}
+	}
+
+	/** Encode a entity into a text of its own, when the one of the thread is in use. */
+	private static StringBuilder encodeOnce (JSONEntity entity) throws JSONMappingException {
+		Instrumentation.fallback (entity.getClass (), CodecListener.Fallback.ALLOCATING_ENCODE);
+		StringBuilder text = new StringBuilder ();
+		try {
+			new EntityWriter (text).writeEntity (entity);
+		} catch (IOException e) { // a StringBuilder doesn't throw it.
+			throw new JSONMappingException (e);
+		}
+		return text;
+	}
+
+	/** @return how many bytes the text takes encoded in UTF-8. */
+	static int utf8Length (CharSequence text) {
+		int length = 0;
+		int size = text.length ();
+		for (int i=0; i<size; i++) {
+			char c = text.charAt (i);
+			if (c < 0x80) {
+				length++;
+			} else if (c < 0x800) {
+				length += 2;
+			} else if (Character.isHighSurrogate (c) && i + 1 < size && Character.isLowSurrogate (text.charAt (i + 1))) {
+				length += 4;
+				i++;
+			} else if (Character.isSurrogate (c)) {
+				length++; // replaced by '?', like the UTF-8 encoder does.
+			} else {
+				length += 3;
+			}
+		}
+		return length;
+	}
+
+	/** Put the text encoded in UTF-8 into the buffer.
+	 * @return how many bytes were put.
+	 * @throws BufferOverflowException if the text doesn't fit in the buffer, that is then left untouched. */
+	static int putUtf8 (CharSequence text, ByteBuffer buffer) {
+		int length = EncodeScratch.utf8Length (text);
+		if (length > buffer.remaining ())
+			throw new BufferOverflowException ();
+		int size = text.length ();
+		for (int i=0; i<size; i++) {
+			char c = text.charAt (i);
+			if (c < 0x80) {
+				buffer.put ((byte) c);
+			} else if (c < 0x800) {
+				buffer.put ((byte) (0xc0 | (c >> 6)));
+				buffer.put ((byte) (0x80 | (c & 0x3f)));
+			} else if (Character.isHighSurrogate (c) && i + 1 < size && Character.isLowSurrogate (text.charAt (i + 1))) {
+				int codePoint = Character.toCodePoint (c, text.charAt (++i));
+				buffer.put ((byte) (0xf0 | (codePoint >> 18)));
+				buffer.put ((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+				buffer.put ((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+				buffer.put ((byte) (0x80 | (codePoint & 0x3f)));
+			} else if (Character.isSurrogate (c)) {
+				buffer.put ((byte) '?');
+			} else {
+				buffer.put ((byte) (0xe0 | (c >> 12)));
+				buffer.put ((byte) (0x80 | ((c >> 6) & 0x3f)));
+				buffer.put ((byte) (0x80 | (c & 0x3f)));
+			}
+		}
+		return length;
+	}
+}
@@ -0,0 +1,32 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import org.json.JSONObject;
+
+/** Maps the fields of a JSON entity class from and into JSON objects.
+ * The <tt>JSONEntity (JSONObject)</tt> constructor and
+ * <tt>JSONEntity.toJson ()</tt> delegate to the codec of the entity class,
+ * as returned by {@link EntityCodecs}.
+ * @author mtavares */
+public interface EntityCodec<T extends JSONEntity> {
+	/** Set the fields of the entity from the JSON object. */
+	void decode (T entity, JSONObject json) throws JSONMappingException;
+
+	/** Put the fields of the entity into the JSON object. */
+	void encode (T entity, JSONObject json) throws JSONMappingException;
+}
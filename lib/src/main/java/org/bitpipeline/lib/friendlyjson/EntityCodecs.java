@@ -0,0 +1,174 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.json.JSONObject;
+
+/** Selects the codec used to map each JSON entity class.
+ * Codecs registered for a class take precedence. Then come the codecs
+ * generated at compile time for classes annotated with {@link GenerateCodec}.
+ * Otherwise, if compiled codecs are enabled, a codec made of method handles
+ * specialized for the class is used. The reflective codec is the fallback
+ * for everything else.
+ *
+ * Compiled codecs are disabled by default. They can be enabled with
+ * {@link #setCompiledCodecs(boolean)} or by setting the system property
+ * <tt>org.bitpipeline.lib.friendlyjson.compiledCodecs</tt> to <tt>true</tt>.
+ * @author mtavares */
+public final class EntityCodecs {
+	public static final String PROPERTY_COMPILED_CODECS = "org.bitpipeline.lib.friendlyjson.compiledCodecs";
+
+	/** The codec that maps the fields using reflection. */
+	static final EntityCodec<JSONEntity> REFLECTION = new EntityCodec<JSONEntity> () {
+		public void decode (JSONEntity entity, JSONObject json) throws JSONMappingException {
+			entity.decodeFields (json);
+		}
+
+		public void encode (JSONEntity entity, JSONObject json) throws JSONMappingException {
+			entity.encodeFields (json);
+		}
+	};
+
+	/** The codecs generated by the annotation processor, <tt>null</tt> for classes without one. */
+	private static final ClassValue<EntityCodec<?>> GENERATED = new ClassValue<EntityCodec<?>> () {
+		@Override
+		protected EntityCodec<?> computeValue (Class<?> type) {
+			return EntityCodecs.loadGeneratedCodec (type);
+		}
+	};
+
+	private static final ConcurrentHashMap<Class<?>, EntityCodec<?>> REGISTERED = new ConcurrentHashMap<Class<?>, EntityCodec<?>> ();
+
+	private static volatile boolean compiledCodecs = Boolean.getBoolean (EntityCodecs.PROPERTY_COMPILED_CODECS);
+
+	private EntityCodecs () {
+	}
+
+	/** Use a specific codec for a entity class. */
+	public static <T extends JSONEntity> void register (Class<T> clazz, EntityCodec<? super T> codec) {
+		if (clazz == null || codec == null)
+			throw new IllegalArgumentException ("Both the class and the codec are required.");
+		EntityCodecs.REGISTERED.put (clazz, codec);
+	}
+
+	/** Stop using the codec registered for a entity class. */
+	public static void unregister (Class<? extends JSONEntity> clazz) {
+		EntityCodecs.REGISTERED.remove (clazz);
+	}
+
+	/** Enable or disable the use of compiled codecs for the classes without a registered codec. */
+	public static void setCompiledCodecs (boolean enabled) {
+		EntityCodecs.compiledCodecs = enabled;
+	}
+
+	public static boolean isCompiledCodecs () {
+		return EntityCodecs.compiledCodecs;
+	}
+
+	/** Get the name of the codec generated for a entity class.
+	 * <tt>com.example.Outer$Inner</tt> has the codec <tt>com.example.Outer_InnerCodec</tt>. */
+	public static String getGeneratedCodecName (Class<?> clazz) {
+		String name = clazz.getName ();
+		int packageEnd = name.lastIndexOf ('.') + 1;
+		return name.substring (0, packageEnd) + name.substring (packageEnd).replace ('$', '_') + "Codec";
+	}
+
+	/** Look for the codec generated for a class, only done once per class. */
+	private static EntityCodec<?> loadGeneratedCodec (Class<?> clazz) {
+		Class<?> codecClass;
+		try {
+			codecClass = Class.forName (EntityCodecs.getGeneratedCodecName (clazz), true, clazz.getClassLoader ());
+		} catch (ClassNotFoundException e) {
+			return null;
+		} catch (LinkageError e) {
+			return null;
+		}
+		if (!EntityCodec.class.isAssignableFrom (codecClass))
+			return null;
+		try {
+			return (EntityCodec<?>) codecClass.getDeclaredConstructor ().newInstance ();
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/** @return <tt>true</tt> if there's a codec registered for the class. */
+	static boolean isRegistered (Class<?> clazz) {
+		return EntityCodecs.REGISTERED.containsKey (clazz);
+	}
+
+	/** @return <tt>true</tt> if the codec of the class maps the fields one by one
+	 *         through <tt>JSONEntity.decodeField</tt>, <tt>false</tt> if it's
+	 *         a registered or generated codec. */
+	static boolean isDescriptorBased (Class<?> clazz) {
+		return !EntityCodecs.REGISTERED.containsKey (clazz) && EntityCodecs.GENERATED.get (clazz) == null;
+	}
+
+	/** Set the fields of a entity with the codec of its class,
+	 * telling the {@link Instrumentation} listener, if there's one. */
+	static void decode (JSONEntity entity, JSONObject json) throws JSONMappingException {
+		EntityCodec<JSONEntity> codec = EntityCodecs.forClass (entity.getClass ());
+		CodecListener listener = Instrumentation.listener;
+		if (listener == null) {
+			codec.decode (entity, json);
+			return;
+		}
+		long start = System.nanoTime ();
+		try {
+			codec.decode (entity, json);
+		} catch (JSONMappingException e) {
+			listener.failed (entity.getClass (), e);
+			throw e;
+		}
+		listener.decoded (entity.getClass (), System.nanoTime () - start);
+	}
+
+	/** Put the fields of a entity into the JSON object with the codec of its class,
+	 * telling the {@link Instrumentation} listener, if there's one. */
+	static void encode (JSONEntity entity, JSONObject json) throws JSONMappingException {
+		EntityCodec<JSONEntity> codec = EntityCodecs.forClass (entity.getClass ());
+		CodecListener listener = Instrumentation.listener;
+		if (listener == null) {
+			codec.encode (entity, json);
+			return;
+		}
+		long start = System.nanoTime ();
+		try {
+			codec.encode (entity, json);
+		} catch (JSONMappingException e) {
+			listener.failed (entity.getClass (), e);
+			throw e;
+		}
+		listener.encoded (entity.getClass (), System.nanoTime () - start);
+	}
+
+	/** Get the codec to use for a entity class. */
+	@SuppressWarnings ("unchecked")
+	static EntityCodec<JSONEntity> forClass (Class<?> clazz) {
+		EntityCodec<?> codec = EntityCodecs.REGISTERED.get (clazz);
+		if (codec != null)
+			return (EntityCodec<JSONEntity>) codec;
+		codec = EntityCodecs.GENERATED.get (clazz);
+		if (codec != null)
+			return (EntityCodec<JSONEntity>) codec;
+		if (EntityCodecs.compiledCodecs)
+			return EntityDescriptor.of (clazz).getCompiledCodec ();
+		return EntityCodecs.REFLECTION;
+	}
+}
@@ -0,0 +1,261 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** The mapping information of a JSON entity class.
+ * Walking the class hierarchy and inspecting the declared fields is done
+ * only once per class. The descriptors are kept in a {@link ClassValue} so
+ * they don't prevent the entity classes from being unloaded.
+ * @author mtavares */
+final class EntityDescriptor {
+	/** How many different write orders are kept for each class. */
+	private static final int MAX_WRITE_ORDERS = 256;
+
+	private static final ClassValue<EntityDescriptor> DESCRIPTORS = new ClassValue<EntityDescriptor> () {
+		@Override
+		protected EntityDescriptor computeValue (Class<?> type) {
+			return new EntityDescriptor (type);
+		}
+	};
+
+	private final Class<?> entityClass;
+	/** The mapped fields, the ones of the class first and then the ones of the super classes. */
+	private final FieldDescriptor[] fields;
+	/** The JSON names of the mapped fields, each one only once. */
+	private final String[] names;
+	/** The JSON names encoded in UTF-8, and their hashes. */
+	private final byte[][] utf8Names;
+	private final int[] utf8Hashes;
+	/** The index of each JSON name in <tt>names</tt>. */
+	private final HashMap<String, Integer> nameIndexes;
+	/** The fields mapped to each JSON name, more than one when a field shadows another. */
+	private final FieldDescriptor[][] fieldsByName;
+	/** Built the first time it's needed. */
+	private volatile CompiledCodec compiledCodec;
+	/** Built the first time it's needed. */
+	private volatile EntityInstantiator instantiator;
+	/** If the class, or one of its super classes, has its own <tt>toJson ()</tt>. */
+	private final boolean customToJson;
+	/** If the class is marked with {@link CachedSerialization}. */
+	private final boolean cachedSerialization;
+	/** The order in which a JSONObject writes the fields, by the mask of fields with a value. */
+	private final ConcurrentHashMap<Long, int[]> writeOrders = new ConcurrentHashMap<Long, int[]> ();
+	/** The write order used last, found without boxing its mask. */
+	private volatile WriteOrder lastWriteOrder;
+
+	private static final class WriteOrder {
+		final long mask;
+		final int[] order;
+
+		WriteOrder (long mask, int[] order) {
+			this.mask = mask;
+			this.order = order;
+		}
+	}
+
+	private EntityDescriptor (Class<?> entityClass) {
+		this.entityClass = entityClass;
+
+		List<FieldDescriptor> mapped = new ArrayList<FieldDescriptor> ();
+		Class<?> clazz = entityClass;
+		do {
+			for (Field field : clazz.getDeclaredFields ()) {
+				if ( (field.getModifiers () & Modifier.TRANSIENT) != 0) // don't care about transient fields.
+					continue;
+				if (field.getName ().equals ("this$0"))
+					continue;
+				mapped.add (new FieldDescriptor (field, JSONEntity.getReader (field.getType ())));
+			}
+			clazz = clazz.getSuperclass ();
+		} while (clazz != null && !clazz.isAssignableFrom (JSONEntity.class));
+
+		this.fields = mapped.toArray (new FieldDescriptor[mapped.size ()]);
+
+		this.nameIndexes = new HashMap<String, Integer> ();
+		List<List<FieldDescriptor>> byName = new ArrayList<List<FieldDescriptor>> ();
+		for (FieldDescriptor field : this.fields) {
+			Integer index = this.nameIndexes.get (field.getJsonName ());
+			if (index == null) {
+				index = Integer.valueOf (byName.size ());
+				this.nameIndexes.put (field.getJsonName (), index);
+				byName.add (new ArrayList<FieldDescriptor> (1));
+			}
+			byName.get (index.intValue ()).add (field);
+		}
+		this.names = new String[byName.size ()];
+		this.fieldsByName = new FieldDescriptor[byName.size ()][];
+		for (int i=0; i<this.fieldsByName.length; i++) {
+			this.fieldsByName[i] = byName.get (i).toArray (new FieldDescriptor[byName.get (i).size ()]);
+			this.names[i] = this.fieldsByName[i][0].getJsonName ();
+		}
+		this.utf8Names = new byte[this.names.length][];
+		this.utf8Hashes = new int[this.names.length];
+		for (int i=0; i<this.names.length; i++) {
+			this.utf8Names[i] = this.names[i].getBytes (StandardCharsets.UTF_8);
+			int hash = 0;
+			for (byte b : this.utf8Names[i])
+				hash = 31 * hash + b;
+			this.utf8Hashes[i] = hash;
+		}
+
+		this.customToJson = EntityDescriptor.overridesToJson (entityClass);
+		this.cachedSerialization = entityClass.isAnnotationPresent (CachedSerialization.class);
+	}
+
+	private static boolean overridesToJson (Class<?> clazz) {
+		try {
+			return clazz.getMethod ("toJson").getDeclaringClass () != JSONEntity.class;
+		} catch (NoSuchMethodException e) {
+			return true;
+		}
+	}
+
+	/** Get the descriptor of a class. */
+	static EntityDescriptor of (Class<?> clazz) {
+		return EntityDescriptor.DESCRIPTORS.get (clazz);
+	}
+
+	Class<?> getEntityClass () {
+		return this.entityClass;
+	}
+
+	FieldDescriptor[] getFields () {
+		return this.fields;
+	}
+
+	/** @return how many different JSON names the mapped fields have. */
+	int getNameCount () {
+		return this.names.length;
+	}
+
+	String getName (int nameIndex) {
+		return this.names[nameIndex];
+	}
+
+	/** @return the index of the JSON name or <tt>-1</tt> if no field is mapped to it. */
+	int getNameIndex (String name) {
+		Integer index = this.nameIndexes.get (name);
+		return index == null ? -1 : index.intValue ();
+	}
+
+	/** Find a JSON name from its UTF-8 bytes.
+	 * @param hash is the hash of the bytes, each one added as <tt>hash = 31 * hash + b</tt>.
+	 * @return the index of the JSON name or <tt>-1</tt> if no field is mapped to it. */
+	int getNameIndex (ByteBuffer buffer, int start, int length, int hash) {
+		for (int i=0; i<this.utf8Names.length; i++) {
+			if (this.utf8Hashes[i] != hash)
+				continue;
+			byte[] name = this.utf8Names[i];
+			if (name.length != length)
+				continue;
+			int j = 0;
+			while (j < length && name[j] == buffer.get (start + j))
+				j++;
+			if (j == length)
+				return i;
+		}
+		return -1;
+	}
+
+	/** @return the fields mapped to the JSON name with the given index. */
+	FieldDescriptor[] getFieldsByName (int nameIndex) {
+		return this.fieldsByName[nameIndex];
+	}
+
+	/** @return <tt>true</tt> if the class, or one of its super classes, overrides <tt>toJson ()</tt>. */
+	boolean hasCustomToJson () {
+		return this.customToJson;
+	}
+
+	/** @return <tt>true</tt> if the entities of the class keep their JSON text in the {@link SerializationCache}. */
+	boolean isSerializationCached () {
+		return this.cachedSerialization;
+	}
+
+	/** Get the order in which <tt>toJson ().toString ()</tt> writes the fields.
+	 * JSONObject keeps its keys in a HashMap, so the order depends on the
+	 * fields that have a value. It's found by doing, on a HashMap, the same
+	 * operations <tt>toJson ()</tt> does on the JSONObject.
+	 * @param values the values of the fields, <tt>null</tt> for the fields without one.
+	 *        The array can be longer than the number of fields.
+	 * @return the indexes of the fields to write, in order. */
+	int[] getWriteOrder (Object[] values) {
+		if (this.fields.length > 64)
+			return computeWriteOrder (values);
+		long mask = 0;
+		for (int i=0; i<this.fields.length; i++) {
+			if (values[i] != null)
+				mask |= 1L << i;
+		}
+		WriteOrder last = this.lastWriteOrder;
+		if (last != null && last.mask == mask)
+			return last.order;
+		Long key = Long.valueOf (mask);
+		int[] order = this.writeOrders.get (key);
+		if (order == null) {
+			order = computeWriteOrder (values);
+			if (this.writeOrders.size () < EntityDescriptor.MAX_WRITE_ORDERS)
+				this.writeOrders.putIfAbsent (key, order);
+		}
+		this.lastWriteOrder = new WriteOrder (mask, order);
+		return order;
+	}
+
+	private int[] computeWriteOrder (Object[] values) {
+		HashMap<String, Integer> keys = new HashMap<String, Integer> ();
+		for (int i=0; i<this.fields.length; i++) {
+			if (values[i] != null)
+				keys.put (this.fields[i].getJsonName (), Integer.valueOf (i));
+			else
+				keys.remove (this.fields[i].getJsonName ());
+		}
+		int[] order = new int[keys.size ()];
+		int n = 0;
+		for (Integer index : keys.values ())
+			order[n++] = index.intValue ();
+		return order;
+	}
+
+	/** Get the instantiator of this class, creating it if needed. */
+	EntityInstantiator getInstantiator () {
+		EntityInstantiator instantiator = this.instantiator;
+		if (instantiator == null) {
+			instantiator = new EntityInstantiator (this);
+			this.instantiator = instantiator;
+		}
+		return instantiator;
+	}
+
+	/** Get the codec compiled for this class, compiling it if needed. */
+	CompiledCodec getCompiledCodec () {
+		CompiledCodec codec = this.compiledCodec;
+		if (codec == null) {
+			codec = new CompiledCodec (this);
+			this.compiledCodec = codec;
+		}
+		return codec;
+	}
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+
+import org.json.JSONObject;
+
+/** Creates the instances of a entity class.
+ * The constructors are looked up once per class and kept as method handles.
+ * Entities are created with their <tt>JSONObject</tt> constructor, or, when
+ * decoding with field injection, with their no-arg constructor and then
+ * decoded by the codec of the class.
+ * @author mtavares */
+final class EntityInstantiator {
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup ();
+	private static final MethodType JSON_CONSTRUCTOR_TYPE = MethodType.methodType (Object.class, JSONObject.class);
+	private static final MethodType NO_ARG_CONSTRUCTOR_TYPE = MethodType.methodType (Object.class);
+
+	private final Class<?> entityClass;
+	/** (JSONObject)Object, <tt>null</tt> if the class doesn't have the constructor. */
+	private final MethodHandle jsonConstructor;
+	/** Why the JSONObject constructor couldn't be found. */
+	private final Exception jsonConstructorFailure;
+	/** ()Object, <tt>null</tt> if the class doesn't have one or can't have its fields injected. */
+	private final MethodHandle noArgConstructor;
+	/** If the class is a inner class, whose constructors get the enclosing instance first. */
+	private final boolean inner;
+
+	EntityInstantiator (EntityDescriptor descriptor) {
+		this.entityClass = descriptor.getEntityClass ();
+		Class<?> enclosingClass = this.entityClass.getEnclosingClass ();
+		this.inner = enclosingClass != null && (this.entityClass.getModifiers () & Modifier.STATIC) == 0;
+
+		MethodHandle constructor = null;
+		Exception failure = null;
+		try {
+			constructor = this.inner
+				? EntityInstantiator.findInner (this.entityClass, enclosingClass, JSONObject.class)
+				: EntityInstantiator.find (this.entityClass, JSONObject.class);
+			constructor = constructor.asType (EntityInstantiator.JSON_CONSTRUCTOR_TYPE);
+		} catch (Exception e) {
+			constructor = null;
+			failure = e;
+		}
+		this.jsonConstructor = constructor;
+		this.jsonConstructorFailure = failure;
+
+		MethodHandle noArg = null;
+		// the classes with their own toJson () are expected to read more than the fields in the constructor.
+		if (!descriptor.hasCustomToJson () && !Modifier.isAbstract (this.entityClass.getModifiers ())) {
+			try {
+				noArg = this.inner
+					? EntityInstantiator.findInner (this.entityClass, enclosingClass)
+					: EntityInstantiator.find (this.entityClass);
+				noArg = noArg.asType (EntityInstantiator.NO_ARG_CONSTRUCTOR_TYPE);
+			} catch (Exception e) {
+				noArg = null;
+			}
+		}
+		this.noArgConstructor = noArg;
+	}
+
+	private static MethodHandle find (Class<?> clazz, Class<?>... parameterTypes) throws NoSuchMethodException, IllegalAccessException {
+		Constructor<?> constructor = clazz.getDeclaredConstructor (parameterTypes);
+		constructor.setAccessible (true);
+		return EntityInstantiator.LOOKUP.unreflectConstructor (constructor);
+	}
+
+	/** Find a constructor of a inner class, given the enclosing class first.
+	 * The enclosing instance is always <tt>null</tt>, as it isn't known when
+	 * decoding. Entities aren't expected to use it in the constructor. */
+	private static MethodHandle findInner (Class<?> clazz, Class<?>... parameterTypes) throws NoSuchMethodException, IllegalAccessException {
+		return MethodHandles.insertArguments (EntityInstantiator.find (clazz, parameterTypes), 0, (Object) null);
+	}
+
+	/** Create a entity from a JSON value.
+	 * @throws JSONMappingException if the value isn't a JSON object or the entity can't be created from it. */
+	Object newInstance (Object json) throws JSONMappingException {
+		if (this.noArgConstructor != null && DecodeOptions.current ().isFieldInjection () && json instanceof JSONObject)
+			return inject ((JSONObject) json);
+
+		if (this.jsonConstructor == null)
+			throw new JSONMappingException (this.entityClass.getName () + JSONEntity.MSG_MUST_HAVE_CONSTRUCTOR, this.jsonConstructorFailure);
+		try {
+			if (! (json instanceof JSONObject))
+				throw new IllegalArgumentException ("argument type mismatch");
+			return this.jsonConstructor.invokeExact ((JSONObject) json);
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable t) {
+			if (this.inner)
+				throw new JSONMappingException (t);
+			throw new JSONMappingException ("clazz = " + this.entityClass.getName () + "; json = "  + json.toString (), t);
+		}
+	}
+
+	private Object inject (JSONObject json) throws JSONMappingException {
+		Object entity = newEmptyInstance ();
+		EntityCodecs.decode ((JSONEntity) entity, json);
+		return entity;
+	}
+
+	/** @return <tt>true</tt> if the entities can be created empty and have their fields set afterwards. */
+	boolean canCreateEmpty () {
+		return this.noArgConstructor != null;
+	}
+
+	/** Create a entity with its no-arg constructor.
+	 * @see #canCreateEmpty() */
+	Object newEmptyInstance () throws JSONMappingException {
+		if (this.noArgConstructor == null)
+			throw new JSONMappingException (this.entityClass.getName () + " can't be created without a JSON object.");
+		try {
+			return this.noArgConstructor.invokeExact ();
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new JSONMappingException ("clazz = " + this.entityClass.getName (), t);
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.io.Reader;
+import java.util.ArrayDeque;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/** A pool of entities of a class, to decode into instead of creating new ones.
+ * The entities are decoded with {@link JSONEntity#readInto(JSONEntity, JSONObject)},
+ * reusing their collections and nested entities as well, and are given back
+ * to the pool with {@link #release(JSONEntity)} when they are no longer used.
+ * The pool is safe to use from many threads.
+ * @author mtavares */
+public final class EntityPool<T extends JSONEntity> {
+	private final Class<T> entityClass;
+	private final EntityInstantiator instantiator;
+	private final int maximumSize;
+	private final ArrayDeque<T> free;
+	private long created;
+	private long reused;
+
+	/**
+	 * @param entityClass needs a no-arg constructor, of any visibility, and can't have its own <tt>toJson ()</tt>.
+	 * @param maximumSize is how many entities the pool keeps, at most. */
+	public EntityPool (Class<T> entityClass, int maximumSize) {
+		if (maximumSize < 1)
+			throw new IllegalArgumentException ("The pool must keep at least one entity.");
+		EntityInstantiator instantiator = EntityDescriptor.of (entityClass).getInstantiator ();
+		if (!instantiator.canCreateEmpty ())
+			throw new IllegalArgumentException (entityClass.getName () + " needs a no-arg constructor and can't have its own toJson ().");
+		this.entityClass = entityClass;
+		this.instantiator = instantiator;
+		this.maximumSize = maximumSize;
+		this.free = new ArrayDeque<T> (Math.min (maximumSize, 64));
+	}
+
+	/** Take a entity from the pool, or create a new one if the pool is empty.
+	 * The entity has the values it had when it was released. */
+	public T acquire () throws JSONMappingException {
+		synchronized (this) {
+			T entity = this.free.pollLast ();
+			if (entity != null) {
+				this.reused++;
+				return entity;
+			}
+			this.created++;
+		}
+		return this.entityClass.cast (this.instantiator.newEmptyInstance ());
+	}
+
+	/** Give a entity back to the pool. It's dropped if the pool is full. */
+	public void release (T entity) {
+		if (entity == null)
+			return;
+		synchronized (this) {
+			if (this.free.size () < this.maximumSize)
+				this.free.addLast (entity);
+		}
+	}
+
+	/** Decode a JSON object into a entity from the pool.
+	 * If it fails the entity is given back to the pool.
+	 * @see JSONEntity#readInto(JSONEntity, JSONObject) */
+	public T decode (JSONObject json) throws JSONMappingException {
+		T entity = acquire ();
+		boolean decoded = false;
+		try {
+			JSONEntity.readInto (entity, json);
+			decoded = true;
+			return entity;
+		} finally {
+			if (!decoded)
+				release (entity);
+		}
+	}
+
+	/** Read JSON text into a entity from the pool.
+	 * @see #decode(JSONObject) */
+	public T read (Reader reader) throws JSONMappingException, JSONException {
+		return decode (new JSONObject (new JSONTokener (reader)));
+	}
+
+	public Class<T> getEntityClass () {
+		return this.entityClass;
+	}
+
+	public int getMaximumSize () {
+		return this.maximumSize;
+	}
+
+	/** @return how many entities are in the pool, waiting to be reused. */
+	public synchronized int size () {
+		return this.free.size ();
+	}
+
+	/** @return how many entities the pool had to create. */
+	public synchronized long getCreated () {
+		return this.created;
+	}
+
+	/** @return how many times a entity was taken from the pool instead of being created. */
+	public synchronized long getReused () {
+		return this.reused;
+	}
+}
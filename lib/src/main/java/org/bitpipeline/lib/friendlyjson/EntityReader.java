@@ -0,0 +1,512 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/** Reads JSON entities from JSON text, decoding the nested values as the tokens are read.
+ * Each entity gets a JSON object with only its own members, where the
+ * lists, maps, arrays and entities mapped to fields are already decoded.
+ * Members that aren't mapped to any field are skipped without being built,
+ * unless the class has its own <tt>toJson ()</tt>, as its constructor is
+ * then expected to read them. So only one level of the JSON text is kept in
+ * memory for each entity being read.
+ *
+ * Entities that have a registered or generated codec get the whole JSON
+ * object, as those codecs read it themselves.
+ * @author mtavares */
+final class EntityReader {
+	/** A JSON object where some values were already decoded by the reader. */
+	static final class PartialObject extends JSONObject {
+		/** @return the value decoded for the key, or <tt>null</tt> if the value wasn't decoded by the reader. */
+		DecodedValue getDecoded (String key) {
+			Object value = opt (key);
+			return value instanceof DecodedValue ? (DecodedValue) value : null;
+		}
+	}
+
+	/** The value of a field, decoded by the reader. */
+	static final class DecodedValue {
+		private final Object value;
+
+		DecodedValue (Object value) {
+			this.value = value;
+		}
+
+		Object getValue () {
+			return this.value;
+		}
+	}
+
+	/** Returned by {@link #nextKeyIndex(EntityDescriptor, boolean)} at the end of the object. */
+	private static final int END = -2;
+
+	/** Marks array elements that couldn't be converted. */
+	private static final Object INVALID = new Object ();
+
+	private final JSONTokener tokener;
+	/** The last key read by {@link #nextKeyIndex(EntityDescriptor, boolean)} that isn't mapped to a field. */
+	private String key;
+
+	EntityReader (JSONTokener tokener) {
+		this.tokener = tokener;
+	}
+
+	/** Read a JSON object into a new entity. */
+	<T extends JSONEntity> T readEntity (Class<T> clazz) throws JSONMappingException, JSONException {
+		if (peek () != '{')
+			throw this.tokener.syntaxError ("A JSONObject text must begin with '{'");
+		return clazz.cast (readValue (clazz, null));
+	}
+
+	/** Read a JSON object into a new entity, with only the fields in the field set. */
+	<T extends JSONEntity> T readEntity (Class<T> clazz, FieldSet fields) throws JSONMappingException, JSONException {
+		FieldSet.check (fields, clazz);
+		if (peek () != '{')
+			throw this.tokener.syntaxError ("A JSONObject text must begin with '{'");
+		return clazz.cast (readValue (clazz, fields));
+	}
+
+	/** Check if the entities of a class can be read one level at a time. */
+	static boolean isStreamable (Class<?> clazz) {
+		return EntityCodecs.isDescriptorBased (clazz);
+	}
+
+	/** Read the next value and convert it, the same as <tt>JSONEntity.fromJson (clazz, value)</tt>.
+	 * If the value can't be converted it's still read whole before the JSONMappingException is thrown.
+	 * @param fields are the fields to decode when the value is a entity, <tt>null</tt> for all. */
+	private Object readValue (Class<?> clazz, FieldSet fields) throws JSONMappingException, JSONException {
+		if (clazz != null && peek () == '{' && JSONEntity.class.isAssignableFrom (clazz) && EntityReader.isStreamable (clazz))
+			return readFields (clazz, fields);
+		Object value = this.tokener.nextValue ();
+		if (fields != null && value instanceof JSONObject)
+			value = fields.project ((JSONObject) value);
+		return EntityReader.convert (clazz, value);
+	}
+
+	private static Object convert (Class<?> clazz, Object json) throws JSONMappingException {
+		try {
+			return JSONEntity.fromJson (clazz, json);
+		} catch (RuntimeException e) {
+			throw new JSONMappingException (e);
+		}
+	}
+
+	/** Read the JSON object that comes next and create the entity from it.
+	 * @param fields are the fields to decode, <tt>null</tt> for all. */
+	private Object readFields (Class<?> clazz, FieldSet fields) throws JSONMappingException, JSONException {
+		this.tokener.nextClean (); // the '{'
+
+		EntityDescriptor descriptor = EntityDescriptor.of (clazz);
+		boolean keepUnmapped = fields == null && descriptor.hasCustomToJson ();
+		PartialObject json = new PartialObject ();
+		JSONMappingException failure = null;
+		for (int nameIndex = nextKeyIndex (descriptor, keepUnmapped); nameIndex != EntityReader.END; nameIndex = moreMembers () ? nextKeyIndex (descriptor, keepUnmapped) : EntityReader.END) {
+			if (nameIndex < 0) {
+				if (keepUnmapped)
+					json.putOnce (this.key, this.tokener.nextValue ());
+				else
+					skipValue ();
+				continue;
+			}
+			if (fields != null && !fields.includes (nameIndex)) {
+				skipValue ();
+				continue;
+			}
+
+			try {
+				Object value = fields != null
+					? readField (descriptor.getFieldsByName (nameIndex), fields, nameIndex)
+					: readField (descriptor.getFieldsByName (nameIndex), null, -1);
+				json.putOnce (descriptor.getName (nameIndex), value);
+			} catch (JSONMappingException e) {
+				if (failure == null)
+					failure = e;
+			}
+		}
+		if (failure != null)
+			throw failure;
+		return EntityReader.convert (clazz, json);
+	}
+
+	/** Read the value of a field.
+	 * @return a DecodedValue for the lists, maps, arrays and entities,
+	 *         the JSON value otherwise.
+	 * @param parentFields are the fields decoded of the entity being read,
+	 *        <tt>null</tt> if it's decoded whole.
+	 * @param nameIndex is the index of the field name in the entity. */
+	private Object readField (FieldDescriptor[] fields, FieldSet parentFields, int nameIndex) throws JSONMappingException, JSONException {
+		FieldSet nested = parentFields != null ? parentFields.getNested (nameIndex) : null;
+		if (fields.length == 1) {
+			FieldDescriptor field = fields[0];
+			char next = peek ();
+			boolean isArray = next == '[' || next == '(';
+			if (field.isArray () && isArray)
+				return new DecodedValue (readArray (field, nested));
+			if (field.isEntity () && next == '{' && EntityReader.isStreamable (field.getType ()))
+				return new DecodedValue (readFields (field.getType (), nested));
+			if (field.getType () == List.class && isArray) {
+				List<Object> list = readList (field, nested);
+				// the constructor ignores lists with missing elements.
+				return list != null ? new DecodedValue (list) : null;
+			}
+			if (field.getType () == Map.class && next == '{')
+				return new DecodedValue (readMap (field, nested));
+			if (NumberList.class.isAssignableFrom (field.getType ()) && isArray)
+				return new DecodedValue (readNumberList (field));
+		}
+		// everything else is assigned from the JSON value, as the constructor does.
+		Object value = this.tokener.nextValue ();
+		return nested != null ? parentFields.project (nameIndex, value) : value;
+	}
+
+	/** Read a array field. Like the constructor, elements that can't be converted are reported and left empty. */
+	private Object readArray (FieldDescriptor field, FieldSet fields) throws JSONException {
+		Class<?> componentClass = field.getComponentType ();
+		ArrayList<Object> items = new ArrayList<Object> ();
+		char close = beginArray ();
+		if (firstElement ()) {
+			do {
+				Object item;
+				if (missingElement ()) {
+					item = EntityReader.INVALID;
+				} else {
+					try {
+						// the elements of primitive arrays are converted when set.
+						item = componentClass.isPrimitive () ? this.tokener.nextValue () : readValue (componentClass, fields);
+					} catch (JSONMappingException e) {
+						item = EntityReader.INVALID;
+					}
+				}
+				items.add (item);
+			} while (moreElements (close));
+		}
+
+		int size = items.size ();
+		Object array = Array.newInstance (componentClass, size);
+		for (int i=0; i<size; i++) {
+			Object item = items.get (i);
+			try {
+				if (item == EntityReader.INVALID)
+					throw new IllegalArgumentException ();
+				if (componentClass.isPrimitive ()) {
+					if (!PrimitiveArrays.set (array, i, item))
+						throw new IllegalArgumentException ();
+				} else {
+					Array.set (array, i, item);
+				}
+			} catch (Exception e) {
+				System.err.println ("Invalid array component for class "
+					+ field.getField ().getDeclaringClass ().getName ()
+					+ " field "
+					+ field.getJsonName () + "::" + field.getType ().getName ());
+			}
+		}
+		return array;
+	}
+
+	/** Read a list field.
+	 * @return <tt>null</tt> if the array has missing elements, the constructor ignores those. */
+	private List<Object> readList (FieldDescriptor field, FieldSet fields) throws JSONMappingException, JSONException {
+		Class<?> listClass;
+		try {
+			listClass = field.getTypeArgument (0);
+		} catch (JSONMappingException e) {
+			skipValue ();
+			throw new JSONMappingException (e);
+		}
+
+		ArrayList<Object> list = new ArrayList<Object> ();
+		boolean missing = false;
+		JSONMappingException failure = null;
+		char close = beginArray ();
+		if (firstElement ()) {
+			do {
+				if (missingElement ()) {
+					missing = true;
+					continue;
+				}
+				try {
+					list.add (readValue (listClass, fields));
+				} catch (JSONMappingException e) {
+					if (failure == null)
+						failure = new JSONMappingException (e);
+				}
+			} while (moreElements (close));
+		}
+		if (missing)
+			return null;
+		if (failure != null)
+			throw failure;
+		return list;
+	}
+
+	/** Read a list of numbers field, straight into the list. */
+	private NumberList<?> readNumberList (FieldDescriptor field) throws JSONMappingException, JSONException {
+		NumberList<?> list = NumberList.create (field.getType (), NumberList.DEFAULT_CAPACITY, DecodeOptions.current ().isOffHeapNumberLists ());
+		JSONMappingException failure = null;
+		char close = beginArray ();
+		if (firstElement ()) {
+			do {
+				Object value = missingElement () ? null : this.tokener.nextValue ();
+				if (!list.addJson (value) && failure == null)
+					failure = new JSONMappingException ("Invalid element " + list.size () + " for " + field.getField ());
+			} while (moreElements (close));
+		}
+		if (failure != null)
+			throw failure;
+		return list;
+	}
+
+	private Map<Object, Object> readMap (FieldDescriptor field, FieldSet fields) throws JSONMappingException, JSONException {
+		Class<?> keyClass;
+		Class<?> valueClass;
+		try {
+			keyClass = field.getTypeArgument (0);
+			valueClass = field.getTypeArgument (1);
+		} catch (JSONMappingException e) {
+			skipValue ();
+			throw new JSONMappingException (e);
+		}
+
+		this.tokener.nextClean (); // the '{'
+		HashMap<Object, Object> map = new HashMap<Object, Object> ();
+		HashMap<String, Object> keys = new HashMap<String, Object> ();
+		DecodeOptions options = keyClass == String.class ? DecodeOptions.current () : null;
+		JSONMappingException failure = null;
+		for (String key = nextKey (); key != null; key = moreMembers () ? nextKey () : null) {
+			if (keys.put (key, key) != null)
+				throw new JSONException ("Duplicate key \"" + key + "\"");
+			try {
+				Object value = readValue (valueClass, fields);
+				map.put (options != null ? options.canonicalize (key) : EntityReader.convert (keyClass, key), value);
+			} catch (JSONMappingException e) {
+				if (failure == null)
+					failure = new JSONMappingException (e);
+			}
+		}
+		if (failure != null)
+			throw failure;
+		return map;
+	}
+
+	/* ---------------------- */
+	/* The structure of the JSON text, following what JSONObject and JSONArray accept. */
+
+	private char peek () throws JSONException {
+		char next = this.tokener.nextClean ();
+		this.tokener.back ();
+		return next;
+	}
+
+	/** Read the key of the next member of a object, and the separator after it.
+	 * @return <tt>null</tt> if the object ended. */
+	private String nextKey () throws JSONException {
+		if (!startKey ())
+			return null;
+		String key = this.tokener.nextValue ().toString ();
+		endKey ();
+		return key;
+	}
+
+	/** Read the key of the next member of a entity, and the separator after it.
+	 * Keys are matched against the names of the fields without creating a
+	 * String when the text is read from bytes.
+	 * @param needKey if the keys that aren't mapped to a field are needed.
+	 * @return the index of the name of the field, {@link #END} if the object
+	 *         ended or <tt>-1</tt> if there's no field for the key, which is
+	 *         then kept in <tt>key</tt> if needed. */
+	private int nextKeyIndex (EntityDescriptor descriptor, boolean needKey) throws JSONException {
+		if (!startKey ())
+			return EntityReader.END;
+		if (!needKey && this.tokener instanceof Utf8Tokener) {
+			if (this.tokener.nextClean () == '"') {
+				int nameIndex = ((Utf8Tokener) this.tokener).matchKey (descriptor);
+				if (nameIndex != Utf8Tokener.UNMATCHED) {
+					endKey ();
+					return nameIndex;
+				}
+				this.key = this.tokener.nextString ('"');
+				endKey ();
+				return descriptor.getNameIndex (this.key);
+			}
+			this.tokener.back ();
+		}
+		this.key = this.tokener.nextValue ().toString ();
+		endKey ();
+		return descriptor.getNameIndex (this.key);
+	}
+
+	/** @return <tt>false</tt> if the object ended instead of having a key. */
+	private boolean startKey () throws JSONException {
+		char c = this.tokener.nextClean ();
+		switch (c) {
+			case 0:
+				throw this.tokener.syntaxError ("A JSONObject text must end with '}'");
+			case '}':
+				return false;
+			default:
+				this.tokener.back ();
+				return true;
+		}
+	}
+
+	/** Read the separator between a key and its value. */
+	private void endKey () throws JSONException {
+		char c = this.tokener.nextClean ();
+		if (c == '=') {
+			if (this.tokener.next () != '>')
+				this.tokener.back ();
+		} else if (c != ':') {
+			throw this.tokener.syntaxError ("Expected a ':' after a key");
+		}
+	}
+
+	/** Read what follows the value of a object member.
+	 * @return <tt>true</tt> if there are more members. */
+	private boolean moreMembers () throws JSONException {
+		switch (this.tokener.nextClean ()) {
+			case ';':
+			case ',':
+				if (this.tokener.nextClean () == '}')
+					return false;
+				this.tokener.back ();
+				return true;
+			case '}':
+				return false;
+			default:
+				throw this.tokener.syntaxError ("Expected a ',' or '}'");
+		}
+	}
+
+	/** @return the character that closes the array. */
+	private char beginArray () throws JSONException {
+		char c = this.tokener.nextClean ();
+		if (c == '[')
+			return ']';
+		if (c == '(')
+			return ')';
+		throw this.tokener.syntaxError ("A JSONArray text must start with '['");
+	}
+
+	/** @return <tt>false</tt> if the array is empty. */
+	private boolean firstElement () throws JSONException {
+		if (this.tokener.nextClean () == ']')
+			return false;
+		this.tokener.back ();
+		return true;
+	}
+
+	/** @return <tt>true</tt> if there's no value before the next ','. */
+	private boolean missingElement () throws JSONException {
+		return peek () == ',';
+	}
+
+	/** Read what follows a array element.
+	 * @return <tt>true</tt> if there are more elements. */
+	private boolean moreElements (char close) throws JSONException {
+		char c = this.tokener.nextClean ();
+		switch (c) {
+			case ';':
+			case ',':
+				if (this.tokener.nextClean () == ']')
+					return false;
+				this.tokener.back ();
+				return true;
+			case ']':
+			case ')':
+				if (c != close)
+					throw this.tokener.syntaxError ("Expected a '" + close + "'");
+				return false;
+			default:
+				throw this.tokener.syntaxError ("Expected a ',' or ']'");
+		}
+	}
+
+	/** Read the next value without building it. */
+	private void skipValue () throws JSONException {
+		char c = this.tokener.nextClean ();
+		switch (c) {
+			case '"':
+			case '\'':
+				skipString (c);
+				break;
+			case '{':
+				for (boolean more = skipKey (); more; more = moreMembers () && skipKey ())
+					skipValue ();
+				break;
+			case '[':
+			case '(':
+				this.tokener.back ();
+				char close = beginArray ();
+				if (firstElement ()) {
+					do {
+						if (!missingElement ())
+							skipValue ();
+					} while (moreElements (close));
+				}
+				break;
+			default:
+				this.tokener.back ();
+				this.tokener.nextValue ();
+		}
+	}
+
+	/** Skip the key of the next member of a object, and the separator after it.
+	 * @return <tt>false</tt> if the object ended. */
+	private boolean skipKey () throws JSONException {
+		if (!startKey ())
+			return false;
+		char c = this.tokener.nextClean ();
+		if (c == '"' || c == '\'') {
+			skipString (c);
+		} else {
+			this.tokener.back ();
+			this.tokener.nextValue ();
+		}
+		endKey ();
+		return true;
+	}
+
+	private void skipString (char quote) throws JSONException {
+		if (this.tokener instanceof Utf8Tokener && ((Utf8Tokener) this.tokener).skipString (quote))
+			return;
+		for (;;) {
+			char c = this.tokener.next ();
+			switch (c) {
+				case 0:
+				case '\n':
+				case '\r':
+					throw this.tokener.syntaxError ("Unterminated string");
+				case '\\':
+					this.tokener.next ();
+					break;
+				default:
+					if (c == quote)
+						return;
+			}
+		}
+	}
+}
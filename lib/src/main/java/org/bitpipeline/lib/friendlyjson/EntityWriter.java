@@ -0,0 +1,391 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONString;
+
+/** Writes JSON entities as JSON text, straight from their fields.
+ * The text is the same <tt>toJson ().toString ()</tt> would produce, but
+ * without building the JSONObject tree first. Entities whose class has its
+ * own <tt>toJson ()</tt>, or a registered codec, are written through it.
+ * @author mtavares */
+final class EntityWriter {
+	static final String NON_FINITE = "JSON does not allow non-finite numbers.";
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray ();
+	/** Marks the values of the primitive fields, that are written without being boxed. */
+	private static final Object PRIMITIVE = new Object ();
+
+	private final Appendable out;
+
+	EntityWriter (Appendable out) {
+		this.out = out;
+	}
+
+	/** Write a entity as a JSON object.
+	 * Entities whose class is marked with {@link CachedSerialization} are
+	 * written with their text from the {@link SerializationCache}. */
+	void writeEntity (JSONEntity entity) throws JSONMappingException, IOException {
+		CodecListener listener = Instrumentation.listener;
+		if (listener == null) {
+			writeEntity (entity, EntityDescriptor.of (entity.getClass ()));
+			return;
+		}
+		long start = System.nanoTime ();
+		try {
+			writeEntity (entity, EntityDescriptor.of (entity.getClass ()));
+		} catch (JSONMappingException e) {
+			listener.failed (entity.getClass (), e);
+			throw e;
+		}
+		listener.encoded (entity.getClass (), System.nanoTime () - start);
+	}
+
+	private void writeEntity (JSONEntity entity, EntityDescriptor descriptor) throws JSONMappingException, IOException {
+		if (descriptor.isSerializationCached ())
+			this.out.append (SerializationCache.getDefault ().getText (entity));
+		else
+			writeUncached (entity, descriptor);
+	}
+
+	/** @return the JSON text of a entity, written now even if it's cached. */
+	static String toText (JSONEntity entity) throws JSONMappingException {
+		StringBuilder text = new StringBuilder ();
+		try {
+			new EntityWriter (text).writeUncached (entity, EntityDescriptor.of (entity.getClass ()));
+		} catch (IOException e) { // a StringBuilder doesn't throw it.
+			throw new JSONMappingException (e);
+		}
+		return text.toString ();
+	}
+
+	private void writeUncached (JSONEntity entity, EntityDescriptor descriptor) throws JSONMappingException, IOException {
+		Class<? extends JSONEntity> clazz = entity.getClass ();
+		if (descriptor.hasCustomToJson () || EntityCodecs.isRegistered (clazz)) {
+			Instrumentation.fallback (clazz, CodecListener.Fallback.TREE_ENCODING);
+			this.out.append (entity.toJson ().toString ());
+			return;
+		}
+
+		FieldDescriptor[] fields = descriptor.getFields ();
+		EncodeScratch scratch = EncodeScratch.get ();
+		Object[] values = scratch.acquireFrame (fields.length);
+		try {
+			for (int i=0; i<fields.length; i++) {
+				if (fields[i].getType ().isPrimitive ()) {
+					EntityWriter.checkFinite (fields[i], entity);
+					values[i] = EntityWriter.PRIMITIVE;
+					continue;
+				}
+				Object value;
+				try {
+					value = fields[i].get (entity);
+				} catch (Exception e) {
+					throw new JSONMappingException (e);
+				}
+				EntityWriter.checkFinite (value);
+				values[i] = value;
+			}
+
+			this.out.append ('{');
+			boolean first = true;
+			for (int index : descriptor.getWriteOrder (values)) {
+				if (!first)
+					this.out.append (',');
+				first = false;
+				writeQuoted (fields[index].getJsonName ());
+				this.out.append (':');
+				if (values[index] == EntityWriter.PRIMITIVE)
+					writePrimitive (fields[index], entity);
+				else
+					writeValue (values[index]);
+			}
+			this.out.append ('}');
+		} finally {
+			scratch.releaseFrame (fields.length);
+		}
+	}
+
+	/** Write the value of a primitive field without boxing it. */
+	private void writePrimitive (FieldDescriptor field, Object entity) throws JSONMappingException, IOException {
+		Class<?> type = field.getType ();
+		if (type == int.class)
+			writeInteger (field.getInt (entity));
+		else if (type == long.class)
+			writeInteger (field.getLong (entity));
+		else if (type == double.class)
+			writeDecimal (field.getDouble (entity));
+		else if (type == float.class)
+			writeDecimal (field.getFloat (entity));
+		else if (type == boolean.class)
+			this.out.append (field.getBoolean (entity) ? "true" : "false");
+		else if (type == short.class)
+			writeInteger (field.getShort (entity));
+		else if (type == byte.class)
+			writeInteger (field.getByte (entity));
+		else
+			writeQuoted (String.valueOf (field.getChar (entity)));
+	}
+
+	void writeInteger (long value) throws IOException {
+		PrimitiveArrays.appendInteger (this.out, 0, value);
+	}
+
+	/** Write a double the way <tt>JSONObject.numberToString</tt> does, without going through a String when writing to a StringBuilder. */
+	void writeDecimal (double value) throws JSONMappingException, IOException {
+		if (Double.isNaN (value) || Double.isInfinite (value))
+			throw new JSONMappingException (EntityWriter.NON_FINITE);
+		if (this.out instanceof StringBuilder) {
+			StringBuilder builder = (StringBuilder) this.out;
+			int start = builder.length ();
+			builder.append (value);
+			EntityWriter.trimFraction (builder, start);
+		} else {
+			PrimitiveArrays.appendDecimal (this.out, 0, Double.toString (value));
+		}
+	}
+
+	/** Write a float the way <tt>JSONObject.numberToString</tt> does, without going through a String when writing to a StringBuilder. */
+	void writeDecimal (float value) throws JSONMappingException, IOException {
+		if (Float.isNaN (value) || Float.isInfinite (value))
+			throw new JSONMappingException (EntityWriter.NON_FINITE);
+		if (this.out instanceof StringBuilder) {
+			StringBuilder builder = (StringBuilder) this.out;
+			int start = builder.length ();
+			builder.append (value);
+			EntityWriter.trimFraction (builder, start);
+		} else {
+			PrimitiveArrays.appendDecimal (this.out, 0, Float.toString (value));
+		}
+	}
+
+	/** Remove the trailing zeros of the fraction of the number at the end of the builder, as <tt>PrimitiveArrays.appendDecimal</tt> does. */
+	private static void trimFraction (StringBuilder builder, int start) {
+		int end = builder.length ();
+		boolean fraction = false;
+		for (int i=start; i<end; i++) {
+			char c = builder.charAt (i);
+			if (c == 'e' || c == 'E')
+				return;
+			if (c == '.')
+				fraction = true;
+		}
+		if (!fraction)
+			return;
+		while (builder.charAt (end - 1) == '0')
+			end--;
+		if (builder.charAt (end - 1) == '.')
+			end--;
+		builder.setLength (end);
+	}
+
+	/** Write a value the way it would be written after being converted by <tt>JSONEntity.toJson (Object)</tt>. */
+	void writeValue (Object value) throws JSONMappingException, IOException {
+		TypeAdapter<Object> adapter;
+		if (value == null) {
+			this.out.append ("null");
+		} else if (value instanceof JSONEntity) {
+			writeEntity ((JSONEntity) value);
+		} else if (value instanceof Map) {
+			writeMap ((Map<?, ?>) value);
+		} else if (value instanceof Enum) {
+			writePlain (EnumLookup.of ((Enum<?>) value).toJson ((Enum<?>) value));
+		} else if (value instanceof NumberList) {
+			((NumberList<?>) value).write (this.out);
+		} else if (value instanceof List) {
+			this.out.append ('[');
+			boolean first = true;
+			for (Object item : (List<?>) value) {
+				if (!first)
+					this.out.append (',');
+				first = false;
+				writeValue (item);
+			}
+			this.out.append (']');
+		} else if (value.getClass ().isArray ()) {
+			if (value.getClass ().getComponentType ().isPrimitive ()) {
+				PrimitiveArrays.write (value, this.out, this);
+				return;
+			}
+			this.out.append ('[');
+			boolean first = true;
+			for (Object item : (Object[]) value) {
+				if (!first)
+					this.out.append (',');
+				first = false;
+				writeValue (item);
+			}
+			this.out.append (']');
+		} else if ((adapter = TypeAdapters.forValue (value)) != null) {
+			writeValue (TypeAdapters.toJson (adapter, value));
+		} else {
+			writePlain (value);
+		}
+	}
+
+	private void writeMap (Map<?, ?> map) throws JSONMappingException, IOException {
+		// the same operations toJson (Object) does on the JSONObject, to get its key order.
+		HashMap<String, Object> keys = new HashMap<String, Object> ();
+		for (Object mapKey : map.keySet ()) {
+			Object value = map.get (mapKey);
+			if (value == null) {
+				keys.remove (EnumLookup.keyOf (mapKey));
+			} else {
+				EntityWriter.checkFinite (value);
+				keys.put (EnumLookup.keyOf (mapKey), value);
+			}
+		}
+
+		this.out.append ('{');
+		boolean first = true;
+		for (Map.Entry<String, Object> entry : keys.entrySet ()) {
+			if (!first)
+				this.out.append (',');
+			first = false;
+			writeQuoted (entry.getKey ());
+			this.out.append (':');
+			writeValue (entry.getValue ());
+		}
+		this.out.append ('}');
+	}
+
+	/** Write a value that isn't converted by <tt>JSONEntity.toJson (Object)</tt>, as <tt>JSONObject.valueToString</tt> does. */
+	private void writePlain (Object value) throws JSONMappingException, IOException {
+		try {
+			if (value.equals (null)) {
+				this.out.append ("null");
+			} else if (value instanceof JSONString) {
+				Object string = ((JSONString) value).toJSONString ();
+				if (!(string instanceof String))
+					throw new JSONMappingException ("Bad value from toJSONString: " + string);
+				this.out.append ((String) string);
+			} else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+				writeInteger (((Number) value).longValue ());
+			} else if (value instanceof Double) {
+				writeDecimal (((Double) value).doubleValue ());
+			} else if (value instanceof Float) {
+				writeDecimal (((Float) value).floatValue ());
+			} else if (value instanceof Number) {
+				this.out.append (JSONObject.numberToString ((Number) value));
+			} else if (value instanceof Boolean || value instanceof JSONObject || value instanceof JSONArray) {
+				this.out.append (value.toString ());
+			} else if (value instanceof Map) {
+				this.out.append (new JSONObject ((Map<?, ?>) value).toString ());
+			} else if (value instanceof Collection) {
+				this.out.append (new JSONArray ((Collection<?>) value).toString ());
+			} else {
+				writeQuoted (value.toString ());
+			}
+		} catch (JSONException e) {
+			throw new JSONMappingException (e);
+		} catch (RuntimeException e) {
+			throw new JSONMappingException (e);
+		}
+	}
+
+	/** Write a string between quotes, escaped the same way as <tt>JSONObject.quote</tt>. */
+	void writeQuoted (String string) throws IOException {
+		if (string == null || string.length () == 0) {
+			this.out.append ("\"\"");
+			return;
+		}
+
+		char c = 0;
+		int len = string.length ();
+		int start = 0;
+		this.out.append ('"');
+		for (int i=0; i<len; i++) {
+			char previous = c;
+			c = string.charAt (i);
+			String escaped;
+			switch (c) {
+				case '\\':
+					escaped = "\\\\";
+					break;
+				case '"':
+					escaped = "\\\"";
+					break;
+				case '/':
+					escaped = previous == '<' ? "\\/" : null;
+					break;
+				case '\b':
+					escaped = "\\b";
+					break;
+				case '\t':
+					escaped = "\\t";
+					break;
+				case '\n':
+					escaped = "\\n";
+					break;
+				case '\f':
+					escaped = "\\f";
+					break;
+				case '\r':
+					escaped = "\\r";
+					break;
+				default:
+					escaped = null;
+					if (c < ' ' || (c >= 0x80 && c < 0xa0) || (c >= 0x2000 && c < 0x2100)) {
+						this.out.append (string, start, i);
+						start = i + 1;
+						this.out.append ("\\u");
+						for (int shift=12; shift>=0; shift-=4)
+							this.out.append (EntityWriter.HEX_DIGITS[(c >> shift) & 0xf]);
+					}
+			}
+			if (escaped != null) {
+				this.out.append (string, start, i);
+				start = i + 1;
+				this.out.append (escaped);
+			}
+		}
+		this.out.append (string, start, len);
+		this.out.append ('"');
+	}
+
+	/** Check the value of a primitive field, without boxing it. */
+	private static void checkFinite (FieldDescriptor field, Object entity) throws JSONMappingException {
+		if (field.getType () == double.class)
+			EntityWriter.checkFinite (field.getDouble (entity));
+		else if (field.getType () == float.class)
+			EntityWriter.checkFinite (field.getFloat (entity));
+	}
+
+	private static void checkFinite (double value) throws JSONMappingException {
+		if (Double.isNaN (value) || Double.isInfinite (value))
+			throw new JSONMappingException (EntityWriter.NON_FINITE);
+	}
+
+	/** JSONObject refuses to hold non-finite numbers. */
+	private static void checkFinite (Object value) throws JSONMappingException {
+		if (value instanceof Double) {
+			if (((Double) value).isInfinite () || ((Double) value).isNaN ())
+				throw new JSONMappingException (EntityWriter.NON_FINITE);
+		} else if (value instanceof Float) {
+			if (((Float) value).isInfinite () || ((Float) value).isNaN ())
+				throw new JSONMappingException (EntityWriter.NON_FINITE);
+		}
+	}
+}
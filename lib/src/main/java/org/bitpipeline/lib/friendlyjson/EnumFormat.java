@@ -0,0 +1,40 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/** How the constants of a enum are written to and read from JSON.
+ * Without this annotation the constants are encoded with their name and
+ * values that aren't the name of a constant, or one of its
+ * {@link EnumAlias aliases}, can't be decoded.
+ * The constants are always decoded from their name and from their ordinal.
+ * @author mtavares */
+@Documented
+@Retention (RetentionPolicy.RUNTIME)
+@Target (ElementType.TYPE)
+public @interface EnumFormat {
+	/** Encode the constants with their ordinal instead of their name. */
+	boolean ordinal () default false;
+
+	/** The name of the constant decoded from the values that don't match any constant, empty for none. */
+	String fallback () default "";
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.util.HashMap;
+
+/** The tables to convert the constants of a enum class to and from JSON,
+ * built once for each class. Decoding with the tables doesn't throw and
+ * catch any exception, as <tt>Enum.valueOf</tt> does for unknown names, and
+ * encoding uses the names of the constants instead of <tt>toString ()</tt>.
+ * @see EnumFormat
+ * @see EnumAlias
+ * @author mtavares */
+final class EnumLookup {
+	private static final ClassValue<EnumLookup> LOOKUPS = new ClassValue<EnumLookup> () {
+		@Override
+		protected EnumLookup computeValue (Class<?> type) {
+			return new EnumLookup (type);
+		}
+	};
+
+	private final Class<?> enumClass;
+	/** The constants, by ordinal. */
+	private final Object[] constants;
+	/** The names of the constants, by ordinal. */
+	private final String[] names;
+	/** The JSON values of the constants, by ordinal. */
+	private final Object[] wireValues;
+	/** The constants by name and by alias. */
+	private final HashMap<String, Object> byName;
+	private final Object fallback;
+
+	private EnumLookup (Class<?> enumClass) {
+		this.enumClass = enumClass;
+		this.constants = enumClass.getEnumConstants ();
+		this.names = new String[this.constants.length];
+		this.wireValues = new Object[this.constants.length];
+		this.byName = new HashMap<String, Object> (this.constants.length * 2);
+
+		EnumFormat format = enumClass.getAnnotation (EnumFormat.class);
+		boolean ordinal = format != null && format.ordinal ();
+		for (int i=0; i<this.constants.length; i++) {
+			String name = ((Enum<?>) this.constants[i]).name ();
+			this.names[i] = name;
+			this.wireValues[i] = ordinal ? (Object) Integer.valueOf (i) : name;
+			this.byName.put (name, this.constants[i]);
+		}
+		// the names win over the aliases.
+		for (int i=0; i<this.constants.length; i++) {
+			EnumAlias alias = EnumLookup.getAlias (enumClass, this.names[i]);
+			if (alias == null)
+				continue;
+			for (String name : alias.value ()) {
+				if (!this.byName.containsKey (name))
+					this.byName.put (name, this.constants[i]);
+			}
+		}
+
+		String fallbackName = format != null ? format.fallback () : "";
+		if (fallbackName.isEmpty ()) {
+			this.fallback = null;
+		} else {
+			this.fallback = this.byName.get (fallbackName);
+			if (this.fallback == null)
+				throw new IllegalArgumentException ("The fallback " + fallbackName + " isn't a constant of " + enumClass.getName ());
+		}
+	}
+
+	private static EnumAlias getAlias (Class<?> enumClass, String name) {
+		try {
+			return enumClass.getField (name).getAnnotation (EnumAlias.class);
+		} catch (NoSuchFieldException e) {
+			return null;
+		}
+	}
+
+	/** Get the lookup tables of a enum class. */
+	static EnumLookup of (Class<?> enumClass) {
+		return EnumLookup.LOOKUPS.get (enumClass);
+	}
+
+	/** Get the lookup tables of the class of a enum constant, even if the constant has a body. */
+	static EnumLookup of (Enum<?> constant) {
+		return EnumLookup.LOOKUPS.get (constant.getDeclaringClass ());
+	}
+
+	/** Get the constant for a JSON value: a name, a alias or a ordinal.
+	 * @return the fallback constant for the values that don't match any constant.
+	 * @throws JSONMappingException if the value doesn't match any constant and there's no fallback. */
+	Object fromJson (Object json) throws JSONMappingException {
+		Object constant = null;
+		if (json instanceof String) {
+			constant = this.byName.get (json);
+		} else if (json instanceof Number) {
+			Number number = (Number) json;
+			int ordinal = number.intValue ();
+			if (ordinal >= 0 && ordinal < this.constants.length && number.doubleValue () == ordinal)
+				constant = this.constants[ordinal];
+		}
+		if (constant == null)
+			constant = this.fallback;
+		if (constant == null)
+			throw new JSONMappingException ("Unknown value " + json + " for " + this.enumClass.getName ());
+		return constant;
+	}
+
+	/** @return the JSON value of the constant, its name or its ordinal. */
+	Object toJson (Enum<?> constant) {
+		return this.wireValues[constant.ordinal ()];
+	}
+
+	/** @return the name of the constant. */
+	String getName (Enum<?> constant) {
+		return this.names[constant.ordinal ()];
+	}
+
+	/** @return the JSON key for a map key, the name of the enum constants and <tt>toString ()</tt> of everything else. */
+	static String keyOf (Object mapKey) {
+		if (mapKey instanceof Enum)
+			return EnumLookup.of ((Enum<?>) mapKey).getName ((Enum<?>) mapKey);
+		return mapKey.toString ();
+	}
+}
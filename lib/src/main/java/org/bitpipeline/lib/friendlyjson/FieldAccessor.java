@@ -0,0 +1,262 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/** Reads and writes the value of a field through method handles.
+ * The handles are bound once to the field and adapted to exact types, so
+ * primitive values are never boxed and the JIT can inline the access.
+ * @author mtavares */
+final class FieldAccessor {
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup ();
+
+	private final Field field;
+	/** (Object)T where T is the field type, or Object for references. */
+	private final MethodHandle getter;
+	/** (Object)Object, boxing the value of primitive fields. */
+	private final MethodHandle boxingGetter;
+	/** (Object,T)void where T is the field type, or Object for references.
+	 * <tt>null</tt> if the field can't be written (static final fields). */
+	private final MethodHandle setter;
+
+	FieldAccessor (Field field) {
+		this.field = field;
+		this.field.setAccessible (true);
+
+		Class<?> type = field.getType ();
+		Class<?> handleType = type.isPrimitive () ? type : Object.class;
+		boolean isStatic = Modifier.isStatic (field.getModifiers ());
+
+		MethodHandle get;
+		try {
+			get = FieldAccessor.LOOKUP.unreflectGetter (field);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException ("Can't read " + field, e);
+		}
+		if (isStatic)
+			get = MethodHandles.dropArguments (get, 0, Object.class);
+		this.getter = get.asType (MethodType.methodType (handleType, Object.class));
+		this.boxingGetter = get.asType (MethodType.methodType (Object.class, Object.class));
+
+		MethodHandle set;
+		try {
+			set = FieldAccessor.LOOKUP.unreflectSetter (field);
+			if (isStatic)
+				set = MethodHandles.dropArguments (set, 0, Object.class);
+			set = set.asType (MethodType.methodType (void.class, Object.class, handleType));
+		} catch (IllegalAccessException e) {
+			set = null;
+		}
+		this.setter = set;
+	}
+
+	/** @return the getter handle, of type (Object)T where T is the field type or Object for references. */
+	MethodHandle getGetterHandle () {
+		return this.getter;
+	}
+
+	/** @return the getter handle, of type (Object)Object. */
+	MethodHandle getBoxingGetterHandle () {
+		return this.boxingGetter;
+	}
+
+	/** @return the setter handle, of type (Object,T)void where T is the field type or
+	 *         Object for references, or <tt>null</tt> if the field can't be set. */
+	MethodHandle getSetterHandle () {
+		return this.setter;
+	}
+
+	private MethodHandle setter () throws IllegalAccessException {
+		if (this.setter == null)
+			throw new IllegalAccessException ("Can't set " + this.field);
+		return this.setter;
+	}
+
+	private static RuntimeException rethrow (Throwable t) {
+		if (t instanceof RuntimeException)
+			throw (RuntimeException) t;
+		if (t instanceof Error)
+			throw (Error) t;
+		throw new IllegalStateException (t);
+	}
+
+	/** Get the value of the field, boxed if the field is of a primitive type. */
+	Object get (Object obj) {
+		try {
+			return this.boxingGetter.invokeExact (obj);
+		} catch (Throwable t) {
+			throw FieldAccessor.rethrow (t);
+		}
+	}
+
+	/** Set the value of the field.
+	 * Values for primitive fields go through {@link Field#set(Object, Object)}
+	 * so the usual unboxing and widening conversions are still applied. */
+	void set (Object obj, Object value) throws IllegalAccessException {
+		if (this.field.getType ().isPrimitive ()) {
+			this.field.set (obj, value);
+			return;
+		}
+		MethodHandle handle = setter ();
+		try {
+			handle.invokeExact (obj, value);
+		} catch (Throwable t) {
+			throw FieldAccessor.rethrow (t);
+		}
+	}
+
+	boolean getBoolean (Object obj) {
+		try {
+			return (boolean) this.getter.invokeExact (obj);
+		} catch (Throwable t) {
+			throw FieldAccessor.rethrow (t);
+		}
+	}
+
+	void setBoolean (Object obj, boolean value) throws IllegalAccessException {
+		MethodHandle handle = setter ();
+		try {
+			handle.invokeExact (obj, value);
+		} catch (Throwable t) {
+			throw FieldAccessor.rethrow (t);
+		}
+	}
+
+	byte getByte (Object obj) {
+		try {
+			return (byte) this.getter.invokeExact (obj);
+		} catch (Throwable t) {
+			throw FieldAccessor.rethrow (t);
+		}
+	}
+
+	void setByte (Object obj, byte value) throws IllegalAccessException {
+		MethodHandle handle = setter ();
+		try {
+			handle.invokeExact (obj, value);
+		} catch (Throwable t) {
+			throw FieldAccessor.rethrow (t);
+		}
+	}
+
+	char getChar (Object obj) {
+		try {
+			return (char) this.getter.invokeExact (obj);
+		} catch (Throwable t) {
+			throw FieldAccessor.rethrow (t);
+		}
+	}
+
+	void setChar (Object obj, char value) throws IllegalAccessException {
+		MethodHandle handle = setter ();
+		try {
+			handle.invokeExact (obj, value);
+		} catch (Throwable t) {
+			throw FieldAccessor.rethrow (t);
+		}
+	}
+
+	short getShort (Object obj) {
+		try {
+			return (short) this.getter.invokeExact (obj);
+		} catch (Throwable t) {
+			throw FieldAccessor.rethrow (t);
+		}
+	}
+
+	void setShort (Object obj, short value) throws IllegalAccessException {
+		MethodHandle handle = setter ();
+		try {
+			handle.invokeExact (obj, value);
+		} catch (Throwable t) {
+			throw FieldAccessor.rethrow (t);
+		}
+	}
+
+	int getInt (Object obj) {
+		try {
+			return (int) this.getter.invokeExact (obj);
+		} catch (Throwable t) {
+			throw FieldAccessor.rethrow (t);
+		}
+	}
+
+	void setInt (Object obj, int value) throws IllegalAccessException {
+		MethodHandle handle = setter ();
+		try {
+			handle.invokeExact (obj, value);
+		} catch (Throwable t) {
+			throw FieldAccessor.rethrow (t);
+		}
+	}
+
+	long getLong (Object obj) {
+		try {
+			return (long) this.getter.invokeExact (obj);
+		} catch (Throwable t) {
+			throw FieldAccessor.rethrow (t);
+		}
+	}
+
+	void setLong (Object obj, long value) throws IllegalAccessException {
+		MethodHandle handle = setter ();
+		try {
+			handle.invokeExact (obj, value);
+		} catch (Throwable t) {
+			throw FieldAccessor.rethrow (t);
+		}
+	}
+
+	float getFloat (Object obj) {
+		try {
+			return (float) this.getter.invokeExact (obj);
+		} catch (Throwable t) {
+			throw FieldAccessor.rethrow (t);
+		}
+	}
+
+	void setFloat (Object obj, float value) throws IllegalAccessException {
+		MethodHandle handle = setter ();
+		try {
+			handle.invokeExact (obj, value);
+		} catch (Throwable t) {
+			throw FieldAccessor.rethrow (t);
+		}
+	}
+
+	double getDouble (Object obj) {
+		try {
+			return (double) this.getter.invokeExact (obj);
+		} catch (Throwable t) {
+			throw FieldAccessor.rethrow (t);
+		}
+	}
+
+	void setDouble (Object obj, double value) throws IllegalAccessException {
+		MethodHandle handle = setter ();
+		try {
+			handle.invokeExact (obj, value);
+		} catch (Throwable t) {
+			throw FieldAccessor.rethrow (t);
+		}
+	}
+}
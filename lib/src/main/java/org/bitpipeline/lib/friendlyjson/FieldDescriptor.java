@@ -0,0 +1,191 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+
+/** The mapping information of a single field of a JSON entity.
+ * Everything that can be found out by reflection about the field is
+ * resolved once, when the descriptor of the declaring entity is built.
+ * @author mtavares */
+final class FieldDescriptor {
+	private final Field field;
+	private final FieldAccessor accessor;
+	private final String jsonName;
+	private final Class<?> type;
+	private final Class<?> componentType;
+	private final boolean entity;
+	private final JSONEntity.FieldSetter reader;
+	private final Class<?>[] typeArguments;
+	private final boolean lowCardinality;
+
+	FieldDescriptor (Field field, JSONEntity.FieldSetter reader) {
+		this.field = field;
+		this.accessor = new FieldAccessor (field);
+		this.jsonName = field.getName ();
+		this.type = field.getType ();
+		this.componentType = this.type.getComponentType ();
+		this.entity = JSONEntity.class.isAssignableFrom (this.type);
+		this.reader = reader;
+		this.typeArguments = FieldDescriptor.resolveTypeArguments (field.getGenericType ());
+		this.lowCardinality = this.type == String.class && field.isAnnotationPresent (LowCardinality.class);
+	}
+
+	/** Get the raw classes of the generic type arguments.
+	 * @return <tt>null</tt> if the type is not parameterized or if any of the
+	 *         arguments can't be resolved into a class. */
+	private static Class<?>[] resolveTypeArguments (Type genericType) {
+		if (! (genericType instanceof ParameterizedType))
+			return null;
+		Type[] actualTypeArguments = ((ParameterizedType) genericType).getActualTypeArguments ();
+		Class<?>[] classes = new Class<?>[actualTypeArguments.length];
+		for (int i=0; i<actualTypeArguments.length; i++) {
+			Type argument = actualTypeArguments[i];
+			if (argument instanceof ParameterizedType)
+				argument = ((ParameterizedType) argument).getRawType ();
+			if (! (argument instanceof Class))
+				return null;
+			classes[i] = (Class<?>) argument;
+		}
+		return classes;
+	}
+
+	Field getField () {
+		return this.field;
+	}
+
+	FieldAccessor getAccessor () {
+		return this.accessor;
+	}
+
+	String getJsonName () {
+		return this.jsonName;
+	}
+
+	Class<?> getType () {
+		return this.type;
+	}
+
+	boolean isArray () {
+		return this.componentType != null;
+	}
+
+	Class<?> getComponentType () {
+		return this.componentType;
+	}
+
+	boolean isEntity () {
+		return this.entity;
+	}
+
+	/** @return <tt>true</tt> if the field is a String marked with {@link LowCardinality}. */
+	boolean isLowCardinality () {
+		return this.lowCardinality;
+	}
+
+	/** @return the reader registered for the field type or <tt>null</tt> if there's none. */
+	JSONEntity.FieldSetter getReader () {
+		return this.reader;
+	}
+
+	/** Get the class of one of the generic type arguments of the field.
+	 * @throws JSONMappingException if the field doesn't have the type argument resolved. */
+	Class<?> getTypeArgument (int index) throws JSONMappingException {
+		if (this.typeArguments == null || index >= this.typeArguments.length)
+			throw new JSONMappingException ("Can't resolve the generic type of " + this.field);
+		return this.typeArguments[index];
+	}
+
+	Object get (Object obj) {
+		return this.accessor.get (obj);
+	}
+
+	void set (Object obj, Object value) throws IllegalAccessException {
+		this.accessor.set (obj, value);
+	}
+
+	boolean getBoolean (Object obj) {
+		return this.accessor.getBoolean (obj);
+	}
+
+	void setBoolean (Object obj, boolean value) throws IllegalAccessException {
+		this.accessor.setBoolean (obj, value);
+	}
+
+	byte getByte (Object obj) {
+		return this.accessor.getByte (obj);
+	}
+
+	void setByte (Object obj, byte value) throws IllegalAccessException {
+		this.accessor.setByte (obj, value);
+	}
+
+	char getChar (Object obj) {
+		return this.accessor.getChar (obj);
+	}
+
+	void setChar (Object obj, char value) throws IllegalAccessException {
+		this.accessor.setChar (obj, value);
+	}
+
+	short getShort (Object obj) {
+		return this.accessor.getShort (obj);
+	}
+
+	void setShort (Object obj, short value) throws IllegalAccessException {
+		this.accessor.setShort (obj, value);
+	}
+
+	int getInt (Object obj) {
+		return this.accessor.getInt (obj);
+	}
+
+	void setInt (Object obj, int value) throws IllegalAccessException {
+		this.accessor.setInt (obj, value);
+	}
+
+	long getLong (Object obj) {
+		return this.accessor.getLong (obj);
+	}
+
+	void setLong (Object obj, long value) throws IllegalAccessException {
+		this.accessor.setLong (obj, value);
+	}
+
+	float getFloat (Object obj) {
+		return this.accessor.getFloat (obj);
+	}
+
+	void setFloat (Object obj, float value) throws IllegalAccessException {
+		this.accessor.setFloat (obj, value);
+	}
+
+	double getDouble (Object obj) {
+		return this.accessor.getDouble (obj);
+	}
+
+	void setDouble (Object obj, double value) throws IllegalAccessException {
+		this.accessor.setDouble (obj, value);
+	}
+
+	@Override
+	public String toString () {
+		return this.field.toString ();
+	}
+}
@@ -0,0 +1,210 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/** The fields of a entity class to be decoded, leaving the others empty.
+ * Each field is given by its path, the JSON names from the entity class
+ * down to the field separated by dots: <tt>"name"</tt>, or
+ * <tt>"parts.number"</tt> for the field <tt>number</tt> of the entities in
+ * <tt>parts</tt>, which may be a entity, a array or list of entities or a
+ * map with entities as values. A field given without nested paths is
+ * decoded whole.
+ *
+ * The paths are resolved once, when the field set is created, and a field
+ * set can then be used for any number of decodings, from any thread.
+ * When reading JSON text the members that aren't in the set are skipped
+ * without being built, when decoding a JSON object they aren't converted.
+ * @author mtavares */
+public final class FieldSet {
+	private final Class<?> entityClass;
+	private final EntityDescriptor descriptor;
+	/** Indexed by the index of the JSON name in the descriptor. */
+	private final boolean[] included;
+	/** The fields of the nested entities, <tt>null</tt> for the fields decoded whole. */
+	private final FieldSet[] nested;
+	/** If the nested entities are the values of a map. */
+	private final boolean[] mapValues;
+	/** The indexes of the JSON names included, in the order they were given. */
+	private int[] nameIndexes;
+
+	private FieldSet (Class<?> entityClass) {
+		this.entityClass = entityClass;
+		this.descriptor = EntityDescriptor.of (entityClass);
+		int count = this.descriptor.getNameCount ();
+		this.included = new boolean[count];
+		this.nested = new FieldSet[count];
+		this.mapValues = new boolean[count];
+		this.nameIndexes = new int[0];
+	}
+
+	/** Create the field set of a entity class.
+	 * @param paths are the paths of the fields to decode.
+	 * @throws JSONMappingException if a path doesn't lead to a mapped field. */
+	public static FieldSet of (Class<? extends JSONEntity> entityClass, String... paths) throws JSONMappingException {
+		if (entityClass == null)
+			throw new IllegalArgumentException ("The entity class is required.");
+		FieldSet fieldSet = new FieldSet (entityClass);
+		for (String path : paths)
+			fieldSet.add (path, path.split ("\\.", -1), 0);
+		return fieldSet;
+	}
+
+	private void add (String path, String[] names, int level) throws JSONMappingException {
+		int nameIndex = this.descriptor.getNameIndex (names[level]);
+		if (nameIndex < 0)
+			throw new JSONMappingException (this.entityClass.getName () + " has no field for '" + names[level] + "' in '" + path + "'");
+
+		boolean whole = level == names.length - 1;
+		if (!this.included[nameIndex]) {
+			this.included[nameIndex] = true;
+			int[] indexes = new int[this.nameIndexes.length + 1];
+			System.arraycopy (this.nameIndexes, 0, indexes, 0, this.nameIndexes.length);
+			indexes[this.nameIndexes.length] = nameIndex;
+			this.nameIndexes = indexes;
+			if (whole)
+				return;
+			FieldDescriptor field = this.descriptor.getFieldsByName (nameIndex)[0];
+			Class<?> nestedClass = FieldSet.getNestedEntityClass (field);
+			if (nestedClass == null)
+				throw new JSONMappingException ("The field '" + names[level] + "' in '" + path + "' has no entities with fields.");
+			this.nested[nameIndex] = new FieldSet (nestedClass);
+			this.mapValues[nameIndex] = field.getType () == Map.class;
+		} else if (whole) {
+			this.nested[nameIndex] = null;
+			return;
+		}
+
+		if (this.nested[nameIndex] != null) // otherwise it's already decoded whole.
+			this.nested[nameIndex].add (path, names, level + 1);
+	}
+
+	/** @return the class of the entities in the field, <tt>null</tt> if it doesn't have entities. */
+	private static Class<?> getNestedEntityClass (FieldDescriptor field) throws JSONMappingException {
+		Class<?> nestedClass;
+		if (field.isArray ())
+			nestedClass = field.getComponentType ();
+		else if (field.getType () == List.class)
+			nestedClass = field.getTypeArgument (0);
+		else if (field.getType () == Map.class)
+			nestedClass = field.getTypeArgument (1);
+		else
+			nestedClass = field.getType ();
+		return JSONEntity.class.isAssignableFrom (nestedClass) ? nestedClass : null;
+	}
+
+	/** Check that the field set is for the class being decoded. */
+	static void check (FieldSet fields, Class<?> clazz) {
+		if (fields == null)
+			throw new IllegalArgumentException ("The field set is required.");
+		if (fields.entityClass != clazz)
+			throw new IllegalArgumentException ("The field set is for " + fields.entityClass.getName () + ", not " + clazz.getName ());
+	}
+
+	/** @return the entity class of the field set. */
+	public Class<?> getEntityClass () {
+		return this.entityClass;
+	}
+
+	/** @return <tt>true</tt> if the field with the JSON name is to be decoded. */
+	public boolean contains (String jsonName) {
+		int nameIndex = this.descriptor.getNameIndex (jsonName);
+		return nameIndex >= 0 && this.included[nameIndex];
+	}
+
+	/** @return the JSON names of the fields to decode, in the order they were first given. */
+	public List<String> getNames () {
+		List<String> names = new ArrayList<String> (this.nameIndexes.length);
+		for (int nameIndex : this.nameIndexes)
+			names.add (this.descriptor.getName (nameIndex));
+		return names;
+	}
+
+	/** @return the field set of the entities in the field, <tt>null</tt> if
+	 *         the field is decoded whole or isn't in the set. */
+	public FieldSet getNested (String jsonName) {
+		int nameIndex = this.descriptor.getNameIndex (jsonName);
+		return nameIndex >= 0 ? this.nested[nameIndex] : null;
+	}
+
+	boolean includes (int nameIndex) {
+		return nameIndex >= 0 && this.included[nameIndex];
+	}
+
+	FieldSet getNested (int nameIndex) {
+		return this.nested[nameIndex];
+	}
+
+	/** Make a JSON object with only the members in the set.
+	 * The values are shared with the original object, except for the
+	 * objects and arrays of the nested entities, which are also projected. */
+	JSONObject project (JSONObject json) {
+		JSONObject projection = new JSONObject ();
+		for (int nameIndex : this.nameIndexes) {
+			String name = this.descriptor.getName (nameIndex);
+			Object value = json.opt (name);
+			if (value != null)
+				FieldSet.put (projection, name, project (nameIndex, value));
+		}
+		return projection;
+	}
+
+	/** Project the JSON value of a field into the fields of its nested entities. */
+	Object project (int nameIndex, Object value) {
+		FieldSet nestedSet = this.nested[nameIndex];
+		if (nestedSet == null)
+			return value;
+		if (value instanceof JSONArray) {
+			JSONArray array = (JSONArray) value;
+			JSONArray projection = new JSONArray ();
+			for (int i=0; i<array.length (); i++)
+				projection.put (nestedSet.projectEntity (array.opt (i)));
+			return projection;
+		}
+		if (value instanceof JSONObject && this.mapValues[nameIndex]) {
+			JSONObject map = (JSONObject) value;
+			JSONObject projection = new JSONObject ();
+			Iterator<?> keys = map.keys ();
+			while (keys.hasNext ()) {
+				String key = keys.next ().toString ();
+				FieldSet.put (projection, key, nestedSet.projectEntity (map.opt (key)));
+			}
+			return projection;
+		}
+		return nestedSet.projectEntity (value);
+	}
+
+	private Object projectEntity (Object value) {
+		return value instanceof JSONObject ? project ((JSONObject) value) : value;
+	}
+
+	/** Put a value that came from another JSON object, so it's known to be valid. */
+	private static void put (JSONObject json, String key, Object value) {
+		try {
+			json.put (key, value);
+		} catch (Exception e) {
+			throw new IllegalStateException (e);
+		}
+	}
+}
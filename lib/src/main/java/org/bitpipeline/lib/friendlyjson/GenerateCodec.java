@@ -0,0 +1,40 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/** Asks the friendlyJSON annotation processor to generate a codec for a JSON entity class.
+ * The codec of <tt>com.example.Foo</tt> is generated as
+ * <tt>com.example.FooCodec</tt> (<tt>com.example.Outer_InnerCodec</tt> for
+ * nested classes) and is found and used by {@link EntityCodecs} without any
+ * registration. The mapped fields of the class, including the ones inherited
+ * from super classes, must not be private.
+ *
+ * The generated codecs follow the {@link DecodeOptions} of the decoding,
+ * with lazy collections, parallel decoding and the {@link StringCache}, but
+ * not presence tracking.
+ * @author mtavares */
+@Documented
+@Retention (RetentionPolicy.CLASS)
+@Target (ElementType.TYPE)
+public @interface GenerateCodec {
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/** Conversions used by the codecs generated with {@link GenerateCodec}.
+ * Not meant to be used directly.
+ * @author mtavares */
+public final class GeneratedCodecSupport {
+	private GeneratedCodecSupport () {
+	}
+
+	/** Convert a value read from a JSON object into a instance of the class,
+	 * with the same rules used to decode collection elements. */
+	public static Object fromJson (Class<?> clazz, Object json) throws JSONMappingException {
+		return JSONEntity.fromJson (clazz, json);
+	}
+
+	/** Convert a value read from a JSON object into a instance of the class,
+	 * giving its declared generic type to the adapter of the class. */
+	public static Object fromJson (Class<?> clazz, Type type, Object json) throws JSONMappingException {
+		return JSONEntity.fromJson (clazz, json, type);
+	}
+
+	/** @return the generic type of a field declared by a class. */
+	public static Type fieldType (Class<?> clazz, String name) {
+		try {
+			return clazz.getDeclaredField (name).getGenericType ();
+		} catch (NoSuchFieldException e) {
+			throw new IllegalStateException ("The codec of " + clazz.getName () + " doesn't match the class.", e);
+		}
+	}
+
+	/** @return a type argument of a parameterized type. */
+	public static Type typeArgument (Type type, int index) {
+		return ((ParameterizedType) type).getActualTypeArguments ()[index];
+	}
+
+	/** @return the component type of a array type. */
+	public static Type componentType (Type type) {
+		if (type instanceof GenericArrayType)
+			return ((GenericArrayType) type).getGenericComponentType ();
+		return ((Class<?>) type).getComponentType ();
+	}
+
+	/** @return the String from the {@link StringCache} of the decoding going on, if it has one, or the given String. */
+	public static String canonicalize (String string) {
+		return DecodeOptions.current ().canonicalize (string);
+	}
+
+	/** Decode a list as the options of the decoding going on ask for: as a
+	 * view of the JSON or, for lists of entities, in parallel.
+	 * @return <tt>null</tt> if the list is to be decoded by the codec. */
+	public static List<?> list (Class<?> elementClass, JSONArray json) throws JSONMappingException {
+		DecodeOptions options = DecodeOptions.current ();
+		if (options.isLazyCollections ())
+			return new LazyList<Object> (elementClass, json, options);
+		if (!options.isParallel (json.length ()) || !JSONEntity.class.isAssignableFrom (elementClass))
+			return null;
+		Exception[] failures = new Exception[json.length ()];
+		Object[] items = ParallelDecoder.decode (elementClass, json, options, failures);
+		Exception failure = ParallelDecoder.firstFailure (failures);
+		if (failure instanceof JSONMappingException)
+			throw (JSONMappingException) failure;
+		if (failure != null)
+			throw new JSONMappingException (failure);
+		return new ArrayList<Object> (Arrays.asList (items));
+	}
+
+	/** Decode a map as a view of the JSON, if the options of the decoding going on ask for it.
+	 * @return <tt>null</tt> if the map is to be decoded by the codec. */
+	public static Map<?, ?> map (Class<?> keyClass, Class<?> valueClass, JSONObject json) throws JSONMappingException {
+		DecodeOptions options = DecodeOptions.current ();
+		if (!options.isLazyCollections ())
+			return null;
+		return new LazyMap<Object, Object> (keyClass, valueClass, json, options);
+	}
+
+	/** Decode the entities of a array in parallel, if the options of the decoding going on ask for it.
+	 * @param invalid gets, in its first position, how many elements couldn't
+	 *        be decoded. Those are left <tt>null</tt>.
+	 * @return <tt>false</tt> if the array is to be decoded by the codec. */
+	public static boolean parallelArray (Class<?> componentClass, JSONArray json, Object[] values, int[] invalid) {
+		DecodeOptions options = DecodeOptions.current ();
+		if (!options.isParallel (json.length ()))
+			return false;
+		Exception[] failures = new Exception[json.length ()];
+		Object[] items = ParallelDecoder.decode (componentClass, json, options, failures);
+		for (int i=0; i<items.length; i++) {
+			if (failures[i] != null)
+				invalid[0]++;
+			else
+				values[i] = items[i];
+		}
+		return true;
+	}
+
+	/** Convert a JSON array into a {@link IntList}, {@link LongList} or
+	 * {@link DoubleList}, as the fields of those types are decoded.
+	 * @throws JSONMappingException if a element isn't a number. */
+	public static NumberList<?> numberList (Class<?> listClass, JSONArray json) throws JSONMappingException {
+		NumberList<?> list = NumberList.create (listClass, json.length (), DecodeOptions.current ().isOffHeapNumberLists ());
+		for (int i=0; i<json.length (); i++) {
+			if (!list.addJson (json.opt (i)))
+				throw new JSONMappingException ("Invalid element " + i + " for a " + listClass.getName ());
+		}
+		return list;
+	}
+
+	/** Convert a JSON array into a array of primitives, as the fields of those types are decoded.
+	 * @param invalid gets, in its first position, how many elements couldn't
+	 *        be converted. Those are left with the default value. */
+	public static Object primitiveArray (Class<?> componentType, JSONArray json, int[] invalid) {
+		return PrimitiveArrays.fromJson (componentType, json, invalid);
+	}
+
+	/** Convert a value into what gets put into a JSON object. */
+	public static Object toJson (Object value) throws JSONMappingException {
+		return JSONEntity.toJson (value);
+	}
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+/** Installs the listener told about the entities decoded and encoded.
+ * There's none by default.
+ * @author mtavares */
+public final class Instrumentation {
+	/** Read by the decoding and encoding, <tt>null</tt> when there's no listener. */
+	static volatile CodecListener listener;
+
+	private Instrumentation () {
+	}
+
+	/** Install a listener, replacing the previous one.
+	 * @param listener is the listener, <tt>null</tt> to stop listening. */
+	public static void setListener (CodecListener listener) {
+		Instrumentation.listener = listener;
+	}
+
+	/** @return the listener installed, <tt>null</tt> if there's none. */
+	public static CodecListener getListener () {
+		return Instrumentation.listener;
+	}
+
+	/** Tell the listener, if there's one, that a entity took a slower path. */
+	static void fallback (Class<?> entityClass, CodecListener.Fallback fallback) {
+		CodecListener listener = Instrumentation.listener;
+		if (listener != null)
+			listener.fallback (entityClass, fallback);
+	}
+
+	/** Tell the listener, if there's one, the size of a document read. */
+	static void read (Class<?> entityClass, long bytes) {
+		CodecListener listener = Instrumentation.listener;
+		if (listener != null)
+			listener.read (entityClass, bytes);
+	}
+
+	/** Tell the listener, if there's one, the size of a document written as text. */
+	static void written (Class<?> entityClass, CharSequence text) {
+		CodecListener listener = Instrumentation.listener;
+		if (listener != null)
+			listener.written (entityClass, EncodeScratch.utf8Length (text));
+	}
+
+	/** Tell the listener, if there's one, the size of a document written as bytes. */
+	static void written (Class<?> entityClass, long bytes) {
+		CodecListener listener = Instrumentation.listener;
+		if (listener != null)
+			listener.written (entityClass, bytes);
+	}
+}
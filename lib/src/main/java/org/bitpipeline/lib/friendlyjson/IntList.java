@@ -0,0 +1,164 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+import org.json.JSONArray;
+
+/** A list of <tt>int</tt> values, stored without boxing them.
+ * @see NumberList
+ * @author mtavares */
+public final class IntList extends NumberList<Integer> {
+	private IntBuffer values;
+
+	public IntList () {
+		this (NumberList.DEFAULT_CAPACITY, false);
+	}
+
+	public IntList (int capacity) {
+		this (capacity, false);
+	}
+
+	/**
+	 * @param offHeap if the values are to be kept in a direct buffer, off the heap. */
+	public IntList (int capacity, boolean offHeap) {
+		super (offHeap);
+		if (capacity < 0)
+			throw new IllegalArgumentException ("Illegal capacity: " + capacity);
+		this.values = IntList.allocate (capacity, offHeap);
+	}
+
+	/** Create a list, on the heap, with a copy of the values. */
+	public IntList (int[] values) {
+		this (values.length, false);
+		this.values.put (values);
+		this.size = values.length;
+	}
+
+	private static IntBuffer allocate (int capacity, boolean offHeap) {
+		if (offHeap)
+			return ByteBuffer.allocateDirect (capacity * 4).order (ByteOrder.nativeOrder ()).asIntBuffer ();
+		return IntBuffer.allocate (capacity);
+	}
+
+	private void ensureCapacity (int minimum) {
+		if (minimum <= this.values.capacity ())
+			return;
+		IntBuffer grown = IntList.allocate (NumberList.grow (this.values.capacity (), minimum), isOffHeap ());
+		this.values.clear ();
+		this.values.limit (this.size);
+		grown.put (this.values);
+		this.values = grown;
+	}
+
+	public int getInt (int index) {
+		checkIndex (index);
+		return this.values.get (index);
+	}
+
+	/** @return the value that was at the position. */
+	public int setInt (int index, int value) {
+		checkIndex (index);
+		int old = this.values.get (index);
+		this.values.put (index, value);
+		return old;
+	}
+
+	public void addInt (int value) {
+		ensureCapacity (this.size + 1);
+		this.values.put (this.size++, value);
+		this.modCount++;
+	}
+
+	public void addInt (int index, int value) {
+		checkPosition (index);
+		ensureCapacity (this.size + 1);
+		for (int i=this.size; i>index; i--)
+			this.values.put (i, this.values.get (i - 1));
+		this.values.put (index, value);
+		this.size++;
+		this.modCount++;
+	}
+
+	/** @return the value that was removed. */
+	public int removeInt (int index) {
+		checkIndex (index);
+		int old = this.values.get (index);
+		for (int i=index + 1; i<this.size; i++)
+			this.values.put (i - 1, this.values.get (i));
+		this.size--;
+		this.modCount++;
+		return old;
+	}
+
+	/** @return a new array with the values. */
+	public int[] toIntArray () {
+		int[] array = new int[this.size];
+		for (int i=0; i<this.size; i++)
+			array[i] = this.values.get (i);
+		return array;
+	}
+
+	@Override
+	public Integer get (int index) {
+		return Integer.valueOf (getInt (index));
+	}
+
+	@Override
+	public Integer set (int index, Integer value) {
+		return Integer.valueOf (setInt (index, value.intValue ()));
+	}
+
+	@Override
+	public void add (int index, Integer value) {
+		addInt (index, value.intValue ());
+	}
+
+	@Override
+	public Integer remove (int index) {
+		return Integer.valueOf (removeInt (index));
+	}
+
+	@Override
+	boolean addJson (Object value) {
+		Number number = PrimitiveArrays.toNumber (value);
+		if (number == null)
+			return false;
+		addInt (number.intValue ());
+		return true;
+	}
+
+	@Override
+	JSONArray toJSONArray () {
+		JSONArray json = new JSONArray ();
+		for (int i=0; i<this.size; i++)
+			json.put (this.values.get (i));
+		return json;
+	}
+
+	@Override
+	void write (Appendable out) throws JSONMappingException, IOException {
+		out.append ('[');
+		for (int i=0; i<this.size; i++)
+			PrimitiveArrays.appendInteger (out, i, this.values.get (i));
+		out.append (']');
+	}
+}
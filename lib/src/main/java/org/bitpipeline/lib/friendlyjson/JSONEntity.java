@@ -16,16 +16,25 @@
  ***************************************************************************/
 package org.bitpipeline.lib.friendlyjson;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Reader;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.lang.reflect.Array;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
-import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -34,6 +43,7 @@ import java.util.Map;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
 
 /** The base of all JSON entities.
@@ -51,7 +61,18 @@ import org.json.JSONObject;
  * <tt>toJSON ()</tt>. To create a instance of the object from JSON use the
  * constructor with <tt>JSONObject</tt> as parameter. */
 public abstract class JSONEntity {
-	private static final String MSG_MUST_HAVE_CONSTRUCTOR = " must implement a public constructor with a JSONObject as argument.";
+	static final String MSG_MUST_HAVE_CONSTRUCTOR = " must implement a public constructor with a JSONObject as argument.";
+
+	/** A bit for each JSON name of the entity class, set if the member was
+	 * present when decoding. <tt>null</tt> unless decoded with presence tracking. */
+	private transient long[] presence;
+	/** The JSON form of the entity when it was last marked clean.
+	 * <tt>null</tt> unless its changes are tracked. */
+	private transient JSONObject baseline;
+	/** The JSON text of the entity in the {@link SerializationCache}.
+	 * <tt>null</tt> unless its class is marked with {@link CachedSerialization}
+	 * and it was written since last invalidated. */
+	transient volatile SerializationCache.Entry serialized;
 
 	public JSONEntity () {
 	}
@@ -66,197 +87,657 @@ public abstract class JSONEntity {
 	public JSONEntity (JSONObject json) throws JSONMappingException {
 		if (json == null)
 			return;
-		Class<?> clazz = this.getClass ();
-		List<Field> declaredFields = new ArrayList<Field> ();
-		do {
-			Field[] fields = clazz.getDeclaredFields ();
-			declaredFields.addAll (Arrays.asList (fields));
-			clazz = clazz.getSuperclass ();
-		} while (clazz != null && !clazz.isAssignableFrom (JSONEntity.class));
-		for (Field field : declaredFields) {
-			if ( (field.getModifiers () & Modifier.TRANSIENT) != 0) { // don't care about transient fields.
+		EntityCodecs.decode (this, json);
+	}
+
+	/** Read a entity from JSON text.
+	 * The nested entities, lists, maps and arrays are decoded as the text
+	 * is read, without building a JSON object with the whole text first.
+	 * Each entity is still created with its <tt>JSONObject</tt> constructor,
+	 * getting a JSON object with only its own members.
+	 * @throws JSONMappingException
+	 * @throws JSONException if the text isn't valid JSON or can't be read. */
+	public static <T extends JSONEntity> T read (Class<T> clazz, Reader reader) throws JSONMappingException, JSONException {
+		return new EntityReader (new JSONTokener (reader)).readEntity (clazz);
+	}
+
+	/** Read a entity from JSON text encoded in UTF-8.
+	 * The stream is not closed.
+	 * @see #read(Class, Reader) */
+	public static <T extends JSONEntity> T read (Class<T> clazz, InputStream stream) throws JSONMappingException, JSONException {
+		return JSONEntity.read (clazz, new InputStreamReader (stream, StandardCharsets.UTF_8));
+	}
+
+	/** Read a entity from JSON text encoded in UTF-8.
+	 * @see #read(Class, ByteBuffer) */
+	public static <T extends JSONEntity> T read (Class<T> clazz, byte[] utf8) throws JSONMappingException, JSONException {
+		return JSONEntity.read (clazz, ByteBuffer.wrap (utf8));
+	}
+
+	/** Read a entity from JSON text encoded in UTF-8, between the position and the limit of the buffer.
+	 * The bytes are decoded as they are read, without a copy of the text as
+	 * a String. The keys are matched against the names of the fields in
+	 * their UTF-8 form, and Strings are only created for the values assigned
+	 * to fields. The position of the buffer isn't changed.
+	 * @see #read(Class, Reader) */
+	public static <T extends JSONEntity> T read (Class<T> clazz, ByteBuffer utf8) throws JSONMappingException, JSONException {
+		Instrumentation.read (clazz, utf8.remaining ());
+		return new EntityReader (new Utf8Tokener (utf8)).readEntity (clazz);
+	}
+
+	/** Read only some of the fields of a entity from JSON text.
+	 * The members that aren't in the field set are skipped without being built.
+	 * @see #read(Class, Reader) */
+	public static <T extends JSONEntity> T read (Class<T> clazz, Reader reader, FieldSet fields) throws JSONMappingException, JSONException {
+		return new EntityReader (new JSONTokener (reader)).readEntity (clazz, fields);
+	}
+
+	/** Read only some of the fields of a entity from JSON text encoded in UTF-8.
+	 * @see #read(Class, ByteBuffer, FieldSet) */
+	public static <T extends JSONEntity> T read (Class<T> clazz, byte[] utf8, FieldSet fields) throws JSONMappingException, JSONException {
+		return JSONEntity.read (clazz, ByteBuffer.wrap (utf8), fields);
+	}
+
+	/** Read only some of the fields of a entity from JSON text encoded in UTF-8, between the position and the limit of the buffer.
+	 * @see #read(Class, ByteBuffer)
+	 * @see #read(Class, Reader, FieldSet) */
+	public static <T extends JSONEntity> T read (Class<T> clazz, ByteBuffer utf8, FieldSet fields) throws JSONMappingException, JSONException {
+		Instrumentation.read (clazz, utf8.remaining ());
+		return new EntityReader (new Utf8Tokener (utf8)).readEntity (clazz, fields);
+	}
+
+	/** Read a entity from a file with JSON text encoded in UTF-8, from the position of the channel.
+	 * The file is read through memory mappings of parts of it, so it doesn't
+	 * have to fit in the heap nor in a single mapped buffer.
+	 * @see #read(Class, ByteBuffer) */
+	public static <T extends JSONEntity> T read (Class<T> clazz, FileChannel file) throws JSONMappingException, JSONException, IOException {
+		Instrumentation.read (clazz, file.size () - file.position ());
+		return new EntityReader (new Utf8Tokener (file)).readEntity (clazz);
+	}
+
+	/** Create a entity from a JSON object, with the given decoding options.
+	 * The options also apply to the entities nested in this one.
+	 * @throws JSONMappingException */
+	public static <T extends JSONEntity> T decode (Class<T> clazz, JSONObject json, DecodeOptions options) throws JSONMappingException {
+		DecodeOptions previous = options.enter ();
+		try {
+			return clazz.cast (JSONEntity.fromJson (clazz, json));
+		} finally {
+			DecodeOptions.restore (previous);
+		}
+	}
+
+	/** Create a entity with only some of its fields from a JSON object.
+	 * The members of the JSON object that aren't in the field set aren't
+	 * converted, the entity gets a JSON object without them.
+	 * @throws JSONMappingException */
+	public static <T extends JSONEntity> T decode (Class<T> clazz, JSONObject json, FieldSet fields) throws JSONMappingException {
+		FieldSet.check (fields, clazz);
+		return clazz.cast (JSONEntity.fromJson (clazz, fields.project (json)));
+	}
+
+	/** Decode a JSON object into a existing entity, overwriting its fields,
+	 * to reuse the entity instead of creating a new one.
+	 * The lists, maps and number lists the entity already has are cleared and
+	 * filled again, arrays of the same length are filled again, and the
+	 * entities it already has, in its fields, lists and arrays, are decoded
+	 * into as well when they are of the class that would be created. The
+	 * fields whose members are missing or null are set back to <tt>null</tt>,
+	 * zero or <tt>false</tt>, or have their collections cleared.
+	 * Like with field injection, the <tt>JSONObject</tt> constructor isn't
+	 * called, so it isn't for entity classes with their own <tt>toJson ()</tt>.
+	 * @return the entity.
+	 * @throws JSONMappingException
+	 * @see EntityPool */
+	public static <T extends JSONEntity> T readInto (T entity, JSONObject json) throws JSONMappingException {
+		Class<?> clazz = entity.getClass ();
+		if (EntityDescriptor.of (clazz).hasCustomToJson ())
+			throw new JSONMappingException (clazz.getName () + " has its own toJson (), it can't be decoded into a existing instance.");
+		CodecListener listener = Instrumentation.listener;
+		if (listener == null) {
+			entity.decodeInto (json);
+			return entity;
+		}
+		long start = System.nanoTime ();
+		try {
+			entity.decodeInto (json);
+		} catch (JSONMappingException e) {
+			listener.failed (clazz, e);
+			throw e;
+		}
+		listener.decoded (clazz, System.nanoTime () - start);
+		return entity;
+	}
+
+	/** Read JSON text into a existing entity.
+	 * @see #readInto(JSONEntity, JSONObject)
+	 * @throws JSONMappingException
+	 * @throws JSONException if the text isn't valid JSON or can't be read. */
+	public static <T extends JSONEntity> T readInto (T entity, Reader reader) throws JSONMappingException, JSONException {
+		return JSONEntity.readInto (entity, new JSONObject (new JSONTokener (reader)));
+	}
+
+	/** Start tracking the changes of this entity, or forget the ones made so far.
+	 * The current state of the entity, in its JSON form, becomes the baseline
+	 * the changes are found against.
+	 * @throws JSONMappingException */
+	public void markClean () throws JSONMappingException {
+		this.baseline = toJson ();
+	}
+
+	/** Stop tracking the changes of this entity, dropping the baseline. */
+	public void stopTracking () {
+		this.baseline = null;
+	}
+
+	/** @return <tt>true</tt> if the changes of this entity are being tracked, see {@link #markClean()}. */
+	public boolean isTracked () {
+		return this.baseline != null;
+	}
+
+	/** Get the changes of this entity since it was marked clean, as a JSON
+	 * Merge Patch (RFC 7386): the members that changed, recursing into the
+	 * nested entities and maps, and <tt>null</tt> for the ones removed.
+	 * If the changes aren't tracked, the whole entity is the change.
+	 * @return the changes, empty if there are none.
+	 * @throws JSONMappingException */
+	public JSONObject getChanges () throws JSONMappingException {
+		JSONObject current = toJson ();
+		if (this.baseline == null)
+			return current;
+		try {
+			return JSONMergePatch.diff (this.baseline, current);
+		} catch (JSONException e) {
+			throw new JSONMappingException (e);
+		}
+	}
+
+	/** @return <tt>true</tt> if the entity changed since it was marked clean, or if its changes aren't tracked.
+	 * @throws JSONMappingException */
+	public boolean hasChanges () throws JSONMappingException {
+		return getChanges ().length () > 0;
+	}
+
+	/** Get the changes of this entity, as {@link #getChanges()}, and start
+	 * tracking the changes from its current state, as {@link #markClean()}.
+	 * @throws JSONMappingException */
+	public JSONObject commitChanges () throws JSONMappingException {
+		JSONObject changes = getChanges ();
+		markClean ();
+		return changes;
+	}
+
+	/** Apply changes, as a JSON Merge Patch, to this entity.
+	 * The members of the patch are merged into the JSON form of the entity,
+	 * recursively, removing the ones that are <tt>null</tt>, and the result
+	 * is decoded into the entity as {@link #readInto(JSONEntity, JSONObject)}
+	 * does. The baseline of the changes, if tracked, stays the same.
+	 * @throws JSONMappingException */
+	public void applyChanges (JSONObject patch) throws JSONMappingException {
+		JSONObject merged;
+		try {
+			merged = (JSONObject) JSONMergePatch.apply (toJson (), patch);
+		} catch (JSONException e) {
+			throw new JSONMappingException (e);
+		}
+		JSONEntity.readInto (this, merged);
+	}
+
+	/** Convert the elements of the lazy collections of this entity, and of the entities in it.
+	 * Does nothing to a entity decoded without lazy collections.
+	 * @throws JSONMappingException if a element can't be converted.
+	 * @see DecodeOptions#withLazyCollections(boolean) */
+	public void materialize () throws JSONMappingException {
+		for (FieldDescriptor field : EntityDescriptor.of (this.getClass ()).getFields ()) {
+			if (field.getType ().isPrimitive ())
+				continue;
+			Object value = field.get (this);
+			if (value instanceof Object[]) {
+				for (Object element : (Object[]) value)
+					LazyList.materialize (element);
+			} else if (value instanceof NumberList) {
 				continue;
+			} else if (value instanceof List && !(value instanceof LazyCollection)) {
+				for (Object element : (List<?>) value)
+					LazyList.materialize (element);
+			} else if (value instanceof Map && !(value instanceof LazyCollection)) {
+				for (Object element : ((Map<?, ?>) value).values ())
+					LazyList.materialize (element);
+			} else {
+				LazyList.materialize (value);
 			}
+		}
+	}
+
+	/** Set the mapped fields of this entity from the JSON object, using reflection. */
+	final void decodeFields (JSONObject json) throws JSONMappingException {
+		EntityDescriptor descriptor = EntityDescriptor.of (this.getClass ());
+		if (!DecodeOptions.current ().isPresenceTracking ()) {
+			this.presence = null;
+			for (FieldDescriptor field : descriptor.getFields ())
+				decodeField (field, json);
+			return;
+		}
 
-			String fieldName = field.getName ();
-			if (fieldName.equals ("this$0"))
+		// look each member up once, and only read the ones that are there.
+		long[] present = new long[(descriptor.getNameCount () + 63) >>> 6];
+		for (int nameIndex=0; nameIndex<descriptor.getNameCount (); nameIndex++) {
+			Object value = json.opt (descriptor.getName (nameIndex));
+			if (value == null || value == JSONObject.NULL)
 				continue;
+			present[nameIndex >>> 6] |= 1L << nameIndex;
+			for (FieldDescriptor field : descriptor.getFieldsByName (nameIndex))
+				decodeField (field, json);
+		}
+		this.presence = present;
+	}
 
-			boolean accessible = field.isAccessible ();
-			if (!accessible)
-				field.setAccessible (true);
+	/** Check if a member was present when this entity was decoded.
+	 * Only known for entities decoded with presence tracking, see
+	 * {@link DecodeOptions#withPresenceTracking(boolean)}.
+	 * @param jsonName is the JSON name of the field.
+	 * @return <tt>true</tt> if the member was in the JSON and wasn't null. */
+	public boolean isPresent (String jsonName) {
+		if (this.presence == null)
+			return false;
+		int nameIndex = EntityDescriptor.of (this.getClass ()).getNameIndex (jsonName);
+		return nameIndex >= 0 && (this.presence[nameIndex >>> 6] & (1L << nameIndex)) != 0;
+	}
+
+	/** @return <tt>true</tt> if this entity was decoded with presence tracking,
+	 *         so {@link #isPresent(String)} tells which members it had. */
+	public boolean isPresenceTracked () {
+		return this.presence != null;
+	}
 
-			Class<?> type = field.getType ();
+	/** Set one of the mapped fields of this entity from the JSON object, using reflection. */
+	final void decodeField (FieldDescriptor field, JSONObject json) throws JSONMappingException {
+		String fieldName = field.getJsonName ();
 
-			if (type.isArray ()) {
-				Class<?> componentClass = type.getComponentType ();
-				JSONArray jsonArray = null;
+		if (json instanceof EntityReader.PartialObject) {
+			EntityReader.DecodedValue decoded = ((EntityReader.PartialObject) json).getDecoded (fieldName);
+			if (decoded != null) {
 				try {
-					jsonArray = json.getJSONArray (fieldName);
-				} catch (JSONException e) {
-					// no data for this field found.
-					continue;
+					field.set (this, decoded.getValue ());
+				} catch (Exception e) {
+					throw new JSONMappingException (e);
 				}
+				return;
+			}
+		}
+
+		if (field.isArray ()) {
+			Class<?> componentClass = field.getComponentType ();
+			JSONArray jsonArray = null;
+			try {
+				jsonArray = json.getJSONArray (fieldName);
+			} catch (JSONException e) {
+				// no data for this field found.
+				return;
+			}
 
-				int size = jsonArray.length ();
+			int size = jsonArray.length ();
 
-				Object array = Array.newInstance (componentClass, size);
+			if (componentClass.isPrimitive ()) {
+				int[] invalid = new int[1];
+				Object array = PrimitiveArrays.fromJson (componentClass, jsonArray, invalid);
+				for (int i=0; i<invalid[0]; i++)
+					invalidArrayComponent (field);
+				try {
+					field.set (this, array);
+				} catch (Exception e) {
+					throw new JSONMappingException (e);
+				}
+				return;
+			}
+
+			Object array = Array.newInstance (componentClass, size);
+			DecodeOptions options = DecodeOptions.current ();
+			if (options.isParallel (size) && JSONEntity.class.isAssignableFrom (componentClass)) {
+				Exception[] failures = new Exception[size];
+				Object[] items = ParallelDecoder.decode (componentClass, jsonArray, options, failures);
+				for (int i=0; i<size; i++) {
+					try {
+						if (failures[i] != null)
+							throw failures[i];
+						Array.set (array, i, items[i]);
+					} catch (Exception e) {
+						invalidArrayComponent (field);
+					}
+				}
+			} else {
 				for (int i=0; i<size; i++) {
 					try {
 						Object item = fromJson (componentClass, jsonArray.get (i));
 						Array.set (array, i, item);
 					} catch (Exception e) {
-						System.err.println ("Invalid array component for class "
-							+ this.getClass ().getName ()
-							+ " field "
-							+ field.getName () + "::" + field.getType ().getName ());
+						invalidArrayComponent (field);
 					}
 				}
-				
+			}
+			
+			try {
+				field.set (this, array);
+			} catch (Exception e) {
+				throw new JSONMappingException (e);
+			}
+		} else if (field.isEntity ()) {
+			try {
+				Object entity = readJSONEntity (field.getType (), json.getJSONObject (fieldName));
+				field.set (this, entity);
+			} catch (JSONException e) {
+				// keep going.. the json representation doesn't have value for this field.
+			} catch (Exception e) {
+				throw new JSONMappingException (e);
+			}
+		} else {
+			FieldSetter setter = field.getReader ();
+			TypeAdapter<?> adapter;
+			if (setter != null) {
 				try {
-					field.set (this, array);
+					setter.setField (this, field, json);
+				} catch (JSONException e) {
+					// do nothing. We just didn't receive data for this field
 				} catch (Exception e) {
 					throw new JSONMappingException (e);
 				}
-			} else if (JSONEntity.class.isAssignableFrom (type)) {
+			} else if ((adapter = TypeAdapters.forClass (field.getType ())) != null) {
+				Object value = json.opt (fieldName);
+				if (value == null)
+					return; // no data for this field.
 				try {
-					Object entity = readJSONEntity (type, json.getJSONObject (fieldName));
-					field.set (this, entity);
-				} catch (JSONException e) {
-					// keep going.. the json representation doesn't have value for this field.
+					field.set (this, TypeAdapters.fromJson (adapter, value, field.getField ().getGenericType ()));
+				} catch (JSONMappingException e) {
+					throw e;
 				} catch (Exception e) {
 					throw new JSONMappingException (e);
 				}
 			} else {
-				FieldSetter setter = JSON_READERS.get (type.getName ());
-				if (setter != null) {
+				Object jsonObj;
+				try {
+					jsonObj = json.get (fieldName);
+				} catch (Exception e) {
+					jsonObj = null;
+				}
+				if (jsonObj != null) {
+					if (!field.getType ().isEnum ()) // enums are converted with their lookup tables.
+						Instrumentation.fallback (this.getClass (), CodecListener.Fallback.UNTYPED_FIELD);
+					Object value = fromJson (field.getType (), jsonObj);
 					try {
-						setter.setField (this, field, json, fieldName);
-					} catch (JSONException e) {
-						// do nothing. We just didn't receive data for this field
+						field.set (this, value);
 					} catch (Exception e) {
-						throw new JSONMappingException (e);
+						e.printStackTrace();
 					}
 				} else {
-					Object jsonObj;
-					try {
-						jsonObj = json.get (fieldName);
-					} catch (Exception e) {
-						jsonObj = null;
-					}
-					if (jsonObj != null) {
-						Object value = fromJson (type, jsonObj);
-						try {
-							field.set (this, value);
-						} catch (Exception e) {
-							e.printStackTrace();
-						}
-					} else {
-						System.err.println ("No setter for " + field);
-					}
-					
+					System.err.println ("No setter for " + field);
 				}
+				
 			}
-
-			if (!accessible)
-				field.setAccessible (false);
 		}
 	}
 
-	private Object readJSONEntity (Class<?> clazz, JSONObject json) throws JSONMappingException {
-		Class<?> c = clazz;
+	/** Set the mapped fields of this entity from the JSON object, reusing the collections and entities it has. */
+	final void decodeInto (JSONObject json) throws JSONMappingException {
+		Class<?> clazz = this.getClass ();
+		if (EntityCodecs.isRegistered (clazz)) {
+			invalidateSerialized ();
+			EntityCodecs.forClass (clazz).decode (this, json);
+			return;
+		}
+		this.presence = null;
+		invalidateSerialized ();
+		for (FieldDescriptor field : EntityDescriptor.of (clazz).getFields ()) {
+			Object value = json.opt (field.getJsonName ());
+			if (value == null || value == JSONObject.NULL)
+				resetField (field);
+			else if (field.getType ().isPrimitive () || !decodeReusing (field, value)) {
+				// a member that can't be converted leaves the field as in a new entity, not with the previous value.
+				resetField (field);
+				decodeField (field, json);
+			}
+		}
+	}
 
-		Constructor<?> constructor = null;
+	/** Set a field back to its default value, clearing the collection it has instead. */
+	private void resetField (FieldDescriptor field) throws JSONMappingException {
+		Class<?> type = field.getType ();
 		try {
-			constructor = c.getConstructor (JSONObject.class);
-		} catch (Exception e) {
-			throw new JSONMappingException (JSONEntity.MSG_MUST_HAVE_CONSTRUCTOR, e);
+			if (type == boolean.class)
+				field.setBoolean (this, false);
+			else if (type == char.class)
+				field.setChar (this, (char) 0);
+			else if (type == byte.class)
+				field.setByte (this, (byte) 0);
+			else if (type == short.class)
+				field.setShort (this, (short) 0);
+			else if (type == int.class)
+				field.setInt (this, 0);
+			else if (type == long.class)
+				field.setLong (this, 0L);
+			else if (type == float.class)
+				field.setFloat (this, 0f);
+			else if (type == double.class)
+				field.setDouble (this, 0.0);
+			else if (!clearCollection (field.get (this)))
+				field.set (this, null);
+		} catch (IllegalAccessException e) {
+			throw new JSONMappingException (e);
 		}
+	}
 
-		if (constructor == null)
-			return null;
+	/** @return <tt>false</tt> if the value isn't a collection that can be cleared. */
+	private static boolean clearCollection (Object value) {
+		if (value instanceof LazyCollection)
+			return false;
+		try {
+			if (value instanceof Collection)
+				((Collection<?>) value).clear ();
+			else if (value instanceof Map)
+				((Map<?, ?>) value).clear ();
+			else
+				return false;
+			return true;
+		} catch (UnsupportedOperationException e) {
+			return false;
+		}
+	}
 
-		Object entity = null;
+	/** Set a field from a JSON value reusing the collection, array or entity it has.
+	 * @return <tt>false</tt> if the field has nothing that can be reused. */
+	@SuppressWarnings ("unchecked")
+	private boolean decodeReusing (FieldDescriptor field, Object json) throws JSONMappingException {
+		Object current = field.get (this);
+		if (current == null || current instanceof LazyCollection)
+			return false;
 		try {
-			entity = constructor.newInstance (json);
-		} catch (Exception e) {
-			throw new JSONMappingException (e);
+			if (current instanceof NumberList && json instanceof JSONArray) {
+				NumberList<?> list = (NumberList<?>) current;
+				JSONArray jsonArray = (JSONArray) json;
+				list.clear ();
+				for (int i=0; i<jsonArray.length (); i++) {
+					if (!list.addJson (jsonArray.opt (i)))
+						throw new JSONMappingException ("Invalid element " + i + " for " + field.getField ());
+				}
+				return true;
+			}
+			if (field.getType () == List.class && json instanceof JSONArray) {
+				JSONEntity.fillList ((List<Object>) current, field.getTypeArgument (0), (JSONArray) json);
+				return true;
+			}
+			if (field.getType () == Map.class && json instanceof JSONObject) {
+				JSONEntity.fillMap ((Map<Object, Object>) current, field.getTypeArgument (0), field.getTypeArgument (1), (JSONObject) json);
+				return true;
+			}
+			if (field.isArray () && json instanceof JSONArray && Array.getLength (current) == ((JSONArray) json).length ()) {
+				fillArray (field, current, (JSONArray) json);
+				return true;
+			}
+			if (field.isEntity () && json instanceof JSONObject && JSONEntity.canDecodeInto (current, field.getType ())) {
+				((JSONEntity) current).decodeInto ((JSONObject) json);
+				return true;
+			}
+		} catch (UnsupportedOperationException e) {
+			return false; // a unmodifiable collection, replaced by a new one.
 		}
-		return entity;
+		return false;
+	}
+
+	private static void fillList (List<Object> list, Class<?> elementClass, JSONArray jsonArray) throws JSONMappingException {
+		int size = jsonArray.length ();
+		for (int i=0; i<size; i++) {
+			if (i < list.size ())
+				list.set (i, JSONEntity.fromJson (elementClass, list.get (i), jsonArray.opt (i)));
+			else
+				list.add (JSONEntity.fromJson (elementClass, null, jsonArray.opt (i)));
+		}
+		if (list.size () > size)
+			list.subList (size, list.size ()).clear ();
+	}
+
+	private static void fillMap (Map<Object, Object> map, Class<?> keyClass, Class<?> valueClass, JSONObject jsonMap) throws JSONMappingException {
+		DecodeOptions options = DecodeOptions.current ();
+		map.clear ();
+		Iterator<?> keys = jsonMap.keys ();
+		while (keys.hasNext ()) {
+			String key = keys.next ().toString ();
+			map.put (
+				keyClass == String.class ? options.canonicalize (key) : JSONEntity.fromJson (keyClass, key),
+				JSONEntity.fromJson (valueClass, jsonMap.opt (key)));
+		}
+	}
+
+	private void fillArray (FieldDescriptor field, Object array, JSONArray jsonArray) {
+		Class<?> componentClass = field.getComponentType ();
+		for (int i=0; i<jsonArray.length (); i++) {
+			if (componentClass.isPrimitive ()) {
+				if (PrimitiveArrays.set (array, i, jsonArray.opt (i)))
+					continue;
+				PrimitiveArrays.clear (array, i);
+				invalidArrayComponent (field);
+				continue;
+			}
+			Object[] elements = (Object[]) array;
+			try {
+				elements[i] = JSONEntity.fromJson (componentClass, elements[i], jsonArray.opt (i));
+			} catch (Exception e) {
+				elements[i] = null;
+				invalidArrayComponent (field);
+			}
+		}
+	}
+
+	/** Convert a JSON value, decoding it into the old value if that's a entity of the class that would be created. */
+	private static Object fromJson (Class<?> clazz, Object old, Object json) throws JSONMappingException {
+		if (json instanceof JSONObject && JSONEntity.canDecodeInto (old, clazz)) {
+			((JSONEntity) old).decodeInto ((JSONObject) json);
+			return old;
+		}
+		return JSONEntity.fromJson (clazz, json);
+	}
+
+	private static boolean canDecodeInto (Object old, Class<?> clazz) {
+		return old instanceof JSONEntity && old.getClass () == clazz && !EntityDescriptor.of (clazz).hasCustomToJson ();
+	}
+
+	private void invalidArrayComponent (FieldDescriptor field) {
+		System.err.println ("Invalid array component for class "
+			+ this.getClass ().getName ()
+			+ " field "
+			+ field.getJsonName () + "::" + field.getType ().getName ());
+	}
+
+	private Object readJSONEntity (Class<?> clazz, JSONObject json) throws JSONMappingException {
+		return EntityDescriptor.of (clazz).getInstantiator ().newInstance (json);
 	}
 
 	static interface FieldSetter {
-		void setField (Object obj, Field field, JSONObject json, String jsonName) throws Exception;
+		void setField (Object obj, FieldDescriptor field, JSONObject json) throws Exception;
 	}
 
 	private static interface JSON2Obj {
 		Object convert (Object json) throws JSONException;
 	}
 
-	/** Read from the JSON into Java objects */
-	final private static HashMap<String, FieldSetter> JSON_READERS = new HashMap<String, FieldSetter> ();
-	/** Convert from JSON complex objects into Java Objects. */
-	final private static HashMap<String, JSON2Obj> JSON_CONVERTERS = new HashMap<String, JSON2Obj> ();
+	/** Read from the JSON into Java objects, by the class of the field.
+	 * The other classes are converted by the {@link TypeAdapters}. */
+	final private static HashMap<Class<?>, FieldSetter> JSON_READERS = new HashMap<Class<?>, FieldSetter> ();
+	/** Convert from JSON complex objects into Java Objects, by the class of the JSON value. */
+	final private static HashMap<Class<?>, JSON2Obj> JSON_CONVERTERS = new HashMap<Class<?>, JSON2Obj> ();
 
 	static {
-		JSON_READERS.put ("boolean", new FieldSetter () {
-			public void setField (Object obj, Field field, JSONObject json, String jsonName) throws Exception {
-				field.setBoolean (obj, json.getBoolean (jsonName));
+		JSON_READERS.put (boolean.class, new FieldSetter () {
+			public void setField (Object obj, FieldDescriptor field, JSONObject json) throws Exception {
+				field.setBoolean (obj, json.getBoolean (field.getJsonName ()));
 			}
 		});
-		JSON_READERS.put ("byte", new FieldSetter () {
-			public void setField (Object obj, Field field, JSONObject json, String jsonName) throws Exception {
-				field.setByte (obj, (byte) json.getInt (jsonName));
+		JSON_READERS.put (byte.class, new FieldSetter () {
+			public void setField (Object obj, FieldDescriptor field, JSONObject json) throws Exception {
+				field.setByte (obj, (byte) json.getInt (field.getJsonName ()));
 			}
 		});
-		JSON_READERS.put ("char", new FieldSetter () {
-			public void setField (Object obj, Field field, JSONObject json, String jsonName) throws Exception {
-				String string = json.getString (jsonName);
+		JSON_READERS.put (char.class, new FieldSetter () {
+			public void setField (Object obj, FieldDescriptor field, JSONObject json) throws Exception {
+				String string = json.getString (field.getJsonName ());
 				if (string == null || string.length () == 0)
 					return;
 				char charAt = string.charAt (0);
 				field.setChar (obj, charAt);
 			}
 		});
-		JSON_READERS.put ("short", new FieldSetter () {
-			public void setField (Object obj, Field field, JSONObject json, String jsonName) throws Exception {
-				field.setShort (obj, (short) json.getInt (jsonName));
+		JSON_READERS.put (short.class, new FieldSetter () {
+			public void setField (Object obj, FieldDescriptor field, JSONObject json) throws Exception {
+				field.setShort (obj, (short) json.getInt (field.getJsonName ()));
 			}
 		});
-		JSON_READERS.put ("int", new FieldSetter () {
-			public void setField (Object obj, Field field, JSONObject json, String jsonName) throws Exception {
-				field.setInt (obj, json.getInt (jsonName));
+		JSON_READERS.put (int.class, new FieldSetter () {
+			public void setField (Object obj, FieldDescriptor field, JSONObject json) throws Exception {
+				field.setInt (obj, json.getInt (field.getJsonName ()));
 			}
 		});
-		JSON_READERS.put ("long", new FieldSetter () {
-			public void setField (Object obj, Field field, JSONObject json, String jsonName) throws Exception {
-				field.setLong (obj, json.getLong (jsonName));
+		JSON_READERS.put (long.class, new FieldSetter () {
+			public void setField (Object obj, FieldDescriptor field, JSONObject json) throws Exception {
+				field.setLong (obj, json.getLong (field.getJsonName ()));
 			}
 		});
-		JSON_READERS.put ("float", new FieldSetter () {
-			public void setField (Object obj, Field field, JSONObject json, String jsonName) throws Exception {
-				field.setFloat (obj, (float) json.getDouble (jsonName));
+		JSON_READERS.put (float.class, new FieldSetter () {
+			public void setField (Object obj, FieldDescriptor field, JSONObject json) throws Exception {
+				field.setFloat (obj, (float) json.getDouble (field.getJsonName ()));
 			}
 		});
-		JSON_READERS.put ("double", new FieldSetter () {
-			public void setField (Object obj, Field field, JSONObject json, String jsonName) throws Exception {
-				field.setDouble (obj, json.getDouble (jsonName));
+		JSON_READERS.put (double.class, new FieldSetter () {
+			public void setField (Object obj, FieldDescriptor field, JSONObject json) throws Exception {
+				field.setDouble (obj, json.getDouble (field.getJsonName ()));
 			}
 		});
 
-		JSON_READERS.put (String.class.getName (), new FieldSetter () {
-			public void setField (Object obj, Field field, JSONObject json, String jsonName) throws Exception {
-				field.set (obj, json.getString (jsonName));
+		JSON_READERS.put (String.class, new FieldSetter () {
+			public void setField (Object obj, FieldDescriptor field, JSONObject json) throws Exception {
+				String value = json.getString (field.getJsonName ());
+				field.set (obj, field.isLowCardinality () ? DecodeOptions.current ().canonicalize (value) : value);
 			}
 		});
 
-		JSON_READERS.put (List.class.getName (), new FieldSetter () {
-			public void setField (Object obj, Field field, JSONObject json, String jsonName) throws Exception {
-				JSONArray jsonArray = json.getJSONArray (jsonName);
-				
-				ParameterizedType genericType = (ParameterizedType) field.getGenericType ();
-				Class<?> listClass = (Class<?>)genericType.getActualTypeArguments ()[0];
+		JSON_READERS.put (List.class, new FieldSetter () {
+			public void setField (Object obj, FieldDescriptor field, JSONObject json) throws Exception {
+				JSONArray jsonArray = json.getJSONArray (field.getJsonName ());
 				
+				Class<?> listClass = field.getTypeArgument (0);
+
+				DecodeOptions options = DecodeOptions.current ();
+				if (options.isLazyCollections ()) {
+					field.set (obj, new LazyList<Object> (listClass, jsonArray, options));
+					return;
+				}
+				if (options.isParallel (jsonArray.length ()) && JSONEntity.class.isAssignableFrom (listClass)) {
+					Exception[] failures = new Exception[jsonArray.length ()];
+					Object[] items = ParallelDecoder.decode (listClass, jsonArray, options, failures);
+					Exception failure = ParallelDecoder.firstFailure (failures);
+					if (failure != null)
+						throw failure;
+					field.set (obj, new ArrayList<Object> (Arrays.asList (items)));
+					return;
+				}
+
 				ArrayList<Object> list = new ArrayList<Object> (jsonArray.length ());
 				for (int i=0; i<jsonArray.length (); i++) {
 					Object entry = jsonArray.get (i);
@@ -266,37 +747,44 @@ public abstract class JSONEntity {
 			}
 		});
 
-		JSON_READERS.put (Map.class.getName (), new FieldSetter () {
-			public void setField (Object obj, Field field, JSONObject json, String jsonName) throws Exception {
-				JSONObject jsonMap = json.getJSONObject (jsonName);
+		FieldSetter numberListReader = new FieldSetter () {
+			public void setField (Object obj, FieldDescriptor field, JSONObject json) throws Exception {
+				JSONArray jsonArray = json.getJSONArray (field.getJsonName ());
+				NumberList<?> list = NumberList.create (field.getType (), jsonArray.length (), DecodeOptions.current ().isOffHeapNumberLists ());
+				for (int i=0; i<jsonArray.length (); i++) {
+					if (!list.addJson (jsonArray.opt (i)))
+						throw new JSONMappingException ("Invalid element " + i + " for " + field.getField ());
+				}
+				field.set (obj, list);
+			}
+		};
+		JSON_READERS.put (IntList.class, numberListReader);
+		JSON_READERS.put (LongList.class, numberListReader);
+		JSON_READERS.put (DoubleList.class, numberListReader);
+
+		JSON_READERS.put (Map.class, new FieldSetter () {
+			public void setField (Object obj, FieldDescriptor field, JSONObject json) throws Exception {
+				JSONObject jsonMap = json.getJSONObject (field.getJsonName ());
 				if (jsonMap == null)
 					return;
 
-				ParameterizedType genericType = (ParameterizedType) field.getGenericType ();
-				Type[] actualTypeArguments = genericType.getActualTypeArguments ();
-				Type keyType = actualTypeArguments[0];
-				Type valueType = actualTypeArguments[1];
-				Class<?> keyClass;
-				if (keyType instanceof ParameterizedType)
-					keyClass = (Class<?>)((ParameterizedType)keyType).getRawType ();
-				else
-					keyClass = (Class<?>)actualTypeArguments[0];
-				
-				Class<?> valueClass;
-				if (valueType instanceof ParameterizedType)
-					valueClass = (Class<?>)((ParameterizedType)valueType).getRawType ();
-				else
-					valueClass = (Class<?>)actualTypeArguments[1];
-				
-				
-				
+				Class<?> keyClass = field.getTypeArgument (0);
+				Class<?> valueClass = field.getTypeArgument (1);
+
+				DecodeOptions options = DecodeOptions.current ();
+				if (options.isLazyCollections ()) {
+					field.set (obj, new LazyMap<Object, Object> (keyClass, valueClass, jsonMap, options));
+					return;
+				}
+
+				boolean canonicalKeys = keyClass == String.class && options.getStringCache () != null;
 				HashMap<Object, Object> map = new HashMap <Object, Object> (jsonMap.length ());
 				Iterator<?> keys = jsonMap.keys ();
 				while (keys.hasNext ()) {
 					Object key = keys.next ();
 					Object jsonValue = jsonMap.get (key.toString ());
 					map.put (
-						JSONEntity.fromJson (keyClass, key),
+						canonicalKeys ? options.canonicalize (key.toString ()) : JSONEntity.fromJson (keyClass, key),
 						JSONEntity.fromJson (valueClass, jsonValue));
 				}
 				field.set (obj, map);
@@ -304,7 +792,7 @@ public abstract class JSONEntity {
 		});
 
 
-		JSON_CONVERTERS.put (List.class.getName (), new JSON2Obj () {
+		JSON_CONVERTERS.put (List.class, new JSON2Obj () {
 			public Object convert (Object json) throws JSONException {
 				JSONArray jsonArray = (JSONArray) json;
 				Object[] array = new Object[jsonArray.length ()];
@@ -317,7 +805,7 @@ public abstract class JSONEntity {
 			}
 		});
 
-		JSON_CONVERTERS.put (JSONObject.class.getName (), new JSON2Obj () {
+		JSON_CONVERTERS.put (JSONObject.class, new JSON2Obj () {
 			public Object convert (Object json) throws JSONException {
 				JSONObject jsonMap = (JSONObject) json;
 				Map<Object, Object> map = new HashMap <Object, Object> (jsonMap.length ());
@@ -331,7 +819,7 @@ public abstract class JSONEntity {
 			}
 		});
 
-		JSON_CONVERTERS.put (JSONArray.class.getName (), new JSON2Obj () {
+		JSON_CONVERTERS.put (JSONArray.class, new JSON2Obj () {
 			public Object convert (Object json) throws JSONException {
 				JSONArray jsonArray = (JSONArray) json;
 				Object[] array = new Object[jsonArray.length ()];
@@ -345,21 +833,33 @@ public abstract class JSONEntity {
 		});
 	}
 
+	/** Get the reader for fields of a given type.
+	 * @return <tt>null</tt> if there's no reader for the type. */
+	static FieldSetter getReader (Class<?> type) {
+		return JSON_READERS.get (type);
+	}
+
 	private static Object fromJson (Object json) throws JSONException {
 		if (json == null)
 			return null;
-		JSON2Obj json2Obj = JSONEntity.JSON_CONVERTERS.get (json.getClass ().getName ());
+		JSON2Obj json2Obj = JSONEntity.JSON_CONVERTERS.get (json.getClass ());
 		if (json2Obj != null) {
 			return json2Obj.convert (json);
 		}
 		return json;
 	}
 
-	@SuppressWarnings ({ "unchecked", "rawtypes" })
-	private static Object fromJson (Class<?> clazz, Object json) throws JSONMappingException {
+	static Object fromJson (Class<?> clazz, Object json) throws JSONMappingException {
+		return JSONEntity.fromJson (clazz, json, clazz);
+	}
+
+	/** Convert a JSON value into a instance of the class.
+	 * @param type the declared type of the value, given to its adapter. */
+	static Object fromJson (Class<?> clazz, Object json, Type type) throws JSONMappingException {
 		if (json == null)
 			return null;
 		Object fromJson = null;
+		TypeAdapter<?> adapter;
 		if (clazz == null) {
 			try {
 				fromJson = JSONEntity.fromJson (json);
@@ -368,45 +868,12 @@ public abstract class JSONEntity {
 				throw new JSONMappingException (e);
 			}
 		} else {
-			Constructor<?> constructor;;
 			if (JSONEntity.class.isAssignableFrom (clazz)) { // A JSON Entity.
-				Class<?> enclosingClass = clazz.getEnclosingClass ();
-				if (enclosingClass != null && (clazz.getModifiers () & Modifier.STATIC) == 0) { // it's a non static inner class
-					try {
-						constructor = clazz.getDeclaredConstructor (enclosingClass, JSONObject.class);
-					} catch (Exception e) {
-						throw new JSONMappingException (clazz.getName () + JSONEntity.MSG_MUST_HAVE_CONSTRUCTOR, e);
-					}
-	
-					try {
-						/* we actually don't know the enclosing object...
-						 * this will be a problem with inner classes that
-						 * reference the enclosing class instance at 
-						 * constructor time... although with json entities
-						 * that should not happen. */
-						fromJson = constructor.newInstance (null, json); 
-					} catch (Exception e) {
-						throw new JSONMappingException (e);
-					}
-				} else { // static inner class
-					try {
-						constructor = clazz.getDeclaredConstructor (JSONObject.class);
-					} catch (Exception e) {
-						throw new JSONMappingException (clazz.getName () + JSONEntity.MSG_MUST_HAVE_CONSTRUCTOR, e);
-					}
-		
-					try {
-						fromJson = constructor.newInstance (json);
-					} catch (Exception e) {
-						throw new JSONMappingException ("clazz = " + clazz.getName () + "; json = "  + json.toString (), e);
-					}
-				}
+				fromJson = EntityDescriptor.of (clazz).getInstantiator ().newInstance (json);
 			} else if (clazz.isEnum ()) {
-				try {
-					fromJson = Enum.valueOf ((Class<Enum>) clazz, json.toString ());
-				} catch (Exception e) {
-					fromJson = null;
-				}
+				fromJson = EnumLookup.of (clazz).fromJson (json);
+			} else if ((adapter = TypeAdapters.forClass (clazz)) != null) {
+				fromJson = TypeAdapters.fromJson (adapter, json, type);
 			} else {
 				try {
 					fromJson = JSONEntity.fromJson (json);
@@ -415,7 +882,7 @@ public abstract class JSONEntity {
 				}
 			}
 		}
-		if (clazz != null && !clazz.isAssignableFrom (fromJson.getClass ()))
+		if (clazz != null && fromJson != null && !clazz.isAssignableFrom (fromJson.getClass ()))
 			throw new JSONMappingException ("Was expeting a " + clazz.getName () + " but received a " + fromJson.getClass ().getName () + " instead.");
 		return fromJson;
 	}
@@ -423,10 +890,11 @@ public abstract class JSONEntity {
 	/* ---------------------- */
 
 	/** */
-	static private Object toJson (Object obj) throws JSONMappingException {
+	static Object toJson (Object obj) throws JSONMappingException {
 		if (obj == null)
 			return null;
 		Object json = obj;
+		TypeAdapter<Object> adapter;
 
 		if (obj instanceof JSONEntity) {
 			json = ((JSONEntity)obj).toJson ();
@@ -435,18 +903,24 @@ public abstract class JSONEntity {
 			for (Object mapKey : ((Map<?, ?>)obj).keySet ()) {
 				Object jsonValue = toJson (((Map<?, ?>)obj).get (mapKey));
 				try {
-					((JSONObject)json).put (mapKey.toString (), jsonValue);
+					((JSONObject)json).put (EnumLookup.keyOf (mapKey), jsonValue);
 				} catch (JSONException e) {
 					throw new JSONMappingException (e);
 				}
 			}
 
+		} else if (obj instanceof Enum) {
+			json = EnumLookup.of ((Enum<?>) obj).toJson ((Enum<?>) obj);
+		} else if (obj instanceof NumberList) {
+			json = ((NumberList<?>) obj).toJSONArray ();
 		} else if (obj instanceof List) {
 			json = new JSONArray ();
 			for (Object listItem : ((List<?>)obj)) {
 				Object jsonListItem = toJson(listItem);
 				((JSONArray)json).put (jsonListItem);
 			}
+		} else if (obj.getClass ().isArray () && obj.getClass ().getComponentType ().isPrimitive ()) {
+			json = PrimitiveArrays.toJson (obj);
 		} else if (obj.getClass ().isArray ()) {
 			json = new JSONArray ();
 			Object[] array = (Object[]) obj;
@@ -454,64 +928,158 @@ public abstract class JSONEntity {
 				Object jsonItem = toJson (item);
 				((JSONArray)json).put (jsonItem);
 			}
+		} else if ((adapter = TypeAdapters.forValue (obj)) != null) {
+			json = TypeAdapters.toJson (adapter, obj);
 		} else {
 			json = obj;
 		}
 		return json;
 	}
 
-	private JSONObject fillWithClass (JSONObject json, Class<?> clazz) throws JSONMappingException {
-		for (Field field : clazz.getDeclaredFields ()) {
-			if ( (field.getModifiers () & Modifier.TRANSIENT) != 0) { // don't care about transient fields.
-				continue;
-			}
-
-			String jsonName = field.getName ();
-			if (jsonName.equals ("this$0"))
-				continue;
-
-			boolean accessible = field.isAccessible ();
-
-			if (!accessible)
-				field.setAccessible (true);
-
+	/** Put the mapped fields of this entity into the JSON object, using reflection. */
+	final void encodeFields (JSONObject json) throws JSONMappingException {
+		for (FieldDescriptor field : EntityDescriptor.of (this.getClass ()).getFields ()) {
 			try {
 				Object value = field.get (this);
 				Object jsonField = toJson (value);
-				json.put (jsonName, jsonField);
+				json.put (field.getJsonName (), jsonField);
 			} catch (Exception e) {
 				throw new JSONMappingException (e);
 			}
-
-			if (!accessible)
-				field.setAccessible (false);
 		}
-		
-		return json;
+	}
+
+	/** Drop the JSON text this entity keeps in the {@link SerializationCache},
+	 * so it's written again from its fields. To be called after changing a
+	 * entity whose class is marked with {@link CachedSerialization}, and also
+	 * for the cached entities that contain it. Decoding into the entity, with
+	 * {@link #readInto(JSONEntity, JSONObject)}, already does it. */
+	public void invalidateSerialized () {
+		SerializationCache.Entry entry = this.serialized;
+		if (entry != null)
+			entry.cache.invalidate (this);
 	}
 
 	/** Serialize the object into a JSON object.
 	 * @throws JSONMappingException */
 	public JSONObject toJson () throws JSONMappingException {
 		JSONObject json = new JSONObject ();
-		Class<?> clazz = this.getClass ();
-		do {
-			json = fillWithClass (json, clazz);
-			clazz = clazz.getSuperclass ();
-		} while (clazz != null && !clazz.isAssignableFrom (JSONEntity.class));
-		
+		EntityCodecs.encode (this, json);
 		return json;
 	}
 
+	/** Write the object into a Writer, using JSON data format.
+	 * The text written is the same as <tt>toJson ().toString ()</tt>, but
+	 * it's written directly from the fields, without building the JSON object.
+	 * The writer should be buffered, it gets a lot of small writes.
+	 * @throws JSONMappingException
+	 * @throws IOException */
+	public void writeTo (Writer writer) throws JSONMappingException, IOException {
+		new EntityWriter (writer).writeEntity (this);
+	}
+
+	/** Write the object into a OutputStream, using JSON data format encoded in UTF-8.
+	 * The stream is flushed but not closed.
+	 * @throws JSONMappingException
+	 * @throws IOException */
+	public void writeTo (OutputStream stream) throws JSONMappingException, IOException {
+		if (EntityDescriptor.of (this.getClass ()).isSerializationCached ()) {
+			byte[] utf8 = SerializationCache.getDefault ().getUtf8 (this);
+			stream.write (utf8);
+			stream.flush ();
+			Instrumentation.written (this.getClass (), utf8.length);
+			return;
+		}
+		Writer writer = new BufferedWriter (new OutputStreamWriter (stream, StandardCharsets.UTF_8));
+		writeTo (writer);
+		writer.flush ();
+	}
+
+	/** Append the object to a StringBuilder, using JSON data format.
+	 * The text is the same as <tt>toString ()</tt>. The entity is encoded
+	 * in space reused by each thread, so once that space, and the builder,
+	 * have grown to the size of the entities, entities without their own
+	 * <tt>toJson ()</tt> are appended without allocating anything.
+	 * @return the builder.
+	 * @throws JSONMappingException */
+	public StringBuilder appendTo (StringBuilder builder) throws JSONMappingException {
+		EncodeScratch scratch = EncodeScratch.get ();
+		StringBuilder text = scratch.encode (this);
+		try {
+			builder.append (text);
+			Instrumentation.written (this.getClass (), text);
+		} finally {
+			scratch.finish (text);
+		}
+		return builder;
+	}
+
+	/** Write the object into a char array, using JSON data format.
+	 * Like {@link #appendTo(StringBuilder)}, but into a array.
+	 * @param offset is where the text starts in the array.
+	 * @return the number of chars written.
+	 * @throws BufferOverflowException if the text doesn't fit in the array, that is then left untouched.
+	 * @throws JSONMappingException */
+	public int writeTo (char[] buffer, int offset) throws JSONMappingException {
+		EncodeScratch scratch = EncodeScratch.get ();
+		StringBuilder text = scratch.encode (this);
+		try {
+			int length = text.length ();
+			if (offset + length > buffer.length)
+				throw new BufferOverflowException ();
+			text.getChars (0, length, buffer, offset);
+			Instrumentation.written (this.getClass (), text);
+			return length;
+		} finally {
+			scratch.finish (text);
+		}
+	}
+
+	/** Put the object into a buffer, using JSON data format encoded in UTF-8.
+	 * Like {@link #appendTo(StringBuilder)}, but into a buffer, from its position.
+	 * @return the number of bytes put.
+	 * @throws BufferOverflowException if the text doesn't fit in the buffer, that is then left untouched.
+	 * @throws JSONMappingException */
+	public int writeTo (ByteBuffer buffer) throws JSONMappingException {
+		if (EntityDescriptor.of (this.getClass ()).isSerializationCached ()) {
+			byte[] utf8 = SerializationCache.getDefault ().getUtf8 (this);
+			buffer.put (utf8); // throws, without putting anything, if it doesn't fit.
+			Instrumentation.written (this.getClass (), utf8.length);
+			return utf8.length;
+		}
+		EncodeScratch scratch = EncodeScratch.get ();
+		StringBuilder text = scratch.encode (this);
+		try {
+			int length = EncodeScratch.putUtf8 (text, buffer);
+			Instrumentation.written (this.getClass (), length);
+			return length;
+		} finally {
+			scratch.finish (text);
+		}
+	}
+
 	/** Get a String representation of the object, using JSON data format.
 	 * @return <tt>null</tt> if there was a problem converting the object into a JSON representation,
 	 *         a String representing the object with a JSON syntax otherwise. */
 	public String toString () {
+		EncodeScratch scratch = EncodeScratch.get ();
+		StringBuilder text;
 		try {
-			return toJson().toString ();
+			if (EntityDescriptor.of (this.getClass ()).isSerializationCached ()) {
+				String cached = SerializationCache.getDefault ().getText (this);
+				Instrumentation.written (this.getClass (), cached);
+				return cached;
+			}
+			text = scratch.encode (this);
 		} catch (JSONMappingException e) {
 			return null;
 		}
+		try {
+			Instrumentation.written (this.getClass (), text);
+			return text.toString ();
+		} finally {
+			scratch.finish (text);
+		}
 	}
 
 	/** Get a String representation of the object, using JSON data format.
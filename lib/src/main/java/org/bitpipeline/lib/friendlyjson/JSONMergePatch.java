@@ -0,0 +1,122 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.util.Iterator;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/** JSON Merge Patch (RFC 7386): the changes between two JSON objects, as a
+ * JSON object with the members that changed, recursively for the members
+ * that are objects, and <tt>null</tt> for the ones that were removed.
+ * Arrays are replaced whole.
+ * @see JSONEntity#getChanges()
+ * @see JSONEntity#applyChanges(JSONObject)
+ * @author mtavares */
+public final class JSONMergePatch {
+	private JSONMergePatch () {
+	}
+
+	/** Find the patch that turns the source into the target.
+	 * Neither of the objects is changed.
+	 * @return the patch, empty if the objects are the same. */
+	public static JSONObject diff (JSONObject source, JSONObject target) throws JSONException {
+		JSONObject patch = new JSONObject ();
+		Iterator<?> sourceKeys = source.keys ();
+		while (sourceKeys.hasNext ()) {
+			String key = sourceKeys.next ().toString ();
+			if (JSONMergePatch.isAbsent (target.opt (key)) && !JSONMergePatch.isAbsent (source.opt (key)))
+				patch.put (key, JSONObject.NULL);
+		}
+		Iterator<?> targetKeys = target.keys ();
+		while (targetKeys.hasNext ()) {
+			String key = targetKeys.next ().toString ();
+			Object targetValue = target.opt (key);
+			Object sourceValue = source.opt (key);
+			if (JSONMergePatch.isAbsent (targetValue))
+				continue;
+			if (sourceValue instanceof JSONObject && targetValue instanceof JSONObject) {
+				JSONObject nested = JSONMergePatch.diff ((JSONObject) sourceValue, (JSONObject) targetValue);
+				if (nested.length () > 0)
+					patch.put (key, nested);
+			} else if (!JSONMergePatch.same (sourceValue, targetValue)) {
+				patch.put (key, targetValue);
+			}
+		}
+		return patch;
+	}
+
+	/** Apply a patch to a JSON value.
+	 * The target isn't changed, the parts of it that change are copied.
+	 * @return the patched value, a new JSON object if the patch is a object. */
+	public static Object apply (Object target, Object patch) throws JSONException {
+		if (! (patch instanceof JSONObject))
+			return patch;
+		JSONObject patchObject = (JSONObject) patch;
+		JSONObject result = new JSONObject ();
+		if (target instanceof JSONObject) {
+			JSONObject targetObject = (JSONObject) target;
+			Iterator<?> keys = targetObject.keys ();
+			while (keys.hasNext ()) {
+				String key = keys.next ().toString ();
+				result.put (key, targetObject.opt (key));
+			}
+		}
+		Iterator<?> keys = patchObject.keys ();
+		while (keys.hasNext ()) {
+			String key = keys.next ().toString ();
+			Object value = patchObject.opt (key);
+			if (JSONMergePatch.isAbsent (value))
+				result.remove (key);
+			else
+				result.put (key, JSONMergePatch.apply (result.opt (key), value));
+		}
+		return result;
+	}
+
+	private static boolean isAbsent (Object value) {
+		return value == null || value == JSONObject.NULL;
+	}
+
+	/** @return <tt>true</tt> if both values are written the same way in JSON. */
+	private static boolean same (Object a, Object b) throws JSONException {
+		if (a == b)
+			return true;
+		if (a == null || b == null)
+			return false;
+		if (a instanceof Number && b instanceof Number)
+			return JSONObject.numberToString ((Number) a).equals (JSONObject.numberToString ((Number) b));
+		if (a instanceof JSONObject && b instanceof JSONObject)
+			return JSONMergePatch.diff ((JSONObject) a, (JSONObject) b).length () == 0;
+		if (a instanceof JSONArray && b instanceof JSONArray) {
+			JSONArray arrayA = (JSONArray) a;
+			JSONArray arrayB = (JSONArray) b;
+			if (arrayA.length () != arrayB.length ())
+				return false;
+			for (int i=0; i<arrayA.length (); i++) {
+				if (!JSONMergePatch.same (arrayA.opt (i), arrayB.opt (i)))
+					return false;
+			}
+			return true;
+		}
+		if (a instanceof JSONArray || b instanceof JSONArray || a instanceof JSONObject || b instanceof JSONObject)
+			return false;
+		return a.equals (b);
+	}
+}
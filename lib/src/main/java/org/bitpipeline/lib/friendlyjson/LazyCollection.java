@@ -0,0 +1,28 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+/** A list or map decoded as a view of the JSON, see {@link DecodeOptions#withLazyCollections(boolean)}.
+ * @author mtavares */
+public interface LazyCollection {
+	/** @return <tt>true</tt> if all the elements were already converted. */
+	boolean isMaterialized ();
+
+	/** Convert all the elements that weren't converted yet, and the lazy
+	 * collections in them. The JSON is released afterwards. */
+	void materialize () throws JSONMappingException;
+}
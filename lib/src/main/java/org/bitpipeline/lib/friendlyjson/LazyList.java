@@ -0,0 +1,140 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.RandomAccess;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+/** A list that is a view of a JSON array, converting each element the first time it's used.
+ * Adding or removing elements converts all of them first.
+ * @author mtavares */
+final class LazyList<E> extends AbstractList<E> implements LazyCollection, RandomAccess {
+	/** Marks the elements not converted yet. */
+	static final Object PENDING = new Object ();
+
+	private final Class<?> clazz;
+	private final DecodeOptions options;
+	private final ArrayList<Object> elements;
+	/** The JSON of the elements not converted yet, <tt>null</tt> when all are converted. */
+	private JSONArray source;
+	private int pending;
+
+	LazyList (Class<?> clazz, JSONArray source, DecodeOptions options) {
+		this.clazz = clazz;
+		this.options = options;
+		this.source = source;
+		this.pending = source.length ();
+		this.elements = new ArrayList<Object> (this.pending);
+		for (int i=0; i<this.pending; i++)
+			this.elements.add (LazyList.PENDING);
+		if (this.pending == 0)
+			this.source = null;
+	}
+
+	@Override
+	public synchronized E get (int index) {
+		try {
+			return convert (index);
+		} catch (JSONMappingException e) {
+			throw new UncheckedMappingException (e);
+		}
+	}
+
+	@SuppressWarnings ("unchecked")
+	private E convert (int index) throws JSONMappingException {
+		Object element = this.elements.get (index);
+		if (element != LazyList.PENDING)
+			return (E) element;
+
+		DecodeOptions previous = this.options.enter ();
+		try {
+			element = JSONEntity.fromJson (this.clazz, this.source.get (index));
+		} catch (JSONException e) {
+			throw new JSONMappingException (e);
+		} finally {
+			DecodeOptions.restore (previous);
+		}
+		this.elements.set (index, element);
+		if (--this.pending == 0)
+			this.source = null;
+		return (E) element;
+	}
+
+	@Override
+	public synchronized int size () {
+		return this.elements.size ();
+	}
+
+	@Override
+	@SuppressWarnings ("unchecked")
+	public synchronized E set (int index, E element) {
+		Object old = this.elements.get (index);
+		if (old == LazyList.PENDING) {
+			old = get (index);
+		}
+		this.elements.set (index, element);
+		return (E) old;
+	}
+
+	@Override
+	public synchronized void add (int index, E element) {
+		materializeUnchecked ();
+		this.elements.add (index, element);
+		this.modCount++;
+	}
+
+	@Override
+	@SuppressWarnings ("unchecked")
+	public synchronized E remove (int index) {
+		materializeUnchecked ();
+		this.modCount++;
+		return (E) this.elements.remove (index);
+	}
+
+	public synchronized boolean isMaterialized () {
+		return this.source == null;
+	}
+
+	public synchronized void materialize () throws JSONMappingException {
+		if (this.source != null) {
+			for (int i=0; i<this.elements.size (); i++)
+				convert (i);
+		}
+		for (Object element : this.elements)
+			LazyList.materialize (element);
+	}
+
+	private void materializeUnchecked () {
+		try {
+			materialize ();
+		} catch (JSONMappingException e) {
+			throw new UncheckedMappingException (e);
+		}
+	}
+
+	/** Materialize the lazy collections in a converted element. */
+	static void materialize (Object element) throws JSONMappingException {
+		if (element instanceof JSONEntity)
+			((JSONEntity) element).materialize ();
+		else if (element instanceof LazyCollection)
+			((LazyCollection) element).materialize ();
+	}
+}
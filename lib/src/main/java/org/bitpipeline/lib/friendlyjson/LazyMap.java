@@ -0,0 +1,250 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/** A map that is a view of a JSON object. The keys are converted right away
+ * and each value the first time it's used. Going through the values or
+ * the entries converts all of them first. The values replaced or removed
+ * before being converted are never converted, and <tt>null</tt> is
+ * returned for them as the previous value.
+ * @author mtavares */
+final class LazyMap<K, V> extends AbstractMap<K, V> implements LazyCollection {
+	/** Holds the key in the JSON of a value not converted yet. */
+	private static final class Pending {
+		final String jsonKey;
+
+		Pending (String jsonKey) {
+			this.jsonKey = jsonKey;
+		}
+	}
+
+	private final Class<?> valueClass;
+	private final DecodeOptions options;
+	private final HashMap<Object, Object> entries;
+	/** The JSON of the values not converted yet, <tt>null</tt> when all are converted. */
+	private JSONObject source;
+	private int pending;
+
+	LazyMap (Class<?> keyClass, Class<?> valueClass, JSONObject source, DecodeOptions options) throws JSONMappingException {
+		this.valueClass = valueClass;
+		this.options = options;
+		this.source = source;
+		this.entries = new HashMap<Object, Object> (source.length ());
+
+		DecodeOptions previous = options.enter ();
+		try {
+			Iterator<?> keys = source.keys ();
+			while (keys.hasNext ()) {
+				String key = keys.next ().toString ();
+				Object mapKey = keyClass == String.class ? options.canonicalize (key) : JSONEntity.fromJson (keyClass, key);
+				this.entries.put (mapKey, new Pending (key));
+			}
+		} finally {
+			DecodeOptions.restore (previous);
+		}
+		this.pending = this.entries.size ();
+		if (this.pending == 0)
+			this.source = null;
+	}
+
+	@SuppressWarnings ("unchecked")
+	private V convert (Object key, Object value) throws JSONMappingException {
+		if (!(value instanceof Pending))
+			return (V) value;
+
+		DecodeOptions previous = this.options.enter ();
+		try {
+			value = JSONEntity.fromJson (this.valueClass, this.source.get (((Pending) value).jsonKey));
+		} catch (JSONException e) {
+			throw new JSONMappingException (e);
+		} finally {
+			DecodeOptions.restore (previous);
+		}
+		this.entries.put (key, value);
+		if (--this.pending == 0)
+			this.source = null;
+		return (V) value;
+	}
+
+	@Override
+	public synchronized V get (Object key) {
+		Object value = this.entries.get (key);
+		try {
+			return convert (key, value);
+		} catch (JSONMappingException e) {
+			throw new UncheckedMappingException (e);
+		}
+	}
+
+	@Override
+	public synchronized boolean containsKey (Object key) {
+		return this.entries.containsKey (key);
+	}
+
+	@Override
+	public synchronized int size () {
+		return this.entries.size ();
+	}
+
+	@Override
+	public synchronized V put (K key, V value) {
+		return dropped (this.entries.put (key, value));
+	}
+
+	@Override
+	public synchronized V remove (Object key) {
+		return dropped (this.entries.remove (key));
+	}
+
+	@Override
+	public synchronized void clear () {
+		this.entries.clear ();
+		this.pending = 0;
+		this.source = null;
+	}
+
+	/** A value was replaced or removed.
+	 * @return the value, or <tt>null</tt> if it wasn't converted yet. */
+	@SuppressWarnings ("unchecked")
+	private V dropped (Object value) {
+		if (!(value instanceof Pending))
+			return (V) value;
+		if (--this.pending == 0)
+			this.source = null;
+		return null;
+	}
+
+	@Override
+	public synchronized Set<K> keySet () {
+		return new KeySet ();
+	}
+
+	@Override
+	@SuppressWarnings ("unchecked")
+	public synchronized Collection<V> values () {
+		materializeUnchecked ();
+		return (Collection<V>) this.entries.values ();
+	}
+
+	@Override
+	@SuppressWarnings ({ "unchecked", "rawtypes" })
+	public synchronized Set<Map.Entry<K, V>> entrySet () {
+		materializeUnchecked ();
+		return (Set) this.entries.entrySet ();
+	}
+
+	public synchronized boolean isMaterialized () {
+		return this.source == null;
+	}
+
+	public synchronized void materialize () throws JSONMappingException {
+		if (this.source != null) {
+			for (Map.Entry<Object, Object> entry : this.entries.entrySet ()) {
+				if (entry.getValue () instanceof Pending)
+					entry.setValue (convert (entry.getKey (), entry.getValue ()));
+			}
+		}
+		for (Object value : this.entries.values ())
+			LazyList.materialize (value);
+	}
+
+	/** The keys of the map, that remove the entries through the map. */
+	private final class KeySet extends AbstractSet<K> {
+		@Override
+		public Iterator<K> iterator () {
+			synchronized (LazyMap.this) {
+				return new KeyIterator (LazyMap.this.entries.entrySet ().iterator ());
+			}
+		}
+
+		@Override
+		public int size () {
+			return LazyMap.this.size ();
+		}
+
+		@Override
+		public boolean contains (Object key) {
+			return LazyMap.this.containsKey (key);
+		}
+
+		@Override
+		public boolean remove (Object key) {
+			synchronized (LazyMap.this) {
+				if (!LazyMap.this.entries.containsKey (key))
+					return false;
+				LazyMap.this.remove (key);
+				return true;
+			}
+		}
+
+		@Override
+		public void clear () {
+			LazyMap.this.clear ();
+		}
+	}
+
+	private final class KeyIterator implements Iterator<K> {
+		private final Iterator<Map.Entry<Object, Object>> iterator;
+		private Map.Entry<Object, Object> last;
+
+		KeyIterator (Iterator<Map.Entry<Object, Object>> iterator) {
+			this.iterator = iterator;
+		}
+
+		public boolean hasNext () {
+			synchronized (LazyMap.this) {
+				return this.iterator.hasNext ();
+			}
+		}
+
+		@SuppressWarnings ("unchecked")
+		public K next () {
+			synchronized (LazyMap.this) {
+				this.last = this.iterator.next ();
+				return (K) this.last.getKey ();
+			}
+		}
+
+		public void remove () {
+			synchronized (LazyMap.this) {
+				Object value = this.last != null ? this.last.getValue () : null;
+				this.iterator.remove ();
+				this.last = null;
+				LazyMap.this.dropped (value);
+			}
+		}
+	}
+
+	private void materializeUnchecked () {
+		try {
+			materialize ();
+		} catch (JSONMappingException e) {
+			throw new UncheckedMappingException (e);
+		}
+	}
+}
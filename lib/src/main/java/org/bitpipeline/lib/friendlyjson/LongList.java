@@ -0,0 +1,164 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+import org.json.JSONArray;
+
+/** A list of <tt>long</tt> values, stored without boxing them.
+ * @see NumberList
+ * @author mtavares */
+public final class LongList extends NumberList<Long> {
+	private LongBuffer values;
+
+	public LongList () {
+		this (NumberList.DEFAULT_CAPACITY, false);
+	}
+
+	public LongList (int capacity) {
+		this (capacity, false);
+	}
+
+	/**
+	 * @param offHeap if the values are to be kept in a direct buffer, off the heap. */
+	public LongList (int capacity, boolean offHeap) {
+		super (offHeap);
+		if (capacity < 0)
+			throw new IllegalArgumentException ("Illegal capacity: " + capacity);
+		this.values = LongList.allocate (capacity, offHeap);
+	}
+
+	/** Create a list, on the heap, with a copy of the values. */
+	public LongList (long[] values) {
+		this (values.length, false);
+		this.values.put (values);
+		this.size = values.length;
+	}
+
+	private static LongBuffer allocate (int capacity, boolean offHeap) {
+		if (offHeap)
+			return ByteBuffer.allocateDirect (capacity * 8).order (ByteOrder.nativeOrder ()).asLongBuffer ();
+		return LongBuffer.allocate (capacity);
+	}
+
+	private void ensureCapacity (int minimum) {
+		if (minimum <= this.values.capacity ())
+			return;
+		LongBuffer grown = LongList.allocate (NumberList.grow (this.values.capacity (), minimum), isOffHeap ());
+		this.values.clear ();
+		this.values.limit (this.size);
+		grown.put (this.values);
+		this.values = grown;
+	}
+
+	public long getLong (int index) {
+		checkIndex (index);
+		return this.values.get (index);
+	}
+
+	/** @return the value that was at the position. */
+	public long setLong (int index, long value) {
+		checkIndex (index);
+		long old = this.values.get (index);
+		this.values.put (index, value);
+		return old;
+	}
+
+	public void addLong (long value) {
+		ensureCapacity (this.size + 1);
+		this.values.put (this.size++, value);
+		this.modCount++;
+	}
+
+	public void addLong (int index, long value) {
+		checkPosition (index);
+		ensureCapacity (this.size + 1);
+		for (int i=this.size; i>index; i--)
+			this.values.put (i, this.values.get (i - 1));
+		this.values.put (index, value);
+		this.size++;
+		this.modCount++;
+	}
+
+	/** @return the value that was removed. */
+	public long removeLong (int index) {
+		checkIndex (index);
+		long old = this.values.get (index);
+		for (int i=index + 1; i<this.size; i++)
+			this.values.put (i - 1, this.values.get (i));
+		this.size--;
+		this.modCount++;
+		return old;
+	}
+
+	/** @return a new array with the values. */
+	public long[] toLongArray () {
+		long[] array = new long[this.size];
+		for (int i=0; i<this.size; i++)
+			array[i] = this.values.get (i);
+		return array;
+	}
+
+	@Override
+	public Long get (int index) {
+		return Long.valueOf (getLong (index));
+	}
+
+	@Override
+	public Long set (int index, Long value) {
+		return Long.valueOf (setLong (index, value.longValue ()));
+	}
+
+	@Override
+	public void add (int index, Long value) {
+		addLong (index, value.longValue ());
+	}
+
+	@Override
+	public Long remove (int index) {
+		return Long.valueOf (removeLong (index));
+	}
+
+	@Override
+	boolean addJson (Object value) {
+		Number number = PrimitiveArrays.toNumber (value);
+		if (number == null)
+			return false;
+		addLong (number.longValue ());
+		return true;
+	}
+
+	@Override
+	JSONArray toJSONArray () {
+		JSONArray json = new JSONArray ();
+		for (int i=0; i<this.size; i++)
+			json.put (this.values.get (i));
+		return json;
+	}
+
+	@Override
+	void write (Appendable out) throws JSONMappingException, IOException {
+		out.append ('[');
+		for (int i=0; i<this.size; i++)
+			PrimitiveArrays.appendInteger (out, i, this.values.get (i));
+		out.append (']');
+	}
+}
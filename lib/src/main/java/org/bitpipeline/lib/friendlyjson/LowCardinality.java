@@ -0,0 +1,35 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/** Marks a String field of a JSON entity as having few different values,
+ * like categories or brand names. When decoding with a {@link StringCache}
+ * the values of these fields are canonicalized, so equal values decoded
+ * into many entities share a single String.
+ * @see DecodeOptions#withStringCache(StringCache)
+ * @author mtavares */
+@Documented
+@Retention (RetentionPolicy.RUNTIME)
+@Target (ElementType.FIELD)
+public @interface LowCardinality {
+}
@@ -0,0 +1,31 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+/** Thrown by the iterators of {@link NDJSONReader}, that can't throw the
+ * exceptions of the reader. The cause is the original exception.
+ * @author mtavares */
+public class NDJSONException extends RuntimeException {
+	/** */
+	private static final long serialVersionUID = 4471520984411523176L;
+
+	/**
+	 * @param cause */
+	public NDJSONException (Throwable cause) {
+		super (cause.getMessage (), cause);
+	}
+}
@@ -0,0 +1,230 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.json.JSONException;
+import org.json.JSONTokener;
+
+/** Reads newline delimited JSON, one entity of the same class per line.
+ * Blank lines are ignored.
+ *
+ * The lines can be decoded in parallel by a executor. The reader keeps up
+ * to <tt>window</tt> lines being decoded ahead of the entities returned,
+ * either in the order of the lines or in the order they are decoded.
+ * @author mtavares */
+public final class NDJSONReader<T extends JSONEntity> implements Iterable<T>, Closeable {
+	/** How many lines are decoded ahead by default, when a executor is used. */
+	public static final int DEFAULT_WINDOW = 256;
+
+	private final Class<T> clazz;
+	private final BufferedReader reader;
+	private final int window;
+
+	private final Executor executor;
+	private final boolean ordered;
+	/** The lines being decoded, in their order. Only used when ordered. */
+	private final ArrayDeque<Future<T>> pending = new ArrayDeque<Future<T>> ();
+	/** The lines being decoded, in the order they finish. Only used when not ordered. */
+	private final CompletionService<T> completed;
+	/** The lines being decoded when not ordered, to be cancelled when closed. */
+	private final Set<Future<T>> inFlight = new HashSet<Future<T>> ();
+
+	private int lineNumber;
+	private boolean endOfInput;
+
+	/** Read the entities in the thread that asks for them. */
+	public NDJSONReader (Class<T> clazz, Reader reader) {
+		this (clazz, reader, null, 1, true);
+	}
+
+	/** Read the entities from UTF-8 text, in the thread that asks for them. */
+	public NDJSONReader (Class<T> clazz, InputStream stream) {
+		this (clazz, new InputStreamReader (stream, StandardCharsets.UTF_8));
+	}
+
+	/** Read the entities decoding the lines with a executor.
+	 * @param executor decodes the lines, <tt>null</tt> to decode them in the thread that asks for the entities.
+	 * @param window is how many lines can be decoding at the same time.
+	 * @param ordered if the entities are returned in the order of the lines,
+	 *        otherwise they are returned as soon as they are decoded. */
+	public NDJSONReader (Class<T> clazz, Reader reader, Executor executor, int window, boolean ordered) {
+		if (clazz == null || reader == null)
+			throw new IllegalArgumentException ("Both the class and the reader are required.");
+		if (window < 1)
+			throw new IllegalArgumentException ("The window must have at least one line.");
+		this.clazz = clazz;
+		this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader (reader);
+		this.executor = executor;
+		this.window = window;
+		this.ordered = ordered;
+		this.completed = executor != null && !ordered ? new ExecutorCompletionService<T> (executor) : null;
+	}
+
+	/** Read the next entity.
+	 * @return <tt>null</tt> at the end of the input.
+	 * @throws JSONMappingException if the line can't be mapped into a entity.
+	 * @throws JSONException if the line isn't valid JSON. */
+	public T read () throws JSONMappingException, JSONException, IOException {
+		if (this.executor == null) {
+			String line = nextLine ();
+			return line != null ? decode (line, this.lineNumber) : null;
+		}
+
+		fill ();
+		Future<T> future;
+		try {
+			if (this.ordered) {
+				future = this.pending.poll ();
+				if (future == null)
+					return null;
+			} else {
+				if (this.inFlight.isEmpty ())
+					return null;
+				future = this.completed.take ();
+				this.inFlight.remove (future);
+			}
+			return future.get ();
+		} catch (InterruptedException e) {
+			Thread.currentThread ().interrupt ();
+			throw new InterruptedIOException ();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause ();
+			if (cause instanceof JSONMappingException)
+				throw (JSONMappingException) cause;
+			if (cause instanceof JSONException)
+				throw (JSONException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new JSONMappingException (cause);
+		}
+	}
+
+	/** Start decoding lines until there are <tt>window</tt> of them being decoded. */
+	private void fill () throws IOException {
+		while ((this.ordered ? this.pending.size () : this.inFlight.size ()) < this.window) {
+			final String line = nextLine ();
+			if (line == null)
+				return;
+			final int number = this.lineNumber;
+			Callable<T> task = new Callable<T> () {
+				public T call () throws Exception {
+					return decode (line, number);
+				}
+			};
+			if (this.ordered) {
+				FutureTask<T> future = new FutureTask<T> (task);
+				this.executor.execute (future);
+				this.pending.add (future);
+			} else {
+				this.inFlight.add (this.completed.submit (task));
+			}
+		}
+	}
+
+	/** @return the next line that isn't blank or <tt>null</tt> at the end of the input. */
+	private String nextLine () throws IOException {
+		while (!this.endOfInput) {
+			String line = this.reader.readLine ();
+			if (line == null) {
+				this.endOfInput = true;
+				return null;
+			}
+			this.lineNumber++;
+			for (int i=0; i<line.length (); i++) {
+				if (line.charAt (i) > ' ')
+					return line;
+			}
+		}
+		return null;
+	}
+
+	private T decode (String line, int number) throws JSONMappingException, JSONException {
+		try {
+			return new EntityReader (new JSONTokener (line)).readEntity (this.clazz);
+		} catch (JSONMappingException e) {
+			throw new JSONMappingException ("Can't map line " + number + " into a " + this.clazz.getName (), e);
+		} catch (JSONException e) {
+			throw new JSONException ("Invalid JSON in line " + number + ": " + e.getMessage ());
+		}
+	}
+
+	/** Iterate over the entities.
+	 * Errors are thrown as a {@link NDJSONException}. */
+	public Iterator<T> iterator () {
+		return new Iterator<T> () {
+			private T next;
+
+			public boolean hasNext () {
+				if (this.next == null) {
+					try {
+						this.next = read ();
+					} catch (Exception e) {
+						throw new NDJSONException (e);
+					}
+				}
+				return this.next != null;
+			}
+
+			public T next () {
+				if (!hasNext ())
+					throw new NoSuchElementException ();
+				T entity = this.next;
+				this.next = null;
+				return entity;
+			}
+
+			public void remove () {
+				throw new UnsupportedOperationException ();
+			}
+		};
+	}
+
+	/** Close the input. The lines still being decoded are cancelled. */
+	public void close () throws IOException {
+		for (Future<T> future : this.pending)
+			future.cancel (false);
+		this.pending.clear ();
+		for (Future<T> future : this.inFlight)
+			future.cancel (false);
+		this.inFlight.clear ();
+		this.endOfInput = true;
+		this.reader.close ();
+	}
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/** Writes newline delimited JSON, one entity per line.
+ * The entities are written into a batch, the same way as
+ * {@link JSONEntity#writeTo(Writer)}, and the batch goes to the writer when
+ * it reaches the batch size. A entity that fails to be written leaves
+ * nothing behind in the batch.
+ * @author mtavares */
+public final class NDJSONWriter implements Closeable, Flushable {
+	/** The default batch size, in characters. */
+	public static final int DEFAULT_BATCH_SIZE = 64 * 1024;
+
+	private final Writer writer;
+	private final int batchSize;
+	private final StringBuilder batch;
+	private final EntityWriter entityWriter;
+
+	public NDJSONWriter (Writer writer) {
+		this (writer, NDJSONWriter.DEFAULT_BATCH_SIZE);
+	}
+
+	/** Write the entities encoded in UTF-8. */
+	public NDJSONWriter (OutputStream stream) {
+		this (new OutputStreamWriter (stream, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @param batchSize is how many characters are kept before writing them. */
+	public NDJSONWriter (Writer writer, int batchSize) {
+		if (writer == null)
+			throw new IllegalArgumentException ("The writer is required.");
+		this.writer = writer;
+		this.batchSize = batchSize;
+		this.batch = new StringBuilder (Math.max (16, batchSize + batchSize / 8));
+		this.entityWriter = new EntityWriter (this.batch);
+	}
+
+	/** Write a entity in a line. */
+	public void write (JSONEntity entity) throws JSONMappingException, IOException {
+		int mark = this.batch.length ();
+		try {
+			this.entityWriter.writeEntity (entity);
+		} catch (JSONMappingException e) {
+			this.batch.setLength (mark);
+			throw e;
+		} catch (RuntimeException e) {
+			this.batch.setLength (mark);
+			throw e;
+		}
+		this.batch.append ('\n');
+		if (this.batch.length () >= this.batchSize)
+			writeBatch ();
+	}
+
+	/** Write each of the entities in a line. */
+	public void write (Iterable<? extends JSONEntity> entities) throws JSONMappingException, IOException {
+		for (JSONEntity entity : entities)
+			write (entity);
+	}
+
+	private void writeBatch () throws IOException {
+		if (this.batch.length () == 0)
+			return;
+		this.writer.append (this.batch);
+		this.batch.setLength (0);
+	}
+
+	/** Write the batch and flush the writer. */
+	public void flush () throws IOException {
+		writeBatch ();
+		this.writer.flush ();
+	}
+
+	/** Write the batch and close the writer. */
+	public void close () throws IOException {
+		try {
+			writeBatch ();
+		} finally {
+			this.writer.close ();
+		}
+	}
+}
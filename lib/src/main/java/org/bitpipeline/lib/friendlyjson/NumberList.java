@@ -0,0 +1,97 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+import org.json.JSONArray;
+
+/** A list of numbers stored as primitives, in a buffer on the heap or off
+ * the heap. Entity fields of the types {@link IntList}, {@link LongList} and
+ * {@link DoubleList} are decoded and encoded element by element without
+ * boxing the values. The methods of <tt>List</tt> box the values, the
+ * ones of each type, like {@link IntList#getInt(int)}, don't.
+ *
+ * The lists aren't synchronized. The off heap ones keep their values in a
+ * direct buffer, released when the list is garbage collected.
+ * @author mtavares */
+public abstract class NumberList<E extends Number> extends AbstractList<E> implements RandomAccess {
+	/** The capacity of the lists created without one. */
+	static final int DEFAULT_CAPACITY = 10;
+
+	private final boolean offHeap;
+	int size;
+
+	NumberList (boolean offHeap) {
+		this.offHeap = offHeap;
+	}
+
+	/** Create a empty list of one of the types of number lists. */
+	static NumberList<?> create (Class<?> type, int capacity, boolean offHeap) {
+		if (type == IntList.class)
+			return new IntList (capacity, offHeap);
+		if (type == LongList.class)
+			return new LongList (capacity, offHeap);
+		if (type == DoubleList.class)
+			return new DoubleList (capacity, offHeap);
+		throw new IllegalArgumentException ("Not a list of numbers: " + type.getName ());
+	}
+
+	/** @return <tt>true</tt> if the values are kept off the heap. */
+	public boolean isOffHeap () {
+		return this.offHeap;
+	}
+
+	@Override
+	public int size () {
+		return this.size;
+	}
+
+	@Override
+	public void clear () {
+		this.size = 0;
+		this.modCount++;
+	}
+
+	void checkIndex (int index) {
+		if (index < 0 || index >= this.size)
+			throw new IndexOutOfBoundsException ("Index: " + index + ", Size: " + this.size);
+	}
+
+	void checkPosition (int index) {
+		if (index < 0 || index > this.size)
+			throw new IndexOutOfBoundsException ("Index: " + index + ", Size: " + this.size);
+	}
+
+	/** @return the capacity to grow into, to have room for at least <tt>minimum</tt> elements. */
+	static int grow (int capacity, int minimum) {
+		int grown = capacity + (capacity >> 1) + 1;
+		return grown < minimum || grown < 0 ? minimum : grown;
+	}
+
+	/** Add a element from a JSON value.
+	 * @return <tt>false</tt> if the value isn't a number nor a numeric string. */
+	abstract boolean addJson (Object value);
+
+	/** @return a JSON array with the values. */
+	abstract JSONArray toJSONArray () throws JSONMappingException;
+
+	/** Write the values as a JSON array. */
+	abstract void write (Appendable out) throws JSONMappingException, IOException;
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import org.json.JSONArray;
+
+/** Decodes the elements of a JSON array in parallel, with a fork/join pool.
+ * Each element is converted with <tt>JSONEntity.fromJson (clazz, element)</tt>
+ * in the options of the thread that started the decoding.
+ * @author mtavares */
+final class ParallelDecoder extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+
+	/** The pool used when the options don't have one. Created when first needed. */
+	private static volatile ForkJoinPool sharedPool;
+
+	private final Class<?> clazz;
+	private final JSONArray array;
+	private final Object[] results;
+	private final Exception[] failures;
+	private final DecodeOptions options;
+	private final int from;
+	private final int to;
+	private final int leafSize;
+
+	private ParallelDecoder (Class<?> clazz, JSONArray array, Object[] results, Exception[] failures, DecodeOptions options, int from, int to, int leafSize) {
+		this.clazz = clazz;
+		this.array = array;
+		this.results = results;
+		this.failures = failures;
+		this.options = options;
+		this.from = from;
+		this.to = to;
+		this.leafSize = leafSize;
+	}
+
+	/** Decode all the elements of the array.
+	 * @param failures gets the exception of each element that couldn't be decoded.
+	 * @return the decoded elements, <tt>null</tt> for the ones that failed. */
+	static Object[] decode (Class<?> clazz, JSONArray array, DecodeOptions options, Exception[] failures) {
+		int size = array.length ();
+		Object[] results = new Object[size];
+		ForkJoinPool pool = ParallelDecoder.getPool (options);
+		int leafSize = Math.max (1, size / (pool.getParallelism () * 4));
+		ParallelDecoder task = new ParallelDecoder (clazz, array, results, failures, options, 0, size, leafSize);
+		if (ForkJoinTask.getPool () == pool) // already decoding in the pool.
+			task.invoke ();
+		else
+			pool.invoke (task);
+		return results;
+	}
+
+	/** @return the first failure, in the order of the elements, or <tt>null</tt> if there's none. */
+	static Exception firstFailure (Exception[] failures) {
+		for (Exception failure : failures) {
+			if (failure != null)
+				return failure;
+		}
+		return null;
+	}
+
+	private static ForkJoinPool getPool (DecodeOptions options) {
+		if (options.getPool () != null)
+			return options.getPool ();
+		ForkJoinPool pool = ParallelDecoder.sharedPool;
+		if (pool == null) {
+			synchronized (ParallelDecoder.class) {
+				pool = ParallelDecoder.sharedPool;
+				if (pool == null) {
+					pool = new ForkJoinPool ();
+					ParallelDecoder.sharedPool = pool;
+				}
+			}
+		}
+		return pool;
+	}
+
+	@Override
+	protected void compute () {
+		if (this.to - this.from > this.leafSize) {
+			int middle = (this.from + this.to) >>> 1;
+			ForkJoinTask.invokeAll (
+				new ParallelDecoder (this.clazz, this.array, this.results, this.failures, this.options, this.from, middle, this.leafSize),
+				new ParallelDecoder (this.clazz, this.array, this.results, this.failures, this.options, middle, this.to, this.leafSize));
+			return;
+		}
+
+		DecodeOptions previous = this.options.enter ();
+		try {
+			for (int i=this.from; i<this.to; i++) {
+				try {
+					this.results[i] = JSONEntity.fromJson (this.clazz, this.array.get (i));
+				} catch (Exception e) {
+					this.failures[i] = e;
+				}
+			}
+		} finally {
+			DecodeOptions.restore (previous);
+		}
+	}
+}
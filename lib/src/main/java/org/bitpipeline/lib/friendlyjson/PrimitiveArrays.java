@@ -0,0 +1,236 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/** Converts arrays of primitives from and into JSON arrays, element by
+ * element, without boxing the values of the array.
+ * The elements are converted with the same rules as the fields of the
+ * same primitive type: numbers from numbers or numeric strings, booleans
+ * from booleans or the strings "true" and "false", and chars from the first
+ * character of the text of the value.
+ * @author mtavares */
+final class PrimitiveArrays {
+	private PrimitiveArrays () {
+	}
+
+	/** Convert the elements of a JSON array into a new array of primitives.
+	 * @param invalid gets, in its first position, how many elements couldn't
+	 *        be converted. Those are left with the default value. */
+	static Object fromJson (Class<?> componentType, JSONArray json, int[] invalid) {
+		int size = json.length ();
+		Object array = Array.newInstance (componentType, size);
+		for (int i=0; i<size; i++) {
+			if (!PrimitiveArrays.set (array, i, json.opt (i)))
+				invalid[0]++;
+		}
+		return array;
+	}
+
+	/** Set a element of a array of primitives back to the default value. */
+	static void clear (Object array, int index) {
+		if (array instanceof boolean[])
+			((boolean[]) array)[index] = false;
+		else if (array instanceof char[])
+			((char[]) array)[index] = 0;
+		else // widened to the type of the array.
+			Array.setByte (array, index, (byte) 0);
+	}
+
+	/** Set a element of a array of primitives from a JSON value.
+	 * @return <tt>false</tt> if the value can't be converted into the type of the array. */
+	static boolean set (Object array, int index, Object value) {
+		if (value == null || value == JSONObject.NULL)
+			return false;
+
+		if (array instanceof boolean[]) {
+			if (value instanceof Boolean)
+				((boolean[]) array)[index] = ((Boolean) value).booleanValue ();
+			else if (value instanceof String && "true".equalsIgnoreCase ((String) value))
+				((boolean[]) array)[index] = true;
+			else if (value instanceof String && "false".equalsIgnoreCase ((String) value))
+				((boolean[]) array)[index] = false;
+			else
+				return false;
+			return true;
+		}
+		if (array instanceof char[]) {
+			String string = value.toString ();
+			if (string.length () == 0)
+				return false;
+			((char[]) array)[index] = string.charAt (0);
+			return true;
+		}
+
+		Number number = PrimitiveArrays.toNumber (value);
+		if (number == null)
+			return false;
+		if (array instanceof int[])
+			((int[]) array)[index] = number.intValue ();
+		else if (array instanceof long[])
+			((long[]) array)[index] = number.longValue ();
+		else if (array instanceof double[])
+			((double[]) array)[index] = number.doubleValue ();
+		else if (array instanceof float[])
+			((float[]) array)[index] = (float) number.doubleValue ();
+		else if (array instanceof short[])
+			((short[]) array)[index] = (short) number.intValue ();
+		else if (array instanceof byte[])
+			((byte[]) array)[index] = (byte) number.intValue ();
+		else
+			return false;
+		return true;
+	}
+
+	/** @return the number of a JSON value, <tt>null</tt> if it isn't a number nor a numeric string. */
+	static Number toNumber (Object value) {
+		if (value instanceof Number)
+			return (Number) value;
+		if (value instanceof String) {
+			try {
+				return Double.valueOf ((String) value);
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	/** Convert a array of primitives into a JSON array.
+	 * The values are put the same way as fields of the same type. */
+	static JSONArray toJson (Object array) throws JSONMappingException {
+		JSONArray json = new JSONArray ();
+		if (array instanceof int[]) {
+			for (int value : (int[]) array)
+				json.put (value);
+		} else if (array instanceof long[]) {
+			for (long value : (long[]) array)
+				json.put (value);
+		} else if (array instanceof double[]) {
+			for (double value : (double[]) array) {
+				if (Double.isNaN (value) || Double.isInfinite (value))
+					throw new JSONMappingException (EntityWriter.NON_FINITE);
+				json.put (Double.valueOf (value));
+			}
+		} else if (array instanceof float[]) {
+			for (float value : (float[]) array) {
+				if (Float.isNaN (value) || Float.isInfinite (value))
+					throw new JSONMappingException (EntityWriter.NON_FINITE);
+				json.put (Float.valueOf (value));
+			}
+		} else if (array instanceof boolean[]) {
+			for (boolean value : (boolean[]) array)
+				json.put (value);
+		} else if (array instanceof short[]) {
+			for (short value : (short[]) array)
+				json.put (Short.valueOf (value));
+		} else if (array instanceof byte[]) {
+			for (byte value : (byte[]) array)
+				json.put (Byte.valueOf (value));
+		} else if (array instanceof char[]) {
+			for (char value : (char[]) array)
+				json.put (Character.valueOf (value));
+		} else {
+			throw new JSONMappingException ("Not a array of primitives: " + array.getClass ().getName ());
+		}
+		return json;
+	}
+
+	/** Write a array of primitives as JSON text, the same text as the JSON array from {@link #toJson(Object)}.
+	 * The numbers are written straight from the primitive values. */
+	static void write (Object array, Appendable out, EntityWriter writer) throws JSONMappingException, IOException {
+		out.append ('[');
+		if (array instanceof int[]) {
+			int[] values = (int[]) array;
+			for (int i=0; i<values.length; i++)
+				PrimitiveArrays.appendInteger (out, i, values[i]);
+		} else if (array instanceof long[]) {
+			long[] values = (long[]) array;
+			for (int i=0; i<values.length; i++)
+				PrimitiveArrays.appendInteger (out, i, values[i]);
+		} else if (array instanceof double[]) {
+			double[] values = (double[]) array;
+			for (int i=0; i<values.length; i++) {
+				if (i > 0)
+					out.append (',');
+				writer.writeDecimal (values[i]);
+			}
+		} else if (array instanceof float[]) {
+			float[] values = (float[]) array;
+			for (int i=0; i<values.length; i++) {
+				if (i > 0)
+					out.append (',');
+				writer.writeDecimal (values[i]);
+			}
+		} else if (array instanceof boolean[]) {
+			boolean[] values = (boolean[]) array;
+			for (int i=0; i<values.length; i++) {
+				if (i > 0)
+					out.append (',');
+				out.append (values[i] ? "true" : "false");
+			}
+		} else if (array instanceof short[]) {
+			short[] values = (short[]) array;
+			for (int i=0; i<values.length; i++)
+				PrimitiveArrays.appendInteger (out, i, values[i]);
+		} else if (array instanceof byte[]) {
+			byte[] values = (byte[]) array;
+			for (int i=0; i<values.length; i++)
+				PrimitiveArrays.appendInteger (out, i, values[i]);
+		} else if (array instanceof char[]) {
+			char[] values = (char[]) array;
+			for (int i=0; i<values.length; i++) {
+				if (i > 0)
+					out.append (',');
+				writer.writeQuoted (String.valueOf (values[i]));
+			}
+		} else {
+			throw new JSONMappingException ("Not a array of primitives: " + array.getClass ().getName ());
+		}
+		out.append (']');
+	}
+
+	/** Append a integer number, after a comma if it isn't the first element. */
+	static void appendInteger (Appendable out, int index, long value) throws IOException {
+		if (index > 0)
+			out.append (',');
+		if (out instanceof StringBuilder)
+			((StringBuilder) out).append (value);
+		else
+			out.append (Long.toString (value));
+	}
+
+	/** Append a decimal number the way <tt>JSONObject.numberToString</tt> does,
+	 * without the trailing zeros of the fraction, after a comma if it isn't the first element. */
+	static void appendDecimal (Appendable out, int index, String number) throws IOException {
+		if (index > 0)
+			out.append (',');
+		int end = number.length ();
+		if (number.indexOf ('.') > 0 && number.indexOf ('e') < 0 && number.indexOf ('E') < 0) {
+			while (number.charAt (end - 1) == '0')
+				end--;
+			if (number.charAt (end - 1) == '.')
+				end--;
+		}
+		out.append (number, 0, end);
+	}
+}
@@ -0,0 +1,231 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** A bounded cache of the JSON text of entities, safe to share between threads.
+ * The entities of the classes marked with {@link CachedSerialization} keep
+ * their compact JSON text, and its UTF-8 bytes once those are asked for,
+ * in the default cache. That text is what <tt>toString ()</tt> returns and
+ * what is written, as is, when the entity is written by itself or nested
+ * in another entity, until the entity is invalidated with
+ * {@link JSONEntity#invalidateSerialized()}.
+ *
+ * The cache is bounded by the memory its texts and bytes take, and evicts
+ * the texts of the least recently used entities when that is exceeded.
+ * A text larger than the whole cache isn't kept.
+ *
+ * The text is only as current as the entity was when it was written: a
+ * entity changed without being invalidated keeps being written as it was,
+ * and so does any cached entity that contains it.
+ * @author mtavares */
+public final class SerializationCache {
+	public static final long DEFAULT_MAXIMUM_BYTES = 16L << 20;
+	/** The memory taken by each entry, besides its text and bytes. */
+	private static final int ENTRY_OVERHEAD = 64;
+
+	private static volatile SerializationCache global = new SerializationCache (SerializationCache.DEFAULT_MAXIMUM_BYTES);
+
+	private final long maximumBytes;
+	/** The entries, from the least to the most recently used. Guarded by the cache. */
+	private final LinkedHashMap<Entry, Boolean> entries = new LinkedHashMap<Entry, Boolean> (16, 0.75f, true);
+	/** The memory taken by the entries. Guarded by the cache. */
+	private long bytes;
+	private final AtomicLong hits = new AtomicLong ();
+	private final AtomicLong misses = new AtomicLong ();
+	private final AtomicLong evictions = new AtomicLong ();
+
+	/** The JSON text of a entity, kept both by the entity and by the cache.
+	 * Entries are compared by identity, like the entities they belong to. */
+	static final class Entry {
+		final SerializationCache cache;
+		final JSONEntity entity;
+		final String text;
+		/** The text in UTF-8, <tt>null</tt> until it's asked for. */
+		volatile byte[] utf8;
+
+		Entry (SerializationCache cache, JSONEntity entity, String text) {
+			this.cache = cache;
+			this.entity = entity;
+			this.text = text;
+		}
+
+		long weight () {
+			byte[] utf8 = this.utf8;
+			return SerializationCache.ENTRY_OVERHEAD + 2L * this.text.length () + (utf8 != null ? utf8.length : 0);
+		}
+	}
+
+	/**
+	 * @param maximumBytes is the memory, in bytes, the texts in the cache may take. */
+	public SerializationCache (long maximumBytes) {
+		if (maximumBytes < 1)
+			throw new IllegalArgumentException ("The cache must have room for at least one byte.");
+		this.maximumBytes = maximumBytes;
+	}
+
+	/** @return the cache used by the entities marked with {@link CachedSerialization}. */
+	public static SerializationCache getDefault () {
+		return SerializationCache.global;
+	}
+
+	/** Set the cache used by the entities marked with {@link CachedSerialization}.
+	 * The texts in the previous cache are cleared. */
+	public static void setDefault (SerializationCache cache) {
+		if (cache == null)
+			throw new IllegalArgumentException ("The cache is required.");
+		SerializationCache previous = SerializationCache.global;
+		SerializationCache.global = cache;
+		if (previous != cache)
+			previous.clear ();
+	}
+
+	/** @return the JSON text of the entity, from the cache or written now and added to it. */
+	String getText (JSONEntity entity) throws JSONMappingException {
+		return getEntry (entity).text;
+	}
+
+	/** @return the JSON text of the entity in UTF-8, from the cache or encoded now and added to it.
+	 *         The array is shared and must not be changed. */
+	byte[] getUtf8 (JSONEntity entity) throws JSONMappingException {
+		Entry entry = getEntry (entity);
+		byte[] utf8 = entry.utf8;
+		if (utf8 != null)
+			return utf8;
+		utf8 = entry.text.getBytes (StandardCharsets.UTF_8);
+		synchronized (this) {
+			if (entry.utf8 == null && this.entries.containsKey (entry)) {
+				entry.utf8 = utf8;
+				this.bytes += utf8.length;
+				evict ();
+			}
+		}
+		return utf8;
+	}
+
+	private Entry getEntry (JSONEntity entity) throws JSONMappingException {
+		Entry entry = entity.serialized;
+		if (entry != null && entry.cache == this) {
+			synchronized (this) {
+				if (this.entries.get (entry) != null) {
+					this.hits.incrementAndGet ();
+					return entry;
+				}
+			}
+		}
+		this.misses.incrementAndGet ();
+		entry = new Entry (this, entity, EntityWriter.toText (entity));
+		if (entry.weight () > this.maximumBytes)
+			return entry;
+		synchronized (this) {
+			this.entries.put (entry, Boolean.TRUE);
+			this.bytes += entry.weight ();
+			evict ();
+		}
+		entity.serialized = entry;
+		return entry;
+	}
+
+	/** Remove the least recently used entries until the cache fits its bound. */
+	private void evict () {
+		Iterator<Entry> iterator = this.entries.keySet ().iterator ();
+		while (this.bytes > this.maximumBytes && iterator.hasNext ()) {
+			Entry eldest = iterator.next ();
+			iterator.remove ();
+			this.bytes -= eldest.weight ();
+			if (eldest.entity.serialized == eldest)
+				eldest.entity.serialized = null;
+			this.evictions.incrementAndGet ();
+		}
+	}
+
+	/** Drop the text of a entity, if it's in this cache. */
+	void invalidate (JSONEntity entity) {
+		Entry entry = entity.serialized;
+		if (entry == null || entry.cache != this)
+			return;
+		entity.serialized = null;
+		synchronized (this) {
+			if (this.entries.remove (entry) != null)
+				this.bytes -= entry.weight ();
+		}
+	}
+
+	/** @return how many entities have their text in the cache. */
+	public synchronized int size () {
+		return this.entries.size ();
+	}
+
+	/** @return the memory, in bytes, taken by the texts in the cache. */
+	public synchronized long getBytes () {
+		return this.bytes;
+	}
+
+	/** Remove all the texts from the cache. The statistics are kept. */
+	public void clear () {
+		synchronized (this) {
+			for (Entry entry : this.entries.keySet ()) {
+				if (entry.entity.serialized == entry)
+					entry.entity.serialized = null;
+			}
+			this.entries.clear ();
+			this.bytes = 0;
+		}
+	}
+
+	public long getMaximumBytes () {
+		return this.maximumBytes;
+	}
+
+	/** @return how many times the text of a entity was found in the cache. */
+	public long getHits () {
+		return this.hits.get ();
+	}
+
+	/** @return how many times the text of a entity wasn't in the cache and was written. */
+	public long getMisses () {
+		return this.misses.get ();
+	}
+
+	/** @return how many texts were evicted to make room for others. */
+	public long getEvictions () {
+		return this.evictions.get ();
+	}
+
+	/** @return the fraction of the texts that were found in the cache, 0 if none was looked up. */
+	public double getHitRate () {
+		long hits = this.hits.get ();
+		long total = hits + this.misses.get ();
+		return total == 0 ? 0.0 : (double) hits / total;
+	}
+
+	/** Reset the hit, miss and eviction counts. */
+	public void resetStatistics () {
+		this.hits.set (0);
+		this.misses.set (0);
+		this.evictions.set (0);
+	}
+
+	@Override
+	public String toString () {
+		return "SerializationCache [size=" + size () + ", bytes=" + getBytes () + ", hits=" + getHits () + ", misses=" + getMisses () + ", evictions=" + getEvictions () + "]";
+	}
+}
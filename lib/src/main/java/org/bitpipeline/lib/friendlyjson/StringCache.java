@@ -0,0 +1,182 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** A bounded cache of canonical Strings, safe to share between threads.
+ * When decoding with a cache, see {@link DecodeOptions#withStringCache(StringCache)},
+ * the keys of maps and the values of the String fields marked with
+ * {@link LowCardinality} are replaced by the equal String already in the
+ * cache, so the decoded entities don't each keep their own copy.
+ *
+ * The cache is split in segments, each with its own lock, that evict
+ * Strings when full, either the least recently used or the oldest ones.
+ * Strings longer than the maximum length aren't cached.
+ * @author mtavares */
+public final class StringCache {
+	/** Which Strings are evicted when a segment of the cache is full. */
+	public static enum Eviction {
+		/** The String that was used the longest time ago. */
+		LEAST_RECENTLY_USED,
+		/** The String that was added the longest time ago. */
+		OLDEST
+	}
+
+	public static final int DEFAULT_MAXIMUM_LENGTH = 64;
+	private static final int SEGMENTS = 16;
+
+	private final Segment[] segments;
+	private final int maximumSize;
+	private final int maximumLength;
+	private final Eviction eviction;
+	private final AtomicLong hits = new AtomicLong ();
+	private final AtomicLong misses = new AtomicLong ();
+	private final AtomicLong evictions = new AtomicLong ();
+
+	/** One part of the cache, a map that evicts its eldest entry when full. */
+	private final class Segment extends LinkedHashMap<String, String> {
+		/** */
+		private static final long serialVersionUID = -3208236095547196311L;
+		private final int capacity;
+
+		Segment (int capacity, boolean accessOrder) {
+			super (16, 0.75f, accessOrder);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry (Map.Entry<String, String> eldest) {
+			if (size () <= this.capacity)
+				return false;
+			StringCache.this.evictions.incrementAndGet ();
+			return true;
+		}
+	}
+
+	/** Create a cache that evicts the least recently used Strings. */
+	public StringCache (int maximumSize) {
+		this (maximumSize, StringCache.DEFAULT_MAXIMUM_LENGTH, Eviction.LEAST_RECENTLY_USED);
+	}
+
+	/**
+	 * @param maximumSize is how many Strings the cache keeps, at most.
+	 * @param maximumLength is the length of the longest String cached.
+	 * @param eviction is which Strings are evicted when the cache is full. */
+	public StringCache (int maximumSize, int maximumLength, Eviction eviction) {
+		if (maximumSize < 1)
+			throw new IllegalArgumentException ("The cache must have room for at least one String.");
+		if (eviction == null)
+			throw new IllegalArgumentException ("The eviction is required.");
+		this.maximumSize = maximumSize;
+		this.maximumLength = maximumLength;
+		this.eviction = eviction;
+		int count = Math.min (StringCache.SEGMENTS, maximumSize);
+		this.segments = new Segment[count];
+		for (int i=0; i<count; i++) {
+			int capacity = maximumSize / count + (i < maximumSize % count ? 1 : 0);
+			this.segments[i] = new Segment (capacity, eviction == Eviction.LEAST_RECENTLY_USED);
+		}
+	}
+
+	/** @return the String equal to the given one that is in the cache, or
+	 *         the given one, now in the cache, if there was none. */
+	public String canonicalize (String string) {
+		if (string == null || string.length () > this.maximumLength)
+			return string;
+		int hash = string.hashCode ();
+		Segment segment = this.segments[((hash ^ (hash >>> 16)) & 0x7fffffff) % this.segments.length];
+		synchronized (segment) {
+			String canonical = segment.get (string);
+			if (canonical != null) {
+				this.hits.incrementAndGet ();
+				return canonical;
+			}
+			segment.put (string, string);
+		}
+		this.misses.incrementAndGet ();
+		return string;
+	}
+
+	/** @return how many Strings are in the cache. */
+	public int size () {
+		int size = 0;
+		for (Segment segment : this.segments) {
+			synchronized (segment) {
+				size += segment.size ();
+			}
+		}
+		return size;
+	}
+
+	/** Remove all the Strings from the cache. The statistics are kept. */
+	public void clear () {
+		for (Segment segment : this.segments) {
+			synchronized (segment) {
+				segment.clear ();
+			}
+		}
+	}
+
+	public int getMaximumSize () {
+		return this.maximumSize;
+	}
+
+	public int getMaximumLength () {
+		return this.maximumLength;
+	}
+
+	public Eviction getEviction () {
+		return this.eviction;
+	}
+
+	/** @return how many times a String was found in the cache. */
+	public long getHits () {
+		return this.hits.get ();
+	}
+
+	/** @return how many times a String wasn't in the cache and was added to it. */
+	public long getMisses () {
+		return this.misses.get ();
+	}
+
+	/** @return how many Strings were evicted to make room for others. */
+	public long getEvictions () {
+		return this.evictions.get ();
+	}
+
+	/** @return the fraction of the Strings that were found in the cache, 0 if none was looked up. */
+	public double getHitRate () {
+		long hits = this.hits.get ();
+		long total = hits + this.misses.get ();
+		return total == 0 ? 0.0 : (double) hits / total;
+	}
+
+	/** Reset the hit, miss and eviction counts. */
+	public void resetStatistics () {
+		this.hits.set (0);
+		this.misses.set (0);
+		this.evictions.set (0);
+	}
+
+	@Override
+	public String toString () {
+		return "StringCache [size=" + size () + ", hits=" + getHits () + ", misses=" + getMisses () + ", evictions=" + getEvictions () + "]";
+	}
+}
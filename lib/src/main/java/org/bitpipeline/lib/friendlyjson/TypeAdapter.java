@@ -0,0 +1,34 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.lang.reflect.Type;
+
+/** Converts the values of a type, that isn't a JSON entity, from and into JSON values.
+ * The adapters are registered in {@link TypeAdapters} and used for the
+ * fields of the type, and for the elements of the lists, arrays and maps.
+ * @author mtavares */
+public interface TypeAdapter<T> {
+	/** @return the JSON value of the value: a String, Number, Boolean,
+	 *         JSONObject or JSONArray, never <tt>null</tt>. */
+	Object toJson (T value) throws JSONMappingException;
+
+	/** Convert a JSON value, never null, into a value of the type.
+	 * @param type is the declared type of the field, with its generic type
+	 *        arguments, or the class of the element being decoded. */
+	T fromJson (Object json, Type type) throws JSONMappingException;
+}
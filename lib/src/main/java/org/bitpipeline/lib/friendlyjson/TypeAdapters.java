@@ -0,0 +1,380 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.UUID;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONString;
+
+/** The adapters that convert the values of types that aren't JSON entities.
+ * Reading the registry takes no locks, so adapters can be registered at
+ * any time, from any thread, although usually before the entities using
+ * them are decoded.
+ *
+ * When decoding, the adapter registered for the exact declared class is
+ * used. When encoding, the adapter of the class of the value is used or,
+ * if there's none, the one of its closest super class or interface. Values
+ * that are already JSON values, Strings, Numbers and Booleans, are never
+ * adapted when encoding, nor are entities, maps, lists and arrays, that
+ * have their own conversions.
+ *
+ * There are adapters for the boxed primitives, BigDecimal and BigInteger,
+ * that convert from numbers and numeric strings, for UUID, for Date, as a
+ * ISO 8601 text in UTC, that is also decoded from milliseconds since the
+ * epoch, and for Set, as a JSON array. They can be replaced by registering
+ * other adapters for those classes.
+ * @author mtavares */
+public final class TypeAdapters {
+	private static final String DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'";
+	private static final String[] DATE_PARSE_FORMATS = { "yyyy-MM-dd'T'HH:mm:ss.SSSXXX", "yyyy-MM-dd'T'HH:mm:ssXXX", "yyyy-MM-dd" };
+	private static final TimeZone UTC = TimeZone.getTimeZone ("UTC");
+	/** Marks the classes of values that have no adapter. */
+	private static final TypeAdapter<Object> NONE = new TypeAdapter<Object> () {
+		public Object toJson (Object value) {
+			throw new UnsupportedOperationException ();
+		}
+
+		public Object fromJson (Object json, Type type) {
+			throw new UnsupportedOperationException ();
+		}
+	};
+
+	private static final ConcurrentHashMap<Class<?>, TypeAdapter<?>> REGISTERED = new ConcurrentHashMap<Class<?>, TypeAdapter<?>> ();
+	/** The adapter found for the classes of the values encoded, cleared when the registry changes. */
+	private static final ConcurrentHashMap<Class<?>, TypeAdapter<?>> BY_VALUE_CLASS = new ConcurrentHashMap<Class<?>, TypeAdapter<?>> ();
+	/** Changed whenever the registry changes, before {@link #BY_VALUE_CLASS} is cleared. */
+	private static final AtomicInteger GENERATION = new AtomicInteger ();
+
+	/** The date formats, that aren't thread safe, used by each thread. */
+	private static final ThreadLocal<SimpleDateFormat[]> DATE_FORMATS = new ThreadLocal<SimpleDateFormat[]> () {
+		@Override
+		protected SimpleDateFormat[] initialValue () {
+			SimpleDateFormat[] formats = new SimpleDateFormat[TypeAdapters.DATE_PARSE_FORMATS.length + 1];
+			formats[0] = new SimpleDateFormat (TypeAdapters.DATE_FORMAT);
+			for (int i=0; i<TypeAdapters.DATE_PARSE_FORMATS.length; i++)
+				formats[i + 1] = new SimpleDateFormat (TypeAdapters.DATE_PARSE_FORMATS[i]);
+			for (SimpleDateFormat format : formats) {
+				format.setTimeZone (TypeAdapters.UTC);
+				format.setLenient (false);
+			}
+			return formats;
+		}
+	};
+
+	static {
+		TypeAdapters.register (Integer.class, new NumberAdapter<Integer> () {
+			Integer convert (Number number) {
+				if (number instanceof Integer)
+					return (Integer) number;
+				return Integer.valueOf (TypeAdapters.decimal (number).intValueExact ());
+			}
+		});
+		TypeAdapters.register (Long.class, new NumberAdapter<Long> () {
+			Long convert (Number number) {
+				if (number instanceof Long)
+					return (Long) number;
+				return Long.valueOf (TypeAdapters.decimal (number).longValueExact ());
+			}
+		});
+		TypeAdapters.register (Short.class, new NumberAdapter<Short> () {
+			Short convert (Number number) {
+				return Short.valueOf (TypeAdapters.decimal (number).shortValueExact ());
+			}
+		});
+		TypeAdapters.register (Byte.class, new NumberAdapter<Byte> () {
+			Byte convert (Number number) {
+				return Byte.valueOf (TypeAdapters.decimal (number).byteValueExact ());
+			}
+		});
+		TypeAdapters.register (Double.class, new NumberAdapter<Double> () {
+			Double convert (Number number) {
+				return Double.valueOf (number.doubleValue ());
+			}
+		});
+		TypeAdapters.register (Float.class, new NumberAdapter<Float> () {
+			Float convert (Number number) {
+				return Float.valueOf (number.floatValue ());
+			}
+		});
+		TypeAdapters.register (BigInteger.class, new NumberAdapter<BigInteger> () {
+			BigInteger convert (Number number) {
+				if (number instanceof BigInteger)
+					return (BigInteger) number;
+				return TypeAdapters.decimal (number).toBigIntegerExact ();
+			}
+		});
+		TypeAdapters.register (BigDecimal.class, new NumberAdapter<BigDecimal> () {
+			BigDecimal convert (Number number) {
+				return TypeAdapters.decimal (number);
+			}
+		});
+
+		TypeAdapters.register (Boolean.class, new TypeAdapter<Boolean> () {
+			public Object toJson (Boolean value) {
+				return value;
+			}
+
+			public Boolean fromJson (Object json, Type type) throws JSONMappingException {
+				if (json instanceof Boolean)
+					return (Boolean) json;
+				if (json instanceof String && "true".equalsIgnoreCase ((String) json))
+					return Boolean.TRUE;
+				if (json instanceof String && "false".equalsIgnoreCase ((String) json))
+					return Boolean.FALSE;
+				throw TypeAdapters.cantConvert (json, type);
+			}
+		});
+		TypeAdapters.register (Character.class, new TypeAdapter<Character> () {
+			public Object toJson (Character value) {
+				return value.toString ();
+			}
+
+			public Character fromJson (Object json, Type type) throws JSONMappingException {
+				String string = json.toString ();
+				if (string.length () == 0)
+					throw TypeAdapters.cantConvert (json, type);
+				return Character.valueOf (string.charAt (0));
+			}
+		});
+
+		TypeAdapters.register (UUID.class, new TypeAdapter<UUID> () {
+			public Object toJson (UUID value) {
+				return value.toString ();
+			}
+
+			public UUID fromJson (Object json, Type type) throws JSONMappingException {
+				try {
+					return UUID.fromString (json.toString ());
+				} catch (IllegalArgumentException e) {
+					throw TypeAdapters.cantConvert (json, type);
+				}
+			}
+		});
+
+		TypeAdapters.register (Date.class, new TypeAdapter<Date> () {
+			public Object toJson (Date value) {
+				return TypeAdapters.DATE_FORMATS.get ()[0].format (value);
+			}
+
+			public Date fromJson (Object json, Type type) throws JSONMappingException {
+				if (json instanceof Number)
+					return new Date (((Number) json).longValue ());
+				String text = json.toString ();
+				SimpleDateFormat[] formats = TypeAdapters.DATE_FORMATS.get ();
+				for (int i=1; i<formats.length; i++) {
+					ParsePosition position = new ParsePosition (0);
+					Date date = formats[i].parse (text, position);
+					if (date != null && position.getIndex () == text.length ())
+						return date;
+				}
+				throw TypeAdapters.cantConvert (json, type);
+			}
+		});
+
+		TypeAdapters.register (Set.class, new SetAdapter ());
+	}
+
+	/** Converts JSON arrays into sets, with the elements converted into the type argument of the set. */
+	@SuppressWarnings ("rawtypes")
+	private static final class SetAdapter implements TypeAdapter<Set> {
+		public Object toJson (Set value) throws JSONMappingException {
+			JSONArray json = new JSONArray ();
+			for (Object item : value)
+				json.put (JSONEntity.toJson (item));
+			return json;
+		}
+
+		public Set fromJson (Object json, Type type) throws JSONMappingException {
+			if (! (json instanceof JSONArray))
+				throw TypeAdapters.cantConvert (json, type);
+			Class<?> itemClass = TypeAdapters.typeArgument (type, 0);
+			JSONArray array = (JSONArray) json;
+			LinkedHashSet<Object> set = new LinkedHashSet<Object> ();
+			for (int i=0; i<array.length (); i++)
+				set.add (JSONEntity.fromJson (itemClass, array.opt (i)));
+			return set;
+		}
+	}
+
+	/** Converts numbers, and numeric strings, into a class of numbers.
+	 * The integral classes don't take fractions nor values out of their range. */
+	private static abstract class NumberAdapter<N extends Number> implements TypeAdapter<N> {
+		abstract N convert (Number number);
+
+		public Object toJson (N value) {
+			return value;
+		}
+
+		public N fromJson (Object json, Type type) throws JSONMappingException {
+			try {
+				if (json instanceof Number)
+					return convert ((Number) json);
+				if (json instanceof String)
+					return convert (new BigDecimal (((String) json).trim ()));
+			} catch (NumberFormatException e) {
+				// not a number.
+			} catch (ArithmeticException e) {
+				// a fraction, or out of the range of the class.
+			}
+			throw TypeAdapters.cantConvert (json, type);
+		}
+	}
+
+	private TypeAdapters () {
+	}
+
+	/** Use a adapter for the values of a class, replacing the one it had.
+	 * @throws IllegalArgumentException for the classes that have their own
+	 *         conversions and so would never use the adapter: primitives,
+	 *         arrays, Strings, enums, entities, lists, maps and number lists. */
+	public static <T> void register (Class<T> clazz, TypeAdapter<T> adapter) {
+		if (clazz == null || adapter == null)
+			throw new IllegalArgumentException ("Both the class and the adapter are required.");
+		if (clazz.isPrimitive () || clazz.isArray () || clazz == String.class || Enum.class.isAssignableFrom (clazz)
+				|| JSONEntity.class.isAssignableFrom (clazz) || List.class.isAssignableFrom (clazz)
+				|| Map.class.isAssignableFrom (clazz) || NumberList.class.isAssignableFrom (clazz))
+			throw new IllegalArgumentException ("There can't be adapters for " + clazz.getName ());
+		TypeAdapters.REGISTERED.put (clazz, adapter);
+		TypeAdapters.changed ();
+	}
+
+	/** Stop using the adapter registered for a class. */
+	public static void unregister (Class<?> clazz) {
+		TypeAdapters.REGISTERED.remove (clazz);
+		TypeAdapters.changed ();
+	}
+
+	private static void changed () {
+		TypeAdapters.GENERATION.incrementAndGet ();
+		TypeAdapters.BY_VALUE_CLASS.clear ();
+	}
+
+	/** @return the adapter registered for exactly the class, <tt>null</tt> if there's none. */
+	@SuppressWarnings ("unchecked")
+	public static <T> TypeAdapter<T> forClass (Class<T> clazz) {
+		return (TypeAdapter<T>) TypeAdapters.REGISTERED.get (clazz);
+	}
+
+	/** @return the adapter to encode a value, <tt>null</tt> if it isn't adapted. */
+	@SuppressWarnings ("unchecked")
+	static TypeAdapter<Object> forValue (Object value) {
+		if (value instanceof String || value instanceof Number || value instanceof Boolean
+				|| value instanceof JSONObject || value instanceof JSONArray || value instanceof JSONString)
+			return null;
+		Class<?> clazz = value.getClass ();
+		TypeAdapter<?> adapter = TypeAdapters.BY_VALUE_CLASS.get (clazz);
+		if (adapter == null) {
+			int generation = TypeAdapters.GENERATION.get ();
+			adapter = TypeAdapters.lookup (clazz);
+			TypeAdapter<?> found = adapter != null ? adapter : TypeAdapters.NONE;
+			TypeAdapters.BY_VALUE_CLASS.put (clazz, found);
+			if (TypeAdapters.GENERATION.get () != generation) // the registry changed during the lookup.
+				TypeAdapters.BY_VALUE_CLASS.remove (clazz, found);
+		}
+		return adapter != TypeAdapters.NONE ? (TypeAdapter<Object>) adapter : null;
+	}
+
+	/** Find the adapter of the class, or else of its closest super class or interface. */
+	private static TypeAdapter<?> lookup (Class<?> clazz) {
+		List<Class<?>> level = new ArrayList<Class<?>> ();
+		level.add (clazz);
+		while (!level.isEmpty ()) {
+			List<Class<?>> next = new ArrayList<Class<?>> ();
+			for (Class<?> type : level) {
+				TypeAdapter<?> adapter = TypeAdapters.REGISTERED.get (type);
+				if (adapter != null)
+					return adapter;
+				if (type.getSuperclass () != null)
+					next.add (type.getSuperclass ());
+				for (Class<?> implemented : type.getInterfaces ())
+					next.add (implemented);
+			}
+			level = next;
+		}
+		return null;
+	}
+
+	/** Convert a JSON value into a value of the class with its adapter.
+	 * @return <tt>null</tt> for the JSON null. */
+	static Object fromJson (TypeAdapter<?> adapter, Object json, Type type) throws JSONMappingException {
+		if (json == null || json == JSONObject.NULL)
+			return null;
+		try {
+			return adapter.fromJson (json, type);
+		} catch (JSONMappingException e) {
+			throw e;
+		} catch (RuntimeException e) {
+			throw new JSONMappingException (e);
+		}
+	}
+
+	/** Convert a value into a JSON value with its adapter. */
+	static Object toJson (TypeAdapter<Object> adapter, Object value) throws JSONMappingException {
+		try {
+			return adapter.toJson (value);
+		} catch (JSONMappingException e) {
+			throw e;
+		} catch (RuntimeException e) {
+			throw new JSONMappingException (e);
+		}
+	}
+
+	/** @return the class of a type argument of a generic type, <tt>null</tt> if it isn't known. */
+	static Class<?> typeArgument (Type type, int index) {
+		if (! (type instanceof ParameterizedType))
+			return null;
+		Type[] arguments = ((ParameterizedType) type).getActualTypeArguments ();
+		if (index >= arguments.length)
+			return null;
+		Type argument = arguments[index];
+		if (argument instanceof ParameterizedType)
+			argument = ((ParameterizedType) argument).getRawType ();
+		return argument instanceof Class ? (Class<?>) argument : null;
+	}
+
+	/** @return the exact value of a number. */
+	private static BigDecimal decimal (Number number) {
+		if (number instanceof BigDecimal)
+			return (BigDecimal) number;
+		if (number instanceof BigInteger)
+			return new BigDecimal ((BigInteger) number);
+		if (number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte)
+			return BigDecimal.valueOf (number.longValue ());
+		return new BigDecimal (number.toString ());
+	}
+
+	private static JSONMappingException cantConvert (Object json, Type type) {
+		return new JSONMappingException ("Can't convert " + json + " into a " + type);
+	}
+}
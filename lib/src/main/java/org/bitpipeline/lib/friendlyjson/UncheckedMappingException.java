@@ -0,0 +1,37 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+/** A {@link JSONMappingException} thrown where only unchecked exceptions
+ * can be, like when a lazy collection converts a element as it's used.
+ * The cause is the original exception.
+ * @author mtavares */
+public class UncheckedMappingException extends RuntimeException {
+	/** */
+	private static final long serialVersionUID = -2038651924702816931L;
+
+	/**
+	 * @param cause */
+	public UncheckedMappingException (JSONMappingException cause) {
+		super (cause.getMessage (), cause);
+	}
+
+	@Override
+	public JSONMappingException getCause () {
+		return (JSONMappingException) super.getCause ();
+	}
+}
@@ -0,0 +1,329 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import org.json.JSONException;
+import org.json.JSONTokener;
+
+/** A JSONTokener that decodes UTF-8 bytes itself, straight from a ByteBuffer.
+ * Besides reading characters it can match the keys of a object against
+ * the UTF-8 names of the fields, and it builds the strings without escapes
+ * directly from the bytes.
+ *
+ * Files are read through windows mapped from the channel, one at a time,
+ * so they don't have to fit in the heap or in a single mapped buffer.
+ * @author mtavares */
+final class Utf8Tokener extends JSONTokener {
+	/** Returned by {@link #matchKey(EntityDescriptor)} when the key has to be read as a String. */
+	static final int UNMATCHED = -2;
+
+	/** The size of the windows mapped from files. */
+	private static final int WINDOW_SIZE = 1 << 28;
+	private static final char REPLACEMENT = '\uFFFD';
+
+	private ByteBuffer buffer;
+	private int position;
+	private int limit;
+
+	private final FileChannel channel;
+	/** Where the current window ends in the file. */
+	private long windowEnd;
+	private final long size;
+
+	private char lastChar;
+	private boolean useLastChar;
+	/** The second half of a surrogate pair, still to be returned. */
+	private char pendingLow;
+	private int index;
+
+	private byte[] scratch = new byte[64];
+
+	/** Read the bytes between the position and the limit of the buffer, without changing them. */
+	Utf8Tokener (ByteBuffer buffer) {
+		super (new StringReader (""));
+		this.buffer = buffer;
+		this.position = buffer.position ();
+		this.limit = buffer.limit ();
+		this.channel = null;
+		this.size = 0;
+	}
+
+	/** Read a file, from its current position to its end. */
+	Utf8Tokener (FileChannel channel) throws IOException {
+		super (new StringReader (""));
+		this.channel = channel;
+		this.windowEnd = channel.position ();
+		this.size = channel.size ();
+		this.buffer = ByteBuffer.allocate (0);
+	}
+
+	/** @return <tt>true</tt> if there's a byte to read at the position. */
+	private boolean ensure () throws JSONException {
+		if (this.position < this.limit)
+			return true;
+		if (this.channel == null || this.windowEnd >= this.size)
+			return false;
+		int length = (int) Math.min (Utf8Tokener.WINDOW_SIZE, this.size - this.windowEnd);
+		try {
+			this.buffer = this.channel.map (FileChannel.MapMode.READ_ONLY, this.windowEnd, length);
+		} catch (IOException e) {
+			throw new JSONException (e);
+		}
+		this.windowEnd += length;
+		this.position = 0;
+		this.limit = length;
+		return true;
+	}
+
+	@Override
+	public boolean more () throws JSONException {
+		if (next () == 0)
+			return false;
+		back ();
+		return true;
+	}
+
+	@Override
+	public void back () throws JSONException {
+		if (this.useLastChar || this.index <= 0)
+			throw new JSONException ("Stepping back two steps is not supported");
+		this.index -= 1;
+		this.useLastChar = true;
+	}
+
+	@Override
+	public char next () throws JSONException {
+		if (this.useLastChar) {
+			this.useLastChar = false;
+			if (this.lastChar != 0)
+				this.index += 1;
+			return this.lastChar;
+		}
+
+		char c;
+		if (this.pendingLow != 0) {
+			c = this.pendingLow;
+			this.pendingLow = 0;
+		} else if (ensure ()) {
+			c = decode ();
+		} else {
+			c = 0;
+		}
+		if (c == 0) { // the end, as a NUL ends the text read by JSONTokener.
+			this.lastChar = 0;
+			return 0;
+		}
+		this.index += 1;
+		this.lastChar = c;
+		return c;
+	}
+
+	/** Decode the character that starts at the position. */
+	private char decode () throws JSONException {
+		int b = this.buffer.get (this.position++) & 0xff;
+		if (b < 0x80)
+			return (char) b;
+
+		int count;
+		int codePoint;
+		if (b >= 0xc2 && b < 0xe0) {
+			count = 1;
+			codePoint = b & 0x1f;
+		} else if (b >= 0xe0 && b < 0xf0) {
+			count = 2;
+			codePoint = b & 0x0f;
+		} else if (b >= 0xf0 && b < 0xf5) {
+			count = 3;
+			codePoint = b & 0x07;
+		} else {
+			return Utf8Tokener.REPLACEMENT;
+		}
+
+		for (int i=0; i<count; i++) {
+			if (!ensure ())
+				return Utf8Tokener.REPLACEMENT;
+			int continuation = this.buffer.get (this.position) & 0xff;
+			if ((continuation & 0xc0) != 0x80)
+				return Utf8Tokener.REPLACEMENT;
+			this.position++;
+			codePoint = (codePoint << 6) | (continuation & 0x3f);
+		}
+
+		if (count == 2 && (codePoint < 0x800 || (codePoint >= 0xd800 && codePoint < 0xe000)))
+			return Utf8Tokener.REPLACEMENT;
+		if (count == 3) {
+			if (codePoint < 0x10000 || codePoint > 0x10ffff)
+				return Utf8Tokener.REPLACEMENT;
+			this.pendingLow = Character.lowSurrogate (codePoint);
+			return Character.highSurrogate (codePoint);
+		}
+		return (char) codePoint;
+	}
+
+	@Override
+	public String next (int n) throws JSONException {
+		if (n == 0)
+			return "";
+		char[] chars = new char[n];
+		for (int i=0; i<n; i++) {
+			chars[i] = next ();
+			if (chars[i] == 0)
+				throw syntaxError ("Substring bounds error");
+		}
+		return new String (chars);
+	}
+
+	/** Skip to the next occurrence of a character, leaving it to be read next.
+	 * If it isn't found the tokener is left where it was.
+	 * @return the character, or 0 if it wasn't found. */
+	@Override
+	public char skipTo (char to) throws JSONException {
+		ByteBuffer startBuffer = this.buffer;
+		int startPosition = this.position;
+		int startLimit = this.limit;
+		long startWindowEnd = this.windowEnd;
+		char startLastChar = this.lastChar;
+		boolean startUseLastChar = this.useLastChar;
+		char startPendingLow = this.pendingLow;
+		int startIndex = this.index;
+
+		char c;
+		do {
+			c = next ();
+			if (c == 0) {
+				this.buffer = startBuffer;
+				this.position = startPosition;
+				this.limit = startLimit;
+				this.windowEnd = startWindowEnd;
+				this.lastChar = startLastChar;
+				this.useLastChar = startUseLastChar;
+				this.pendingLow = startPendingLow;
+				this.index = startIndex;
+				return 0;
+			}
+		} while (c != to);
+		back ();
+		return c;
+	}
+
+	/** Read a string, after its opening quote. */
+	@Override
+	public String nextString (char quote) throws JSONException {
+		if (this.useLastChar || this.pendingLow != 0)
+			return super.nextString (quote);
+
+		int chars = 0;
+		for (int p=this.position; p<this.limit; p++) {
+			byte b = this.buffer.get (p);
+			if (b == quote) {
+				String string = toString (this.position, p);
+				this.position = p + 1;
+				this.index += chars + 1;
+				this.lastChar = quote;
+				return string;
+			}
+			if (b == '\\' || b == '\n' || b == '\r' || b == 0)
+				break;
+			if ((b & 0xc0) != 0x80)
+				chars++;
+		}
+		// escapes, errors or the end of the window: read it char by char.
+		return super.nextString (quote);
+	}
+
+	private String toString (int start, int end) {
+		int length = end - start;
+		if (this.buffer.hasArray ())
+			return new String (this.buffer.array (), this.buffer.arrayOffset () + start, length, StandardCharsets.UTF_8);
+		if (this.scratch.length < length)
+			this.scratch = new byte[Math.max (length, this.scratch.length * 2)];
+		for (int i=0; i<length; i++)
+			this.scratch[i] = this.buffer.get (start + i);
+		return new String (this.scratch, 0, length, StandardCharsets.UTF_8);
+	}
+
+	/** Skip a string, after its opening quote.
+	 * @return <tt>false</tt> if the string has to be skipped char by char. */
+	boolean skipString (char quote) throws JSONException {
+		if (this.useLastChar || this.pendingLow != 0)
+			return false;
+		for (;;) {
+			if (!ensure ())
+				throw syntaxError ("Unterminated string");
+			byte b = this.buffer.get (this.position++);
+			if ((b & 0xc0) != 0x80)
+				this.index++;
+			if (b == quote) {
+				this.lastChar = quote;
+				return true;
+			}
+			switch (b) {
+				case 0:
+				case '\n':
+				case '\r':
+					throw syntaxError ("Unterminated string");
+				case '\\':
+					if (!ensure ())
+						throw syntaxError ("Unterminated string");
+					this.position++;
+					this.index++;
+					break;
+				default:
+					break;
+			}
+		}
+	}
+
+	/** Match a key against the names of the fields of a entity, after its opening quote.
+	 * The key is consumed unless it can't be matched from the bytes.
+	 * @return the index of the name, <tt>-1</tt> if it's not the name of a
+	 *         field or {@link #UNMATCHED} if the key has to be read as a String. */
+	int matchKey (EntityDescriptor descriptor) {
+		if (this.useLastChar || this.pendingLow != 0)
+			return Utf8Tokener.UNMATCHED;
+
+		int hash = 0;
+		int chars = 0;
+		for (int p=this.position; p<this.limit; p++) {
+			byte b = this.buffer.get (p);
+			if (b == '"') {
+				int nameIndex = descriptor.getNameIndex (this.buffer, this.position, p - this.position, hash);
+				this.position = p + 1;
+				this.index += chars + 1;
+				this.lastChar = '"';
+				return nameIndex;
+			}
+			if (b == '\\' || (b >= 0 && b < ' '))
+				return Utf8Tokener.UNMATCHED;
+			if ((b & 0xc0) != 0x80)
+				chars++;
+			hash = 31 * hash + b;
+		}
+		return Utf8Tokener.UNMATCHED;
+	}
+
+	@Override
+	public String toString () {
+		return " at character " + this.index;
+	}
+}
@@ -0,0 +1,209 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bitpipeline.lib.friendlyjson.complexdata.WindsurfClass;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * @author mtavares */
+public class CBORTest {
+
+	static class Sample extends JSONEntity {
+		boolean aBoolean;
+		char aChar;
+		int anInt;
+		long aLong;
+		float aFloat;
+		double aDouble;
+		BigDecimal aDecimal;
+		String aString;
+		WindsurfClass anEnum;
+		int[] ints;
+		double[] doubles;
+		float[] floats;
+		short[] shorts;
+		byte[] bytes;
+		boolean[] booleans;
+		LongList longs;
+		List<String> names;
+		Map<String, Integer> counts;
+		Sample[] children;
+
+		public Sample () {
+		}
+
+		public Sample (JSONObject json) throws JSONMappingException {
+			super (json);
+		}
+	}
+
+	private static Sample createSample () {
+		Sample sample = new Sample ();
+		sample.aBoolean = true;
+		sample.aChar = 'x';
+		sample.anInt = -70000;
+		sample.aLong = Long.MIN_VALUE;
+		sample.aFloat = 0.1f;
+		sample.aDouble = 1e-7;
+		sample.aDecimal = new BigDecimal ("-12345678901234567890.125");
+		sample.aString = "é € 🌊 \"quoted\"";
+		sample.anEnum = WindsurfClass.Freestyle;
+		sample.ints = new int[] { 0, -1, Integer.MAX_VALUE, Integer.MIN_VALUE };
+		sample.doubles = new double[] { 1.5, -2.25 };
+		sample.floats = new float[] { 0.3f };
+		sample.shorts = new short[] { -300, 300 };
+		sample.bytes = new byte[] { -1, 1 };
+		sample.booleans = new boolean[] { true, false };
+		sample.longs = new LongList (new long[] { Long.MAX_VALUE, 7 });
+		sample.names = new ArrayList<String> ();
+		sample.names.add ("one");
+		sample.names.add ("");
+		sample.counts = new HashMap<String, Integer> ();
+		sample.counts.put ("a", Integer.valueOf (1));
+		Sample child = new Sample ();
+		child.aString = "child";
+		sample.children = new Sample[] { child, null };
+		return sample;
+	}
+
+	@Test
+	public void roundTripsEntities () throws Exception {
+		Sample sample = CBORTest.createSample ();
+		byte[] cbor = CBORWriter.toBytes (sample);
+		assertTrue (cbor.length < sample.toString ().getBytes (StandardCharsets.UTF_8).length);
+
+		Sample copy = CBORReader.read (Sample.class, cbor);
+		assertEquals (sample.toString (), copy.toString ());
+		assertEquals (0.1f, copy.aFloat, 0f);
+		assertEquals (sample.aDecimal, copy.aDecimal);
+		assertEquals (Long.MAX_VALUE, copy.longs.getLong (0));
+
+		// the JSON form is the same as toJson ().
+		assertEquals (sample.toJson ().toString (), new Sample ((JSONObject) CBORReader.toJson (cbor)).toJson ().toString ());
+	}
+
+	@Test
+	public void convertsJsonLosslessly () throws Exception {
+		String text = "{\"a\":[1,-500,4294967296,-9223372036854775808,1.5,\"x\"],\"b\":{\"c\":null,\"d\":true,\"e\":false},\"f\":\"\u00e9\"}";
+		JSONObject json = new JSONObject (text);
+		byte[] cbor = CBORWriter.fromJson (json);
+		JSONObject back = (JSONObject) CBORReader.toJson (cbor);
+		assertEquals (json.toString (), back.toString ());
+		assertEquals (Long.valueOf (4294967296L), back.getJSONArray ("a").get (2));
+		assertEquals (Integer.valueOf (-500), back.getJSONArray ("a").get (1));
+	}
+
+	@Test
+	public void readsOtherCBOR () throws Exception {
+		byte[] cbor = new byte[] {
+			(byte) 0xbf, // a map of indefinite length
+				0x61, 'a', (byte) 0x9f, 0x01, 0x39, 0x01, (byte) 0xf3, (byte) 0xff, // "a": [1, -500]
+				0x61, 'h', (byte) 0xf9, 0x3e, 0x00, // "h": 1.5 as a half float
+				0x61, 't', (byte) 0xd8, 0x45, 0x44, 0x01, 0x00, (byte) 0xff, (byte) 0xff, // "t": uint16 little endian [1, 65535]
+				0x61, 'n', (byte) 0xc2, 0x49, 0x01, 0, 0, 0, 0, 0, 0, 0, 0, // "n": 2^64
+				0x61, 's', 0x7f, 0x62, 'a', 'b', 0x61, 'c', (byte) 0xff, // "s": "abc" in chunks
+				0x61, 'g', (byte) 0xc1, 0x1a, 0x50, 0x00, 0x00, 0x00, // "g": a tagged number
+			(byte) 0xff
+		};
+		JSONObject json = (JSONObject) CBORReader.toJson (cbor);
+		assertEquals (-500, json.getJSONArray ("a").getInt (1));
+		assertEquals (1.5, json.getDouble ("h"), 0.0);
+		JSONArray typed = json.getJSONArray ("t");
+		assertEquals (1, typed.getInt (0));
+		assertEquals (65535, typed.getInt (1));
+		assertEquals (BigInteger.ONE.shiftLeft (64), json.get ("n"));
+		assertEquals ("abc", json.getString ("s"));
+		assertEquals (0x50000000L, json.getLong ("g"));
+	}
+
+	@Test
+	public void readsAndWritesSequences () throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream ();
+		CBORWriter writer = new CBORWriter (out);
+		for (int i=0; i<100; i++) {
+			Sample sample = CBORTest.createSample ();
+			sample.anInt = i;
+			writer.write (sample);
+		}
+		writer.close ();
+
+		CBORReader reader = new CBORReader (new ByteArrayInputStream (out.toByteArray ()));
+		for (int i=0; i<100; i++)
+			assertEquals (i, reader.read (Sample.class).anInt);
+		assertNull (reader.read (Sample.class));
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect (out.size ());
+		CBORWriter bufferWriter = new CBORWriter (buffer);
+		bufferWriter.write (CBORTest.createSample ());
+		bufferWriter.write (new Sample ());
+		buffer.flip ();
+		CBORReader bufferReader = new CBORReader (buffer);
+		assertEquals (CBORTest.createSample ().toString (), bufferReader.read (Sample.class).toString ());
+		assertEquals (new Sample ().toString (), bufferReader.read (Sample.class).toString ());
+		assertNull (bufferReader.read (Sample.class));
+	}
+
+	@Test
+	public void rejectsMalformedInput () throws Exception {
+		byte[][] inputs = {
+			{ 0x5a, 0x40, 0x00, 0x00, 0x00 }, // a byte string of 1 GiB with no bytes.
+			{ 0x7a, 0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xff, 'a' }, // a text of 2 GiB with one byte.
+			{ 0x5b, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff },
+			{ 0x62, 'a' } };
+		for (byte[] input : inputs) {
+			try {
+				CBORReader.toJson (input);
+				fail ("Malformed input from a buffer can't be read.");
+			} catch (JSONException e) {
+				// expected
+			}
+			try {
+				new CBORReader (new ByteArrayInputStream (input)).readJson ();
+				fail ("Malformed input from a stream can't be read.");
+			} catch (JSONException e) {
+				// expected
+			}
+		}
+
+		char[] text = new char[100000];
+		Arrays.fill (text, 'x');
+		String large = new String (text);
+		byte[] cbor = CBORWriter.fromJson (large);
+		assertEquals (large, new CBORReader (new ByteArrayInputStream (cbor)).readJson ());
+	}
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * @author mtavares */
+public class ChangeTrackingTest {
+
+	static class Position extends JSONEntity {
+		double x;
+		double y;
+
+		public Position () {
+		}
+
+		public Position (JSONObject json) throws JSONMappingException {
+			super (json);
+		}
+	}
+
+	static class Player extends JSONEntity {
+		String name;
+		int score;
+		String team;
+		Position position;
+		Map<String, Integer> items;
+		int[] history;
+
+		public Player () {
+		}
+
+		public Player (JSONObject json) throws JSONMappingException {
+			super (json);
+		}
+	}
+
+	private static Player createPlayer () {
+		Player player = new Player ();
+		player.name = "ana";
+		player.score = 10;
+		player.team = "red";
+		player.position = new Position ();
+		player.position.x = 1.5;
+		player.items = new HashMap<String, Integer> ();
+		player.items.put ("sword", Integer.valueOf (1));
+		player.items.put ("potion", Integer.valueOf (3));
+		player.history = new int[] { 1, 2 };
+		return player;
+	}
+
+	@Test
+	public void findsOnlyTheChangedFields () throws Exception {
+		Player player = ChangeTrackingTest.createPlayer ();
+		assertFalse (player.isTracked ());
+		assertTrue (player.hasChanges ());
+		player.markClean ();
+		assertTrue (player.isTracked ());
+		assertFalse (player.hasChanges ());
+		assertEquals (0, player.getChanges ().length ());
+
+		player.score = 11;
+		player.team = null;
+		player.position.y = 2.0;
+		player.items.remove ("potion");
+		player.items.put ("shield", Integer.valueOf (1));
+		player.history = new int[] { 1, 2 };
+
+		JSONObject changes = player.commitChanges ();
+		assertEquals (new JSONObject ("{\"score\":11,\"team\":null,\"position\":{\"y\":2},\"items\":{\"potion\":null,\"shield\":1}}").toString (), changes.toString ());
+		assertFalse (player.hasChanges ());
+
+		player.stopTracking ();
+		assertEquals (player.toJson ().toString (), player.getChanges ().toString ());
+	}
+
+	@Test
+	public void appliesChangesOnTheOtherSide () throws Exception {
+		Player sender = ChangeTrackingTest.createPlayer ();
+		Player receiver = new Player (sender.toJson ());
+		sender.markClean ();
+
+		sender.score = 20;
+		sender.team = null;
+		sender.position.x = -1;
+		sender.items.remove ("sword");
+		sender.history = new int[] { 3 };
+		receiver.applyChanges (new JSONObject (sender.commitChanges ().toString ()));
+
+		assertEquals (sender.toString (), receiver.toString ());
+		assertNull (receiver.team);
+		assertEquals (-1.0, receiver.position.x, 0.0);
+		assertEquals (1, receiver.items.size ());
+	}
+
+	@Test
+	public void mergesPatchesAsTheRfc () throws Exception {
+		// the examples of RFC 7386.
+		JSONObject target = new JSONObject ("{\"title\":\"Goodbye!\",\"author\":{\"givenName\":\"John\",\"familyName\":\"Doe\"},\"tags\":[\"example\",\"sample\"],\"content\":\"This will be unchanged\"}");
+		JSONObject patch = new JSONObject ("{\"title\":\"Hello!\",\"phoneNumber\":\"+01-123-456-7890\",\"author\":{\"familyName\":null},\"tags\":[\"example\"]}");
+		JSONObject expected = new JSONObject ("{\"title\":\"Hello!\",\"author\":{\"givenName\":\"John\"},\"tags\":[\"example\"],\"content\":\"This will be unchanged\",\"phoneNumber\":\"+01-123-456-7890\"}");
+		JSONObject merged = (JSONObject) JSONMergePatch.apply (target, patch);
+		assertEquals (0, JSONMergePatch.diff (expected, merged).length ());
+		assertEquals ("Doe", target.getJSONObject ("author").getString ("familyName"));
+
+		JSONObject diff = JSONMergePatch.diff (target, expected);
+		assertEquals (0, JSONMergePatch.diff ((JSONObject) JSONMergePatch.apply (target, diff), expected).length ());
+		assertEquals ("[\"example\"]", JSONMergePatch.apply (new JSONObject ("{\"a\":\"b\"}"), patch.get ("tags")).toString ());
+	}
+}
@@ -0,0 +1,192 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @author mtavares */
+public class CodecMetricsTest {
+
+	static class Part extends JSONEntity {
+		String name;
+		UUID id;
+
+		public Part (String name) {
+			this.name = name;
+		}
+
+		public Part (JSONObject json) throws JSONMappingException {
+			super (json);
+		}
+	}
+
+	static class Machine extends JSONEntity {
+		String model;
+		List<Part> parts = new ArrayList<Part> ();
+		Object extra;
+		Kind kind;
+
+		public Machine () {
+		}
+
+		public Machine (JSONObject json) throws JSONMappingException {
+			super (json);
+		}
+	}
+
+	static enum Kind {
+		A, B
+	}
+
+	static class Custom extends JSONEntity {
+		int value = 3;
+
+		@Override
+		public JSONObject toJson () throws JSONMappingException {
+			try {
+				return new JSONObject ().put ("v", this.value);
+			} catch (Exception e) {
+				throw new JSONMappingException (e);
+			}
+		}
+	}
+
+	private static Machine createMachine () {
+		Machine machine = new Machine ();
+		machine.model = "press";
+		machine.parts.add (new Part ("gear"));
+		machine.parts.add (new Part ("belt"));
+		return machine;
+	}
+
+	@After
+	public void removeListener () {
+		Instrumentation.setListener (null);
+	}
+
+	@Test
+	public void recordsDecodingAndEncoding () throws Exception {
+		assertNull (Instrumentation.getListener ());
+		CodecMetrics metrics = new CodecMetrics ();
+		Instrumentation.setListener (metrics);
+
+		Machine machine = CodecMetricsTest.createMachine ();
+		String text = machine.toString ();
+		byte[] utf8 = text.getBytes (StandardCharsets.UTF_8);
+		assertEquals (1, metrics.get (Machine.class).getEncodeLatency ().getCount ());
+		assertEquals (2, metrics.get (Part.class).getEncodeLatency ().getCount ());
+		assertEquals (utf8.length, metrics.get (Machine.class).getBytesWritten ());
+		assertEquals (0, metrics.get (Part.class).getBytesWritten ());
+
+		JSONEntity.read (Machine.class, utf8);
+		new Machine (new JSONObject (text));
+		CodecMetrics.ClassMetrics machines = metrics.get (Machine.class);
+		assertEquals (2, machines.getDecodeLatency ().getCount ());
+		assertEquals (4, metrics.get (Part.class).getDecodeLatency ().getCount ());
+		assertEquals (1, machines.getDocumentsRead ());
+		assertEquals (utf8.length, machines.getLargestRead ());
+		assertTrue (machines.getDecodeLatency ().getPercentile (0.5) <= machines.getDecodeLatency ().getMaxNanos ());
+
+		File file = File.createTempFile ("friendlyjson", ".json");
+		try {
+			FileOutputStream out = new FileOutputStream (file);
+			try {
+				out.write (new byte[] {' ', ' '});
+				out.write (utf8);
+			} finally {
+				out.close ();
+			}
+			RandomAccessFile raf = new RandomAccessFile (file, "r");
+			try {
+				FileChannel channel = raf.getChannel ();
+				channel.position (2);
+				JSONEntity.read (Machine.class, channel);
+			} finally {
+				raf.close ();
+			}
+		} finally {
+			file.delete ();
+		}
+		assertEquals (2, machines.getDocumentsRead ());
+		assertEquals (2L * utf8.length, machines.getBytesRead ());
+
+		JSONObject json = machine.toJson ();
+		json.getJSONArray ("parts").getJSONObject (0).put ("id", "not a uuid");
+		try {
+			new Machine (json);
+			fail ("A invalid UUID can't be decoded.");
+		} catch (JSONMappingException e) {
+			// expected
+		}
+		assertEquals (1, metrics.get (Part.class).getErrors ());
+		assertEquals (1, metrics.get (Machine.class).getErrors ());
+	}
+
+	@Test
+	public void countsTheSlowerPaths () throws Exception {
+		CodecMetrics metrics = new CodecMetrics ();
+		Instrumentation.setListener (metrics);
+
+		JSONObject json = CodecMetricsTest.createMachine ().toJson ();
+		json.put ("kind", "A");
+		assertEquals (Kind.A, new Machine (json).kind);
+		assertEquals (0, metrics.get (Machine.class).getFallbacks (CodecListener.Fallback.UNTYPED_FIELD));
+		json.put ("extra", "anything");
+		assertEquals ("anything", new Machine (json).extra);
+		assertEquals (1, metrics.get (Machine.class).getFallbacks (CodecListener.Fallback.UNTYPED_FIELD));
+
+		new Custom ().toString ();
+		assertEquals (1, metrics.get (Custom.class).getFallbacks (CodecListener.Fallback.TREE_ENCODING));
+
+		metrics.reset ();
+		assertNull (metrics.get (Machine.class));
+		Instrumentation.setListener (null);
+		new Machine (json);
+		assertNull (metrics.get (Machine.class));
+	}
+
+	@Test
+	public void histogramBoundsThePercentiles () {
+		CodecMetrics.Histogram histogram = new CodecMetrics.Histogram ();
+		assertEquals (0, histogram.getPercentile (0.99));
+		for (int i=1; i<=100; i++)
+			histogram.record (i * 1000L);
+		assertEquals (100, histogram.getCount ());
+		assertEquals (50500, histogram.getMeanNanos ());
+		assertEquals (100000, histogram.getMaxNanos ());
+		long median = histogram.getPercentile (0.5);
+		assertTrue (median >= 50000 && median < 100000);
+		assertEquals (100000, histogram.getPercentile (1.0));
+	}
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.json.JSONObject;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * @author mtavares */
+public class EncodeSinkTest {
+
+	static class Reading extends JSONEntity {
+		String sensor;
+		int count;
+		long timestamp;
+		double value;
+		float ratio;
+		boolean valid;
+		Reading previous;
+
+		public Reading (String sensor, double value) {
+			this.sensor = sensor;
+			this.count = 12345;
+			this.timestamp = 1350000000000L;
+			this.value = value;
+			this.ratio = 0.25f;
+			this.valid = true;
+		}
+
+		public Reading (JSONObject json) throws JSONMappingException {
+			super (json);
+		}
+	}
+
+	@Test
+	public void writesTheSameAsToJson () throws Exception {
+		Reading reading = new Reading ("témp   🌊 \"</\"", 21.50);
+		reading.previous = new Reading ("old", 1e-7);
+		String expected = reading.toJson ().toString ();
+		assertEquals (expected, reading.toString ());
+
+		StringBuilder builder = new StringBuilder ("x");
+		reading.appendTo (builder);
+		reading.appendTo (builder);
+		assertEquals ("x" + expected + expected, builder.toString ());
+
+		char[] chars = new char[expected.length () + 2];
+		assertEquals (expected.length (), reading.writeTo (chars, 2));
+		assertEquals (expected, new String (chars, 2, expected.length ()));
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect (1024);
+		buffer.put ((byte) '[');
+		int length = reading.writeTo (buffer);
+		byte[] bytes = expected.getBytes (StandardCharsets.UTF_8);
+		assertEquals (bytes.length, length);
+		assertEquals (bytes.length + 1, buffer.position ());
+		byte[] written = new byte[length];
+		buffer.position (1);
+		buffer.get (written);
+		assertEquals (expected, new String (written, StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void leavesSmallBuffersUntouched () throws Exception {
+		Reading reading = new Reading ("sensor", 3.0);
+		ByteBuffer buffer = ByteBuffer.allocate (10);
+		try {
+			reading.writeTo (buffer);
+			fail ("The entity doesn't fit in 10 bytes.");
+		} catch (BufferOverflowException e) {
+			assertEquals (0, buffer.position ());
+		}
+		try {
+			reading.writeTo (new char[10], 0);
+			fail ("The entity doesn't fit in 10 chars.");
+		} catch (BufferOverflowException e) {
+			// expected
+		}
+
+		reading.value = Double.NaN;
+		try {
+			reading.appendTo (new StringBuilder ());
+			fail ("NaN can't be encoded.");
+		} catch (JSONMappingException e) {
+			// the scratch space is released.
+		}
+		reading.value = 3.0;
+		assertEquals (reading.toJson ().toString (), reading.appendTo (new StringBuilder ()).toString ());
+	}
+
+	@Test
+	public void doesntAllocateOnceWarm () throws Exception {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean ();
+		Assume.assumeTrue (threads instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+		Assume.assumeTrue (allocations.isThreadAllocatedMemorySupported () && allocations.isThreadAllocatedMemoryEnabled ());
+
+		Reading reading = new Reading ("sensor", 17.125);
+		StringBuilder builder = new StringBuilder (256);
+		for (int i=0; i<20000; i++) {
+			builder.setLength (0);
+			reading.appendTo (builder);
+		}
+
+		long thread = Thread.currentThread ().getId ();
+		long before = allocations.getThreadAllocatedBytes (thread);
+		for (int i=0; i<10000; i++) {
+			builder.setLength (0);
+			reading.appendTo (builder);
+		}
+		long allocated = allocations.getThreadAllocatedBytes (thread) - before;
+		assertTrue ("Allocated " + allocated + " bytes", allocated < 10000);
+	}
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.bitpipeline.lib.friendlyjson.complexdata.EquipmentBoard;
+import org.bitpipeline.lib.friendlyjson.complexdata.EquipmentBrand;
+import org.bitpipeline.lib.friendlyjson.complexdata.EquipmentCollection;
+import org.bitpipeline.lib.friendlyjson.complexdata.FinFittingType;
+import org.bitpipeline.lib.friendlyjson.complexdata.WindsurfClass;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @author mtavares */
+public class EntityCodecsTest {
+
+	static class Sample extends JSONEntity {
+		boolean aBoolean;
+		byte aByte;
+		char aChar;
+		short aShort;
+		int aInt;
+		long aLong;
+		float aFloat;
+		double aDouble;
+		String aString;
+		List<String> names;
+
+		public Sample () {
+			this.aBoolean = true;
+			this.aByte = 3;
+			this.aChar = 'x';
+			this.aShort = 300;
+			this.aInt = 70000;
+			this.aLong = 5000000000L;
+			this.aFloat = 1.5f;
+			this.aDouble = 2.25;
+			this.aString = "text";
+			this.names = Arrays.asList ("a", "b");
+		}
+
+		public Sample (JSONObject json) throws JSONMappingException {
+			super (json);
+		}
+	}
+
+	@After
+	public void restoreEngine () {
+		EntityCodecs.setCompiledCodecs (false);
+		EntityCodecs.unregister (Sample.class);
+	}
+
+	@Test
+	public void compiledCodecMatchesReflection () throws JSONMappingException {
+		Sample sample = new Sample ();
+		String reflective = sample.toJson ().toString ();
+
+		EntityCodecs.setCompiledCodecs (true);
+		assertTrue (EntityCodecs.forClass (Sample.class) instanceof CompiledCodec);
+		assertEquals (reflective, sample.toJson ().toString ());
+
+		Sample copy = new Sample (sample.toJson ());
+		assertEquals (sample.aBoolean, copy.aBoolean);
+		assertEquals (sample.aByte, copy.aByte);
+		assertEquals (sample.aChar, copy.aChar);
+		assertEquals (sample.aShort, copy.aShort);
+		assertEquals (sample.aInt, copy.aInt);
+		assertEquals (sample.aLong, copy.aLong);
+		assertEquals (sample.aFloat, copy.aFloat, 0.0f);
+		assertEquals (sample.aDouble, copy.aDouble, 0.0);
+		assertEquals (sample.aString, copy.aString);
+		assertEquals (sample.names, copy.names);
+		assertEquals (reflective, copy.toJson ().toString ());
+	}
+
+	@Test
+	public void compiledCodecOnComplexData () throws JSONMappingException {
+		EquipmentBrand brand = new EquipmentBrand ("Brand", null, "This is a BRAND!");
+		EquipmentCollection coll = new EquipmentCollection ("2012", null, "2012 collection", brand);
+		EquipmentBoard board = new EquipmentBoard ("Beginner", coll, null, "A beginners board",
+				new WindsurfClass[] {WindsurfClass.Kids, WindsurfClass.Beginner},
+				new EquipmentBoard.BoardSpecs (150f, 2.70f, 0.70f, 2.0f,  8.0f, FinFittingType.DaggerBoard));
+		String reflective = board.toString ();
+		String decodedWithReflection = new EquipmentBoard (board.toJson ()).toString ();
+
+		EntityCodecs.setCompiledCodecs (true);
+		assertEquals (reflective, board.toString ());
+		EquipmentBoard copy = new EquipmentBoard (board.toJson ());
+		assertNotNull (copy.getCollection ());
+		assertEquals (decodedWithReflection, copy.toString ());
+	}
+
+	@Test
+	public void registeredCodecTakesPrecedence () throws JSONMappingException {
+		EntityCodecs.register (Sample.class, new EntityCodec<Sample> () {
+			public void decode (Sample entity, JSONObject json) throws JSONMappingException {
+				entity.aString = "decoded";
+			}
+
+			public void encode (Sample entity, JSONObject json) throws JSONMappingException {
+				try {
+					json.put ("only", entity.aString);
+				} catch (Exception e) {
+					throw new JSONMappingException (e);
+				}
+			}
+		});
+
+		assertEquals ("{\"only\":\"text\"}", new Sample ().toString ());
+		assertEquals ("decoded", new Sample (new JSONObject ()).aString);
+	}
+}
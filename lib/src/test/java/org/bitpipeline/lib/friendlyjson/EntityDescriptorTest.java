@@ -0,0 +1,69 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+import java.util.Map;
+
+import org.bitpipeline.lib.friendlyjson.complexdata.EquipmentBoard;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * @author mtavares */
+public class EntityDescriptorTest {
+
+	class Base extends JSONEntity {
+		int baseValue;
+		transient int ignored;
+
+		public Base (JSONObject json) throws JSONMappingException {
+			super (json);
+		}
+	}
+
+	class Child extends Base {
+		List<String> names;
+		Map<String, List<String>> groups;
+
+		public Child (JSONObject json) throws JSONMappingException {
+			super (json);
+		}
+	}
+
+	@Test
+	public void descriptorIsComputedOnce () {
+		assertSame (EntityDescriptor.of (EquipmentBoard.class), EntityDescriptor.of (EquipmentBoard.class));
+	}
+
+	@Test
+	public void fieldsOfTheClassComeFirst () throws JSONMappingException {
+		FieldDescriptor[] fields = EntityDescriptor.of (Child.class).getFields ();
+
+		assertEquals (3, fields.length);
+		assertEquals ("names", fields[0].getJsonName ());
+		assertEquals ("groups", fields[1].getJsonName ());
+		assertEquals ("baseValue", fields[2].getJsonName ());
+
+		assertEquals (String.class, fields[0].getTypeArgument (0));
+		assertEquals (String.class, fields[1].getTypeArgument (0));
+		assertEquals (List.class, fields[1].getTypeArgument (1));
+	}
+}
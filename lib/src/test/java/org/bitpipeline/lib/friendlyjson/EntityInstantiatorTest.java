@@ -0,0 +1,121 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * @author mtavares */
+public class EntityInstantiatorTest {
+	static int jsonConstructorCalls;
+
+	static class Part extends JSONEntity {
+		String name;
+
+		private Part () {
+		}
+
+		public Part (String name) {
+			this.name = name;
+		}
+
+		public Part (JSONObject json) throws JSONMappingException {
+			super (json);
+			EntityInstantiatorTest.jsonConstructorCalls++;
+		}
+	}
+
+	static class OnlyJson extends JSONEntity {
+		int size;
+
+		public OnlyJson (JSONObject json) throws JSONMappingException {
+			super (json);
+			EntityInstantiatorTest.jsonConstructorCalls++;
+		}
+	}
+
+	static class Assembly extends JSONEntity {
+		List<Part> parts;
+		Part main;
+		OnlyJson box;
+
+		Assembly () {
+			this.parts = new ArrayList<Part> ();
+		}
+
+		public Assembly (JSONObject json) throws JSONMappingException {
+			super (json);
+		}
+	}
+
+	static class NoConstructor extends JSONEntity {
+		int size;
+	}
+
+	private static JSONObject createJson () throws Exception {
+		Assembly assembly = new Assembly ();
+		for (int i=0; i<10; i++)
+			assembly.parts.add (new Part ("p" + i));
+		assembly.main = new Part ("main");
+		JSONObject json = assembly.toJson ();
+		json.put ("box", new JSONObject ().put ("size", 3));
+		return json;
+	}
+
+	@Test
+	public void createsWithTheJsonConstructor () throws Exception {
+		JSONObject json = EntityInstantiatorTest.createJson ();
+		EntityInstantiatorTest.jsonConstructorCalls = 0;
+		Assembly assembly = new Assembly (json);
+		assertEquals (12, EntityInstantiatorTest.jsonConstructorCalls);
+		assertEquals ("p3", assembly.parts.get (3).name);
+		assertEquals (3, assembly.box.size);
+	}
+
+	@Test
+	public void injectsTheFields () throws Exception {
+		JSONObject json = EntityInstantiatorTest.createJson ();
+		String expected = new Assembly (json).toString ();
+
+		EntityInstantiatorTest.jsonConstructorCalls = 0;
+		Assembly assembly = JSONEntity.decode (Assembly.class, json, DecodeOptions.defaults ().withFieldInjection (true));
+		// only the class without a no-arg constructor goes through the JSONObject constructor.
+		assertEquals (1, EntityInstantiatorTest.jsonConstructorCalls);
+		assertEquals (expected, assembly.toString ());
+	}
+
+	@Test
+	public void reportsTheMissingConstructor () throws Exception {
+		try {
+			JSONEntity.fromJson (NoConstructor.class, new JSONObject ());
+			fail ("The class doesn't have a JSONObject constructor.");
+		} catch (JSONMappingException e) {
+			assertTrue (e.getMessage ().endsWith (JSONEntity.MSG_MUST_HAVE_CONSTRUCTOR));
+		}
+
+		NoConstructor injected = JSONEntity.decode (NoConstructor.class, new JSONObject ().put ("size", 4), DecodeOptions.defaults ().withFieldInjection (true));
+		assertEquals (4, injected.size);
+	}
+}
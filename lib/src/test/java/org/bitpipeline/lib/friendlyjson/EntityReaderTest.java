@@ -0,0 +1,150 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+
+import org.bitpipeline.lib.friendlyjson.complexdata.EquipmentBoard;
+import org.bitpipeline.lib.friendlyjson.complexdata.EquipmentBrand;
+import org.bitpipeline.lib.friendlyjson.complexdata.EquipmentCollection;
+import org.bitpipeline.lib.friendlyjson.complexdata.EquipmentPak;
+import org.bitpipeline.lib.friendlyjson.complexdata.FinFittingType;
+import org.bitpipeline.lib.friendlyjson.complexdata.WindsurfClass;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * @author mtavares */
+public class EntityReaderTest {
+
+	static class Base extends JSONEntity {
+		String shadowed;
+		long inBase;
+
+		public Base (JSONObject json) throws JSONMappingException {
+			super (json);
+		}
+	}
+
+	static class Sample extends Base {
+		String shadowed;
+		boolean aBoolean;
+		char aChar;
+		int aInt;
+		double aDouble;
+		String aString;
+		WindsurfClass anEnum;
+		List<Sample> children;
+		List<String> names;
+		Map<String, Integer> values;
+		WindsurfClass[] classes;
+		Sample child;
+
+		public Sample (JSONObject json) throws JSONMappingException {
+			super (json);
+		}
+	}
+
+	private static final String SAMPLE = "{"
+		+ "\"shadowed\": \"both\", \"inBase\": 5000000000, \"aBoolean\": true, \"aChar\": \"xyz\","
+		+ "\"aInt\": \"42\", \"aDouble\": 1.5e2, \"aString\": \"a \\\"quoted\\\" \\u00e9 text\","
+		+ "\"anEnum\": \"Freestyle\", \"unknown\": {\"deep\": [1, {\"a\": null}, \"]\"]},"
+		+ "\"children\": [{\"aInt\": 1, \"names\": [\"x\"]}, {\"aInt\": 2, \"child\": {\"aString\": \"grand child\"}}],"
+		+ "\"names\": [\"a\", \"b\"], \"values\": {\"one\": 1, \"two\": 2},"
+		+ "\"classes\": [\"Kids\", \"NotAClass\", \"Beginner\"],"
+		+ "\"child\": {\"aString\": \"child\", \"values\": {}},"
+		+ "\"aNull\": null"
+		+ "}";
+
+	@Test
+	public void readsLikeTheConstructor () throws JSONMappingException, JSONException {
+		Sample expected = new Sample (new JSONObject (EntityReaderTest.SAMPLE));
+		Sample sample = JSONEntity.read (Sample.class, new StringReader (EntityReaderTest.SAMPLE));
+
+		assertEquals (expected.toString (), sample.toString ());
+		assertEquals ("both", sample.shadowed);
+		assertEquals ("both", ((Base) sample).shadowed);
+		assertEquals (5000000000L, sample.inBase);
+		assertEquals ('x', sample.aChar);
+		assertEquals (42, sample.aInt);
+		assertEquals (WindsurfClass.Freestyle, sample.anEnum);
+		assertEquals (2, sample.children.size ());
+		assertEquals ("grand child", sample.children.get (1).child.aString);
+		assertEquals (Integer.valueOf (2), sample.values.get ("two"));
+		assertEquals (3, sample.classes.length);
+		assertNull (sample.classes[1]);
+		assertEquals ("child", sample.child.aString);
+	}
+
+	@Test
+	public void readsEntitiesWithTheirOwnConstructors () throws JSONMappingException, JSONException {
+		EquipmentBrand brand = new EquipmentBrand ("Brand", null, "This is a BRAND!");
+		brand.putInfo ("Founded", "2012");
+		EquipmentCollection coll = new EquipmentCollection ("2012", null, "2012 collection", brand);
+		EquipmentBoard board = new EquipmentBoard ("Beginner", coll, null, "A beginners board",
+				new WindsurfClass[] {WindsurfClass.Kids, WindsurfClass.Beginner},
+				new EquipmentBoard.BoardSpecs (150f, 2.70f, 0.70f, 2.0f,  8.0f, FinFittingType.DaggerBoard));
+		EquipmentPak pak = new EquipmentPak ();
+		pak.addBrand (brand);
+		pak.addCollection (coll);
+		pak.addBoard (board);
+
+		EquipmentPak copy = JSONEntity.read (EquipmentPak.class, new StringReader (pak.toString ()));
+		assertEquals (pak.toString (), copy.toString ());
+		assertEquals (1, copy.getCollections ().size ());
+		EquipmentBoard cBoard = copy.getBoards ().get (0);
+		assertEquals (board.getName (), cBoard.getName ());
+		assertNotNull (cBoard.getCollection ());
+		assertEquals (brand.getName (), cBoard.getCollection ().getBrand ().getName ());
+	}
+
+	@Test
+	public void readsUTF8Streams () throws Exception {
+		String json = "{\"aString\": \"café €\"}";
+		Sample sample = JSONEntity.read (Sample.class, new ByteArrayInputStream (json.getBytes ("UTF-8")));
+		assertEquals ("café €", sample.aString);
+	}
+
+	@Test
+	public void refusesInvalidText () throws JSONMappingException {
+		String[] invalid = {
+			"[]",
+			"{\"aInt\": 1",
+			"{\"aInt\" 1}",
+			"{\"names\": [\"a\" \"b\"]}",
+			"{\"unknown\": \"not terminated}",
+			"{\"aInt\": 1, \"aInt\": 2}"
+		};
+		for (String text : invalid) {
+			try {
+				JSONEntity.read (Sample.class, new StringReader (text));
+				fail ("Should have refused " + text);
+			} catch (JSONException e) {
+				// expected
+			}
+		}
+	}
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bitpipeline.lib.friendlyjson.complexdata.EquipmentBoard;
+import org.bitpipeline.lib.friendlyjson.complexdata.EquipmentBrand;
+import org.bitpipeline.lib.friendlyjson.complexdata.EquipmentCollection;
+import org.bitpipeline.lib.friendlyjson.complexdata.EquipmentPak;
+import org.bitpipeline.lib.friendlyjson.complexdata.FinFittingType;
+import org.bitpipeline.lib.friendlyjson.complexdata.WindsurfClass;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * @author mtavares */
+public class EntityWriterTest {
+
+	static class Base extends JSONEntity {
+		String shadowed;
+		int inBase;
+
+		public Base () {
+		}
+
+		public Base (JSONObject json) throws JSONMappingException {
+			super (json);
+		}
+	}
+
+	static class Sample extends Base {
+		String shadowed;
+		boolean aBoolean;
+		char aChar;
+		long aLong;
+		float aFloat;
+		double aDouble;
+		String aString;
+		String aNull;
+		WindsurfClass anEnum;
+		List<String> names;
+		Map<String, Double> values;
+		Sample[] children;
+		Sample child;
+
+		public Sample () {
+		}
+
+		public Sample (JSONObject json) throws JSONMappingException {
+			super (json);
+		}
+	}
+
+	private static String write (JSONEntity entity) throws JSONMappingException, IOException {
+		StringWriter writer = new StringWriter ();
+		entity.writeTo (writer);
+		return writer.toString ();
+	}
+
+	private static Sample createSample () {
+		Sample sample = new Sample ();
+		sample.shadowed = "sub";
+		((Base) sample).shadowed = "base";
+		sample.inBase = -12;
+		sample.aBoolean = true;
+		sample.aChar = '"';
+		sample.aLong = Long.MIN_VALUE;
+		sample.aFloat = 0.1f;
+		sample.aDouble = 100.0;
+		sample.aString = "</script>\\ \t\n\r\b\f \u0001 \u0085 é   €";
+		sample.anEnum = WindsurfClass.Freestyle;
+		sample.names = new ArrayList<String> ();
+		sample.names.add ("one");
+		sample.names.add (null);
+		sample.names.add ("");
+		sample.values = new HashMap<String, Double> ();
+		for (int i=0; i<20; i++)
+			sample.values.put ("key" + i, Double.valueOf (i * 1.5));
+		sample.values.put ("none", null);
+		Sample child = new Sample ();
+		child.aString = "child";
+		sample.children = new Sample[] { child, null };
+		sample.child = child;
+		return sample;
+	}
+
+	@Test
+	public void writesTheSameAsToString () throws JSONMappingException, IOException {
+		Sample sample = EntityWriterTest.createSample ();
+		String expected = sample.toJson ().toString ();
+		assertEquals (expected, EntityWriterTest.write (sample));
+		assertEquals (expected, sample.toString ());
+		assertEquals (new Sample ().toJson ().toString (), EntityWriterTest.write (new Sample ()));
+	}
+
+	@Test
+	public void writesUTF8IntoStreams () throws JSONMappingException, IOException {
+		Sample sample = EntityWriterTest.createSample ();
+		ByteArrayOutputStream stream = new ByteArrayOutputStream ();
+		sample.writeTo (stream);
+		assertEquals (sample.toJson ().toString (), new String (stream.toByteArray (), "UTF-8"));
+	}
+
+	@Test
+	public void writesEntitiesWithTheirOwnToJson () throws JSONMappingException, IOException {
+		EquipmentBrand brand = new EquipmentBrand ("Brand", null, "This is a BRAND!");
+		EquipmentCollection coll = new EquipmentCollection ("2012", null, "2012 collection", brand);
+		EquipmentBoard board = new EquipmentBoard ("Beginner", coll, null, "A beginners board",
+				new WindsurfClass[] {WindsurfClass.Kids, WindsurfClass.Beginner},
+				new EquipmentBoard.BoardSpecs (150f, 2.70f, 0.70f, 2.0f,  8.0f, FinFittingType.DaggerBoard));
+		EquipmentPak pak = new EquipmentPak ();
+		pak.addBrand (brand);
+		pak.addCollection (coll);
+		pak.addBoard (board);
+
+		assertEquals (board.toJson ().toString (), EntityWriterTest.write (board));
+		assertEquals (pak.toJson ().toString (), EntityWriterTest.write (pak));
+	}
+
+	@Test
+	public void refusesNonFiniteNumbers () throws IOException {
+		Sample sample = new Sample ();
+		sample.aDouble = Double.NaN;
+		try {
+			EntityWriterTest.write (sample);
+			fail ("NaN isn't valid in JSON.");
+		} catch (JSONMappingException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.StringWriter;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * @author mtavares */
+public class EnumLookupTest {
+
+	static enum Color {
+		@EnumAlias ({ "red", "crimson" })
+		RED,
+		GREEN {
+			@Override
+			public String toString () {
+				return "green";
+			}
+		},
+		BLUE
+	}
+
+	@EnumFormat (ordinal = true, fallback = "UNKNOWN")
+	static enum Size {
+		UNKNOWN, SMALL, LARGE
+	}
+
+	static class Shirt extends JSONEntity {
+		Color color;
+		Size size;
+		Color[] stripes;
+		Map<Color, Integer> stock;
+
+		public Shirt () {
+		}
+
+		public Shirt (JSONObject json) throws JSONMappingException {
+			super (json);
+		}
+	}
+
+	@Test
+	public void decodesNamesAliasesAndOrdinals () throws Exception {
+		EnumLookup colors = EnumLookup.of (Color.class);
+		assertSame (Color.RED, colors.fromJson ("RED"));
+		assertSame (Color.RED, colors.fromJson ("crimson"));
+		assertSame (Color.GREEN, colors.fromJson ("GREEN"));
+		assertSame (Color.BLUE, colors.fromJson (Integer.valueOf (2)));
+		try {
+			colors.fromJson ("purple");
+			fail ("Color has no fallback.");
+		} catch (JSONMappingException e) {
+			// expected
+		}
+
+		EnumLookup sizes = EnumLookup.of (Size.class);
+		assertSame (Size.LARGE, sizes.fromJson ("LARGE"));
+		assertSame (Size.UNKNOWN, sizes.fromJson ("HUGE"));
+		assertSame (Size.UNKNOWN, sizes.fromJson (Double.valueOf (1.5)));
+		assertSame (Size.UNKNOWN, sizes.fromJson (Integer.valueOf (-1)));
+	}
+
+	@Test
+	public void encodesNamesOrOrdinals () throws Exception {
+		Shirt shirt = new Shirt ();
+		shirt.color = Color.GREEN;
+		shirt.size = Size.LARGE;
+		shirt.stripes = new Color[] { Color.RED, Color.GREEN };
+		shirt.stock = new EnumMap<Color, Integer> (Color.class);
+		shirt.stock.put (Color.GREEN, Integer.valueOf (4));
+
+		JSONObject json = shirt.toJson ();
+		assertEquals ("GREEN", json.get ("color"));
+		assertEquals (Integer.valueOf (2), json.get ("size"));
+		assertEquals ("GREEN", json.getJSONArray ("stripes").get (1));
+		assertEquals (4, json.getJSONObject ("stock").getInt ("GREEN"));
+
+		StringWriter out = new StringWriter ();
+		shirt.writeTo (out);
+		assertEquals (json.toString (), out.toString ());
+
+		Shirt copy = new Shirt (json);
+		assertSame (Color.GREEN, copy.color);
+		assertSame (Size.LARGE, copy.size);
+		assertSame (Color.GREEN, copy.stripes[1]);
+		assertEquals (Integer.valueOf (4), copy.stock.get (Color.GREEN));
+	}
+
+	@Test
+	public void handlesUnknownValues () throws Exception {
+		JSONObject json = new JSONObject ();
+		json.put ("size", "HUGE");
+		json.put ("stripes", new JSONArray ().put ("red").put ("purple").put (0));
+
+		Shirt shirt = new Shirt (json);
+		assertSame (Size.UNKNOWN, shirt.size);
+		assertEquals (3, shirt.stripes.length);
+		assertSame (Color.RED, shirt.stripes[0]);
+		assertNull (shirt.stripes[1]);
+		assertSame (Color.RED, shirt.stripes[2]);
+
+		json.put ("color", "purple");
+		try {
+			new Shirt (json);
+			fail ("purple isn't a Color.");
+		} catch (JSONMappingException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * @author mtavares */
+public class FieldAccessorTest {
+	static class Holder {
+		private int number;
+		private double real;
+		private String text;
+		private static final String CONSTANT = "constant";
+	}
+
+	@Test
+	public void typedAccess () throws Exception {
+		Holder holder = new Holder ();
+		FieldAccessor number = new FieldAccessor (Holder.class.getDeclaredField ("number"));
+		FieldAccessor real = new FieldAccessor (Holder.class.getDeclaredField ("real"));
+		FieldAccessor text = new FieldAccessor (Holder.class.getDeclaredField ("text"));
+
+		number.setInt (holder, 42);
+		real.setDouble (holder, 2.5);
+		text.set (holder, "hello");
+
+		assertEquals (42, holder.number);
+		assertEquals (42, number.getInt (holder));
+		assertEquals (Integer.valueOf (42), number.get (holder));
+		assertEquals (2.5, real.getDouble (holder), 0.0);
+		assertEquals ("hello", text.get (holder));
+	}
+
+	@Test (expected = IllegalAccessException.class)
+	public void staticFinalFieldsCantBeSet () throws Exception {
+		FieldAccessor constant = new FieldAccessor (Holder.class.getDeclaredField ("CONSTANT"));
+		assertEquals (Holder.CONSTANT, constant.get (null));
+		constant.set (null, "other");
+	}
+}
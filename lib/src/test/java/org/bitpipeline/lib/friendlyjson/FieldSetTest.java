@@ -0,0 +1,131 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * @author mtavares */
+public class FieldSetTest {
+
+	static class Route extends JSONEntity {
+		String id;
+		int weight;
+		String description;
+		Hop origin;
+		List<Hop> hops;
+		Map<String, Hop> byName;
+		Hop[] alternatives;
+
+		public Route () {
+			this.id = "r1";
+			this.weight = 7;
+			this.description = "a long description";
+			this.origin = new Hop ("start", 0);
+			this.hops = new ArrayList<Hop> ();
+			this.byName = new HashMap<String, Hop> ();
+			for (int i=1; i<4; i++) {
+				Hop hop = new Hop ("h" + i, i);
+				this.hops.add (hop);
+				this.byName.put (hop.name, hop);
+			}
+			this.alternatives = new Hop[] { new Hop ("alt", 9) };
+		}
+
+		public Route (JSONObject json) throws JSONMappingException {
+			super (json);
+		}
+	}
+
+	static class Hop extends JSONEntity {
+		String name;
+		int cost;
+
+		public Hop (String name, int cost) {
+			this.name = name;
+			this.cost = cost;
+		}
+
+		public Hop (JSONObject json) throws JSONMappingException {
+			super (json);
+		}
+	}
+
+	private static void assertProjected (Route route) {
+		assertEquals ("r1", route.id);
+		assertEquals (0, route.weight);
+		assertNull (route.description);
+		assertEquals ("start", route.origin.name);
+		assertEquals (0, route.origin.cost);
+		assertEquals (3, route.hops.size ());
+		assertNull (route.hops.get (1).name);
+		assertEquals (2, route.hops.get (1).cost);
+		assertEquals (2, route.byName.get ("h2").cost);
+		assertNull (route.byName.get ("h2").name);
+		assertNull (route.alternatives);
+	}
+
+	@Test
+	public void decodesOnlyTheFieldsInTheSet () throws Exception {
+		FieldSet fields = FieldSet.of (Route.class, "id", "origin.name", "hops.cost", "byName.cost");
+		assertEquals (Arrays.asList ("id", "origin", "hops", "byName"), fields.getNames ());
+		assertTrue (fields.getNested ("id") == null);
+
+		String text = new Route ().toString ();
+		FieldSetTest.assertProjected (JSONEntity.decode (Route.class, new JSONObject (text), fields));
+		FieldSetTest.assertProjected (JSONEntity.read (Route.class, new StringReader (text), fields));
+		FieldSetTest.assertProjected (JSONEntity.read (Route.class, text.getBytes (StandardCharsets.UTF_8), fields));
+	}
+
+	@Test
+	public void wholeFieldsWin () throws Exception {
+		FieldSet fields = FieldSet.of (Route.class, "origin.name", "origin", "alternatives.cost");
+		assertNull (fields.getNested ("origin"));
+		Route route = JSONEntity.read (Route.class, new StringReader (new Route ().toString ()), fields);
+		assertEquals (0, route.origin.cost);
+		assertEquals ("start", route.origin.name);
+		assertEquals (9, route.alternatives[0].cost);
+		assertNull (route.alternatives[0].name);
+		assertNull (route.hops);
+	}
+
+	@Test
+	public void rejectsInvalidPaths () {
+		for (String path : new String[] { "nothing", "origin.nothing", "id.length", "weight." }) {
+			try {
+				FieldSet.of (Route.class, path);
+				fail ("'" + path + "' isn't a path to a field.");
+			} catch (JSONMappingException e) {
+				// expected
+			}
+		}
+	}
+}
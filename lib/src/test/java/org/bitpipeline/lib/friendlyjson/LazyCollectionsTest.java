@@ -0,0 +1,171 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * @author mtavares */
+public class LazyCollectionsTest {
+
+	static class Node extends JSONEntity {
+		String name;
+		List<Node> children;
+		Map<String, Node> byName;
+
+		public Node (String name) {
+			this.name = name;
+			this.children = new ArrayList<Node> ();
+			this.byName = new HashMap<String, Node> ();
+		}
+
+		public Node (JSONObject json) throws JSONMappingException {
+			super (json);
+		}
+
+		Node add (Node child) {
+			this.children.add (child);
+			this.byName.put (child.name, child);
+			return this;
+		}
+	}
+
+	private static Node createTree () {
+		Node root = new Node ("root");
+		for (int i=0; i<10; i++) {
+			Node child = new Node ("c" + i);
+			for (int j=0; j<i; j++)
+				child.add (new Node ("c" + i + "." + j));
+			root.add (child);
+		}
+		return root;
+	}
+
+	private static final DecodeOptions LAZY = DecodeOptions.defaults ().withLazyCollections (true);
+
+	@Test
+	public void decodesTheSameAsEagerly () throws JSONMappingException {
+		JSONObject json = LazyCollectionsTest.createTree ().toJson ();
+		Node eager = new Node (json);
+		Node lazy = JSONEntity.decode (Node.class, json, LazyCollectionsTest.LAZY);
+
+		assertTrue (lazy.children instanceof LazyCollection);
+		assertTrue (lazy.byName instanceof LazyCollection);
+		assertEquals (eager.toString (), lazy.toString ());
+		assertEquals ("c3.2", lazy.byName.get ("c3").children.get (2).name);
+	}
+
+	@Test
+	public void convertsOnlyWhenUsed () throws JSONMappingException {
+		JSONObject json = LazyCollectionsTest.createTree ().toJson ();
+		Node lazy = JSONEntity.decode (Node.class, json, LazyCollectionsTest.LAZY);
+
+		LazyCollection children = (LazyCollection) lazy.children;
+		assertFalse (children.isMaterialized ());
+		assertEquals (10, lazy.children.size ());
+		Node child = lazy.children.get (5);
+		assertTrue (child.children instanceof LazyCollection);
+		assertFalse (children.isMaterialized ());
+		assertTrue (child == lazy.children.get (5));
+
+		lazy.materialize ();
+		assertTrue (children.isMaterialized ());
+		assertTrue (((LazyCollection) lazy.byName).isMaterialized ());
+		for (Node node : lazy.children)
+			assertTrue (((LazyCollection) node.children).isMaterialized ());
+	}
+
+	@Test
+	public void changesLikeAList () throws JSONMappingException {
+		Node lazy = JSONEntity.decode (Node.class, LazyCollectionsTest.createTree ().toJson (), LazyCollectionsTest.LAZY);
+		lazy.children.remove (0);
+		lazy.children.add (new Node ("new"));
+		assertEquals (10, lazy.children.size ());
+		assertEquals ("c1", lazy.children.get (0).name);
+		assertEquals ("new", lazy.children.get (9).name);
+
+		lazy.byName.remove ("c0");
+		lazy.byName.put ("new", new Node ("new"));
+		assertEquals (10, lazy.byName.size ());
+		assertTrue (lazy.byName.containsKey ("new"));
+		assertFalse (lazy.byName.containsKey ("c0"));
+	}
+
+	@Test
+	public void releasesTheJSONWhenTheKeysAreRemoved () throws Exception {
+		JSONObject json = LazyCollectionsTest.createTree ().toJson ();
+		json.getJSONObject ("byName").put ("c3", "not a node");
+		Node lazy = JSONEntity.decode (Node.class, json, LazyCollectionsTest.LAZY);
+		LazyCollection byName = (LazyCollection) lazy.byName;
+
+		assertNull (lazy.byName.put ("c3", new Node ("new")));
+		assertEquals ("new", lazy.byName.get ("c3").name);
+		assertNull (lazy.byName.remove ("c1"));
+		assertTrue (lazy.byName.keySet ().remove ("c2"));
+		assertFalse (lazy.byName.keySet ().remove ("c2"));
+		lazy.byName.keySet ().removeAll (Arrays.asList ("c4", "c5"));
+		lazy.byName.keySet ().retainAll (Arrays.asList ("c0", "c3", "c6", "c7", "c8", "c9"));
+		Iterator<String> keys = lazy.byName.keySet ().iterator ();
+		while (keys.hasNext ()) {
+			if (!keys.next ().equals ("c3"))
+				keys.remove ();
+		}
+		assertEquals (1, lazy.byName.size ());
+		assertTrue (byName.isMaterialized ());
+
+		Node other = JSONEntity.decode (Node.class, json, LazyCollectionsTest.LAZY);
+		other.byName.keySet ().clear ();
+		assertTrue (((LazyCollection) other.byName).isMaterialized ());
+	}
+
+	@Test
+	public void throwsTheConversionErrorsWhenUsed () throws Exception {
+		JSONObject json = LazyCollectionsTest.createTree ().toJson ();
+		JSONArray children = json.getJSONArray ("children");
+		children.put (3, "not a node");
+
+		Node lazy = JSONEntity.decode (Node.class, json, LazyCollectionsTest.LAZY);
+		assertEquals ("c2", lazy.children.get (2).name);
+		try {
+			lazy.children.get (3);
+			fail ("The element isn't a node.");
+		} catch (UncheckedMappingException e) {
+			assertTrue (e.getCause () instanceof JSONMappingException);
+		}
+		try {
+			lazy.materialize ();
+			fail ("The element isn't a node.");
+		} catch (JSONMappingException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author mtavares */
+public class NDJSONTest {
+
+	static class LogLine extends JSONEntity {
+		int number;
+		String message;
+		List<String> tags;
+
+		public LogLine (int number) {
+			this.number = number;
+			this.message = "line\n" + number;
+			this.tags = new ArrayList<String> ();
+			this.tags.add ("t" + (number % 3));
+		}
+
+		public LogLine (JSONObject json) throws JSONMappingException {
+			super (json);
+		}
+	}
+
+	static class CountedLine extends LogLine {
+		static final AtomicInteger DECODED = new AtomicInteger ();
+
+		public CountedLine (JSONObject json) throws JSONMappingException {
+			super (json);
+			CountedLine.DECODED.incrementAndGet ();
+		}
+	}
+
+	private ExecutorService executor;
+
+	@Before
+	public void startExecutor () {
+		this.executor = Executors.newFixedThreadPool (4);
+	}
+
+	@After
+	public void stopExecutor () {
+		this.executor.shutdownNow ();
+	}
+
+	private static String writeLines (int count, int batchSize) throws Exception {
+		StringWriter out = new StringWriter ();
+		NDJSONWriter writer = new NDJSONWriter (out, batchSize);
+		for (int i=0; i<count; i++)
+			writer.write (new LogLine (i));
+		writer.close ();
+		return out.toString ();
+	}
+
+	@Test
+	public void writesOneEntityPerLine () throws Exception {
+		String text = NDJSONTest.writeLines (3, 10);
+		String[] lines = text.split ("\n");
+		assertEquals (3, lines.length);
+		assertEquals (new LogLine (1).toString (), lines[1]);
+		assertTrue (text.endsWith ("\n"));
+	}
+
+	@Test
+	public void readsInOrder () throws Exception {
+		String text = NDJSONTest.writeLines (500, NDJSONWriter.DEFAULT_BATCH_SIZE);
+		NDJSONReader<LogLine> single = new NDJSONReader<LogLine> (LogLine.class, new StringReader (text + "\n  \n"));
+		NDJSONReader<LogLine> parallel = new NDJSONReader<LogLine> (LogLine.class, new StringReader (text), this.executor, 16, true);
+
+		int count = 0;
+		for (LogLine line : parallel) {
+			LogLine expected = single.read ();
+			assertEquals (count, line.number);
+			assertEquals (expected.toString (), line.toString ());
+			count++;
+		}
+		assertEquals (500, count);
+		assertNull (single.read ());
+		single.close ();
+		parallel.close ();
+	}
+
+	@Test
+	public void readsUnordered () throws Exception {
+		String text = NDJSONTest.writeLines (500, 100);
+		NDJSONReader<LogLine> reader = new NDJSONReader<LogLine> (LogLine.class, new StringReader (text), this.executor, 8, false);
+		List<Integer> numbers = new ArrayList<Integer> ();
+		for (LogLine line : reader)
+			numbers.add (Integer.valueOf (line.number));
+		reader.close ();
+
+		Collections.sort (numbers);
+		assertEquals (500, numbers.size ());
+		for (int i=0; i<500; i++)
+			assertEquals (i, numbers.get (i).intValue ());
+	}
+
+	@Test
+	public void reportsTheInvalidLine () throws Exception {
+		String text = new LogLine (1).toString () + "\n\n{\"number\": 2\n";
+		NDJSONReader<LogLine> reader = new NDJSONReader<LogLine> (LogLine.class, new StringReader (text), this.executor, 4, true);
+		assertEquals (1, reader.read ().number);
+		try {
+			reader.read ();
+			fail ("The third line isn't valid JSON.");
+		} catch (JSONException e) {
+			assertTrue (e.getMessage ().contains ("line 3"));
+		}
+		reader.close ();
+	}
+
+	@Test
+	public void cancelsTheUnorderedLinesWhenClosed () throws Exception {
+		final List<Runnable> queued = new ArrayList<Runnable> ();
+		Executor first = new Executor () {
+			public void execute (Runnable command) {
+				if (queued.isEmpty ())
+					command.run ();
+				queued.add (command);
+			}
+		};
+		String text = NDJSONTest.writeLines (10, 10);
+		NDJSONReader<CountedLine> reader = new NDJSONReader<CountedLine> (CountedLine.class, new StringReader (text), first, 4, false);
+		CountedLine.DECODED.set (0);
+		assertEquals (0, reader.read ().number);
+		assertEquals (4, queued.size ());
+		reader.close ();
+
+		for (Runnable command : queued)
+			command.run ();
+		assertEquals (1, CountedLine.DECODED.get ());
+	}
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.util.Arrays;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * @author mtavares */
+public class NumberListTest {
+
+	static class Series extends JSONEntity {
+		IntList counts;
+		LongList times;
+		DoubleList values;
+
+		public Series () {
+			this.counts = new IntList ();
+			this.times = new LongList (2, true);
+			this.values = new DoubleList ();
+			for (int i=0; i<100; i++) {
+				this.counts.addInt (i * 3);
+				this.times.addLong (1350000000000L + i);
+				this.values.addDouble (i / 4.0);
+			}
+		}
+
+		public Series (JSONObject json) throws JSONMappingException {
+			super (json);
+		}
+	}
+
+	@Test
+	public void behavesLikeAList () {
+		IntList list = new IntList (1, true);
+		list.addInt (1);
+		list.addInt (3);
+		list.add (1, Integer.valueOf (2));
+		assertEquals (Arrays.asList (1, 2, 3), list);
+		assertEquals (3, list.removeInt (2));
+		assertEquals (Integer.valueOf (1), list.set (0, Integer.valueOf (7)));
+		assertArrayEquals (new int[] { 7, 2 }, list.toIntArray ());
+		assertTrue (list.isOffHeap ());
+		try {
+			list.getInt (2);
+			fail ("There's no third element.");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void encodesAndDecodes () throws Exception {
+		Series series = new Series ();
+		JSONObject json = series.toJson ();
+		assertEquals (json.toString (), series.toString ());
+
+		Series copy = new Series (json);
+		assertFalse (copy.times.isOffHeap ());
+		assertEquals (series.counts, copy.counts);
+		assertEquals (series.times, copy.times);
+		assertEquals (series.values, copy.values);
+
+		DecodeOptions previous = DecodeOptions.defaults ().withOffHeapNumberLists (true).enter ();
+		try {
+			Series read = JSONEntity.read (Series.class, new StringReader (series.toString ()));
+			assertTrue (read.values.isOffHeap ());
+			assertEquals (series.values, read.values);
+			assertEquals (series.toString (), read.toString ());
+		} finally {
+			DecodeOptions.restore (previous);
+		}
+	}
+
+	@Test
+	public void rejectsInvalidElements () throws Exception {
+		String text = "{\"counts\": [1, \"two\", 3]}";
+		try {
+			new Series (new JSONObject (text));
+			fail ("\"two\" isn't a number.");
+		} catch (JSONMappingException e) {
+			// expected
+		}
+		try {
+			JSONEntity.read (Series.class, new StringReader (text));
+			fail ("\"two\" isn't a number.");
+		} catch (JSONMappingException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * @author mtavares */
+public class ParallelDecoderTest {
+
+	static class Item extends JSONEntity {
+		int number;
+		List<Item> parts;
+
+		public Item (int number) {
+			this.number = number;
+			this.parts = new ArrayList<Item> ();
+		}
+
+		public Item (JSONObject json) throws JSONMappingException {
+			super (json);
+		}
+	}
+
+	static class Catalog extends JSONEntity {
+		List<Item> items;
+		Item[] featured;
+
+		public Catalog () {
+			this.items = new ArrayList<Item> ();
+		}
+
+		public Catalog (JSONObject json) throws JSONMappingException {
+			super (json);
+		}
+	}
+
+	private static Catalog createCatalog (int size) {
+		Catalog catalog = new Catalog ();
+		for (int i=0; i<size; i++) {
+			Item item = new Item (i);
+			for (int j=0; j<i % 5; j++)
+				item.parts.add (new Item (j));
+			catalog.items.add (item);
+		}
+		catalog.featured = catalog.items.subList (0, size / 2).toArray (new Item[size / 2]);
+		return catalog;
+	}
+
+	@Test
+	public void decodesTheSameAsSequentially () throws JSONMappingException {
+		Catalog catalog = ParallelDecoderTest.createCatalog (5000);
+		JSONObject json = catalog.toJson ();
+		String expected = new Catalog (json).toString ();
+
+		Catalog shared = JSONEntity.decode (Catalog.class, json, DecodeOptions.defaults ().withParallelDecoding (100));
+		assertEquals (expected, shared.toString ());
+
+		ForkJoinPool pool = new ForkJoinPool (3);
+		try {
+			Catalog own = JSONEntity.decode (Catalog.class, json, DecodeOptions.defaults ().withParallelDecoding (2, pool));
+			assertEquals (expected, own.toString ());
+			for (int i=0; i<own.items.size (); i++)
+				assertEquals (i, own.items.get (i).number);
+		} finally {
+			pool.shutdown ();
+		}
+	}
+
+	@Test
+	public void handlesInvalidElementsLikeSequentially () throws Exception {
+		JSONArray items = new JSONArray ();
+		for (int i=0; i<50; i++)
+			items.put (new Item (i).toJson ());
+		items.put (10, "not an item");
+		JSONObject json = new JSONObject ();
+		json.put ("featured", items);
+
+		Catalog catalog = JSONEntity.decode (Catalog.class, json, DecodeOptions.defaults ().withParallelDecoding (10));
+		assertEquals (50, catalog.featured.length);
+		assertNull (catalog.featured[10]);
+		assertEquals (49, catalog.featured[49].number);
+
+		json.put ("items", items);
+		try {
+			JSONEntity.decode (Catalog.class, json, DecodeOptions.defaults ().withParallelDecoding (10));
+			fail ("A list with a invalid element can't be decoded.");
+		} catch (JSONMappingException e) {
+			// the same as when decoding sequentially
+		}
+	}
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * @author mtavares */
+public class PresenceTrackingTest {
+
+	static class Sparse extends JSONEntity {
+		int count;
+		String label;
+		double ratio;
+		Sparse child;
+		List<String> tags;
+
+		public Sparse (JSONObject json) throws JSONMappingException {
+			super (json);
+		}
+	}
+
+	private static final DecodeOptions TRACKING = DecodeOptions.defaults ().withPresenceTracking (true);
+
+	private static void assertSparse (Sparse sparse) {
+		assertTrue (sparse.isPresenceTracked ());
+		assertTrue (sparse.isPresent ("count"));
+		assertEquals (0, sparse.count);
+		assertFalse (sparse.isPresent ("label"));
+		assertNull (sparse.label);
+		assertFalse (sparse.isPresent ("ratio"));
+		assertFalse (sparse.isPresent ("tags"));
+		assertNull (sparse.tags);
+		assertTrue (sparse.isPresent ("child"));
+		assertFalse (sparse.child.isPresent ("count"));
+		assertEquals (0, sparse.child.count);
+		assertTrue (sparse.child.isPresent ("label"));
+		assertEquals ("inner", sparse.child.label);
+		assertFalse (sparse.isPresent ("nothing"));
+	}
+
+	@Test
+	public void skipsMissingAndNullMembers () throws Exception {
+		String text = "{\"count\": 0, \"label\": null, \"child\": {\"label\": \"inner\"}}";
+		Sparse sparse = JSONEntity.decode (Sparse.class, new JSONObject (text), PresenceTrackingTest.TRACKING);
+		PresenceTrackingTest.assertSparse (sparse);
+
+		DecodeOptions previous = PresenceTrackingTest.TRACKING.enter ();
+		try {
+			PresenceTrackingTest.assertSparse (JSONEntity.read (Sparse.class, new StringReader (text)));
+		} finally {
+			DecodeOptions.restore (previous);
+		}
+
+		Sparse untracked = new Sparse (new JSONObject (text));
+		assertFalse (untracked.isPresenceTracked ());
+		assertFalse (untracked.isPresent ("count"));
+		assertEquals ("null", untracked.label);
+	}
+
+	@Test
+	public void worksWithCompiledCodecs () throws Exception {
+		String text = "{\"count\": 0, \"label\": null, \"child\": {\"label\": \"inner\"}}";
+		EntityCodecs.setCompiledCodecs (true);
+		try {
+			Sparse sparse = JSONEntity.decode (Sparse.class, new JSONObject (text), PresenceTrackingTest.TRACKING);
+			PresenceTrackingTest.assertSparse (sparse);
+		} finally {
+			EntityCodecs.setCompiledCodecs (false);
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * @author mtavares */
+public class PrimitiveArraysTest {
+
+	static class Samples extends JSONEntity {
+		int[] ints;
+		long[] longs;
+		double[] doubles;
+		float[] floats;
+		short[] shorts;
+		byte[] bytes;
+		boolean[] flags;
+		char[] letters;
+
+		public Samples () {
+			this.ints = new int[] { 0, -1, Integer.MAX_VALUE, 42 };
+			this.longs = new long[] { Long.MIN_VALUE, 3000000000L };
+			this.doubles = new double[] { 0.0, 1.5, -2.25, 1e-10, 3.0e20 };
+			this.floats = new float[] { 0.1f, 2f };
+			this.shorts = new short[] { -7, 300 };
+			this.bytes = new byte[] { -128, 0, 127 };
+			this.flags = new boolean[] { true, false };
+			this.letters = new char[] { 'a', '"', '\n' };
+		}
+
+		public Samples (JSONObject json) throws JSONMappingException {
+			super (json);
+		}
+	}
+
+	private static void assertSamples (Samples expected, Samples actual) {
+		assertArrayEquals (expected.ints, actual.ints);
+		assertArrayEquals (expected.longs, actual.longs);
+		assertArrayEquals (expected.doubles, actual.doubles, 0.0);
+		assertArrayEquals (expected.floats, actual.floats, 0.0f);
+		assertArrayEquals (expected.shorts, actual.shorts);
+		assertArrayEquals (expected.bytes, actual.bytes);
+		assertEquals (expected.flags.length, actual.flags.length);
+		for (int i=0; i<expected.flags.length; i++)
+			assertEquals (expected.flags[i], actual.flags[i]);
+		assertArrayEquals (expected.letters, actual.letters);
+	}
+
+	@Test
+	public void encodesAndDecodes () throws Exception {
+		Samples samples = new Samples ();
+		JSONObject json = samples.toJson ();
+		assertEquals (json.toString (), samples.toString ());
+		assertEquals ("[0,1.5,-2.25,1.0E-10,3.0E20]", json.getJSONArray ("doubles").toString ());
+
+		PrimitiveArraysTest.assertSamples (samples, new Samples (json));
+		PrimitiveArraysTest.assertSamples (samples, JSONEntity.read (Samples.class, new StringReader (samples.toString ())));
+	}
+
+	@Test
+	public void convertsLikeTheFields () throws Exception {
+		JSONObject json = new JSONObject ();
+		json.put ("ints", new JSONArray ("[1, \"2\", 3.7, \"x\", null]"));
+		json.put ("flags", new JSONArray ("[\"TRUE\", false, 1]"));
+
+		Samples samples = new Samples (json);
+		assertArrayEquals (new int[] { 1, 2, 3, 0, 0 }, samples.ints);
+		assertTrue (samples.flags[0]);
+		assertEquals (3, samples.flags.length);
+		assertNull (samples.longs);
+
+		Samples read = JSONEntity.read (Samples.class, new StringReader (json.toString ()));
+		assertArrayEquals (samples.ints, read.ints);
+	}
+
+	@Test (expected = JSONMappingException.class)
+	public void rejectsNonFiniteNumbers () throws Exception {
+		Samples samples = new Samples ();
+		samples.doubles[1] = Double.NaN;
+		samples.toJson ();
+	}
+}
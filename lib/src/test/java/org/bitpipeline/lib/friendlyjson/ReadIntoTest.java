@@ -0,0 +1,195 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * @author mtavares */
+public class ReadIntoTest {
+
+	static class Part extends JSONEntity {
+		String name;
+		int count;
+
+		public Part () {
+		}
+
+		public Part (String name, int count) {
+			this.name = name;
+			this.count = count;
+		}
+
+		public Part (JSONObject json) throws JSONMappingException {
+			super (json);
+		}
+	}
+
+	static class Message extends JSONEntity {
+		long id;
+		boolean urgent;
+		String text;
+		Part main;
+		List<Part> parts;
+		Map<String, Integer> counters;
+		int[] codes;
+		IntList samples;
+
+		public Message () {
+			this.parts = new ArrayList<Part> ();
+			this.counters = new HashMap<String, Integer> ();
+			this.samples = new IntList ();
+		}
+
+		public Message (JSONObject json) throws JSONMappingException {
+			super (json);
+		}
+	}
+
+	static class Custom extends JSONEntity {
+		public Custom () {
+		}
+
+		@Override
+		public JSONObject toJson () throws JSONMappingException {
+			return new JSONObject ();
+		}
+	}
+
+	private static Message createMessage (long id, int parts) {
+		Message message = new Message ();
+		message.id = id;
+		message.urgent = true;
+		message.text = "message " + id;
+		message.main = new Part ("main", 1);
+		for (int i=0; i<parts; i++)
+			message.parts.add (new Part ("part" + i, i));
+		message.counters.put ("id" + id, Integer.valueOf ((int) id));
+		message.codes = new int[] { 1, 2, 3 };
+		message.samples.addInt ((int) id);
+		return message;
+	}
+
+	@Test
+	public void reusesTheCollectionsAndEntities () throws Exception {
+		Message message = new Message ();
+		JSONEntity.readInto (message, ReadIntoTest.createMessage (1, 3).toJson ());
+		List<Part> parts = message.parts;
+		Part first = parts.get (0);
+		Part main = message.main;
+		Map<String, Integer> counters = message.counters;
+		int[] codes = message.codes;
+		IntList samples = message.samples;
+
+		Message second = ReadIntoTest.createMessage (2, 2);
+		second.codes = new int[] { 7, 8, 9 };
+		JSONObject json = second.toJson ();
+		assertSame (message, JSONEntity.readInto (message, json));
+		assertEquals (new Message (json).toString (), message.toString ());
+		assertSame (parts, message.parts);
+		assertSame (first, message.parts.get (0));
+		assertEquals (2, message.parts.size ());
+		assertSame (main, message.main);
+		assertSame (counters, message.counters);
+		assertEquals (1, counters.size ());
+		assertSame (codes, message.codes);
+		assertEquals (9, codes[2]);
+		assertSame (samples, message.samples);
+		assertEquals (1, samples.size ());
+	}
+
+	@Test
+	public void resetsTheMissingFields () throws Exception {
+		Message message = ReadIntoTest.createMessage (3, 2);
+		List<Part> parts = message.parts;
+		JSONEntity.readInto (message, new StringReader ("{\"text\": \"only text\", \"main\": null}"));
+		assertEquals ("only text", message.text);
+		assertEquals (0L, message.id);
+		assertFalse (message.urgent);
+		assertNull (message.main);
+		assertNull (message.codes);
+		assertSame (parts, message.parts);
+		assertTrue (parts.isEmpty ());
+		assertTrue (message.counters.isEmpty ());
+		assertTrue (message.samples.isEmpty ());
+
+		try {
+			JSONEntity.readInto (new Custom (), new JSONObject ());
+			fail ("Entities with their own toJson () can't be decoded into.");
+		} catch (JSONMappingException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void matchesANewEntityWhenMembersCantBeConverted () throws Exception {
+		EntityPool<Message> pool = new EntityPool<Message> (Message.class, 1);
+		Message message = pool.decode (ReadIntoTest.createMessage (6, 1).toJson ());
+		pool.release (message);
+
+		JSONObject json = new JSONObject ("{\"id\": \"abc\", \"urgent\": \"maybe\", \"main\": \"not a part\", \"text\": \"kept\"}");
+		assertSame (message, pool.decode (json));
+		Message fresh = new Message (json);
+		assertEquals (fresh.id, message.id);
+		assertEquals (0L, message.id);
+		assertFalse (message.urgent);
+		assertNull (fresh.main);
+		assertNull (message.main);
+		assertEquals ("kept", message.text);
+	}
+
+	@Test
+	public void poolsEntities () throws Exception {
+		EntityPool<Message> pool = new EntityPool<Message> (Message.class, 2);
+		Message one = pool.decode (ReadIntoTest.createMessage (4, 1).toJson ());
+		assertEquals (4L, one.id);
+		pool.release (one);
+		assertEquals (1, pool.size ());
+
+		Message two = pool.read (new StringReader (ReadIntoTest.createMessage (5, 1).toString ()));
+		assertSame (one, two);
+		assertEquals (5L, two.id);
+		assertEquals (1L, pool.getCreated ());
+		assertEquals (1L, pool.getReused ());
+
+		pool.release (two);
+		pool.release (new Message ());
+		pool.release (new Message ());
+		assertEquals (2, pool.size ());
+
+		try {
+			new EntityPool<Custom> (Custom.class, 2);
+			fail ("Entities with their own toJson () can't be pooled.");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
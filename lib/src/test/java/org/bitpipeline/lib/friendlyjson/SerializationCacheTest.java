@@ -0,0 +1,145 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author mtavares */
+public class SerializationCacheTest {
+
+	@CachedSerialization
+	static class Brand extends JSONEntity {
+		int id;
+		String name;
+
+		public Brand (int id, String name) {
+			this.id = id;
+			this.name = name;
+		}
+
+		public Brand (JSONObject json) throws JSONMappingException {
+			super (json);
+		}
+	}
+
+	static class Shelf extends JSONEntity {
+		String label;
+		Brand main;
+		List<Brand> others = new ArrayList<Brand> ();
+
+		public Shelf () {
+		}
+
+		public Shelf (JSONObject json) throws JSONMappingException {
+			super (json);
+		}
+	}
+
+	private SerializationCache previous;
+	private SerializationCache cache;
+
+	@Before
+	public void useOwnCache () {
+		this.previous = SerializationCache.getDefault ();
+		this.cache = new SerializationCache (SerializationCache.DEFAULT_MAXIMUM_BYTES);
+		SerializationCache.setDefault (this.cache);
+	}
+
+	@After
+	public void restoreCache () {
+		SerializationCache.setDefault (this.previous);
+	}
+
+	@Test
+	public void keepsTheTextUntilInvalidated () throws Exception {
+		Brand brand = new Brand (1, "Acme");
+		String text = brand.toString ();
+		assertEquals (brand.toJson ().toString (), text);
+		assertSame (text, brand.toString ());
+		assertEquals (1, this.cache.getMisses ());
+		assertEquals (1, this.cache.getHits ());
+
+		brand.name = "Other";
+		assertSame (text, brand.toString ());
+		brand.invalidateSerialized ();
+		assertEquals (brand.toJson ().toString (), brand.toString ());
+		assertEquals (2, this.cache.getMisses ());
+
+		ByteBuffer buffer = ByteBuffer.allocate (256);
+		int length = brand.writeTo (buffer);
+		assertEquals (brand.toString (), new String (buffer.array (), 0, length, StandardCharsets.UTF_8));
+		assertEquals (1, this.cache.size ());
+
+		JSONEntity.readInto (brand, new Brand (2, "Decoded").toJson ());
+		assertEquals (0, this.cache.size ());
+		assertEquals ("Decoded", new Brand (new JSONObject (brand.toString ())).name);
+	}
+
+	@Test
+	public void splicesNestedEntities () throws Exception {
+		Brand brand = new Brand (7, "Acme");
+		Shelf shelf = new Shelf ();
+		shelf.label = "top";
+		shelf.main = brand;
+		shelf.others.add (brand);
+		shelf.others.add (new Brand (8, "Zenith"));
+		assertEquals (shelf.toJson ().toString (), shelf.toString ());
+		assertEquals (1, this.cache.getHits ());
+		assertEquals (2, this.cache.size ());
+
+		brand.name = "Changed";
+		assertTrue (shelf.toString ().contains ("Acme"));
+		brand.invalidateSerialized ();
+		assertEquals (shelf.toJson ().toString (), shelf.toString ());
+	}
+
+	@Test
+	public void evictsToStayWithinItsBound () throws JSONMappingException {
+		SerializationCache small = new SerializationCache (2048);
+		SerializationCache.setDefault (small);
+		List<Brand> brands = new ArrayList<Brand> ();
+		for (int i=0; i<100; i++) {
+			Brand brand = new Brand (i, "Brand number " + i);
+			brands.add (brand);
+			brand.toString ();
+		}
+		assertTrue (small.getBytes () <= small.getMaximumBytes ());
+		assertTrue (small.size () < brands.size ());
+		assertEquals (100 - small.size (), small.getEvictions ());
+
+		Brand evicted = brands.get (0);
+		assertEquals (evicted.toJson ().toString (), evicted.toString ());
+		assertEquals (101, small.getMisses ());
+
+		small.clear ();
+		assertEquals (0, small.size ());
+		assertEquals (0, small.getBytes ());
+	}
+}
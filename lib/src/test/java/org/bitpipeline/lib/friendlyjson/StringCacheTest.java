@@ -0,0 +1,122 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * @author mtavares */
+public class StringCacheTest {
+
+	static class Product extends JSONEntity {
+		@LowCardinality
+		String brand;
+		String name;
+		Map<String, Integer> stock;
+
+		public Product (String brand, String name) {
+			this.brand = brand;
+			this.name = name;
+			this.stock = new HashMap<String, Integer> ();
+			this.stock.put ("warehouse", Integer.valueOf (3));
+		}
+
+		public Product (JSONObject json) throws JSONMappingException {
+			super (json);
+		}
+	}
+
+	private static String copy (String string) {
+		return new String (string.toCharArray ());
+	}
+
+	@Test
+	public void canonicalizesAndCounts () {
+		StringCache cache = new StringCache (100);
+		String first = StringCacheTest.copy ("blue");
+		assertSame (first, cache.canonicalize (first));
+		assertSame (first, cache.canonicalize (StringCacheTest.copy ("blue")));
+		assertEquals (1, cache.getHits ());
+		assertEquals (1, cache.getMisses ());
+		assertEquals (1, cache.size ());
+
+		String tooLong = "a string that is longer than the maximum length of the strings kept in the cache";
+		assertSame (tooLong, cache.canonicalize (tooLong));
+		assertEquals (1, cache.size ());
+		assertEquals (0.5, cache.getHitRate (), 0.0);
+	}
+
+	@Test
+	public void evictsWhenFull () {
+		StringCache lru = new StringCache (1, 10, StringCache.Eviction.LEAST_RECENTLY_USED);
+		String a = StringCacheTest.copy ("a");
+		lru.canonicalize (a);
+		lru.canonicalize ("b");
+		assertEquals (1, lru.size ());
+		assertEquals (1, lru.getEvictions ());
+		assertNotSame (a, lru.canonicalize (StringCacheTest.copy ("a")));
+
+		StringCache oldest = new StringCache (2, 10, StringCache.Eviction.OLDEST);
+		// two segments of one String each, "x" and "z" go to the same one.
+		assertEquals (2, oldest.getMaximumSize ());
+		oldest.canonicalize ("x");
+		oldest.canonicalize ("y");
+		oldest.canonicalize ("z");
+		assertEquals (2, oldest.size ());
+		assertEquals (1, oldest.getEvictions ());
+	}
+
+	@Test
+	public void decodesSharedStrings () throws Exception {
+		StringCache cache = new StringCache (100);
+		DecodeOptions options = DecodeOptions.defaults ().withStringCache (cache);
+		String text = new Product ("Acme", "Anvil").toString ();
+
+		Product one = JSONEntity.decode (Product.class, new JSONObject (text), options);
+		Product two = JSONEntity.decode (Product.class, new JSONObject (text), options);
+		assertEquals ("Acme", one.brand);
+		assertSame (one.brand, two.brand);
+		assertNotSame (one.name, two.name);
+		assertSame (one.stock.keySet ().iterator ().next (), two.stock.keySet ().iterator ().next ());
+		assertEquals (Integer.valueOf (3), two.stock.get ("warehouse"));
+		assertEquals (2, cache.getHits ());
+
+		Product lazy = JSONEntity.decode (Product.class, new JSONObject (text), options.withLazyCollections (true));
+		assertSame (one.stock.keySet ().iterator ().next (), lazy.stock.keySet ().iterator ().next ());
+
+		Product withoutCache = new Product (new JSONObject (text));
+		assertNotSame (one.brand, withoutCache.brand);
+
+		DecodeOptions previous = options.enter ();
+		try {
+			Product read = JSONEntity.read (Product.class, new StringReader (text));
+			assertSame (one.brand, read.brand);
+			assertSame (one.stock.keySet ().iterator ().next (), read.stock.keySet ().iterator ().next ());
+		} finally {
+			DecodeOptions.restore (previous);
+		}
+	}
+}
@@ -0,0 +1,204 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * @author mtavares */
+public class TypeAdaptersTest {
+
+	static final class Money {
+		final long cents;
+		final String currency;
+
+		Money (long cents, String currency) {
+			this.cents = cents;
+			this.currency = currency;
+		}
+	}
+
+	static final TypeAdapter<Money> MONEY = new TypeAdapter<Money> () {
+		public Object toJson (Money value) {
+			return value.cents + " " + value.currency;
+		}
+
+		public Money fromJson (Object json, Type type) throws JSONMappingException {
+			String[] parts = json.toString ().split (" ");
+			if (parts.length != 2)
+				throw new JSONMappingException ("Not money: " + json);
+			return new Money (Long.parseLong (parts[0]), parts[1]);
+		}
+	};
+
+	static class Order extends JSONEntity {
+		Date created;
+		BigDecimal total;
+		UUID id;
+		Long quantity;
+		Set<UUID> related;
+		List<Date> deliveries;
+		Money price;
+
+		public Order () {
+		}
+
+		public Order (JSONObject json) throws JSONMappingException {
+			super (json);
+		}
+	}
+
+	static class Counter extends JSONEntity {
+		Integer count;
+		Byte small;
+		List<Integer> ids;
+
+		public Counter (JSONObject json) throws JSONMappingException {
+			super (json);
+		}
+	}
+
+	private static Order createOrder () {
+		Order order = new Order ();
+		order.created = new Date (1234567890123L);
+		order.total = new BigDecimal ("1234.56");
+		order.id = UUID.randomUUID ();
+		order.quantity = Long.valueOf (3);
+		order.related = new LinkedHashSet<UUID> (Arrays.asList (UUID.randomUUID (), UUID.randomUUID ()));
+		order.deliveries = new ArrayList<Date> (Arrays.asList (new Date (0), new Date (86400000L)));
+		return order;
+	}
+
+	private static void assertSameOrder (Order expected, Order actual) {
+		assertEquals (expected.created, actual.created);
+		assertEquals (expected.total, actual.total);
+		assertEquals (expected.id, actual.id);
+		assertEquals (expected.quantity, actual.quantity);
+		assertEquals (expected.related, actual.related);
+		assertEquals (expected.deliveries, actual.deliveries);
+	}
+
+	@Test
+	public void convertsCommonTypes () throws Exception {
+		Order order = TypeAdaptersTest.createOrder ();
+		JSONObject json = order.toJson ();
+		assertEquals ("2009-02-13T23:31:30.123Z", json.getString ("created"));
+		assertEquals (order.id.toString (), json.getString ("id"));
+		assertEquals (2, json.getJSONArray ("related").length ());
+		assertEquals ("1970-01-02T00:00:00.000Z", json.getJSONArray ("deliveries").getString (1));
+
+		assertSameOrder (order, new Order (json));
+		assertSameOrder (order, new Order (new JSONObject (order.toString ())));
+		assertSameOrder (order, JSONEntity.read (Order.class, new StringReader (order.toString ())));
+		assertSameOrder (order, CBORReader.read (Order.class, CBORWriter.toBytes (order)));
+	}
+
+	@Test
+	public void acceptsOtherRepresentations () throws Exception {
+		JSONObject json = new JSONObject ();
+		json.put ("created", 1234567890123L);
+		json.put ("total", "12.50");
+		json.put ("quantity", 7);
+		json.put ("deliveries", new JSONArray (Arrays.asList ("2012-05-01", "2012-05-02T10:00:00+01:00")));
+		Order order = new Order (json);
+		assertEquals (new Date (1234567890123L), order.created);
+		assertEquals (new BigDecimal ("12.50"), order.total);
+		assertEquals (Long.valueOf (7), order.quantity);
+		assertEquals (new Date (1335830400000L), order.deliveries.get (0));
+		assertEquals (new Date (1335949200000L), order.deliveries.get (1));
+		assertNull (order.id);
+
+		json.put ("id", "not a uuid");
+		try {
+			new Order (json);
+			fail ("A invalid UUID can't be decoded.");
+		} catch (JSONMappingException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void rejectsNumbersThatDontFit () throws Exception {
+		Counter counter = new Counter (new JSONObject ("{\"count\": \"3000\", \"small\": 2.0, \"ids\": [1, \"2\", 3e0]}"));
+		assertEquals (Integer.valueOf (3000), counter.count);
+		assertEquals (Byte.valueOf ((byte) 2), counter.small);
+		assertEquals (Arrays.asList (1, 2, 3), counter.ids);
+
+		String[] invalid = { "{\"count\": \"3000000000\"}", "{\"count\": 3000000000}", "{\"small\": 200}",
+				"{\"ids\": [1.9, 2.5]}", "{\"count\": \"1.5\"}" };
+		for (String text : invalid) {
+			try {
+				new Counter (new JSONObject (text));
+				fail (text + " doesn't fit the fields.");
+			} catch (JSONMappingException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void usesRegisteredAdapters () throws Exception {
+		Order order = TypeAdaptersTest.createOrder ();
+		order.price = new Money (1999, "EUR");
+		TypeAdapters.register (Money.class, TypeAdaptersTest.MONEY);
+		try {
+			JSONObject json = order.toJson ();
+			assertEquals ("1999 EUR", json.getString ("price"));
+			assertEquals (json.toString (), order.toString ());
+			Order decoded = new Order (json);
+			assertEquals (1999, decoded.price.cents);
+			assertEquals ("EUR", decoded.price.currency);
+		} finally {
+			TypeAdapters.unregister (Money.class);
+		}
+		assertNull (TypeAdapters.forClass (Money.class));
+	}
+
+	@Test
+	@SuppressWarnings ({ "unchecked", "rawtypes" })
+	public void rejectsClassesWithTheirOwnConversions () {
+		Class<?>[] classes = { int.class, String.class, List.class, ArrayList.class, Map.class,
+				IntList.class, TimeUnit.class, Order.class, UUID[].class };
+		for (Class<?> clazz : classes) {
+			try {
+				TypeAdapters.register ((Class) clazz, TypeAdaptersTest.MONEY);
+				fail ("The adapter for " + clazz.getName () + " would never be used.");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.Map;
+
+import org.bitpipeline.lib.friendlyjson.complexdata.WindsurfClass;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.junit.Test;
+
+/**
+ * @author mtavares */
+public class Utf8TokenerTest {
+
+	static class Sample extends JSONEntity {
+		String name;
+		String café;
+		int count;
+		WindsurfClass kind;
+		List<Sample> children;
+		Map<String, String> labels;
+
+		public Sample (JSONObject json) throws JSONMappingException {
+			super (json);
+		}
+	}
+
+	private static final String TEXT = "{"
+		+ "\"name\": \"na\\u00efve \\\"quoted\\\" 🏄 surf\", \"caf\\u00e9\": \"escaped key\","
+		+ "\"count\": 12, \"kind\": \"Slalom\", \"ignored\": [\"€\", {\"x\": \"\\\"]\"}],"
+		+ "\"children\": [{\"name\": \"été\", \"labels\": {\"kéy\": \"vâlue\"}}]"
+		+ "}";
+
+	private static byte[] utf8 (String text) throws IOException {
+		return text.getBytes ("UTF-8");
+	}
+
+	@Test
+	public void readsLikeTheConstructor () throws Exception {
+		String expected = new Sample (new JSONObject (Utf8TokenerTest.TEXT)).toString ();
+		byte[] bytes = Utf8TokenerTest.utf8 (Utf8TokenerTest.TEXT);
+
+		assertEquals (expected, JSONEntity.read (Sample.class, bytes).toString ());
+
+		ByteBuffer direct = ByteBuffer.allocateDirect (bytes.length + 4);
+		direct.put (new byte[] {1, 2});
+		direct.put (bytes);
+		direct.flip ();
+		direct.position (2);
+		assertEquals (expected, JSONEntity.read (Sample.class, direct).toString ());
+		assertEquals (2, direct.position ());
+
+		Sample sample = JSONEntity.read (Sample.class, bytes);
+		assertEquals ("naïve \"quoted\" 🏄 surf", sample.name);
+		assertEquals ("escaped key", sample.café);
+		assertEquals ("été", sample.children.get (0).name);
+		assertEquals ("vâlue", sample.children.get (0).labels.get ("kéy"));
+	}
+
+	@Test
+	public void readsMappedFiles () throws Exception {
+		File file = File.createTempFile ("friendlyjson", ".json");
+		try {
+			FileOutputStream out = new FileOutputStream (file);
+			try {
+				out.write (Utf8TokenerTest.utf8 ("   " + Utf8TokenerTest.TEXT));
+			} finally {
+				out.close ();
+			}
+
+			RandomAccessFile raf = new RandomAccessFile (file, "r");
+			try {
+				FileChannel channel = raf.getChannel ();
+				channel.position (2);
+				Sample sample = JSONEntity.read (Sample.class, channel);
+				assertEquals (new Sample (new JSONObject (Utf8TokenerTest.TEXT)).toString (), sample.toString ());
+			} finally {
+				raf.close ();
+			}
+		} finally {
+			file.delete ();
+		}
+	}
+
+	@Test
+	public void tokensMatchJSONTokener () throws Exception {
+		String text = "[\"a\\tb\\/c\\u0041\", 'single', unquoted, 1.5e3, -7, true, null, {\"k\": [1, 2]}, \"🏄é\"]";
+		Object expected = new JSONTokener (text).nextValue ();
+		Object value = new Utf8Tokener (ByteBuffer.wrap (Utf8TokenerTest.utf8 (text))).nextValue ();
+		assertEquals (expected.toString (), value.toString ());
+	}
+
+	@Test
+	public void skipsLikeJSONTokener () throws Exception {
+		String text = "ab🏄cé|d";
+		JSONTokener expected = new JSONTokener (text);
+		Utf8Tokener tokener = new Utf8Tokener (ByteBuffer.wrap (Utf8TokenerTest.utf8 (text)));
+		assertEquals (expected.next (), tokener.next ());
+		assertEquals (expected.skipTo ('z'), tokener.skipTo ('z'));
+		assertEquals (expected.next (), tokener.next ());
+		assertEquals (expected.skipTo ('|'), tokener.skipTo ('|'));
+		assertEquals ('|', tokener.next ());
+		assertEquals (expected.next (), '|');
+		assertEquals (expected.next (), tokener.next ());
+		assertEquals (0, tokener.skipTo ('|'));
+		assertEquals (expected.toString (), tokener.toString ());
+	}
+
+	@Test
+	public void reportsUnterminatedStrings () throws IOException {
+		try {
+			JSONEntity.read (Sample.class, Utf8TokenerTest.utf8 ("{\"ignored\": \"no end}"));
+			fail ("The string isn't terminated.");
+		} catch (JSONMappingException e) {
+			fail ("It's a syntax error.");
+		} catch (JSONException e) {
+			// expected
+		}
+	}
+}
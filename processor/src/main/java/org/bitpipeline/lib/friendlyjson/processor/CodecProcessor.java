@@ -0,0 +1,548 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/** Generates the codecs of the JSON entities annotated with <tt>GenerateCodec</tt>.
+ * The generated codecs do what the reflective mapping of <tt>JSONEntity</tt>
+ * does, field by field and in the same order, but with plain field accesses
+ * and constructor calls.
+ * @author mtavares */
+@SupportedAnnotationTypes (CodecProcessor.GENERATE_CODEC)
+public class CodecProcessor extends AbstractProcessor {
+	static final String GENERATE_CODEC = "org.bitpipeline.lib.friendlyjson.GenerateCodec";
+	private static final String JSON_ENTITY = "org.bitpipeline.lib.friendlyjson.JSONEntity";
+	private static final String JSON_OBJECT = "org.json.JSONObject";
+	private static final String LOW_CARDINALITY = "org.bitpipeline.lib.friendlyjson.LowCardinality";
+	private static final String SUPPORT = "GeneratedCodecSupport";
+	private static final String[] NUMBER_LISTS = {
+		"org.bitpipeline.lib.friendlyjson.IntList",
+		"org.bitpipeline.lib.friendlyjson.LongList",
+		"org.bitpipeline.lib.friendlyjson.DoubleList" };
+
+	@Override
+	public SourceVersion getSupportedSourceVersion () {
+		return SourceVersion.latestSupported ();
+	}
+
+	@Override
+	public boolean process (Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for (TypeElement annotation : annotations) {
+			for (Element element : roundEnv.getElementsAnnotatedWith (annotation)) {
+				if (element.getKind () != ElementKind.CLASS) {
+					error (element, "@GenerateCodec can only be used on classes.");
+					continue;
+				}
+				TypeElement entity = (TypeElement) element;
+				if (!isEntity (entity.asType ())) {
+					error (element, "@GenerateCodec can only be used on classes that extend " + CodecProcessor.JSON_ENTITY + ".");
+					continue;
+				}
+				try {
+					generate (entity);
+				} catch (IOException e) {
+					error (element, "Couldn't write the codec: " + e.getMessage ());
+				}
+			}
+		}
+		return true;
+	}
+
+	private void error (Element element, String message) {
+		this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.ERROR, message, element);
+	}
+
+	private boolean isEntity (TypeMirror type) {
+		TypeElement jsonEntity = this.processingEnv.getElementUtils ().getTypeElement (CodecProcessor.JSON_ENTITY);
+		return type.getKind () == TypeKind.DECLARED && jsonEntity != null
+			&& this.processingEnv.getTypeUtils ().isSubtype (
+				this.processingEnv.getTypeUtils ().erasure (type),
+				this.processingEnv.getTypeUtils ().erasure (jsonEntity.asType ()));
+	}
+
+	private boolean isType (TypeMirror type, String name) {
+		if (type.getKind () != TypeKind.DECLARED)
+			return false;
+		return ((TypeElement) ((DeclaredType) type).asElement ()).getQualifiedName ().contentEquals (name);
+	}
+
+	private boolean isNumberList (TypeMirror type) {
+		for (String numberList : CodecProcessor.NUMBER_LISTS) {
+			if (isType (type, numberList))
+				return true;
+		}
+		return false;
+	}
+
+	private static boolean isAnnotated (Element element, String annotation) {
+		for (AnnotationMirror mirror : element.getAnnotationMirrors ()) {
+			if (((TypeElement) mirror.getAnnotationType ().asElement ()).getQualifiedName ().contentEquals (annotation))
+				return true;
+		}
+		return false;
+	}
+
+	private String rawName (TypeMirror type) {
+		return this.processingEnv.getTypeUtils ().erasure (type).toString ();
+	}
+
+	private static String boxed (TypeMirror type) {
+		switch (type.getKind ()) {
+			case BOOLEAN: return "Boolean";
+			case BYTE: return "Byte";
+			case CHAR: return "Character";
+			case SHORT: return "Short";
+			case INT: return "Integer";
+			case LONG: return "Long";
+			case FLOAT: return "Float";
+			case DOUBLE: return "Double";
+			default: return null;
+		}
+	}
+
+	private static String quote (String name) {
+		return "\"" + name.replace ("\\", "\\\\").replace ("\"", "\\\"") + "\"";
+	}
+
+	/** @return <tt>true</tt> if the codec, in package <tt>codecPackage</tt>, can access the element. */
+	private boolean isAccessible (Element element, String codecPackage) {
+		Set<Modifier> modifiers = element.getModifiers ();
+		if (modifiers.contains (Modifier.PRIVATE))
+			return false;
+		if (modifiers.contains (Modifier.PUBLIC))
+			return true;
+		PackageElement elementPackage = this.processingEnv.getElementUtils ().getPackageOf (element);
+		return elementPackage.getQualifiedName ().contentEquals (codecPackage);
+	}
+
+	/** @return <tt>true</tt> if the codec can call <tt>new Type (JSONObject)</tt>. */
+	private boolean isConstructible (TypeMirror type, String codecPackage) {
+		TypeElement element = (TypeElement) ((DeclaredType) type).asElement ();
+		if (element.getModifiers ().contains (Modifier.ABSTRACT))
+			return false;
+		for (Element e = element; e instanceof TypeElement; e = e.getEnclosingElement ()) {
+			if (!isAccessible (e, codecPackage))
+				return false;
+			if (((TypeElement) e).getNestingKind () == NestingKind.MEMBER && !e.getModifiers ().contains (Modifier.STATIC))
+				return false;
+		}
+		for (ExecutableElement constructor : ElementFilter.constructorsIn (element.getEnclosedElements ())) {
+			List<? extends VariableElement> parameters = constructor.getParameters ();
+			if (parameters.size () == 1
+					&& isType (parameters.get (0).asType (), CodecProcessor.JSON_OBJECT)
+					&& isAccessible (constructor, codecPackage))
+				return true;
+		}
+		return false;
+	}
+
+	/** The fields mapped by JSONEntity: of the class first, then of the super classes. */
+	private List<VariableElement> mappedFields (TypeElement entity) {
+		List<VariableElement> fields = new ArrayList<VariableElement> ();
+		TypeElement type = entity;
+		while (type != null && !type.getQualifiedName ().contentEquals (CodecProcessor.JSON_ENTITY)) {
+			for (VariableElement field : ElementFilter.fieldsIn (type.getEnclosedElements ())) {
+				if (!field.getModifiers ().contains (Modifier.TRANSIENT))
+					fields.add (field);
+			}
+			TypeMirror superclass = type.getSuperclass ();
+			type = superclass.getKind () == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement () : null;
+		}
+		return fields;
+	}
+
+	private void generate (TypeElement entity) throws IOException {
+		String packageName = this.processingEnv.getElementUtils ().getPackageOf (entity).getQualifiedName ().toString ();
+		String binaryName = this.processingEnv.getElementUtils ().getBinaryName (entity).toString ();
+		String codecName = (packageName.isEmpty () ? binaryName : binaryName.substring (packageName.length () + 1)).replace ('$', '_') + "Codec";
+		String entityName = rawName (entity.asType ());
+
+		for (Element e = entity; e instanceof TypeElement; e = e.getEnclosingElement ()) {
+			if (!isAccessible (e, packageName)) {
+				error (entity, "The class must be accessible from its package to have a generated codec.");
+				return;
+			}
+		}
+
+		List<VariableElement> fields = mappedFields (entity);
+		boolean failed = false;
+		for (VariableElement field : fields) {
+			if (!isAccessible (field, packageName)) {
+				error (field, "Fields of classes with a generated codec can't be private nor inaccessible from the package " + packageName + ".");
+				failed = true;
+			}
+		}
+		if (failed)
+			return;
+
+		SourceWriter out = new SourceWriter ();
+		out.line ("/* Generated by the friendlyJSON annotation processor. Do not edit. */");
+		if (!packageName.isEmpty ())
+			out.line ("package " + packageName + ";");
+		out.line ("");
+		out.line ("import org.bitpipeline.lib.friendlyjson.EntityCodec;");
+		out.line ("import org.bitpipeline.lib.friendlyjson.GeneratedCodecSupport;");
+		out.line ("import org.bitpipeline.lib.friendlyjson.JSONMappingException;");
+		out.line ("import org.json.JSONArray;");
+		out.line ("import org.json.JSONException;");
+		out.line ("import org.json.JSONObject;");
+		out.line ("");
+		out.line ("/** Maps the fields of {@link " + entityName + "} from and into JSON objects. */");
+		out.open ("public final class " + codecName + " implements EntityCodec<" + entityName + "> {");
+
+		SourceWriter decoder = new SourceWriter (1);
+		List<String> types = new ArrayList<String> ();
+		decoder.line ("@SuppressWarnings ({\"unchecked\", \"rawtypes\"})");
+		decoder.open ("public void decode (" + entityName + " entity, JSONObject json) throws JSONMappingException {");
+		decoder.open ("try {");
+		for (VariableElement field : fields) {
+			if (field.getModifiers ().contains (Modifier.STATIC) && field.getModifiers ().contains (Modifier.FINAL))
+				continue;
+			writeDecoder (decoder, types, field, entity, packageName);
+		}
+		decoder.close ("} catch (RuntimeException e) {");
+		decoder.indent ("throw new JSONMappingException (e);");
+		decoder.line ("}");
+		decoder.close ("}");
+		decoder.line ("");
+
+		for (int i=0; i<types.size (); i++)
+			out.line ("private static final java.lang.reflect.Type TYPE" + i + " = " + types.get (i) + ";");
+		if (!types.isEmpty ())
+			out.line ("");
+		out.append (decoder);
+
+		out.open ("public void encode (" + entityName + " entity, JSONObject json) throws JSONMappingException {");
+		if (!fields.isEmpty ()) {
+			out.open ("try {");
+			for (VariableElement field : fields)
+				writeEncoder (out, entity, field);
+			out.close ("} catch (JSONException e) {");
+			out.indent ("throw new JSONMappingException (e);");
+			out.line ("}");
+		}
+		out.close ("}");
+		out.close ("}");
+
+		String codecFullName = packageName.isEmpty () ? codecName : packageName + "." + codecName;
+		JavaFileObject source = this.processingEnv.getFiler ().createSourceFile (codecFullName, entity);
+		Writer writer = source.openWriter ();
+		try {
+			writer.write (out.toString ());
+		} finally {
+			writer.close ();
+		}
+	}
+
+	/** @return the expression to access the field from the <tt>entity</tt> variable. */
+	private String fieldReference (TypeElement entity, VariableElement field) {
+		TypeElement declaring = (TypeElement) field.getEnclosingElement ();
+		if (field.getModifiers ().contains (Modifier.STATIC))
+			return rawName (declaring.asType ()) + "." + field.getSimpleName ();
+		if (declaring.equals (entity))
+			return "entity." + field.getSimpleName ();
+		return "((" + rawName (declaring.asType ()) + ") entity)." + field.getSimpleName ();
+	}
+
+	private void writeEncoder (SourceWriter out, TypeElement entity, VariableElement field) {
+		String reference = fieldReference (entity, field);
+		String name = CodecProcessor.quote (field.getSimpleName ().toString ());
+		TypeMirror type = field.asType ();
+		if (type.getKind ().isPrimitive ())
+			out.line ("json.put (" + name + ", (Object) " + CodecProcessor.boxed (type) + ".valueOf (" + reference + "));");
+		else if (isType (type, "java.lang.String"))
+			out.line ("json.put (" + name + ", (Object) " + reference + ");");
+		else
+			out.line ("json.put (" + name + ", " + CodecProcessor.SUPPORT + ".toJson (" + reference + "));");
+	}
+
+	/** @return the expression that converts the JSON value in variable <tt>value</tt> into the type.
+	 * @param genericType the expression of the generic type, used if the type has type arguments. */
+	private String conversion (TypeMirror type, String value, List<String> types, String genericType, String packageName) {
+		if (type == null)
+			return CodecProcessor.SUPPORT + ".fromJson (null, " + value + ")";
+		String raw = rawName (type);
+		if (isEntity (type) && isConstructible (type, packageName))
+			return "(" + value + " instanceof JSONObject ? new " + raw + " ((JSONObject) " + value + ") : ("
+				+ raw + ") " + CodecProcessor.SUPPORT + ".fromJson (" + raw + ".class, " + value + "))";
+		String boxed = CodecProcessor.boxed (type);
+		if (CodecProcessor.isGeneric (type))
+			return "(" + raw + ") " + CodecProcessor.SUPPORT + ".fromJson (" + raw + ".class, "
+				+ CodecProcessor.typeConstant (types, genericType) + ", " + value + ")";
+		return "(" + (boxed != null ? boxed : raw) + ") " + CodecProcessor.SUPPORT + ".fromJson (" + raw + ".class, " + value + ")";
+	}
+
+	/** @return <tt>true</tt> if the type has type arguments, that the adapters may need. */
+	private static boolean isGeneric (TypeMirror type) {
+		return type.getKind () == TypeKind.DECLARED && !((DeclaredType) type).getTypeArguments ().isEmpty ();
+	}
+
+	/** Declare a constant of the codec with a generic type.
+	 * @return the name of the constant. */
+	private static String typeConstant (List<String> types, String expression) {
+		types.add (expression);
+		return "TYPE" + (types.size () - 1);
+	}
+
+	/** @return the expression of a type argument of the generic type in <tt>genericType</tt>. */
+	private static String genericArgument (String genericType, int index) {
+		return CodecProcessor.SUPPORT + ".typeArgument (" + genericType + ", " + index + ")";
+	}
+
+	/** @return the resolved type argument, or <tt>null</tt> if it can't be resolved into a class. */
+	private static TypeMirror typeArgument (TypeMirror type, int index) {
+		if (type.getKind () != TypeKind.DECLARED)
+			return null;
+		List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments ();
+		if (arguments.size () <= index)
+			return null;
+		TypeMirror argument = arguments.get (index);
+		return argument.getKind () == TypeKind.DECLARED || argument.getKind () == TypeKind.ARRAY ? argument : null;
+	}
+
+	private static String newArray (String componentName, String length) {
+		int dimensions = componentName.indexOf ('[');
+		if (dimensions < 0)
+			return "new " + componentName + "[" + length + "]";
+		return "new " + componentName.substring (0, dimensions) + "[" + length + "]" + componentName.substring (dimensions);
+	}
+
+	private void writeDecoder (SourceWriter out, List<String> types, VariableElement field, TypeElement entity, String packageName) {
+		String reference = fieldReference (entity, field);
+		String fieldName = field.getSimpleName ().toString ();
+		String name = CodecProcessor.quote (fieldName);
+		TypeMirror type = field.asType ();
+		String raw = rawName (type);
+		String fieldType = CodecProcessor.SUPPORT + ".fieldType (" + rawName (field.getEnclosingElement ().asType ()) + ".class, " + name + ")";
+
+		switch (type.getKind ()) {
+			case BOOLEAN:
+				writeSimple (out, reference + " = json.getBoolean (" + name + ");");
+				return;
+			case BYTE:
+				writeSimple (out, reference + " = (byte) json.getInt (" + name + ");");
+				return;
+			case SHORT:
+				writeSimple (out, reference + " = (short) json.getInt (" + name + ");");
+				return;
+			case INT:
+				writeSimple (out, reference + " = json.getInt (" + name + ");");
+				return;
+			case LONG:
+				writeSimple (out, reference + " = json.getLong (" + name + ");");
+				return;
+			case FLOAT:
+				writeSimple (out, reference + " = (float) json.getDouble (" + name + ");");
+				return;
+			case DOUBLE:
+				writeSimple (out, reference + " = json.getDouble (" + name + ");");
+				return;
+			case CHAR:
+				out.open ("try {");
+				out.line ("String value = json.getString (" + name + ");");
+				out.line ("if (value.length () > 0)");
+				out.indent (reference + " = value.charAt (0);");
+				writeIgnore (out);
+				return;
+			case ARRAY: {
+				TypeMirror component = ((ArrayType) type).getComponentType ();
+				out.open ("try {");
+				out.line ("JSONArray array = json.getJSONArray (" + name + ");");
+				if (component.getKind ().isPrimitive ()) {
+					out.line ("int[] invalid = new int[1];");
+					out.line (reference + " = (" + raw + ") " + CodecProcessor.SUPPORT + ".primitiveArray (" + rawName (component) + ".class, array, invalid);");
+					out.line ("for (int i=0; i<invalid[0]; i++)");
+					out.indent ("System.err.println (\"Invalid array component for class \" + entity.getClass ().getName () + \" field " + fieldName + "::" + raw + "\");");
+					writeIgnore (out);
+					return;
+				}
+				out.line (raw + " values = " + CodecProcessor.newArray (rawName (component), "array.length ()") + ";");
+				boolean entities = isEntity (component);
+				if (entities) {
+					out.line ("int[] invalid = new int[1];");
+					out.open ("if (!" + CodecProcessor.SUPPORT + ".parallelArray (" + rawName (component) + ".class, array, values, invalid)) {");
+				}
+				out.open ("for (int i=0; i<values.length; i++) {");
+				out.open ("try {");
+				out.line ("Object value = array.get (i);");
+				out.line ("values[i] = " + conversion (component, "value", types, CodecProcessor.SUPPORT + ".componentType (" + fieldType + ")", packageName) + ";");
+				out.close ("} catch (Exception e) {");
+				out.indent ("System.err.println (\"Invalid array component for class \" + entity.getClass ().getName () + \" field " + fieldName + "::" + raw + "\");");
+				out.line ("}");
+				out.close ("}");
+				if (entities) {
+					out.close ("}");
+					out.line ("for (int i=0; i<invalid[0]; i++)");
+					out.indent ("System.err.println (\"Invalid array component for class \" + entity.getClass ().getName () + \" field " + fieldName + "::" + raw + "\");");
+				}
+				out.line (reference + " = values;");
+				writeIgnore (out);
+				return;
+			}
+			default:
+				break;
+		}
+
+		if (isType (type, "java.lang.String")) {
+			if (CodecProcessor.isAnnotated (field, CodecProcessor.LOW_CARDINALITY))
+				writeSimple (out, reference + " = " + CodecProcessor.SUPPORT + ".canonicalize (json.getString (" + name + "));");
+			else
+				writeSimple (out, reference + " = json.getString (" + name + ");");
+		} else if (isEntity (type)) {
+			out.open ("try {");
+			if (isConstructible (type, packageName))
+				out.line (reference + " = new " + raw + " (json.getJSONObject (" + name + "));");
+			else
+				out.line (reference + " = (" + raw + ") " + CodecProcessor.SUPPORT + ".fromJson (" + raw + ".class, json.getJSONObject (" + name + "));");
+			writeIgnore (out);
+		} else if (isNumberList (type)) {
+			writeSimple (out, reference + " = (" + raw + ") " + CodecProcessor.SUPPORT + ".numberList (" + raw + ".class, json.getJSONArray (" + name + "));");
+		} else if (isType (type, "java.util.List") && typeArgument (type, 0) != null) {
+			out.open ("try {");
+			out.line ("JSONArray array = json.getJSONArray (" + name + ");");
+			out.line ("java.util.List<?> list = " + CodecProcessor.SUPPORT + ".list (" + rawName (typeArgument (type, 0)) + ".class, array);");
+			out.open ("if (list == null) {");
+			out.line ("java.util.ArrayList<Object> values = new java.util.ArrayList<Object> (array.length ());");
+			out.open ("for (int i=0; i<array.length (); i++) {");
+			out.line ("Object value = array.get (i);");
+			out.line ("values.add (" + conversion (typeArgument (type, 0), "value", types, CodecProcessor.genericArgument (fieldType, 0), packageName) + ");");
+			out.close ("}");
+			out.line ("list = values;");
+			out.close ("}");
+			out.line (reference + " = (java.util.List) list;");
+			writeIgnore (out);
+		} else if (isType (type, "java.util.Map") && typeArgument (type, 0) != null && typeArgument (type, 1) != null) {
+			out.open ("try {");
+			out.line ("JSONObject map = json.getJSONObject (" + name + ");");
+			TypeMirror keyType = typeArgument (type, 0);
+			TypeMirror valueType = typeArgument (type, 1);
+			out.line ("java.util.Map<?, ?> values = " + CodecProcessor.SUPPORT + ".map (" + rawName (keyType) + ".class, " + rawName (valueType) + ".class, map);");
+			out.open ("if (values == null) {");
+			out.line ("java.util.HashMap<Object, Object> decoded = new java.util.HashMap<Object, Object> (map.length ());");
+			out.line ("java.util.Iterator<?> keys = map.keys ();");
+			out.open ("while (keys.hasNext ()) {");
+			out.line ("Object key = keys.next ();");
+			out.line ("Object value = map.get (key.toString ());");
+			String key = isType (keyType, "java.lang.String") ? CodecProcessor.SUPPORT + ".canonicalize (key.toString ())"
+				: conversion (keyType, "key", types, CodecProcessor.genericArgument (fieldType, 0), packageName);
+			out.line ("decoded.put (" + key + ", "
+					+ conversion (valueType, "value", types, CodecProcessor.genericArgument (fieldType, 1), packageName) + ");");
+			out.close ("}");
+			out.line ("values = decoded;");
+			out.close ("}");
+			out.line (reference + " = (java.util.Map) values;");
+			writeIgnore (out);
+		} else {
+			out.open ("{");
+			out.line ("Object value = json.opt (" + name + ");");
+			out.line ("if (value != null)");
+			if (CodecProcessor.isGeneric (type))
+				out.indent (reference + " = (" + raw + ") " + CodecProcessor.SUPPORT + ".fromJson (" + raw + ".class, " + CodecProcessor.typeConstant (types, fieldType) + ", value);");
+			else
+				out.indent (reference + " = (" + raw + ") " + CodecProcessor.SUPPORT + ".fromJson (" + raw + ".class, value);");
+			out.close ("}");
+		}
+	}
+
+	private static void writeSimple (SourceWriter out, String statement) {
+		out.open ("try {");
+		out.line (statement);
+		writeIgnore (out);
+	}
+
+	private static void writeIgnore (SourceWriter out) {
+		out.close ("} catch (JSONException e) {");
+		out.indent ("// no data for this field.");
+		out.line ("}");
+	}
+
+	/** Writes lines of source code with tab indentation. */
+	private static class SourceWriter {
+		private final StringBuilder source = new StringBuilder ();
+		private int level;
+
+		SourceWriter () {
+			this (0);
+		}
+
+		/** Write the lines starting at a indentation level. */
+		SourceWriter (int level) {
+			this.level = level;
+		}
+
+		void line (String line) {
+			for (int i=0; i<this.level && line.length () > 0; i++)
+				this.source.append ('\t');
+			this.source.append (line).append ('\n');
+		}
+
+		/** Write a line one level deeper than the current one. */
+		void indent (String line) {
+			this.level++;
+			line (line);
+			this.level--;
+		}
+
+		/** Write a line and go one level deeper. */
+		void open (String line) {
+			line (line);
+			this.level++;
+		}
+
+		/** Go one level up and write a line. */
+		void close (String line) {
+			this.level--;
+			line (line);
+		}
+
+		/** Write the lines of other writer, as they are. */
+		void append (SourceWriter other) {
+			this.source.append (other.source);
+		}
+
+		@Override
+		public String toString () {
+			return this.source.toString ();
+		}
+	}
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson.processor;
+
+import org.bitpipeline.lib.friendlyjson.GenerateCodec;
+import org.bitpipeline.lib.friendlyjson.JSONEntity;
+import org.bitpipeline.lib.friendlyjson.JSONMappingException;
+import org.json.JSONObject;
+
+@GenerateCodec
+public class Address extends JSONEntity {
+	String street;
+	int number;
+
+	public Address (String street, int number) {
+		this.street = street;
+		this.number = number;
+	}
+
+	public Address (JSONObject json) throws JSONMappingException {
+		super (json);
+	}
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bitpipeline.lib.friendlyjson.DecodeOptions;
+import org.bitpipeline.lib.friendlyjson.EntityCodec;
+import org.bitpipeline.lib.friendlyjson.EntityCodecs;
+import org.bitpipeline.lib.friendlyjson.IntList;
+import org.bitpipeline.lib.friendlyjson.JSONEntity;
+import org.bitpipeline.lib.friendlyjson.JSONMappingException;
+import org.bitpipeline.lib.friendlyjson.LazyCollection;
+import org.bitpipeline.lib.friendlyjson.StringCache;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * @author mtavares */
+public class CodecProcessorTest {
+
+	private static Person createPerson () {
+		Person person = new Person ();
+		person.name = "Maria";
+		person.age = 42;
+		person.height = 1.72;
+		person.initial = 'M';
+		person.active = true;
+		person.kind = Person.Kind.Supplier;
+		person.country = "Portugal";
+		person.address = new Address ("Main street", 10);
+		person.nicknames = Arrays.asList ("Mary", "Mia");
+		person.previous = Arrays.asList (new Address ("Old street", 1), new Address ("Older street", 2));
+		person.scores = new HashMap<String, Integer> ();
+		person.scores.put ("math", 19);
+		person.scores.put ("music", 14);
+		person.ids = new LinkedHashSet<UUID> (Arrays.asList (UUID.randomUUID (), UUID.randomUUID ()));
+		person.groups = Collections.<Set<UUID>> singletonList (Collections.singleton (UUID.randomUUID ()));
+		person.homes = new Address[] {new Address ("Beach road", 3)};
+		person.visits = new IntList ();
+		person.visits.addInt (2012);
+		person.visits.addInt (2013);
+		person.codes = new int[] {3, 1, 4};
+		person.weights = new double[] {61.5, 62.25};
+		person.ignored = 7;
+		return person;
+	}
+
+	@Test
+	public void codecsAreGenerated () throws Exception {
+		Class<?> codec = Class.forName (EntityCodecs.getGeneratedCodecName (Person.class));
+		assertTrue (EntityCodec.class.isAssignableFrom (codec));
+		assertEquals ("org.bitpipeline.lib.friendlyjson.processor.Person_ReflectiveCodec",
+				EntityCodecs.getGeneratedCodecName (Person.Reflective.class));
+	}
+
+	@Test
+	public void generatedCodecMatchesReflection () throws JSONMappingException {
+		Person person = createPerson ();
+		JSONObject json = person.toJson ();
+
+		Person copy = new Person (json);
+		Person reflective = new Person.Reflective (json);
+
+		assertEquals (reflective.toString (), person.toString ());
+		assertEquals (reflective.toString (), copy.toString ());
+
+		assertEquals ("Maria", copy.name);
+		assertEquals (42, copy.age);
+		assertEquals (1.72, copy.height, 0.0);
+		assertEquals ('M', copy.initial);
+		assertTrue (copy.active);
+		assertEquals (Person.Kind.Supplier, copy.kind);
+		assertNotNull (copy.address);
+		assertEquals ("Main street", copy.address.street);
+		assertEquals (Arrays.asList ("Mary", "Mia"), copy.nicknames);
+		assertEquals (2, copy.previous.size ());
+		assertEquals (2, copy.previous.get (1).number);
+		assertEquals (Integer.valueOf (19), copy.scores.get ("math"));
+		assertEquals (person.ids, copy.ids);
+		assertTrue (copy.ids.iterator ().next () instanceof UUID);
+		assertEquals (person.groups, copy.groups);
+		assertTrue (copy.groups.get (0).iterator ().next () instanceof UUID);
+		assertEquals (1, copy.homes.length);
+		assertEquals ("Beach road", copy.homes[0].street);
+		assertEquals (2, copy.visits.size ());
+		assertEquals (2013, copy.visits.getInt (1));
+		assertTrue (Arrays.equals (new int[] {3, 1, 4}, copy.codes));
+		assertTrue (Arrays.equals (new double[] {61.5, 62.25}, copy.weights));
+		assertEquals (0, copy.ignored);
+	}
+
+	@Test
+	public void generatedCodecUsesTheStringCache () throws Exception {
+		StringCache cache = new StringCache (100);
+		DecodeOptions options = DecodeOptions.defaults ().withStringCache (cache);
+		String text = createPerson ().toString ();
+
+		Person one = JSONEntity.decode (Person.class, new JSONObject (text), options);
+		Person two = JSONEntity.decode (Person.class, new JSONObject (text), options);
+		assertEquals ("Portugal", one.country);
+		assertSame (one.country, two.country);
+		assertNotSame (one.name, two.name);
+		assertSame (one.scores.keySet ().iterator ().next (), two.scores.keySet ().iterator ().next ());
+	}
+
+	@Test
+	public void generatedCodecDecodesLazyCollections () throws Exception {
+		Person person = createPerson ();
+		Person copy = JSONEntity.decode (Person.class, person.toJson (), DecodeOptions.defaults ().withLazyCollections (true));
+		assertTrue (copy.nicknames instanceof LazyCollection);
+		assertTrue (copy.previous instanceof LazyCollection);
+		assertTrue (copy.scores instanceof LazyCollection);
+		assertEquals (person.nicknames, copy.nicknames);
+		assertEquals ("Older street", copy.previous.get (1).street);
+		assertEquals (person.scores, copy.scores);
+		assertEquals (person.toString (), copy.toString ());
+	}
+
+	@Test
+	public void generatedCodecDecodesInParallel () throws Exception {
+		final AtomicInteger threads = new AtomicInteger ();
+		ForkJoinPool pool = new ForkJoinPool (2, new ForkJoinPool.ForkJoinWorkerThreadFactory () {
+			public ForkJoinWorkerThread newThread (ForkJoinPool pool) {
+				threads.incrementAndGet ();
+				return ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread (pool);
+			}
+		}, null, false);
+		try {
+			Person person = createPerson ();
+			JSONObject json = person.toJson ();
+			JSONArray homes = json.getJSONArray ("homes");
+			homes.put ("not a address");
+			homes.put (new Address ("Hill road", 4).toJson ());
+
+			Person copy = JSONEntity.decode (Person.class, json, DecodeOptions.defaults ().withParallelDecoding (2, pool));
+			assertTrue (threads.get () > 0);
+			assertEquals (person.toJson ().get ("previous").toString (), copy.toJson ().get ("previous").toString ());
+			assertEquals (3, copy.homes.length);
+			assertEquals (null, copy.homes[1]);
+			assertEquals ("Hill road", copy.homes[2].street);
+		} finally {
+			pool.shutdown ();
+		}
+	}
+
+	@Test
+	public void missingFieldsAreKeptUnset () throws JSONMappingException {
+		Person copy = new Person (new JSONObject ());
+		assertEquals (0, copy.age);
+		assertEquals (null, copy.address);
+		assertEquals (null, copy.nicknames);
+	}
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright 2012 J. Miguel P. Tavares <mtavares@bitpipeline.eu>
+ *         BitPipeline
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.friendlyjson.processor;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.bitpipeline.lib.friendlyjson.GenerateCodec;
+import org.bitpipeline.lib.friendlyjson.IntList;
+import org.bitpipeline.lib.friendlyjson.JSONMappingException;
+import org.bitpipeline.lib.friendlyjson.LowCardinality;
+import org.json.JSONObject;
+
+@GenerateCodec
+public class Person extends Named {
+	enum Kind {
+		Customer, Supplier
+	}
+
+	int age;
+	double height;
+	char initial;
+	boolean active;
+	Kind kind;
+	@LowCardinality
+	String country;
+	Address address;
+	List<String> nicknames;
+	List<Address> previous;
+	Map<String, Integer> scores;
+	Set<UUID> ids;
+	List<Set<UUID>> groups;
+	Address[] homes;
+	IntList visits;
+	int[] codes;
+	double[] weights;
+	transient int ignored;
+
+	public Person () {
+	}
+
+	public Person (JSONObject json) throws JSONMappingException {
+		super (json);
+	}
+
+	/** The same entity, mapped by reflection. */
+	static class Reflective extends Person {
+		public Reflective (JSONObject json) throws JSONMappingException {
+			super (json);
+		}
+	}
+}